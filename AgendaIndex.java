@@ -0,0 +1,94 @@
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * One-off events bucketed by priority, each bucket ordered by start time.
+ *
+ * Priorities are a small fixed range, so "the most important upcoming
+ * events" is a walk from the highest bucket down, reading each bucket's
+ * time-ordered slice of the window until enough events are found. Updates
+ * are O(log n); a top-K query is O(P log n + K) for P priority levels.
+ * Events are removed by identity, with the time and priority they were
+ * added under.
+ */
+class AgendaIndex {
+
+    private static class Entry {
+        final CalendarEvent event;
+        final LocalDateTime start;
+        final int priority;
+        final long seq;
+
+        Entry(CalendarEvent event, LocalDateTime start, int priority, long seq) {
+            this.event = event;
+            this.start = start;
+            this.priority = priority;
+            this.seq = seq;
+        }
+    }
+
+    private static final Comparator<Entry> BY_TIME = Comparator.<Entry, LocalDateTime>comparing(e -> e.start)
+            .thenComparingLong(e -> e.seq);
+
+    // Ranked by priority (highest first), then time
+    static final Comparator<CalendarEvent> BY_RANK = Comparator.comparingInt(CalendarEvent::getPriority).reversed()
+            .thenComparing(CalendarEvent::getDateTime);
+
+    // Indexed by priority; index 0 is unused
+    private final List<NavigableSet<Entry>> buckets = new ArrayList<>();
+    private final Map<CalendarEvent, Entry> entries = new IdentityHashMap<>();
+    private long nextSeq;
+
+    AgendaIndex() {
+        for (int p = 0; p <= EventAggregates.MAX_PRIORITY; p++) {
+            buckets.add(new TreeSet<>(BY_TIME));
+        }
+    }
+
+    public void add(CalendarEvent event) {
+        remove(event);
+        int priority = Math.max(EventAggregates.MIN_PRIORITY, Math.min(EventAggregates.MAX_PRIORITY, event.getPriority()));
+        Entry entry = new Entry(event, event.getDateTime(), priority, nextSeq++);
+        entries.put(event, entry);
+        buckets.get(priority).add(entry);
+    }
+
+    public void remove(CalendarEvent event) {
+        Entry entry = entries.remove(event);
+        if (entry != null) {
+            buckets.get(entry.priority).remove(entry);
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+        for (NavigableSet<Entry> bucket : buckets) {
+            bucket.clear();
+        }
+    }
+
+    /**
+     * Up to limit events starting in [from, to), highest priority first and
+     * earliest first within a priority
+     */
+    public List<CalendarEvent> top(LocalDateTime from, LocalDateTime to, int limit) {
+        List<CalendarEvent> result = new ArrayList<>(Math.min(limit, 64));
+        Entry low = new Entry(null, from, 0, Long.MIN_VALUE);
+        Entry high = new Entry(null, to, 0, Long.MIN_VALUE);
+        for (int p = buckets.size() - 1; p >= EventAggregates.MIN_PRIORITY && result.size() < limit; p--) {
+            for (Entry entry : buckets.get(p).subSet(low, true, high, false)) {
+                result.add(entry.event);
+                if (result.size() == limit) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+}
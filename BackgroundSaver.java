@@ -0,0 +1,113 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Writes model snapshots in the background, one write at a time.
+ *
+ * Snapshots submitted while a write is in progress are coalesced: only the
+ * newest one is written next, and every caller waiting on an older snapshot
+ * is completed by that write.
+ */
+class BackgroundSaver {
+    private final CalendarModel model;
+    private final TaskRuntime runtime;
+
+    private CalendarModel.Snapshot pending;
+    private List<CompletableFuture<Void>> waiters = new ArrayList<>();
+    private CompletableFuture<Void> lastSubmitted = CompletableFuture.completedFuture(null);
+    private boolean draining;
+
+    public BackgroundSaver(CalendarModel model, TaskRuntime runtime) {
+        this.model = model;
+        this.runtime = runtime;
+    }
+
+    /**
+     * Queues a snapshot for writing. The returned future completes once a
+     * snapshot at least as new as this one is safely on disk.
+     */
+    public synchronized CompletableFuture<Void> submit(CalendarModel.Snapshot snapshot) {
+        if (pending == null || snapshot.version > pending.version) {
+            pending = snapshot;
+        }
+
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        waiters.add(done);
+        lastSubmitted = done;
+
+        if (!draining) {
+            draining = true;
+            runtime.execute("save", this::drain);
+        }
+        return done;
+    }
+
+    private void drain() {
+        boolean idle = false;
+        try {
+            while (true) {
+                CalendarModel.Snapshot snapshot;
+                List<CompletableFuture<Void>> completed;
+                synchronized (this) {
+                    if (pending == null) {
+                        // Cleared under the same lock as the check, so no submit() is missed
+                        draining = false;
+                        idle = true;
+                        return;
+                    }
+                    snapshot = pending;
+                    completed = waiters;
+                    pending = null;
+                    waiters = new ArrayList<>();
+                }
+
+                try {
+                    model.writeToDisk(snapshot);
+                    CalendarMetrics.get().add("store.save.coalesced", completed.size() - 1);
+                    completed.forEach(f -> f.complete(null));
+                } catch (Throwable e) {
+                    // Whatever failed the write, its waiters must not be left hanging
+                    System.err.println("Error saving events: " + e.getMessage());
+                    completed.forEach(f -> f.completeExceptionally(e));
+                    if (e instanceof Error) {
+                        throw (Error) e;
+                    }
+                }
+            }
+        } finally {
+            if (!idle) {
+                // Thrown out of the loop: snapshots queued meanwhile still need a writer
+                synchronized (this) {
+                    draining = pending != null;
+                    if (draining) {
+                        runtime.execute("save", this::drain);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for every snapshot submitted so far to reach the disk.
+     */
+    public void flush(long timeoutSeconds) {
+        CompletableFuture<Void> last;
+        synchronized (this) {
+            last = lastSubmitted;
+        }
+        try {
+            last.get(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            System.err.println("Timed out waiting for pending saves");
+        } catch (ExecutionException e) {
+            // Already reported by the writer
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
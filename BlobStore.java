@@ -0,0 +1,449 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only store for bulky event text such as descriptions, kept in a
+ * file next to the calendar so the event file only holds a key.
+ *
+ * A blob's key is a hash of its text, so saving unchanged text again
+ * writes nothing and the events file can be rewritten freely. Each record
+ * also carries the blob's distinct lower-case words, which are read on open
+ * into a sorted index of their suffixes; searching looks a fragment up there
+ * as a prefix range instead of scanning the vocabulary or the text, and
+ * only reads text back to confirm matches the index cannot decide. Text is
+ * read on demand through a small LRU cache.
+ *
+ * Records: key, check hash, whether every word is indexed, word count,
+ * words, text length, UTF-8 text. There is one store per file, shared
+ * through forFile(), and all methods are safe to call from any thread.
+ * Other processes may append to the same file: appends hold an OS lock, and
+ * records written by others are picked up as they are needed.
+ */
+class BlobStore {
+    // Words longer than this are not indexed; their blobs are always read back when searching
+    private static final int MAX_WORD_LENGTH = 64;
+    private static final int CACHE_BLOBS = 64;
+
+    private static final Map<String, BlobStore> OPEN = new ConcurrentHashMap<>();
+
+    private final File file;
+    private RandomAccessFile data;
+    // End of the last complete record read or written
+    private long end;
+    // Key -> offset of the text length field
+    private final Map<Long, Long> offsets = new HashMap<>();
+    // Key -> second hash of the text, so put() can tell a collision without reading the text back
+    private final Map<Long, Integer> checks = new HashMap<>();
+    private boolean unsynced;
+    // Every suffix of every indexed word -> keys, so a fragment found anywhere inside a word is a prefix range
+    private final NavigableMap<String, Set<Long>> keysBySuffix = new TreeMap<>();
+    private final Set<Long> unindexed = new HashSet<>();
+    private final Map<Long, String> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+            return size() > CACHE_BLOBS;
+        }
+    };
+    private String lastNeedle;
+    private Set<Long> lastMatches;
+
+    private BlobStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * The store for a calendar save file, e.g. calendars/Work.blobs
+     */
+    static BlobStore forSaveFile(String saveFile) {
+        int dot = saveFile.lastIndexOf('.');
+        int slash = saveFile.lastIndexOf(File.separatorChar);
+        String base = dot > slash ? saveFile.substring(0, dot) : saveFile;
+        return forFile(base + ".blobs");
+    }
+
+    static BlobStore forFile(String path) {
+        return OPEN.computeIfAbsent(new File(path).getAbsolutePath(), p -> new BlobStore(new File(p)));
+    }
+
+    /**
+     * Stores the text if it is not stored already and returns its key, which
+     * is never 0. Call sync() before saving anything that refers to the key.
+     */
+    public synchronized long put(String text) throws IOException {
+        open();
+        FileLock lock = data.getChannel().lock();
+        try {
+            catchUp();
+            if (data.length() > end) {
+                // Left by a writer that crashed mid-record
+                data.setLength(end);
+            }
+            return append(text);
+        } finally {
+            lock.release();
+        }
+    }
+
+    private long append(String text) throws IOException {
+        long key = keyOf(text);
+        int check = text.hashCode();
+        while (offsets.containsKey(key)) {
+            if (checks.get(key) == check) {
+                return key;
+            }
+            // Hash collision: probe for the next free key
+            key = key == -1 ? 1 : key + 1;
+        }
+
+        Set<String> words = words(text.toLowerCase());
+        boolean complete = !words.removeIf(word -> word.length() > MAX_WORD_LENGTH);
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(bytes.length + 64);
+        long textOffset = end + writeRecord(new DataOutputStream(buffer), key, check, complete, words, bytes);
+
+        data.seek(end);
+        data.write(buffer.toByteArray());
+        end += buffer.size();
+        offsets.put(key, textOffset);
+        checks.put(key, check);
+        index(key, words, complete);
+        cache.put(key, text);
+        unsynced = true;
+        lastNeedle = null;
+        CalendarMetrics.get().add("blobs.bytes.written", buffer.size());
+        return key;
+    }
+
+    /**
+     * Writes one record and returns the offset of its text length field
+     * from the start of the record
+     */
+    private static int writeRecord(DataOutputStream record, long key, int check, boolean complete,
+                                   Set<String> words, byte[] bytes) throws IOException {
+        int start = record.size();
+        record.writeLong(key);
+        record.writeInt(check);
+        record.writeBoolean(complete);
+        record.writeInt(words.size());
+        for (String word : words) {
+            record.writeUTF(word);
+        }
+        int textOffset = record.size() - start;
+        record.writeInt(bytes.length);
+        record.write(bytes);
+        return textOffset;
+    }
+
+    /**
+     * Rewrites the file with only the blobs under the given keys, which
+     * keep their keys, and returns the number of bytes reclaimed. Other
+     * processes must not have the store open: they would go on appending
+     * to the old file.
+     */
+    public synchronized long compact(Set<Long> live) throws IOException {
+        if (data == null && !file.exists()) {
+            return 0;
+        }
+        open();
+        long before;
+        long after;
+        Path target = file.toPath().toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        FileLock lock = data.getChannel().lock();
+        try {
+            catchUp();
+            before = data.length();
+            List<Long> keys = new ArrayList<>(offsets.keySet());
+            keys.removeIf(key -> !live.contains(key));
+            // In file order, so the old file is read front to back
+            keys.sort(Comparator.comparing(offsets::get));
+            try (FileOutputStream fileOut = new FileOutputStream(temp.toFile());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+                for (long key : keys) {
+                    String text = read(key);
+                    Set<String> words = words(text.toLowerCase());
+                    boolean complete = !words.removeIf(word -> word.length() > MAX_WORD_LENGTH);
+                    writeRecord(out, key, checks.get(key), complete, words, text.getBytes(StandardCharsets.UTF_8));
+                }
+                out.flush();
+                fileOut.getFD().sync();
+            }
+            after = Files.size(temp);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+            lock.release();
+        }
+        // Start over on the new file
+        data.close();
+        data = null;
+        end = 0;
+        offsets.clear();
+        checks.clear();
+        keysBySuffix.clear();
+        unindexed.clear();
+        cache.clear();
+        unsynced = false;
+        lastNeedle = null;
+        CalendarMetrics.get().add("blobs.bytes.reclaimed", before - after);
+        return before - after;
+    }
+
+    /**
+     * The text stored under the key, or null if there is none
+     */
+    public synchronized String get(long key) throws IOException {
+        open();
+        String text = cache.get(key);
+        if (text == null && !offsets.containsKey(key)) {
+            // Possibly written by another process since
+            catchUp();
+        }
+        if (text == null && offsets.containsKey(key)) {
+            text = read(key);
+            cache.put(key, text);
+        }
+        return text;
+    }
+
+    /**
+     * Keys of the blobs whose lower-cased text contains the needle, which
+     * must be lower case. The last result is kept, as the same search is
+     * usually repeated on every re-filter.
+     */
+    public synchronized Set<Long> search(String needle) throws IOException {
+        open();
+        catchUp();
+        if (needle.equals(lastNeedle)) {
+            return lastMatches;
+        }
+        long start = System.nanoTime();
+        Set<String> fragments = words(needle);
+        Set<Long> candidates;
+        boolean exact;
+        if (fragments.isEmpty()) {
+            // Nothing indexable, e.g. punctuation only: every blob has to be read
+            candidates = new HashSet<>(offsets.keySet());
+            exact = false;
+        } else {
+            candidates = null;
+            for (String fragment : fragments) {
+                Set<Long> keys = new HashSet<>(unindexed);
+                for (Map.Entry<String, Set<Long>> entry : keysBySuffix.tailMap(fragment, true).entrySet()) {
+                    if (!entry.getKey().startsWith(fragment)) {
+                        break;
+                    }
+                    keys.addAll(entry.getValue());
+                }
+                if (candidates == null) {
+                    candidates = keys;
+                } else {
+                    candidates.retainAll(keys);
+                }
+            }
+            // A needle that is a single word can only match inside one indexed word
+            exact = fragments.size() == 1 && fragments.contains(needle);
+        }
+
+        Set<Long> matches = new HashSet<>();
+        for (long key : candidates) {
+            if ((exact && !unindexed.contains(key)) || get(key).toLowerCase().contains(needle)) {
+                matches.add(key);
+            }
+        }
+        lastNeedle = needle;
+        lastMatches = matches;
+        CalendarMetrics.get().recordSince("blobs.search", start);
+        return matches;
+    }
+
+    /**
+     * Forces stored blobs to disk
+     */
+    public synchronized void sync() throws IOException {
+        if (unsynced) {
+            data.getFD().sync();
+            unsynced = false;
+        }
+    }
+
+    private void open() throws IOException {
+        if (data != null) {
+            return;
+        }
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        data = new RandomAccessFile(file, "rw");
+        catchUp();
+    }
+
+    /**
+     * Reads the words and offsets of records appended since the last call,
+     * stopping before a record that is not completely written
+     */
+    private void catchUp() throws IOException {
+        long length = data.length();
+        if (length <= end) {
+            return;
+        }
+        long start = System.nanoTime();
+        long from = end;
+        try (FileInputStream fileIn = new FileInputStream(file)) {
+            fileIn.getChannel().position(end);
+            CountingInputStream counter = new CountingInputStream(new BufferedInputStream(fileIn), end);
+            DataInputStream in = new DataInputStream(counter);
+            while (true) {
+                long key = in.readLong();
+                int check = in.readInt();
+                boolean complete = in.readBoolean();
+                int count = in.readInt();
+                Set<String> words = new HashSet<>();
+                for (int i = 0; i < count; i++) {
+                    words.add(in.readUTF());
+                }
+                long textOffset = counter.position;
+                int textLength = in.readInt();
+                // skip() may run past the end of the file, so check against its length instead
+                long remaining = textLength;
+                while (remaining > 0) {
+                    long skipped = in.skip(remaining);
+                    if (skipped <= 0) {
+                        throw new EOFException();
+                    }
+                    remaining -= skipped;
+                }
+                if (counter.position > length) {
+                    break;
+                }
+                offsets.put(key, textOffset);
+                checks.put(key, check);
+                index(key, words, complete);
+                end = counter.position;
+            }
+        } catch (EOFException e) {
+            // Caught up; anything after end is a record still being written or left by a crash
+        }
+        if (end > from) {
+            lastNeedle = null;
+        }
+        CalendarMetrics.get().recordSince("blobs.catch.up", start);
+    }
+
+    private String read(long key) throws IOException {
+        data.seek(offsets.get(key));
+        byte[] bytes = new byte[data.readInt()];
+        data.readFully(bytes);
+        CalendarMetrics.get().increment("blobs.reads");
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void index(long key, Set<String> words, boolean complete) {
+        for (String word : words) {
+            for (int i = 0; i < word.length(); i++) {
+                keysBySuffix.computeIfAbsent(word.substring(i), w -> new HashSet<>(2)).add(key);
+            }
+        }
+        if (!complete) {
+            unindexed.add(key);
+        }
+    }
+
+    /**
+     * The distinct runs of letters and digits in the text
+     */
+    static Set<String> words(String text) {
+        Set<String> words = new LinkedHashSet<>();
+        int begin = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && begin < 0) {
+                begin = i;
+            } else if (!inWord && begin >= 0) {
+                words.add(text.substring(begin, i));
+                begin = -1;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the text, never 0 so that 0 can mean "no blob"
+     */
+    private static long keyOf(String text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        long position;
+
+        CountingInputStream(InputStream in, long position) {
+            super(in);
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                position++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            position += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,624 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Headless batch tool for bulk work on calendar files, for scripts and
+ * nightly jobs on machines without a display.
+ *
+ * Formats follow the file extension: .dat is a calendar, kept in whatever
+ * EventStore calendar.store.url selects; .csv and .ics are the app's
+ * import and export formats. convert and export stream: batches are read
+ * in order, parsed, filtered and formatted on a pool of workers, and
+ * written in order, with a bounded number of batches in flight. Filters on
+ * a .dat input are pushed down to its store. Writing a .dat, merging and
+ * importing need the whole result in memory, as the model does.
+ *
+ * Usage:
+ *   java CalendarCli convert <in> <out> [filters]
+ *   java CalendarCli export <calendar.dat> <out> [filters]
+ *   java CalendarCli merge <out> <in>... [--duplicates skip|merge|replace]
+ *   java CalendarCli import <calendar.dat> <in>... [--duplicates skip|merge|replace]
+ *   java CalendarCli compact <calendar.dat>...
+ *
+ * Filters: --from yyyy-MM-dd, --to yyyy-MM-dd (inclusive; events
+ * overlapping the days), --category, --min-priority, --max-priority,
+ * --search (title or description). --threads sets the pool size.
+ *
+ * compact drops the descriptions no event or archived event refers to any
+ * more; run it while the app is not using the calendar.
+ */
+public class CalendarCli {
+    private static final int BATCH_SIZE = 2000;
+
+    private final int threads;
+    private final ExecutorService workers;
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Hands out the input in batches, in order. Parsing may be left to the
+     * returned job, which runs on a worker.
+     */
+    private interface Source extends Closeable {
+        Callable<List<CalendarEvent>> next() throws IOException;
+    }
+
+    /**
+     * Formats batches on the workers and writes them in input order
+     */
+    private interface Sink<T> extends Closeable {
+        T prepare(List<CalendarEvent> batch) throws IOException;
+
+        void write(T prepared) throws IOException;
+
+        /**
+         * Called once everything is written, and not at all after a failure
+         */
+        default void finish() throws IOException {
+        }
+    }
+
+    /**
+     * Parsed command-line options; arguments that are not options are kept in order
+     */
+    private static class Options {
+        final List<String> paths = new ArrayList<>();
+        LocalDate from;
+        LocalDate to;
+        String category;
+        int minPriority = 1;
+        int maxPriority = 10;
+        String search;
+        CalendarModel.DuplicateMode duplicates = CalendarModel.DuplicateMode.SKIP;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 1; i < args.length; i++) {
+                String arg = args[i];
+                if (!arg.startsWith("--")) {
+                    options.paths.add(arg);
+                    continue;
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--from":
+                        options.from = LocalDate.parse(value);
+                        break;
+                    case "--to":
+                        options.to = LocalDate.parse(value);
+                        break;
+                    case "--category":
+                        options.category = value;
+                        break;
+                    case "--min-priority":
+                        options.minPriority = Integer.parseInt(value);
+                        break;
+                    case "--max-priority":
+                        options.maxPriority = Integer.parseInt(value);
+                        break;
+                    case "--search":
+                        options.search = value.toLowerCase();
+                        break;
+                    case "--duplicates":
+                        options.duplicates = CalendarModel.DuplicateMode.valueOf(value.toUpperCase(Locale.ROOT));
+                        break;
+                    case "--threads":
+                        options.threads = Math.max(1, Integer.parseInt(value));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+            return options;
+        }
+
+        boolean isFiltered() {
+            return from != null || to != null || category != null || minPriority > 1 || maxPriority < 10;
+        }
+
+        EventStore.Filter filter() {
+            return new EventStore.Filter(from != null ? from.atStartOfDay() : null,
+                    to != null ? to.plusDays(1).atStartOfDay() : null, category, minPriority, maxPriority);
+        }
+    }
+
+    CalendarCli(int threads) {
+        this.threads = threads;
+        this.workers = Executors.newFixedThreadPool(threads);
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            usage();
+            System.exit(2);
+        }
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            System.err.println(e.getMessage());
+            usage();
+            System.exit(2);
+            return;
+        }
+
+        CalendarCli cli = new CalendarCli(options.threads);
+        long start = System.nanoTime();
+        try {
+            List<String> paths = options.paths;
+            switch (args[0]) {
+                case "convert":
+                case "export":
+                    requirePaths(paths, 2, 2);
+                    cli.convert(paths.get(0), paths.get(1), options);
+                    break;
+                case "merge":
+                    requirePaths(paths, 2, Integer.MAX_VALUE);
+                    cli.merge(paths.get(0), paths.subList(1, paths.size()), options.duplicates);
+                    break;
+                case "import":
+                    requirePaths(paths, 2, Integer.MAX_VALUE);
+                    cli.importInto(paths.get(0), paths.subList(1, paths.size()), options.duplicates);
+                    break;
+                case "compact":
+                    requirePaths(paths, 1, Integer.MAX_VALUE);
+                    cli.compact(paths);
+                    break;
+                default:
+                    usage();
+                    System.exit(2);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            usage();
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            cli.workers.shutdownNow();
+        }
+        if (cli.rejected.get() > 0) {
+            System.err.println(cli.rejected.get() + " rows could not be read");
+        }
+        System.out.printf("Done in %d ms%n", (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java CalendarCli convert|export <in> <out> [--from yyyy-MM-dd] [--to yyyy-MM-dd]");
+        System.err.println("           [--category name] [--min-priority n] [--max-priority n] [--search text]");
+        System.err.println("       java CalendarCli merge <out> <in>... [--duplicates skip|merge|replace]");
+        System.err.println("       java CalendarCli import <calendar.dat> <in>... [--duplicates skip|merge|replace]");
+        System.err.println("       java CalendarCli compact <calendar.dat>...");
+        System.err.println("Formats by extension: .dat, .csv, .ics. Every command takes [--threads n].");
+    }
+
+    private static void requirePaths(List<String> paths, int min, int max) {
+        if (paths.size() < min || paths.size() > max) {
+            throw new IllegalArgumentException("Wrong number of files");
+        }
+    }
+
+    /**
+     * Streams the events of one file into another, keeping those that pass
+     * the filters
+     */
+    void convert(String in, String out, Options options) throws IOException {
+        Source source;
+        if (isCalendar(in)) {
+            // Range, category and priority are answered by the store's indexes
+            EventStore store = EventStore.forSaveFile(in);
+            source = listSource(options.isFiltered() ? store.query(options.filter()) : store.load());
+        } else {
+            source = openSource(in);
+        }
+        Predicate<CalendarEvent> filter = event -> true;
+        if (options.isFiltered()) {
+            EventStore.Filter bounds = options.filter();
+            filter = bounds::matches;
+        }
+        if (options.search != null) {
+            String needle = options.search;
+            filter = filter.and(event -> event.getTitle().toLowerCase().contains(needle)
+                    || event.getDescription().toLowerCase().contains(needle));
+        }
+        long written;
+        try (Source input = source) {
+            written = pipe(input, filter, openSink(out));
+        }
+        System.out.println("Wrote " + written + " events to " + out);
+    }
+
+    /**
+     * Combines files into one, dropping events that duplicate one read
+     * earlier, within a file or across them, as an import would
+     */
+    void merge(String out, List<String> inputs, CalendarModel.DuplicateMode mode) throws IOException {
+        List<Future<List<CalendarEvent>>> reads = new ArrayList<>();
+        for (String input : inputs) {
+            reads.add(workers.submit(() -> readAll(input)));
+        }
+        // Only the id and fingerprint lookups of a model are needed here, not its date indexes
+        List<CalendarEvent> merged = new ArrayList<>();
+        Map<String, CalendarEvent> byId = new HashMap<>();
+        Map<Long, CalendarEvent> byFingerprint = new HashMap<>();
+        int duplicates = 0;
+        for (Future<List<CalendarEvent>> read : reads) {
+            for (CalendarEvent event : await(read)) {
+                CalendarEvent existing = byId.get(event.getId());
+                if (existing == null) {
+                    existing = byFingerprint.get(event.fingerprint());
+                }
+                if (existing != null && (existing.getId().equals(event.getId()) || existing.hasSameContent(event))) {
+                    CalendarModel.mergeDuplicate(existing, event, mode);
+                    duplicates++;
+                } else {
+                    merged.add(event);
+                    byId.put(event.getId(), event);
+                    byFingerprint.putIfAbsent(event.fingerprint(), event);
+                }
+            }
+        }
+        long written;
+        try (Source source = listSource(merged)) {
+            written = pipe(source, event -> true, openSink(out));
+        }
+        System.out.println("Wrote " + written + " events to " + out + ", " + duplicates + " duplicates");
+    }
+
+    /**
+     * Adds files to a calendar, skipping or merging the events it already has
+     */
+    void importInto(String calendar, List<String> inputs, CalendarModel.DuplicateMode mode) throws IOException {
+        requireCalendar(calendar);
+        CalendarModel model = new CalendarModel(calendar);
+        model.readFromDisk();
+        CalendarModel.ImportResult result = addAll(model, inputs, mode);
+        model.writeToDisk(model.snapshot());
+        System.out.println("Added " + result.added + " events to " + calendar + ", " + result.duplicates + " duplicates");
+    }
+
+    /**
+     * Reads the inputs on the workers and adds them to the model in the
+     * order given, so earlier files win duplicates
+     */
+    private CalendarModel.ImportResult addAll(CalendarModel model, List<String> inputs,
+                                              CalendarModel.DuplicateMode mode) throws IOException {
+        List<Future<List<CalendarEvent>>> reads = new ArrayList<>();
+        for (String input : inputs) {
+            reads.add(workers.submit(() -> readAll(input)));
+        }
+        CalendarModel.ImportResult result = new CalendarModel.ImportResult();
+        for (Future<List<CalendarEvent>> read : reads) {
+            model.addImportedEvents(await(read), mode, result);
+        }
+        return result;
+    }
+
+    /**
+     * Reclaims the space of descriptions that are no longer referred to,
+     * one calendar per worker, each under its save lock
+     */
+    void compact(List<String> calendars) throws IOException {
+        List<Future<Long>> jobs = new ArrayList<>();
+        for (String calendar : calendars) {
+            requireCalendar(calendar);
+            jobs.add(workers.submit(() -> EventFileSync.withFileLock(calendar, () -> {
+                BlobStore blobs = BlobStore.forSaveFile(calendar);
+                Set<Long> live = new HashSet<>();
+                for (CalendarEvent event : EventStore.forSaveFile(calendar).load()) {
+                    live.add(event.getDescriptionKey());
+                }
+                for (CalendarEvent event : new EventArchive(EventArchive.dirFor(calendar), blobs).allEvents()) {
+                    live.add(event.getDescriptionKey());
+                }
+                return blobs.compact(live);
+            })));
+        }
+        for (int i = 0; i < calendars.size(); i++) {
+            System.out.println("Compacted " + calendars.get(i) + ": " + await(jobs.get(i)) + " bytes reclaimed");
+        }
+    }
+
+    /**
+     * Runs every batch of the source through the filter and the sink's
+     * formatting on the workers, writing the results in order. At most two
+     * batches per worker are in flight. Returns the number of events written.
+     */
+    private <T> long pipe(Source source, Predicate<CalendarEvent> filter, Sink<T> sink) throws IOException {
+        AtomicLong written = new AtomicLong();
+        Deque<Future<T>> inFlight = new ArrayDeque<>();
+        try (Sink<T> output = sink) {
+            Callable<List<CalendarEvent>> batch;
+            while ((batch = source.next()) != null) {
+                Callable<List<CalendarEvent>> job = batch;
+                inFlight.add(workers.submit(() -> {
+                    List<CalendarEvent> kept = new ArrayList<>();
+                    for (CalendarEvent event : job.call()) {
+                        if (filter.test(event)) {
+                            kept.add(event);
+                        }
+                    }
+                    written.addAndGet(kept.size());
+                    return output.prepare(kept);
+                }));
+                if (inFlight.size() >= 2 * threads) {
+                    output.write(await(inFlight.poll()));
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                output.write(await(inFlight.poll()));
+            }
+            output.finish();
+        } finally {
+            inFlight.forEach(future -> future.cancel(true));
+        }
+        return written.get();
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    private List<CalendarEvent> readAll(String path) throws IOException {
+        if (isCalendar(path)) {
+            return EventStore.forSaveFile(path).load();
+        }
+        List<CalendarEvent> events = new ArrayList<>();
+        try (Source source = openSource(path)) {
+            Callable<List<CalendarEvent>> batch;
+            while ((batch = source.next()) != null) {
+                try {
+                    events.addAll(batch.call());
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException(e.getMessage(), e);
+                }
+            }
+        }
+        return events;
+    }
+
+    private static boolean isCalendar(String path) {
+        return path.toLowerCase(Locale.ROOT).endsWith(".dat");
+    }
+
+    private static void requireCalendar(String path) {
+        if (!isCalendar(path)) {
+            throw new IllegalArgumentException("Not a calendar: " + path);
+        }
+    }
+
+    private Source openSource(String path) throws IOException {
+        String name = path.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv")) {
+            return csvSource(path);
+        }
+        if (name.endsWith(".ics")) {
+            return icsSource(path);
+        }
+        throw new IllegalArgumentException("Unknown format: " + path);
+    }
+
+    private static Source listSource(List<CalendarEvent> events) {
+        return new Source() {
+            private int next;
+
+            @Override
+            public Callable<List<CalendarEvent>> next() {
+                if (next >= events.size()) {
+                    return null;
+                }
+                List<CalendarEvent> batch = events.subList(next, Math.min(events.size(), next + BATCH_SIZE));
+                next += batch.size();
+                return () -> batch;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Reads lines on the calling thread and leaves parsing them to the workers
+     */
+    private Source csvSource(String path) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(path), 1 << 16);
+        // Skip header
+        reader.readLine();
+        return new Source() {
+            @Override
+            public Callable<List<CalendarEvent>> next() throws IOException {
+                List<String> lines = new ArrayList<>(BATCH_SIZE);
+                String line;
+                while (lines.size() < BATCH_SIZE && (line = reader.readLine()) != null) {
+                    lines.add(line);
+                }
+                if (lines.isEmpty()) {
+                    return null;
+                }
+                return () -> {
+                    List<CalendarEvent> events = new ArrayList<>(lines.size());
+                    for (String row : lines) {
+                        try {
+                            CalendarEvent event = CalendarModel.parseCSVRow(row);
+                            if (event != null) {
+                                events.add(event);
+                            }
+                        } catch (Exception e) {
+                            CalendarMetrics.get().increment("csv.import.errors");
+                            rejected.incrementAndGet();
+                            System.err.println("Error parsing CSV line: " + e.getMessage());
+                        }
+                    }
+                    return events;
+                };
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        };
+    }
+
+    /**
+     * The iCalendar reader parses as it goes, so batches arrive parsed
+     */
+    private Source icsSource(String path) throws IOException {
+        ICalendarFormat.Reader reader = new ICalendarFormat.Reader(new BufferedReader(new InputStreamReader(
+                new FileInputStream(path), StandardCharsets.UTF_8), 1 << 16));
+        return new Source() {
+            @Override
+            public Callable<List<CalendarEvent>> next() throws IOException {
+                List<CalendarEvent> events = new ArrayList<>(BATCH_SIZE);
+                CalendarEvent event;
+                while (events.size() < BATCH_SIZE && (event = reader.next()) != null) {
+                    events.add(event);
+                }
+                return events.isEmpty() ? null : () -> events;
+            }
+
+            @Override
+            public void close() throws IOException {
+                rejected.addAndGet(reader.getRejected());
+                reader.close();
+            }
+        };
+    }
+
+    private static Sink<?> openSink(String path) throws IOException {
+        String name = path.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv")) {
+            return csvSink(path);
+        }
+        if (name.endsWith(".ics")) {
+            return icsSink(path);
+        }
+        if (isCalendar(path)) {
+            return calendarSink(path);
+        }
+        throw new IllegalArgumentException("Unknown format: " + path);
+    }
+
+    private static Sink<String> csvSink(String path) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new FileWriter(path), 1 << 16);
+        writer.write(CalendarModel.CSV_HEADER);
+        writer.newLine();
+        return new Sink<>() {
+            @Override
+            public String prepare(List<CalendarEvent> batch) {
+                StringBuilder rows = new StringBuilder();
+                for (CalendarEvent event : batch) {
+                    rows.append(CalendarModel.formatCSVRow(event)).append(System.lineSeparator());
+                }
+                return rows.toString();
+            }
+
+            @Override
+            public void write(String rows) throws IOException {
+                writer.write(rows);
+            }
+
+            @Override
+            public void close() throws IOException {
+                writer.close();
+            }
+        };
+    }
+
+    private static Sink<String> icsSink(String path) throws IOException {
+        ICalendarFormat.Writer writer = new ICalendarFormat.Writer(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(path), StandardCharsets.UTF_8), 1 << 16));
+        return new Sink<>() {
+            @Override
+            public String prepare(List<CalendarEvent> batch) throws IOException {
+                return ICalendarFormat.formatEvents(batch);
+            }
+
+            @Override
+            public void write(String events) throws IOException {
+                writer.writeFormatted(events);
+            }
+
+            @Override
+            public void close() throws IOException {
+                writer.close();
+            }
+        };
+    }
+
+    /**
+     * Replaces a calendar's events with the ones written, once all are. Saving
+     * against what the store held means a database only writes the rows
+     * that differ.
+     */
+    private static Sink<List<CalendarEvent>> calendarSink(String path) {
+        EventStore store = EventStore.forSaveFile(path);
+        List<CalendarEvent> events = new ArrayList<>();
+        return new Sink<>() {
+            @Override
+            public List<CalendarEvent> prepare(List<CalendarEvent> batch) {
+                return batch;
+            }
+
+            @Override
+            public void write(List<CalendarEvent> batch) {
+                events.addAll(batch);
+            }
+
+            @Override
+            public void finish() throws IOException {
+                store.loaded(PersistentEventMap.of(store.load()));
+                store.save(new CalendarModel.Snapshot(0, PersistentEventMap.of(events)));
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
@@ -1,156 +1,709 @@
 import javax.swing.*;
 import java.io.IOException;
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 /**
  * Controller class that manages interaction between model and view
  */
 class CalendarController {
-    private CalendarModel model;
+    // Quiet period after the last edit before changes are written out
+    private static final int SAVE_DEBOUNCE_MILLIS = 2000;
+
+    private final Clock clock;
+    private CalendarSet calendars;
     private CalendarView view;
-    private ScheduledExecutorService notificationScheduler;
-    private ScheduledExecutorService autoSaveScheduler;
+    private TaskRuntime runtime;
+    private TaskRuntime.TaskHandle<Void> notificationTask;
+    private TaskRuntime.TaskHandle<Void> autoSaveTask;
+    private SaveFileWatcher fileWatcher;
+    // Null unless a sync server is configured with -Dcalendar.sync.url=...
+    private SyncClient syncClient;
+    private boolean syncRunning;
+    private ReminderQueue reminders;
+    private ReminderScheduler reminderScheduler;
+    private EdtWatchdog edtWatchdog;
+    private Timer saveDebounceTimer;
+
+    public CalendarController() {
+        this(Clock.systemDefaultZone());
+    }
+
+    CalendarController(Clock clock) {
+        this.clock = clock;
+    }
 
     public void initialize() {
-        model = new CalendarModel();
+        runtime = new TaskRuntime();
+        calendars = new CalendarSet(runtime, clock);
+        String syncUrl = System.getProperty("calendar.sync.url");
+        syncClient = syncUrl != null && !syncUrl.isBlank() ? new SyncClient(syncUrl) : null;
         view = new CalendarView(this);
+        reminders = new ReminderQueue(runtime, clock, batch -> {
+            view.showReminders(batch);
+            batch.forEach(this::recordReminderFired);
+        });
+        reminderScheduler = new ReminderScheduler(new ReminderScheduler.Source() {
+            @Override
+            public List<CalendarEvent> getEventsBetween(LocalDateTime from, LocalDateTime to) {
+                return calendars.getStoredEventsBetween(from, to);
+            }
 
-        model.loadEvents();
-        updateEventDisplay();
+            @Override
+            public int getMaxReminderMinutes() {
+                return calendars.getMaxReminderMinutes();
+            }
+        }, new ReminderLedger(ReminderLedger.LEDGER_FILE), clock);
+
+        loadEvents();
+
+        saveDebounceTimer = new Timer(SAVE_DEBOUNCE_MILLIS, e -> saveIfDirty());
+        saveDebounceTimer.setRepeats(false);
+
+        CalendarMetrics metrics = CalendarMetrics.get();
+        metrics.gauge("model.events", () -> calendars.getEventCount());
+        metrics.gauge("model.filtered", () -> calendars.getFilteredAndSortedEvents().size());
+        metrics.gauge("model.calendars", () -> calendars.getCalendarNames().size());
+        metrics.gauge("runtime.tasks.active", () -> runtime.getActiveTaskCount());
+        metrics.registerMBean();
+        metrics.startPeriodicDump(runtime);
+
+        edtWatchdog = new EdtWatchdog();
+        edtWatchdog.start(runtime);
 
         startNotificationScheduler();
         startAutoSaveScheduler();
+        startFileWatcher();
     }
 
-    public void addEvent(CalendarEvent event) {
-        model.addEvent(event);
+    public void addEvent(CalendarEvent event, String calendarName) {
+        long start = System.nanoTime();
+        calendars.addEvent(event, calendarName);
         updateEventDisplay();
+        scheduleSave();
+        CalendarMetrics.get().recordSince("controller.edit", start);
     }
 
-    public void updateEvent(int index, CalendarEvent event) {
-        model.updateEvent(index, event);
+    /**
+     * Records an edit made to a stored event, moving it to calendarName if that
+     * is not the calendar it is in
+     */
+    public void updateEvent(CalendarEvent event, String calendarName) {
+        long start = System.nanoTime();
+        calendars.updateEvent(event, calendarName);
         updateEventDisplay();
+        scheduleSave();
+        CalendarMetrics.get().recordSince("controller.edit", start);
     }
 
     public void deleteEvent(int index) {
-        model.deleteEvent(index);
+        List<CalendarEvent> rows = calendars.getFilteredAndSortedEvents();
+        if (index >= 0 && index < rows.size()) {
+            deleteEvent(rows.get(index));
+        }
+    }
+
+    public void deleteEvent(CalendarEvent event) {
+        long start = System.nanoTime();
+        calendars.deleteEvent(event);
         updateEventDisplay();
+        scheduleSave();
+        CalendarMetrics.get().recordSince("controller.edit", start);
     }
 
-    public List<CalendarEvent> getEvents() {
-        return model.getEvents();
+    public List<CalendarEvent> getFilteredAndSortedEvents() {
+        return calendars.getFilteredAndSortedEvents();
     }
 
-    public void saveEvents() {
-        model.saveEvents();
-        view.showMessage("Events saved successfully", "Save Complete", JOptionPane.INFORMATION_MESSAGE);
+    public List<String> getCalendarNames() {
+        return calendars.getCalendarNames();
     }
 
-    public void loadEvents() {
-        model.loadEvents();
-        updateEventDisplay();
+    public String getCalendarOf(CalendarEvent event) {
+        String name = calendars.getCalendarOf(event);
+        return name == null ? CalendarSet.DEFAULT_CALENDAR : name;
     }
 
-    public void exportEvents(String filePath) {
-        model.exportEventsToCSV(filePath);
-        view.showMessage("Events exported to CSV successfully", "Export Complete", JOptionPane.INFORMATION_MESSAGE);
+    public boolean isCalendarVisible(String name) {
+        return calendars.isVisible(name);
+    }
+
+    public void setCalendarVisible(String name, boolean visible) {
+        calendars.setVisible(name, visible);
+        updateEventDisplay();
     }
 
-    public void importEvents(String filePath) {
+    public void createCalendar(String name) {
         try {
-            model.importEventsFromCSV(filePath);
+            calendars.createCalendar(name.trim());
+            scheduleSave();
+        } catch (IllegalArgumentException e) {
+            view.showMessage(e.getMessage(), "New Calendar", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    public void undo() {
+        String label = calendars.getUndoLabel();
+        if (calendars.undo()) {
             updateEventDisplay();
-            view.showMessage("Events imported successfully", "Import Complete", JOptionPane.INFORMATION_MESSAGE);
-        } catch (IOException e) {
-            view.showMessage("Error importing events: " + e.getMessage(), "Import Error", JOptionPane.ERROR_MESSAGE);
+            scheduleSave();
+            view.setStatusText("Undid " + label);
+        }
+    }
+
+    public void redo() {
+        String label = calendars.getRedoLabel();
+        if (calendars.redo()) {
+            updateEventDisplay();
+            scheduleSave();
+            view.setStatusText("Redid " + label);
+        }
+    }
+
+    public String getUndoLabel() {
+        return calendars.getUndoLabel();
+    }
+
+    public String getRedoLabel() {
+        return calendars.getRedoLabel();
+    }
+
+    public void saveEvents() {
+        saveDebounceTimer.stop();
+        if (!calendars.isDirty()) {
+            view.showMessage("Events saved successfully", "Save Complete", JOptionPane.INFORMATION_MESSAGE);
+            return;
         }
+
+        calendars.saveIfDirty().whenComplete((ignored, error) -> SwingUtilities.invokeLater(() -> {
+            if (error == null) {
+                view.showMessage("Events saved successfully", "Save Complete", JOptionPane.INFORMATION_MESSAGE);
+            } else {
+                view.showMessage("Error saving events: " + error.getMessage(), "Save Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }));
+    }
+
+    /**
+     * Restarts the debounce timer so a burst of edits results in a single write.
+     */
+    private void scheduleSave() {
+        saveDebounceTimer.restart();
+    }
+
+    /**
+     * Hands a snapshot of the model to the background writer if anything changed
+     * since the last save. Must be called on the EDT.
+     */
+    private void saveIfDirty() {
+        calendars.saveIfDirty();
+    }
+
+    public void loadEvents() {
+        view.setStatusText("Loading events...");
+        runtime.submit("load", calendars::loadShards, null)
+                .result().whenComplete((loaded, error) -> SwingUtilities.invokeLater(() -> {
+                    view.setStatusText("Ready");
+                    if (error != null) {
+                        System.err.println("Error loading events: " + rootCause(error).getMessage());
+                    } else {
+                        calendars.install(loaded);
+                        archivePastEvents();
+                        syncNow();
+                    }
+                    updateEventDisplay();
+                }));
+    }
+
+    /**
+     * Moves long-past one-off events out of the models into their archives.
+     * The archives are written first, off the EDT, so an event is never in
+     * neither place. Must be called on the EDT.
+     */
+    private void archivePastEvents() {
+        Map<CalendarSet.Shard, List<CalendarEvent>> moves = calendars.collectArchivable();
+        if (moves.isEmpty()) {
+            return;
+        }
+        runtime.submit("archive", context -> {
+            CalendarSet.writeArchives(moves);
+            return null;
+        }, null).result().whenComplete((ignored, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                System.err.println("Error archiving events: " + rootCause(error).getMessage());
+                return;
+            }
+            if (calendars.dropArchived(moves) > 0) {
+                updateEventDisplay();
+                scheduleSave();
+            }
+        }));
+    }
+
+    public void exportEvents(String filePath) {
+        // Copy on the EDT so the export sees a consistent state while editing continues
+        List<CalendarEvent> snapshot = calendars.snapshotEvents();
+        view.setStatusText("Exporting...");
+        runtime.submit("export", context -> {
+            // Archived events go out too; any also in the snapshot were unarchived since
+            Set<String> ids = new HashSet<>();
+            for (CalendarEvent event : snapshot) {
+                ids.add(event.getId());
+            }
+            for (CalendarEvent event : calendars.readArchivedEvents()) {
+                if (ids.add(event.getId())) {
+                    snapshot.add(event);
+                }
+            }
+            if (isICalendarFile(filePath)) {
+                ICalendarFormat.writeEvents(filePath, snapshot);
+            } else {
+                CalendarModel.writeEventsToCSV(filePath, snapshot);
+            }
+            return null;
+        }, null).result().whenComplete((ignored, error) -> SwingUtilities.invokeLater(() -> {
+            view.setStatusText("Ready");
+            if (error == null) {
+                view.showMessage("Events exported successfully", "Export Complete", JOptionPane.INFORMATION_MESSAGE);
+            } else {
+                view.showMessage("Error exporting events: " + rootCause(error).getMessage(), "Export Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }));
+    }
+
+    public void importEvents(String filePath, CalendarModel.DuplicateMode mode) {
+        view.setStatusText("Importing...");
+        TaskRuntime.ProgressListener progress = (done, total) -> SwingUtilities.invokeLater(() ->
+                view.setStatusText("Importing... " + (total > 0 ? done * 100 / total : 0) + "%"));
+
+        // Filled in by the reader on a worker, then by the model on the EDT
+        CalendarModel.ImportResult result = new CalendarModel.ImportResult();
+        runtime.submit("import", context -> isICalendarFile(filePath)
+                        ? ICalendarFormat.readEvents(filePath, context, result)
+                        : CalendarModel.readEventsFromCSV(filePath, context, result), progress)
+                .result().whenComplete((imported, error) -> SwingUtilities.invokeLater(() -> {
+                    view.setStatusText("Ready");
+                    if (error != null) {
+                        view.showMessage("Error importing events: " + rootCause(error).getMessage(), "Import Error", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+                    calendars.addImportedEvents(imported, mode, result);
+                    updateEventDisplay();
+                    scheduleSave();
+                    view.showMessage("Imported " + result.added + " new events, " + result.duplicates + " duplicates "
+                                    + (mode == CalendarModel.DuplicateMode.SKIP ? "skipped" : mode == CalendarModel.DuplicateMode.MERGE ? "merged" : "replaced")
+                                    + (result.rejected > 0 ? ", " + result.rejected + " could not be read" : ""),
+                            "Import Complete", JOptionPane.INFORMATION_MESSAGE);
+                }));
+    }
+
+    /**
+     * Events that would overlap the given event if it ran from start for duration
+     */
+    public List<CalendarEvent> findConflicts(CalendarEvent event, LocalDateTime start, Duration duration) {
+        return calendars.findConflicts(event.getSeries(), start, start.plus(duration));
+    }
+
+    /**
+     * Number of events on each day in [from, to) in the visible calendars
+     */
+    public int[] getDailyCounts(LocalDate from, LocalDate to) {
+        long start = System.nanoTime();
+        int[] counts = calendars.countPerDay(from, to);
+        CalendarMetrics.get().recordSince("controller.dailyCounts", start);
+        return counts;
+    }
+
+    /**
+     * Passes getDailyCounts() to the callback on the EDT, once the archives
+     * for the range have been read off it
+     */
+    public void loadDailyCounts(LocalDate from, LocalDate to, Consumer<int[]> onLoaded) {
+        whenArchivesLoaded("daily-counts", from, to, () -> onLoaded.accept(getDailyCounts(from, to)));
+    }
+
+    public int countEvents(LocalDate from, LocalDate to, String category, int minPriority, int maxPriority) {
+        return calendars.countEvents(from, to, category, minPriority, maxPriority);
+    }
+
+    public Map<String, Integer> countByCategory(LocalDate from, LocalDate to) {
+        return calendars.countByCategory(from, to);
+    }
+
+    public int[] countByPriority(LocalDate from, LocalDate to) {
+        return calendars.countByPriority(from, to);
+    }
+
+    /**
+     * The limit most important events in the visible calendars starting
+     * between now and the given number of hours from now
+     */
+    public List<CalendarEvent> getAgenda(int hours, int limit) {
+        long start = System.nanoTime();
+        LocalDateTime from = LocalDateTime.now(clock).truncatedTo(ChronoUnit.MINUTES);
+        List<CalendarEvent> agenda = calendars.getAgenda(from, from.plusHours(hours), limit);
+        CalendarMetrics.get().recordSince("controller.agenda", start);
+        return agenda;
+    }
+
+    /**
+     * Free windows of at least minLength in the visible calendars, from now
+     * until the end of the given number of days
+     */
+    public List<CalendarModel.TimeSlot> findFreeSlots(int days, LocalTime workStart, LocalTime workEnd,
+                                                      boolean weekdaysOnly, Duration minLength) {
+        long start = System.nanoTime();
+        LocalDateTime from = LocalDateTime.now(clock).truncatedTo(ChronoUnit.MINUTES);
+        LocalDateTime to = from.toLocalDate().plusDays(days).atStartOfDay();
+        Set<DayOfWeek> workDays = weekdaysOnly ? EnumSet.range(DayOfWeek.MONDAY, DayOfWeek.FRIDAY) : null;
+        List<CalendarModel.TimeSlot> slots = calendars.findFreeSlots(from, to, workStart, workEnd, workDays, minLength);
+        CalendarMetrics.get().recordSince("controller.freeSlots", start);
+        return slots;
+    }
+
+    /**
+     * Lists every double-booking in the coming days across all calendars. The
+     * search runs in the background, in parallel, on a copy of the events.
+     */
+    public void showConflictReport(int days) {
+        LocalDateTime from = LocalDate.now(clock).atStartOfDay();
+        LocalDateTime to = from.plusDays(days);
+        List<CalendarEvent> snapshot = calendars.snapshotEvents();
+        view.setStatusText("Checking for conflicts...");
+        runtime.submit("conflict-report", context -> {
+            List<CalendarEvent> occurrences = new ArrayList<>();
+            for (CalendarEvent event : snapshot) {
+                // Include occurrences that start before the window but run into it
+                for (CalendarEvent occurrence : event.expandOccurrences(from.minus(event.getDuration()), to)) {
+                    if (occurrence.getEndDateTime().isAfter(from)) {
+                        occurrences.add(occurrence);
+                    }
+                }
+            }
+            return CalendarModel.findAllConflicts(occurrences);
+        }, null).result().whenComplete((conflicts, error) -> SwingUtilities.invokeLater(() -> {
+            view.setStatusText("Ready");
+            if (error != null) {
+                view.showMessage("Error checking conflicts: " + rootCause(error).getMessage(), "Conflicts", JOptionPane.ERROR_MESSAGE);
+            } else {
+                view.showConflictReport(conflicts, days);
+            }
+        }));
+    }
+
+    private static boolean isICalendarFile(String filePath) {
+        return filePath.toLowerCase().endsWith(".ics");
+    }
+
+    private static Throwable rootCause(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
     }
 
     private void updateEventDisplay() {
-        view.updateEventTable(model.getFilteredAndSortedEvents());
-        view.updateCalendarPanel(model.getEvents());
+        long start = System.nanoTime();
+        view.updateEventTable(calendars.getFilteredAndSortedEvents());
+        updateCalendarPanel();
+        view.refreshAgenda();
+        CalendarMetrics.get().recordSince("view.update", start);
+    }
+
+    private void updateCalendarPanel() {
+        YearMonth month = YearMonth.from(calendars.getCurrentDisplayMonth());
+        if (calendars.isMonthLayoutCached(month)) {
+            view.updateCalendarPanel(calendars.getMonthLayout(month));
+            prefetchAdjacentMonths(month);
+            return;
+        }
+        whenArchivesLoaded("month-load", month.atDay(1), month.plusMonths(1).atDay(1), () -> {
+            // Skip it if the user has moved on in the meantime
+            if (month.equals(YearMonth.from(calendars.getCurrentDisplayMonth()))) {
+                view.updateCalendarPanel(calendars.getMonthLayout(month));
+                prefetchAdjacentMonths(month);
+            }
+        });
+    }
+
+    /**
+     * Runs the action on the EDT, at once if the visible calendars' archives
+     * for [from, to) are in memory, or else after reading them off the EDT
+     */
+    private void whenArchivesLoaded(String name, LocalDate from, LocalDate to, Runnable action) {
+        if (calendars.areArchivesLoaded(from, to)) {
+            action.run();
+            return;
+        }
+        runtime.submit(name, context -> {
+            calendars.preloadArchives(from, to);
+            return null;
+        }, null).result().whenComplete((ignored, error) -> SwingUtilities.invokeLater(action));
+    }
+
+    /**
+     * Lays out the months either side of the shown one, so that stepping to
+     * them is a cache hit. Their archives are read off the EDT; the layout
+     * is built on it afterwards, once the shown month is on screen.
+     */
+    private void prefetchAdjacentMonths(YearMonth month) {
+        for (YearMonth adjacent : List.of(month.minusMonths(1), month.plusMonths(1))) {
+            if (calendars.isMonthLayoutCached(adjacent)) {
+                continue;
+            }
+            runtime.submit("month-prefetch", context -> {
+                calendars.preloadArchives(adjacent.atDay(1), adjacent.plusMonths(1).atDay(1));
+                return null;
+            }, null).result().whenComplete((ignored, error) -> SwingUtilities.invokeLater(() -> {
+                YearMonth shown = YearMonth.from(calendars.getCurrentDisplayMonth());
+                // Skip it if the user has moved on in the meantime
+                if (error == null && Math.abs(ChronoUnit.MONTHS.between(shown, adjacent)) == 1) {
+                    calendars.getMonthLayout(adjacent);
+                }
+            }));
+        }
     }
 
     public void filterEvents(String searchText, LocalDate startDate, LocalDate endDate, boolean showPastEvents) {
-        model.setFilters(searchText, startDate, endDate, showPastEvents);
+        calendars.setFilters(searchText, startDate, endDate, showPastEvents);
         updateEventDisplay();
+        searchArchives();
+    }
+
+    /**
+     * Reads the archived events passing the filter off the EDT and adds them
+     * to the table. A search overtaken by a newer filter is dropped.
+     */
+    private void searchArchives() {
+        CalendarSet.ArchiveSearch search = calendars.searchArchives();
+        if (search == null) {
+            return;
+        }
+        runtime.submit("archive-search", context -> search.run(), null)
+                .result().whenComplete((matches, error) -> SwingUtilities.invokeLater(() -> {
+                    if (error != null) {
+                        System.err.println("Error searching archives: " + rootCause(error).getMessage());
+                    } else if (calendars.installArchivedMatches(search, matches)) {
+                        view.updateEventTable(calendars.getFilteredAndSortedEvents());
+                    }
+                }));
     }
 
     public void showEventDetails(int index) {
-        if (index >= 0 && index < model.getFilteredAndSortedEvents().size()) {
-            CalendarEvent event = model.getFilteredAndSortedEvents().get(index);
+        List<CalendarEvent> rows = calendars.getFilteredAndSortedEvents();
+        if (index >= 0 && index < rows.size()) {
+            CalendarEvent event = rows.get(index);
             view.showEventDetailsDialog(event);
         }
     }
 
     private void startNotificationScheduler() {
-        if (notificationScheduler != null && !notificationScheduler.isShutdown()) {
-            notificationScheduler.shutdown();
-        }
-
-        notificationScheduler = Executors.newScheduledThreadPool(1);
-        notificationScheduler.scheduleAtFixedRate(() -> {
-            LocalDateTime now = LocalDateTime.now();
-            LocalDateTime fiveMinutesFromNow = now.plusMinutes(5);
-
-            List<CalendarEvent> upcomingEvents = model.getEvents().stream()
-                    .filter(event -> {
-                        // Check for events that are happening now or in 5 minutes
-                        LocalDateTime eventTime = event.getDateTime();
-                        return (eventTime.withSecond(0).withNano(0).equals(now.withSecond(0).withNano(0)) ||
-                                (eventTime.isAfter(now) && eventTime.isBefore(fiveMinutesFromNow)));
-                    })
-                    .collect(Collectors.toList());
-
-            for (CalendarEvent event : upcomingEvents) {
-                // Only notify if it hasn't been notified already
-                if (!event.isNotified()) {
-                    event.setNotified(true);
-                    SwingUtilities.invokeLater(() -> {
-                        view.showNotification(event);
-                    });
-                }
+        if (notificationTask != null) {
+            notificationTask.cancel();
+        }
+
+        notificationTask = runtime.scheduleAtFixedRate("notification-tick", () -> {
+            long start = System.nanoTime();
+            List<ReminderScheduler.Reminder> due;
+            try {
+                due = reminderScheduler.tick();
+            } catch (IOException e) {
+                CalendarMetrics.get().increment("notifications.ledger.errors");
+                System.err.println("Error updating reminder ledger: " + e.getMessage());
+                return;
+            }
+            // One entry per event, however many of its reminders came due at once
+            Set<CalendarEvent> events = new LinkedHashSet<>();
+            for (ReminderScheduler.Reminder reminder : due) {
+                events.add(reminder.event);
             }
-        }, 0, 30, TimeUnit.SECONDS);
+            CalendarMetrics.get().add("notifications.fired", events.size());
+            reminders.offerAll(events);
+            CalendarMetrics.get().recordSince("scheduler.notification.tick", start);
+        }, 0, ReminderScheduler.TICK_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Shows the given reminders again after the given number of minutes
+     */
+    public void snoozeReminders(List<CalendarEvent> events, int minutes) {
+        reminders.snooze(events, Duration.ofMinutes(minutes));
+    }
+
+    private void recordReminderFired(CalendarEvent event) {
+        CalendarJfrEvents.ReminderFired jfr = new CalendarJfrEvents.ReminderFired();
+        if (!jfr.isEnabled()) {
+            return;
+        }
+
+        // The latest of the event's reminders that is already due
+        LocalDateTime now = LocalDateTime.now(clock);
+        LocalDateTime dueTime = event.getDateTime();
+        for (int minutes : event.getReminderMinutes()) {
+            dueTime = event.getDateTime().minusMinutes(minutes);
+            if (!dueTime.isAfter(now)) {
+                break;
+            }
+        }
+        ZonedDateTime due = dueTime.atZone(ZoneId.systemDefault());
+        long actual = clock.millis();
+        jfr.title = event.getTitle();
+        jfr.scheduledTime = due.toInstant().toEpochMilli();
+        jfr.actualTime = actual;
+        jfr.latenessMillis = Math.max(0, actual - jfr.scheduledTime);
+        jfr.commit();
+    }
+
+    /**
+     * Picks up edits other processes make to the save files while the app
+     * runs. The auto-save tick also checks, in case watching is unsupported.
+     */
+    private void startFileWatcher() {
+        fileWatcher = new SaveFileWatcher(runtime, CalendarSet.CALENDAR_SUFFIX, this::checkExternalChanges);
+        try {
+            fileWatcher.start(CalendarSet.watchedDirectories());
+        } catch (IOException e) {
+            System.err.println("Cannot watch calendar files: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Merges changes made to the save files outside this window, without
+     * reloading. Safe to call from any thread.
+     */
+    private void checkExternalChanges() {
+        runtime.submit("external-changes", context -> calendars.pollExternalChanges(), null)
+                .result().whenComplete((found, error) -> SwingUtilities.invokeLater(() -> {
+                    if (error != null) {
+                        System.err.println("Error checking for outside changes: " + rootCause(error).getMessage());
+                        return;
+                    }
+                    if (found && calendars.applyExternalChanges() > 0) {
+                        view.setStatusText("Merged changes made outside this window");
+                        updateEventDisplay();
+                        if (calendars.isDirty()) {
+                            // Local edits kept over theirs still need writing
+                            scheduleSave();
+                        }
+                    }
+                }));
+    }
+
+    public boolean isSyncEnabled() {
+        return syncClient != null;
+    }
+
+    /**
+     * Exchanges changes with the sync server, off the EDT. Must be called
+     * on the EDT; does nothing while a sync is already running.
+     */
+    public void syncNow() {
+        if (syncClient == null || syncRunning) {
+            return;
+        }
+        syncRunning = true;
+        Map<CalendarSet.Shard, PersistentEventMap> states = calendars.syncStates();
+        runtime.submit("sync", context -> CalendarSet.exchangeSync(syncClient, states), null)
+                .result().whenComplete((results, error) -> SwingUtilities.invokeLater(() -> {
+                    syncRunning = false;
+                    if (error != null) {
+                        System.err.println("Error syncing: " + rootCause(error).getMessage());
+                        view.setStatusText("Sync failed");
+                        return;
+                    }
+                    int changed = calendars.applySync(states, results);
+                    view.setStatusText(results.size() < states.size() ? "Sync failed for some calendars"
+                            : changed > 0 ? "Synced, " + changed + " events changed elsewhere" : "Synced");
+                    updateEventDisplay();
+                    if (calendars.isDirty()) {
+                        scheduleSave();
+                    }
+                }));
     }
 
     private void startAutoSaveScheduler() {
-        if (autoSaveScheduler != null && !autoSaveScheduler.isShutdown()) {
-            autoSaveScheduler.shutdown();
+        if (autoSaveTask != null) {
+            autoSaveTask.cancel();
         }
 
-        autoSaveScheduler = Executors.newScheduledThreadPool(1);
-        autoSaveScheduler.scheduleAtFixedRate(() -> {
-            model.saveEvents();
+        autoSaveTask = runtime.scheduleAtFixedRate("auto-save-tick", () -> {
+            // Snapshots are taken on the EDT; the write itself happens on the saver thread
+            long start = System.nanoTime();
+            checkExternalChanges();
+            SwingUtilities.invokeLater(() -> {
+                saveIfDirty();
+                archivePastEvents();
+                syncNow();
+            });
+            CalendarMetrics.get().recordSince("scheduler.autosave.tick", start);
         }, 5, 5, TimeUnit.MINUTES);
     }
 
     public void shutdown() {
-        if (notificationScheduler != null) {
-            notificationScheduler.shutdown();
+        if (edtWatchdog != null) {
+            edtWatchdog.stop();
+        }
+        if (notificationTask != null) {
+            notificationTask.cancel();
         }
-        if (autoSaveScheduler != null) {
-            autoSaveScheduler.shutdown();
+        if (autoSaveTask != null) {
+            autoSaveTask.cancel();
         }
-        model.saveEvents();
+        if (fileWatcher != null) {
+            fileWatcher.stop();
+        }
+        try {
+            reminderScheduler.close();
+        } catch (IOException e) {
+            System.err.println("Error closing reminder ledger: " + e.getMessage());
+        }
+        saveDebounceTimer.stop();
+        saveIfDirty();
+        calendars.flush(10);
+        CalendarMetrics.get().stopPeriodicDump();
+        runtime.shutdown(5, TimeUnit.SECONDS);
     }
 
     public void showEventDialog(CalendarEvent eventToEdit) {
-        view.showEventDialog(eventToEdit);
+        // Occurrences of a recurring event edit the whole series. A row may be
+        // a stale copy if the calendar changed while it was shown, so the
+        // stored event is looked up by id; new and archived events are not stored.
+        CalendarEvent stored = calendars.getEventById(eventToEdit.getId());
+        view.showEventDialog(stored != null ? stored : eventToEdit.getSeries());
+    }
+
+    /**
+     * The clock everything in the app reads the time from
+     */
+    public Clock getClock() {
+        return clock;
     }
 
     public LocalDate getCurrentDisplayMonth() {
-        return model.getCurrentDisplayMonth();
+        return calendars.getCurrentDisplayMonth();
     }
 
     public void setCurrentDisplayMonth(LocalDate date) {
-        model.setCurrentDisplayMonth(date);
-        updateEventDisplay();
+        calendars.setCurrentDisplayMonth(date);
+        // Only the grid depends on the month shown, and the table's page of archived events
+        updateCalendarPanel();
+        if (calendars.isArchivePageStale()) {
+            searchArchives();
+        }
     }
 }
\ No newline at end of file
@@ -1,6 +1,18 @@
+import java.io.IOException;
 import java.io.Serializable;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
 /**
  * Event class representing calendar events
@@ -8,19 +20,81 @@ import java.time.LocalDateTime;
 class CalendarEvent implements Serializable {
     private static final long serialVersionUID = 1L;
 
+    private String id = UUID.randomUUID().toString();
     private String title;
-    private String description = "";
+    private String description = "";   // inline until saved; null once the text is in the blob store
+    private long descriptionKey;        // blob store key when description is null, 0 for none
     private LocalDateTime dateTime;
     private String location = "";
     private String category = "Work";
     private int priority = 5; // 1-10 scale
     private boolean notified = false;
+    private RecurrenceRule recurrence;  // null for one-off events
+    private Duration duration;          // null in files saved before durations existed
+    private int[] reminderMinutes;      // minutes before the start, ascending; null for the default
+    private long modifiedAt;            // epoch millis of the last local change, 0 if never changed here
+    private long syncRevision;          // sync server revision this event was last in step with, 0 if never synced
+
+    // Store the description key refers to, attached when the event is read back
+    private transient BlobStore blobs;
+
+    // Set on the lightweight copies produced for each occurrence of a series
+    private transient CalendarEvent series;
+
+    // Recently expanded windows, keyed by [from, to)
+    private transient Map<List<LocalDateTime>, List<LocalDateTime>> occurrenceCache;
+    private static final int OCCURRENCE_CACHE_SIZE = 8;
+
+    static final Duration DEFAULT_DURATION = Duration.ofHours(1);
+    static final int[] DEFAULT_REMINDER_MINUTES = {5};
+    static final int MAX_REMINDER_MINUTES = 7 * 24 * 60;
 
     public CalendarEvent(String title, LocalDateTime dateTime) {
         this.title = title;
         this.dateTime = dateTime;
     }
 
+    /**
+     * An event with a known id, such as one received from a sync server
+     */
+    CalendarEvent(String id, String title, LocalDateTime dateTime) {
+        this.id = id;
+        this.title = title;
+        this.dateTime = dateTime;
+    }
+
+    /**
+     * Copy constructor, used to take snapshots that are safe to hand to other threads
+     */
+    public CalendarEvent(CalendarEvent other) {
+        this.id = other.getId();
+        this.title = other.title;
+        this.description = other.description;
+        this.descriptionKey = other.descriptionKey;
+        this.blobs = other.blobs;
+        this.dateTime = other.dateTime;
+        this.location = other.location;
+        this.category = other.category;
+        this.priority = other.priority;
+        this.notified = other.notified;
+        this.recurrence = other.recurrence;
+        this.duration = other.duration;
+        this.reminderMinutes = other.reminderMinutes;
+        this.modifiedAt = other.modifiedAt;
+        this.syncRevision = other.syncRevision;
+    }
+
+    /**
+     * Stable identity of the stored event; occurrences share their series' id
+     */
+    public synchronized String getId() {
+        if (id == null) {
+            // Events saved before ids existed get one on first use
+            id = UUID.randomUUID().toString();
+        }
+        return id;
+    }
+
     public String getTitle() {
         return title;
     }
@@ -29,12 +103,75 @@ class CalendarEvent implements Serializable {
         this.title = title;
     }
 
+    /**
+     * The description, read from the blob store if it is not held inline
+     */
     public String getDescription() {
-        return description;
+        if (description != null) {
+            return description;
+        }
+        if (descriptionKey == 0) {
+            return "";
+        }
+        try {
+            String text = blobs != null ? blobs.get(descriptionKey) : null;
+            if (text != null) {
+                return text;
+            }
+            System.err.println("Missing description for event " + getId());
+        } catch (IOException e) {
+            System.err.println("Error reading description: " + e.getMessage());
+        }
+        return "";
     }
 
     public void setDescription(String description) {
         this.description = description;
+        this.descriptionKey = 0;
+    }
+
+    public boolean hasDescription() {
+        return description != null ? !description.isEmpty() : descriptionKey != 0;
+    }
+
+    /**
+     * Search test that only reads inline text: a stored description matches
+     * if its key is among the store's search results for the needle
+     */
+    boolean descriptionContains(String needle, Set<Long> matchingKeys) {
+        if (description != null) {
+            return description.toLowerCase().contains(needle);
+        }
+        return descriptionKey != 0 && matchingKeys.contains(descriptionKey);
+    }
+
+    /**
+     * Blob store key of the description, or 0 if it is held inline or empty
+     */
+    long getDescriptionKey() {
+        return description == null ? descriptionKey : 0;
+    }
+
+    void attachBlobs(BlobStore store) {
+        this.blobs = store;
+    }
+
+    /**
+     * This event as written to an events file using the given store: an
+     * inline description is moved into the store and replaced by its key.
+     * Returns this event when there is nothing to move, and never changes it.
+     */
+    CalendarEvent toStored(BlobStore store) throws IOException {
+        if (description == null && (descriptionKey == 0 || blobs == store)) {
+            return this;
+        }
+        // Either inline text, or a key into another calendar's store after a move
+        String text = getDescription();
+        CalendarEvent stored = new CalendarEvent(this);
+        stored.description = null;
+        stored.descriptionKey = text.isEmpty() ? 0 : store.put(text);
+        stored.blobs = store;
+        return stored;
     }
 
     public LocalDateTime getDateTime() {
@@ -43,6 +180,88 @@ class CalendarEvent implements Serializable {
 
     public void setDateTime(LocalDateTime dateTime) {
         this.dateTime = dateTime;
+        clearOccurrenceCache();
+    }
+
+    public Duration getDuration() {
+        return duration != null ? duration : DEFAULT_DURATION;
+    }
+
+    public void setDuration(Duration duration) {
+        if (duration != null && duration.isNegative()) {
+            throw new IllegalArgumentException("Duration cannot be negative");
+        }
+        this.duration = duration;
+    }
+
+    /**
+     * Minutes before the start at which reminders are due, ascending. An
+     * empty list means no reminders.
+     */
+    public List<Integer> getReminderMinutes() {
+        int[] minutes = reminderMinutes != null ? reminderMinutes : DEFAULT_REMINDER_MINUTES;
+        return Arrays.stream(minutes).boxed().toList();
+    }
+
+    public void setReminderMinutes(List<Integer> minutes) {
+        int[] sorted = minutes.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+        if (sorted.length > 0 && (sorted[0] < 0 || sorted[sorted.length - 1] > MAX_REMINDER_MINUTES)) {
+            throw new IllegalArgumentException("Reminders must be between 0 and " + MAX_REMINDER_MINUTES + " minutes before the event");
+        }
+        // Arrays are never mutated once set, so copies may share them
+        this.reminderMinutes = sorted;
+    }
+
+    /**
+     * Earliest reminder lead, or 0 when there are no reminders
+     */
+    public int getMaxReminderMinutes() {
+        int[] minutes = reminderMinutes != null ? reminderMinutes : DEFAULT_REMINDER_MINUTES;
+        return minutes.length == 0 ? 0 : minutes[minutes.length - 1];
+    }
+
+    /**
+     * Parses a comma-separated list of minutes such as "5, 60"
+     */
+    static List<Integer> parseReminderMinutes(String text) {
+        List<Integer> minutes = new ArrayList<>();
+        for (String part : text.split(",")) {
+            if (!part.isBlank()) {
+                int value = Integer.parseInt(part.trim());
+                if (value < 0 || value > MAX_REMINDER_MINUTES) {
+                    throw new IllegalArgumentException("Reminder out of range: " + value);
+                }
+                minutes.add(value);
+            }
+        }
+        return minutes;
+    }
+
+    static String formatReminderMinutes(List<Integer> minutes) {
+        return minutes.stream().map(String::valueOf).collect(Collectors.joining(", "));
+    }
+
+    long getModifiedAt() {
+        return modifiedAt;
+    }
+
+    void setModifiedAt(long modifiedAt) {
+        this.modifiedAt = modifiedAt;
+    }
+
+    long getSyncRevision() {
+        return syncRevision;
+    }
+
+    void setSyncRevision(long syncRevision) {
+        this.syncRevision = syncRevision;
+    }
+
+    /**
+     * End of the event (exclusive)
+     */
+    public LocalDateTime getEndDateTime() {
+        return dateTime.plus(getDuration());
     }
 
     public String getLocation() {
@@ -76,4 +295,158 @@ class CalendarEvent implements Serializable {
     public void setNotified(boolean notified) {
         this.notified = notified;
     }
+
+    public RecurrenceRule getRecurrence() {
+        return recurrence;
+    }
+
+    public void setRecurrence(RecurrenceRule recurrence) {
+        this.recurrence = recurrence;
+        clearOccurrenceCache();
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the normalized title, time, location and category.
+     * Events with equal fingerprints are treated as the same event on import.
+     */
+    public long fingerprint() {
+        long hash = 0xcbf29ce484222325L;
+        hash = fnv(hash, normalize(title));
+        hash = fnv(hash, dateTime == null ? "" : dateTime.truncatedTo(ChronoUnit.MINUTES).toString());
+        hash = fnv(hash, normalize(location));
+        return fnv(hash, normalize(category));
+    }
+
+    /**
+     * Compares the fingerprinted fields, to rule out hash collisions
+     */
+    public boolean hasSameContent(CalendarEvent other) {
+        return normalize(title).equals(normalize(other.title))
+                && normalize(location).equals(normalize(other.location))
+                && normalize(category).equals(normalize(other.category))
+                && (dateTime == null ? other.dateTime == null : other.dateTime != null
+                && dateTime.truncatedTo(ChronoUnit.MINUTES).equals(other.dateTime.truncatedTo(ChronoUnit.MINUTES)));
+    }
+
+    /**
+     * True if every saved field is equal, as when comparing the same event
+     * read from two versions of a file
+     */
+    public boolean hasSameState(CalendarEvent other) {
+        return getId().equals(other.getId())
+                && Objects.equals(title, other.title)
+                && Objects.equals(dateTime, other.dateTime)
+                && Objects.equals(location, other.location)
+                && Objects.equals(category, other.category)
+                && priority == other.priority
+                && notified == other.notified
+                && Objects.equals(recurrence, other.recurrence)
+                && Objects.equals(duration, other.duration)
+                && Arrays.equals(reminderMinutes, other.reminderMinutes)
+                && modifiedAt == other.modifiedAt
+                && syncRevision == other.syncRevision
+                && (description == null && other.description == null
+                    ? descriptionKey == other.descriptionKey
+                    : getDescription().equals(other.getDescription()));
+    }
+
+    /**
+     * Trims, collapses runs of whitespace and lower-cases
+     */
+    private static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = sb.length() > 0;
+            } else {
+                if (pendingSpace) {
+                    sb.append(' ');
+                    pendingSpace = false;
+                }
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static long fnv(long hash, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        // Field separator, so ("ab", "c") and ("a", "bc") differ
+        hash ^= 0x1f;
+        return hash * 0x100000001b3L;
+    }
+
+    public boolean isRecurring() {
+        return recurrence != null;
+    }
+
+    /**
+     * True for the per-occurrence copies returned by {@link #expandOccurrences}
+     */
+    public boolean isOccurrence() {
+        return series != null;
+    }
+
+    /**
+     * Returns the stored event this occurrence was expanded from, or this event itself
+     */
+    public CalendarEvent getSeries() {
+        return series != null ? series : this;
+    }
+
+    /**
+     * Returns the start times of this series' occurrences in [from, to).
+     * Recently requested windows are cached until the series changes.
+     */
+    public synchronized List<LocalDateTime> getOccurrenceTimes(LocalDateTime from, LocalDateTime to) {
+        if (recurrence == null) {
+            boolean inWindow = !dateTime.isBefore(from) && dateTime.isBefore(to);
+            return inWindow ? List.of(dateTime) : List.of();
+        }
+
+        if (occurrenceCache == null) {
+            occurrenceCache = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<LocalDateTime>, List<LocalDateTime>> eldest) {
+                    return size() > OCCURRENCE_CACHE_SIZE;
+                }
+            };
+        }
+
+        return occurrenceCache.computeIfAbsent(Arrays.asList(from, to),
+                key -> List.copyOf(recurrence.occurrencesBetween(dateTime, from, to)));
+    }
+
+    /**
+     * Expands this event into one copy per occurrence in [from, to). A one-off
+     * event yields itself when it falls in the window.
+     */
+    public List<CalendarEvent> expandOccurrences(LocalDateTime from, LocalDateTime to) {
+        if (recurrence == null) {
+            return getOccurrenceTimes(from, to).isEmpty() ? List.of() : List.of(this);
+        }
+
+        List<LocalDateTime> times = getOccurrenceTimes(from, to);
+        List<CalendarEvent> occurrences = new ArrayList<>(times.size());
+        for (LocalDateTime time : times) {
+            CalendarEvent occurrence = new CalendarEvent(this);
+            occurrence.dateTime = time;
+            occurrence.recurrence = null;
+            occurrence.series = this;
+            occurrences.add(occurrence);
+        }
+        return occurrences;
+    }
+
+    private synchronized void clearOccurrenceCache() {
+        occurrenceCache = null;
+    }
 } // End of class
\ No newline at end of file
@@ -0,0 +1,134 @@
+import jdk.jfr.*;
+
+/**
+ * JDK Flight Recorder event types emitted by the calendar.
+ *
+ * Events are cheap when no recording is running, so they stay on in
+ * production. Start a recording with -XX:StartFlightRecording or jcmd and
+ * look under the "Reminder" category.
+ */
+final class CalendarJfrEvents {
+    private CalendarJfrEvents() {
+    }
+
+    @Name("reminder.ModelFilter")
+    @Label("Model Filter")
+    @Category({"Reminder", "Model"})
+    @Description("Re-filtering and sorting of the event list")
+    static class ModelFilter extends Event {
+        @Label("Events Scanned")
+        int scanned;
+
+        @Label("Events Matched")
+        int matched;
+    }
+
+    @Name("reminder.TableRebuild")
+    @Label("Table Rebuild")
+    @Category({"Reminder", "View"})
+    @Description("Rebuild of the event table rows")
+    static class TableRebuild extends Event {
+        @Label("Rows")
+        int rows;
+    }
+
+    @Name("reminder.MonthGridRebuild")
+    @Label("Month Grid Rebuild")
+    @Category({"Reminder", "View"})
+    @Description("Rebuild of the month view day cells")
+    static class MonthGridRebuild extends Event {
+        @Label("Month")
+        String month;
+
+        @Label("Events Considered")
+        int events;
+    }
+
+    @Name("reminder.Save")
+    @Label("Save")
+    @Category({"Reminder", "Persistence"})
+    @Description("Write of the event store to disk")
+    static class Save extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Event Count")
+        int eventCount;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Succeeded")
+        boolean succeeded;
+    }
+
+    @Name("reminder.Load")
+    @Label("Load")
+    @Category({"Reminder", "Persistence"})
+    @Description("Read of the event store from disk")
+    static class Load extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Event Count")
+        int eventCount;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Succeeded")
+        boolean succeeded;
+    }
+
+    @Name("reminder.CsvImport")
+    @Label("CSV Import")
+    @Category({"Reminder", "Persistence"})
+    @Description("Import of events from a CSV file")
+    static class CsvImport extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Rows Imported")
+        int rows;
+
+        @Label("Rows Rejected")
+        int rejected;
+    }
+
+    @Name("reminder.ReminderFired")
+    @Label("Reminder Fired")
+    @Category({"Reminder", "Notification"})
+    @Description("A reminder reached the user, with how late it was relative to its due time")
+    static class ReminderFired extends Event {
+        @Label("Title")
+        String title;
+
+        @Label("Scheduled Time")
+        @Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+        long scheduledTime;
+
+        @Label("Actual Time")
+        @Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+        long actualTime;
+
+        @Label("Lateness")
+        @Timespan(Timespan.MILLISECONDS)
+        long latenessMillis;
+    }
+
+    @Name("reminder.EdtStall")
+    @Label("EDT Stall")
+    @Category({"Reminder", "View"})
+    @Description("The Swing event queue did not service a heartbeat within the watchdog threshold")
+    static class EdtStall extends Event {
+        @Label("Threshold")
+        @Timespan(Timespan.MILLISECONDS)
+        long thresholdMillis;
+
+        @Label("EDT Stack Trace")
+        @Description("Stack of the event dispatch thread sampled while it was blocked")
+        String edtStack;
+    }
+}
@@ -0,0 +1,236 @@
+import javax.management.*;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide registry of counters, gauges and latency histograms.
+ *
+ * Metrics are exposed over JMX as a single MBean and can be dumped as text
+ * periodically. Names are dotted paths such as "model.filter".
+ */
+class CalendarMetrics {
+    private static final CalendarMetrics INSTANCE = new CalendarMetrics();
+
+    static final String OBJECT_NAME = "reminder:type=CalendarMetrics";
+    static final String DUMP_FILE = System.getProperty("calendar.metrics.file", "calendar_metrics.log");
+    static final long DUMP_INTERVAL_SECONDS = Long.getLong("calendar.metrics.dumpSeconds", 60);
+
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+    private TaskRuntime.TaskHandle<Void> dumpTask;
+
+    private CalendarMetrics() {
+    }
+
+    public static CalendarMetrics get() {
+        return INSTANCE;
+    }
+
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, k -> new LongAdder());
+    }
+
+    public void increment(String name) {
+        counter(name).increment();
+    }
+
+    public void add(String name, long delta) {
+        counter(name).add(delta);
+    }
+
+    public void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, k -> new LatencyHistogram());
+    }
+
+    /**
+     * Records the time elapsed since {@code startNanos} (from System.nanoTime)
+     * into the named histogram.
+     */
+    public void recordSince(String name, long startNanos) {
+        histogram(name).recordSince(startNanos);
+    }
+
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("# calendar metrics ").append(LocalDateTime.now()).append('\n');
+
+        counters.forEach((name, value) ->
+                sb.append("counter ").append(name).append(' ').append(value.sum()).append('\n'));
+
+        gauges.forEach((name, supplier) ->
+                sb.append("gauge ").append(name).append(' ').append(readGauge(supplier)).append('\n'));
+
+        histograms.forEach((name, h) -> sb.append(String.format(
+                "histogram %s count=%d mean=%.3fms p50=%.3fms p99=%.3fms p999=%.3fms max=%.3fms%n",
+                name,
+                h.getCount(),
+                h.getMean() / 1e6,
+                h.getValueAtPercentile(50) / 1e6,
+                h.getValueAtPercentile(99) / 1e6,
+                h.getValueAtPercentile(99.9) / 1e6,
+                h.getMax() / 1e6)));
+
+        return sb.toString();
+    }
+
+    public void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new JmxView(), name);
+            }
+        } catch (JMException e) {
+            System.err.println("Error registering metrics MBean: " + e.getMessage());
+        }
+    }
+
+    public synchronized void startPeriodicDump(TaskRuntime runtime) {
+        if (DUMP_INTERVAL_SECONDS <= 0 || dumpTask != null) {
+            return;
+        }
+
+        dumpTask = runtime.scheduleAtFixedRate("metrics-dump", this::writeDump,
+                DUMP_INTERVAL_SECONDS, DUMP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stopPeriodicDump() {
+        if (dumpTask != null) {
+            dumpTask.cancel();
+            dumpTask = null;
+            writeDump();
+        }
+    }
+
+    private void writeDump() {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(DUMP_FILE, true))) {
+            writer.print(dump());
+        } catch (IOException e) {
+            System.err.println("Error writing metrics dump: " + e.getMessage());
+        }
+    }
+
+    private static long readGauge(LongSupplier supplier) {
+        try {
+            return supplier.getAsLong();
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Read-only JMX view. Counters and gauges are exposed as single attributes;
+     * every histogram contributes count, mean, p50, p99, p999 and max attributes
+     * in milliseconds.
+     */
+    private class JmxView implements DynamicMBean {
+        private static final String[] HISTOGRAM_STATS = {"count", "meanMs", "p50Ms", "p99Ms", "p999Ms", "maxMs"};
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            LongAdder counter = counters.get(attribute);
+            if (counter != null) {
+                return counter.sum();
+            }
+
+            LongSupplier gauge = gauges.get(attribute);
+            if (gauge != null) {
+                return readGauge(gauge);
+            }
+
+            int split = attribute.lastIndexOf('.');
+            if (split > 0) {
+                LatencyHistogram h = histograms.get(attribute.substring(0, split));
+                if (h != null) {
+                    switch (attribute.substring(split + 1)) {
+                        case "count":
+                            return (double) h.getCount();
+                        case "meanMs":
+                            return h.getMean() / 1e6;
+                        case "p50Ms":
+                            return h.getValueAtPercentile(50) / 1e6;
+                        case "p99Ms":
+                            return h.getValueAtPercentile(99) / 1e6;
+                        case "p999Ms":
+                            return h.getValueAtPercentile(99.9) / 1e6;
+                        case "maxMs":
+                            return h.getMax() / 1e6;
+                        default:
+                            break;
+                    }
+                }
+            }
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException e) {
+                    // Skip unknown attributes as the JMX contract allows
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            if ("dump".equals(actionName)) {
+                return dump();
+            }
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (String name : counters.keySet()) {
+                attributes.add(new MBeanAttributeInfo(name, "long", "Counter", true, false, false));
+            }
+            for (String name : gauges.keySet()) {
+                attributes.add(new MBeanAttributeInfo(name, "long", "Gauge", true, false, false));
+            }
+            for (String name : histograms.keySet()) {
+                for (String stat : HISTOGRAM_STATS) {
+                    attributes.add(new MBeanAttributeInfo(name + "." + stat, "double",
+                            "Latency histogram " + stat, true, false, false));
+                }
+            }
+
+            MBeanOperationInfo dumpOp = new MBeanOperationInfo("dump", "Text dump of all metrics",
+                    new MBeanParameterInfo[0], "java.lang.String", MBeanOperationInfo.INFO);
+
+            return new MBeanInfo(CalendarMetrics.class.getName(), "Calendar metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null,
+                    new MBeanOperationInfo[]{dumpOp}, null);
+        }
+    }
+}
@@ -1,12 +1,26 @@
 import java.io.*;
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
     /**
      * Model class that manages data and business logic
@@ -20,44 +34,471 @@ import java.util.stream.Collectors;
         private boolean showPastEvents = true;
         private LocalDate currentDisplayMonth = YearMonth.now().atDay(1);
 
-        private static final String SAVE_FILE = "calendar_events.dat";
+        // Bumped on every change to the persisted state; compared with the last saved version
+        private final AtomicLong version = new AtomicLong();
+        private final AtomicLong savedVersion = new AtomicLong();
+
+        // How far ahead recurring series are expanded in the table when no end date is set
+        static final int DEFAULT_TABLE_HORIZON_DAYS = 365;
+
+        static final String SAVE_FILE = "calendar_events.dat";
         private static final DateTimeFormatter CSV_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+        private static final DateTimeFormatter CSV_DAY_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+        private static final DateTimeFormatter CSV_TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm");
+        static final String CSV_HEADER = "Title,Description,Date,Time,Location,Category,Priority,Duration";
+
+        private final String saveFile;
+
+        // Stored events by id, kept in step with the events list
+        private final Map<String, CalendarEvent> eventsById = new HashMap<>();
+        // Stored events by content fingerprint, for duplicate checks on import
+        private final Map<Long, CalendarEvent> eventsByFingerprint = new HashMap<>();
+        // Fingerprint each event was indexed under, so edits made in place can be re-indexed
+        private final Map<String, Long> fingerprintById = new HashMap<>();
+        // One-off events by [start, end); recurring series are expanded per query instead
+        private final IntervalTree intervals = new IntervalTree();
+        private final Map<String, CalendarEvent> recurringById = new HashMap<>();
+        // Per-day counts of one-off events by category and priority
+        private final EventAggregates aggregates = new EventAggregates();
+        // One-off events by priority and start time, for the agenda
+        private final AgendaIndex agenda = new AgendaIndex();
+        // Frozen copies of the stored events. Every change makes a new version that shares
+        // structure with the last, so saves and undo can hold on to versions cheaply.
+        // Volatile because the notification tick reads it off the EDT.
+        private volatile PersistentEventMap stored = PersistentEventMap.EMPTY;
+        // Start-time index over the stored versions, for that tick
+        private final StoredTimeIndex storedTimes = new StoredTimeIndex();
+        // How many events have each longest reminder lead, and the lead each was indexed under
+        private final TreeMap<Integer, Integer> reminderLeads = new TreeMap<>();
+        private final Map<String, Integer> reminderLeadById = new HashMap<>();
+        // Read by the notification tick off the EDT
+        private volatile int maxReminderMinutes;
+        // Descriptions of saved events, kept out of the events file; null for in-memory models
+        private final BlobStore blobs;
+        // Where the events are kept between runs; null for in-memory models
+        private final EventStore store;
+        // What has changed since the last sync with a server; null for in-memory models
+        private final SyncLog syncLog;
+        // What "now" and "today" mean for the filters and edit stamps
+        private volatile Clock clock = Clock.systemDefaultZone();
+
+        /**
+         * How an import treats rows that match a stored event's fingerprint
+         */
+        enum DuplicateMode {
+            SKIP,     // keep the stored event as it is
+            MERGE,    // fill in the stored event's empty fields from the row
+            REPLACE   // overwrite the stored event's details with the row's
+        }
 
         public CalendarModel() {
+            this(SAVE_FILE);
+        }
+
+        public CalendarModel(String saveFile) {
+            this.saveFile = saveFile;
+            this.blobs = saveFile != null ? BlobStore.forSaveFile(saveFile) : null;
+            this.store = saveFile != null ? EventStore.forSaveFile(saveFile) : null;
+            this.syncLog = saveFile != null ? SyncLog.forSaveFile(saveFile) : null;
             events = new ArrayList<>();
             filteredEvents = new ArrayList<>();
         }
 
+        public String getSaveFile() {
+            return saveFile;
+        }
+
+        /**
+         * Runs the model on the given clock instead of the system one, as a
+         * simulation does to move time forward without waiting
+         */
+        public void setClock(Clock clock) {
+            this.clock = clock;
+            applyFilters();
+        }
+
+        public Clock getClock() {
+            return clock;
+        }
+
         public void addEvent(CalendarEvent event) {
+            long start = System.nanoTime();
             events.add(event);
+            index(event);
+            version.incrementAndGet();
             applyFilters();
+            CalendarMetrics.get().recordSince("model.add", start);
         }
 
         public void updateEvent(int index, CalendarEvent event) {
+            long start = System.nanoTime();
             if (index >= 0 && index < filteredEvents.size()) {
-                int actualIndex = events.indexOf(filteredEvents.get(index));
+                // Rows of a recurring series stand for the stored series event
+                int actualIndex = events.indexOf(filteredEvents.get(index).getSeries());
                 if (actualIndex >= 0) {
+                    unindex(events.get(actualIndex));
                     events.set(actualIndex, event);
+                    index(event);
+                    version.incrementAndGet();
                     applyFilters();
                 }
             }
+            CalendarMetrics.get().recordSince("model.update", start);
         }
 
         public void deleteEvent(int index) {
             if (index >= 0 && index < filteredEvents.size()) {
-                events.remove(filteredEvents.get(index));
-                applyFilters();
+                deleteEvent(filteredEvents.get(index));
             }
         }
 
+        /**
+         * Deletes a displayed row. For an occurrence of a recurring series only
+         * that date is skipped; the series itself is kept.
+         */
+        public boolean deleteEvent(CalendarEvent row) {
+            if (!row.isOccurrence()) {
+                return deleteEventById(row.getId());
+            }
+
+            long start = System.nanoTime();
+            CalendarEvent series = eventsById.get(row.getId());
+            if (series == null || !series.isRecurring()) {
+                return false;
+            }
+            series.setRecurrence(series.getRecurrence().withException(row.getDateTime().toLocalDate()));
+            series.setModifiedAt(clock.millis());
+            stored = stored.put(new CalendarEvent(series));
+            version.incrementAndGet();
+            applyFilters();
+            CalendarMetrics.get().recordSince("model.delete", start);
+            return true;
+        }
+
+        /**
+         * True if the event, or the series an occurrence belongs to, is stored here
+         */
+        public boolean contains(CalendarEvent event) {
+            return eventsById.containsKey(event.getId());
+        }
+
         public List<CalendarEvent> getEvents() {
             return events;
         }
 
+        public CalendarEvent getEventById(String id) {
+            return eventsById.get(id);
+        }
+
+        /**
+         * Replaces the stored event with the same id. Returns false if there is none.
+         */
+        public boolean updateEventById(CalendarEvent event) {
+            long start = System.nanoTime();
+            CalendarEvent existing = eventsById.get(event.getId());
+            if (existing == null) {
+                return false;
+            }
+            unindex(existing);
+            if (existing != event) {
+                events.set(events.indexOf(existing), event);
+            }
+            // Re-indexed even when edited in place, as the fingerprint may have changed
+            index(event);
+            version.incrementAndGet();
+            applyFilters();
+            CalendarMetrics.get().recordSince("model.update", start);
+            return true;
+        }
+
+        public boolean deleteEventById(String id) {
+            long start = System.nanoTime();
+            CalendarEvent existing = eventsById.get(id);
+            if (existing == null) {
+                return false;
+            }
+            unindex(existing);
+            events.remove(existing);
+            version.incrementAndGet();
+            applyFilters();
+            CalendarMetrics.get().recordSince("model.delete", start);
+            return true;
+        }
+
         public List<CalendarEvent> getFilteredAndSortedEvents() {
             return filteredEvents;
         }
 
+        /**
+         * Returns all events and occurrences of recurring series starting in
+         * [from, to), sorted by time. Series are expanded only for this window.
+         */
+        public List<CalendarEvent> getEventsBetween(LocalDateTime from, LocalDateTime to) {
+            List<CalendarEvent> result = new ArrayList<>();
+            for (CalendarEvent event : events) {
+                result.addAll(event.expandOccurrences(from, to));
+            }
+            result.sort(Comparator.comparing(CalendarEvent::getDateTime));
+            return result;
+        }
+
+        /**
+         * Like getEventsBetween(), but read from the stored version, so it is
+         * safe to call from any thread. Only the changes since the last call
+         * are indexed, and the window is found without scanning the calendar.
+         */
+        public List<CalendarEvent> getStoredEventsBetween(LocalDateTime from, LocalDateTime to) {
+            return storedTimes.getEventsBetween(stored, from, to);
+        }
+
+        /**
+         * Events and occurrences whose [start, end) overlaps [from, to), sorted
+         * by start. One-off events come from the interval tree in O(log n + k);
+         * recurring series are expanded just around the window.
+         */
+        public List<CalendarEvent> getOverlapping(LocalDateTime from, LocalDateTime to) {
+            List<CalendarEvent> result = intervals.overlapping(from, to);
+            if (recurringById.isEmpty()) {
+                return result;
+            }
+            for (CalendarEvent series : recurringById.values()) {
+                // Occurrences that start up to one duration earlier can still reach into the window
+                for (CalendarEvent occurrence : series.expandOccurrences(from.minus(series.getDuration()), to)) {
+                    if (occurrence.getEndDateTime().isAfter(from) || !occurrence.getDateTime().isBefore(from)) {
+                        result.add(occurrence);
+                    }
+                }
+            }
+            result.sort(Comparator.comparing(CalendarEvent::getDateTime));
+            return result;
+        }
+
+        /**
+         * Other events overlapping [start, end), e.g. for an event being edited
+         */
+        public List<CalendarEvent> findConflicts(CalendarEvent event, LocalDateTime start, LocalDateTime end) {
+            String id = event.getId();
+            List<CalendarEvent> conflicts = new ArrayList<>();
+            for (CalendarEvent other : getOverlapping(start, occupiedUntil(start, end))) {
+                if (!other.getId().equals(id)) {
+                    conflicts.add(other);
+                }
+            }
+            return conflicts;
+        }
+
+        public List<CalendarEvent> findConflicts(CalendarEvent event) {
+            return findConflicts(event, event.getDateTime(), event.getEndDateTime());
+        }
+
+        /**
+         * Finds every overlapping pair among the given events and occurrences.
+         * Builds a private interval tree, then probes it for each event in
+         * parallel; each pair is reported once, earlier event first.
+         */
+        static List<Conflict> findAllConflicts(List<CalendarEvent> occurrences) {
+            long start = System.nanoTime();
+            IntervalTree tree = new IntervalTree();
+            Map<CalendarEvent, Integer> order = new IdentityHashMap<>();
+            for (CalendarEvent event : occurrences) {
+                order.put(event, order.size());
+                tree.insert(event);
+            }
+
+            List<Conflict> conflicts = occurrences.parallelStream()
+                    .flatMap(event -> {
+                        int position = order.get(event);
+                        return tree.overlapping(event.getDateTime(), occupiedUntil(event.getDateTime(), event.getEndDateTime())).stream()
+                                .filter(other -> order.get(other) > position && !sameSeriesAndTime(event, other))
+                                .map(other -> new Conflict(event, other));
+                    })
+                    .sorted(Comparator.comparing((Conflict c) -> c.first.getDateTime())
+                            .thenComparing(c -> c.second.getDateTime()))
+                    .collect(Collectors.toList());
+            CalendarMetrics.get().recordSince("model.conflicts", start);
+            return conflicts;
+        }
+
+        /**
+         * Number of events and occurrences on each day in [from, to). One-off
+         * events are counted from the aggregates; only recurring series are
+         * expanded, and only for the range.
+         */
+        public int[] countPerDay(LocalDate from, LocalDate to) {
+            int[] counts = aggregates.countPerDay(from, to);
+            for (CalendarEvent series : recurringById.values()) {
+                for (LocalDateTime time : series.getOccurrenceTimes(from.atStartOfDay(), to.atStartOfDay())) {
+                    counts[(int) (time.toLocalDate().toEpochDay() - from.toEpochDay())]++;
+                }
+            }
+            return counts;
+        }
+
+        /**
+         * Number of events and occurrences on days in [from, to) with the
+         * given category (null for any) and priority in [minPriority, maxPriority]
+         */
+        public int countEvents(LocalDate from, LocalDate to, String category, int minPriority, int maxPriority) {
+            int count = aggregates.count(from, to, category, minPriority, maxPriority);
+            for (CalendarEvent series : recurringById.values()) {
+                if ((category == null || category.equals(series.getCategory()))
+                        && series.getPriority() >= minPriority && series.getPriority() <= maxPriority) {
+                    count += series.getOccurrenceTimes(from.atStartOfDay(), to.atStartOfDay()).size();
+                }
+            }
+            return count;
+        }
+
+        public Map<String, Integer> countByCategory(LocalDate from, LocalDate to) {
+            Map<String, Integer> counts = aggregates.countByCategory(from, to);
+            for (CalendarEvent series : recurringById.values()) {
+                int occurrences = series.getOccurrenceTimes(from.atStartOfDay(), to.atStartOfDay()).size();
+                if (occurrences > 0) {
+                    counts.merge(series.getCategory(), occurrences, Integer::sum);
+                }
+            }
+            return counts;
+        }
+
+        /**
+         * Counts indexed by priority (1-10); entry 0 is unused
+         */
+        public int[] countByPriority(LocalDate from, LocalDate to) {
+            int[] counts = aggregates.countByPriority(from, to);
+            for (CalendarEvent series : recurringById.values()) {
+                int priority = Math.max(EventAggregates.MIN_PRIORITY, Math.min(EventAggregates.MAX_PRIORITY, series.getPriority()));
+                counts[priority] += series.getOccurrenceTimes(from.atStartOfDay(), to.atStartOfDay()).size();
+            }
+            return counts;
+        }
+
+        /**
+         * Longest reminder lead of any stored event, in minutes
+         */
+        public int getMaxReminderMinutes() {
+            return maxReminderMinutes;
+        }
+
+        /**
+         * The limit most important events and occurrences starting in
+         * [from, to): highest priority first, then earliest. One-off events
+         * come from the agenda index; recurring series contribute at most
+         * limit occurrences each, and only when their priority can still
+         * make the cut.
+         */
+        public List<CalendarEvent> getAgenda(LocalDateTime from, LocalDateTime to, int limit) {
+            if (limit <= 0) {
+                return List.of();
+            }
+            List<CalendarEvent> top = agenda.top(from, to, limit);
+            if (recurringById.isEmpty()) {
+                return top;
+            }
+            int cutoff = top.size() < limit ? Integer.MIN_VALUE : top.get(top.size() - 1).getPriority();
+            List<CalendarEvent> candidates = new ArrayList<>(top);
+            for (CalendarEvent series : recurringById.values()) {
+                if (series.getPriority() >= cutoff) {
+                    List<CalendarEvent> occurrences = series.expandOccurrences(from, to);
+                    candidates.addAll(occurrences.subList(0, Math.min(limit, occurrences.size())));
+                }
+            }
+            candidates.sort(AgendaIndex.BY_RANK);
+            return candidates.size() > limit ? new ArrayList<>(candidates.subList(0, limit)) : candidates;
+        }
+
+        /**
+         * Free windows of at least minLength within working hours on working
+         * days in [from, to). Only the events overlapping the range are read,
+         * found through the interval tree, so the cost depends on the window
+         * and not on the size of the calendar.
+         */
+        public List<TimeSlot> findFreeSlots(LocalDateTime from, LocalDateTime to, LocalTime workStart,
+                                            LocalTime workEnd, Set<DayOfWeek> workDays, Duration minLength) {
+            return freeSlots(getOverlapping(from, to), from, to, workStart, workEnd, workDays, minLength);
+        }
+
+        /**
+         * Sweeps busy events, sorted by start, and returns the gaps between
+         * them that fall inside the working hours. The events may come from
+         * several calendars as long as they are merged in start order.
+         */
+        static List<TimeSlot> freeSlots(List<CalendarEvent> busy, LocalDateTime from, LocalDateTime to,
+                                        LocalTime workStart, LocalTime workEnd, Set<DayOfWeek> workDays,
+                                        Duration minLength) {
+            // Union of the busy intervals, still in start order
+            List<TimeSlot> merged = new ArrayList<>();
+            for (CalendarEvent event : busy) {
+                LocalDateTime start = event.getDateTime();
+                LocalDateTime end = event.getEndDateTime();
+                if (!end.isAfter(start)) {
+                    continue;
+                }
+                TimeSlot last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+                if (last != null && !start.isAfter(last.end)) {
+                    if (end.isAfter(last.end)) {
+                        merged.set(merged.size() - 1, new TimeSlot(last.start, end));
+                    }
+                } else {
+                    merged.add(new TimeSlot(start, end));
+                }
+            }
+
+            List<TimeSlot> free = new ArrayList<>();
+            int first = 0;
+            for (LocalDate day = from.toLocalDate(); day.atStartOfDay().isBefore(to); day = day.plusDays(1)) {
+                if (workDays != null && !workDays.contains(day.getDayOfWeek())) {
+                    continue;
+                }
+                LocalDateTime windowStart = max(from, day.atTime(workStart));
+                LocalDateTime windowEnd = min(to, workEnd.equals(LocalTime.MIDNIGHT) ? day.plusDays(1).atStartOfDay() : day.atTime(workEnd));
+                if (!windowEnd.isAfter(windowStart)) {
+                    continue;
+                }
+
+                while (first < merged.size() && !merged.get(first).end.isAfter(windowStart)) {
+                    first++;
+                }
+                LocalDateTime cursor = windowStart;
+                for (int i = first; i < merged.size() && merged.get(i).start.isBefore(windowEnd); i++) {
+                    TimeSlot slot = merged.get(i);
+                    addIfLongEnough(free, cursor, slot.start, minLength);
+                    cursor = max(cursor, slot.end);
+                }
+                addIfLongEnough(free, cursor, windowEnd, minLength);
+            }
+            return free;
+        }
+
+        private static void addIfLongEnough(List<TimeSlot> free, LocalDateTime start, LocalDateTime end, Duration minLength) {
+            if (end.isAfter(start) && Duration.between(start, end).compareTo(minLength) >= 0) {
+                free.add(new TimeSlot(start, end));
+            }
+        }
+
+        private static LocalDateTime max(LocalDateTime a, LocalDateTime b) {
+            return a.isAfter(b) ? a : b;
+        }
+
+        private static LocalDateTime min(LocalDateTime a, LocalDateTime b) {
+            return a.isBefore(b) ? a : b;
+        }
+
+        /**
+         * Zero-length events still occupy their start instant
+         */
+        private static LocalDateTime occupiedUntil(LocalDateTime start, LocalDateTime end) {
+            return end.isAfter(start) ? end : start.plusSeconds(1);
+        }
+
+        private static boolean sameSeriesAndTime(CalendarEvent a, CalendarEvent b) {
+            return a.getId().equals(b.getId()) && a.getDateTime().equals(b.getDateTime());
+        }
+
+        public List<CalendarEvent> getEventsForDisplayMonth() {
+            YearMonth month = YearMonth.from(currentDisplayMonth);
+            return getEventsBetween(month.atDay(1).atStartOfDay(), month.plusMonths(1).atDay(1).atStartOfDay());
+        }
+
         public void setFilters(String searchText, LocalDate startDate, LocalDate endDate, boolean showPastEvents) {
             this.searchText = searchText.toLowerCase();
             this.filterStartDate = startDate;
@@ -67,125 +508,688 @@ import java.util.stream.Collectors;
         }
 
         private void applyFilters() {
-            filteredEvents = events.stream()
-                    .filter(event -> {
-                        // Filter by search text
-                        if (!searchText.isEmpty() &&
-                                !event.getTitle().toLowerCase().contains(searchText) &&
-                                !event.getDescription().toLowerCase().contains(searchText)) {
-                            return false;
-                        }
-
-                        // Filter by date range
-                        if (filterStartDate != null &&
-                                event.getDateTime().toLocalDate().isBefore(filterStartDate)) {
-                            return false;
-                        }
+            filteredEvents = query(searchText, filterStartDate, filterEndDate, showPastEvents);
+        }
 
-                        if (filterEndDate != null &&
-                                event.getDateTime().toLocalDate().isAfter(filterEndDate)) {
-                            return false;
-                        }
+        /**
+         * Returns the events (and occurrences of recurring series) matching the
+         * given criteria, sorted by time. Does not change the model's own filters.
+         */
+        public List<CalendarEvent> query(String searchText, LocalDate filterStartDate,
+                                         LocalDate filterEndDate, boolean showPastEvents) {
+            String needle = searchText == null ? "" : searchText.toLowerCase();
+            LocalDateTime now = LocalDateTime.now(clock);
+            long start = System.nanoTime();
+            CalendarJfrEvents.ModelFilter jfr = new CalendarJfrEvents.ModelFilter();
+            jfr.begin();
+            Predicate<CalendarEvent> textMatch = textFilter(needle);
 
-                        // Filter past events if needed
-                        if (!showPastEvents &&
-                                event.getDateTime().isBefore(LocalDateTime.now())) {
-                            return false;
-                        }
+            // Window in which recurring series are expanded for the table
+            LocalDateTime seriesFrom = filterStartDate != null
+                    ? filterStartDate.atStartOfDay()
+                    : showPastEvents ? LocalDateTime.MIN : now.toLocalDate().atStartOfDay();
+            LocalDateTime seriesTo = filterEndDate != null
+                    ? filterEndDate.plusDays(1).atStartOfDay()
+                    : now.toLocalDate().plusDays(DEFAULT_TABLE_HORIZON_DAYS).atStartOfDay();
 
-                        return true;
-                    })
+            List<CalendarEvent> matches = events.stream()
+                    .flatMap(event -> event.isRecurring()
+                            ? event.expandOccurrences(seriesFrom, seriesTo).stream()
+                            : Stream.of(event))
+                    .filter(event -> matchesFilter(event, textMatch, filterStartDate, filterEndDate, showPastEvents, now))
                     .sorted(Comparator.comparing(CalendarEvent::getDateTime))
                     .collect(Collectors.toList());
+            CalendarMetrics.get().recordSince("model.filter", start);
+            jfr.scanned = events.size();
+            jfr.matched = matches.size();
+            jfr.commit();
+            return matches;
+        }
+
+        /**
+         * Search text test for the table filter; needle must be lower case.
+         * Stored descriptions are matched through the blob store's word index,
+         * so the scan never reads or lower-cases their text.
+         */
+        Predicate<CalendarEvent> textFilter(String needle) {
+            if (needle.isEmpty()) {
+                return event -> true;
+            }
+            Set<Long> described;
+            try {
+                described = blobs != null ? blobs.search(needle) : Set.of();
+            } catch (IOException e) {
+                System.err.println("Error searching descriptions: " + e.getMessage());
+                described = Set.of();
+            }
+            Set<Long> matchingKeys = described;
+            return event -> event.getTitle().toLowerCase().contains(needle)
+                    || event.descriptionContains(needle, matchingKeys);
+        }
+
+        /**
+         * The table filter for a single event
+         */
+        static boolean matchesFilter(CalendarEvent event, Predicate<CalendarEvent> textMatch, LocalDate filterStartDate,
+                                     LocalDate filterEndDate, boolean showPastEvents, LocalDateTime now) {
+            // Filter by search text
+            if (!textMatch.test(event)) {
+                return false;
+            }
+
+            // Filter by date range
+            if (filterStartDate != null &&
+                    event.getDateTime().toLocalDate().isBefore(filterStartDate)) {
+                return false;
+            }
+
+            if (filterEndDate != null &&
+                    event.getDateTime().toLocalDate().isAfter(filterEndDate)) {
+                return false;
+            }
+
+            // Filter past events if needed
+            if (!showPastEvents &&
+                    event.getDateTime().isBefore(now)) {
+                return false;
+            }
+
+            return true;
+        }
+
+        /**
+         * One-off events that ended before the cutoff, as the frozen copies
+         * held by the current state. They are safe to hand to another thread.
+         */
+        public List<CalendarEvent> getArchivable(LocalDateTime cutoff) {
+            List<CalendarEvent> result = new ArrayList<>();
+            for (CalendarEvent event : intervals.overlapping(LocalDateTime.MIN, cutoff)) {
+                if (event.getEndDateTime().isBefore(cutoff)) {
+                    result.add(stored.get(event.getId()));
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Drops events returned by getArchivable() once they are archived,
+         * skipping any that were changed in the meantime. Returns the number
+         * dropped.
+         */
+        public int removeArchived(List<CalendarEvent> archived) {
+            long start = System.nanoTime();
+            Set<CalendarEvent> gone = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (CalendarEvent frozen : archived) {
+                if (stored.get(frozen.getId()) == frozen) {
+                    CalendarEvent live = eventsById.get(frozen.getId());
+                    unindex(live);
+                    gone.add(live);
+                }
+            }
+            if (!gone.isEmpty()) {
+                events.removeIf(gone::contains);
+                version.incrementAndGet();
+                applyFilters();
+                if (syncLog != null) {
+                    // Archived, not deleted: the server keeps its copy
+                    syncLog.forget(gone.stream().map(CalendarEvent::getId).collect(Collectors.toList()));
+                }
+            }
+            CalendarMetrics.get().recordSince("model.archive", start);
+            return gone.size();
+        }
+
+        /**
+         * Records a change made directly on an event (e.g. its notified flag)
+         * so that the next save picks it up.
+         */
+        public void markModified() {
+            version.incrementAndGet();
+        }
+
+        public boolean isDirty() {
+            return version.get() != savedVersion.get();
+        }
+
+        public void markSaved(long savedAt) {
+            savedVersion.accumulateAndGet(savedAt, Math::max);
+        }
+
+        /**
+         * The persisted state at the current version, in O(1). It can be
+         * written by another thread while the model keeps changing.
+         */
+        public Snapshot snapshot() {
+            return new Snapshot(version.get(), stored);
+        }
+
+        /**
+         * The stored events at this point, for restore(). Taking one is O(1).
+         */
+        public PersistentEventMap getState() {
+            return stored;
+        }
+
+        /**
+         * Switches back (or forward) to a state returned by getState(). Only
+         * the events that differ between the two states are re-indexed.
+         */
+        public void restore(PersistentEventMap state) {
+            if (state == stored) {
+                return;
+            }
+            long start = System.nanoTime();
+            List<CalendarEvent> removed = new ArrayList<>();
+            List<CalendarEvent> added = new ArrayList<>();
+            PersistentEventMap.diff(stored, state, (before, after) -> {
+                if (before != null) {
+                    removed.add(eventsById.get(before.getId()));
+                }
+                if (after != null) {
+                    // The state keeps its frozen copy; the model works on its own
+                    added.add(new CalendarEvent(after));
+                }
+            });
+
+            Set<CalendarEvent> gone = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (CalendarEvent event : removed) {
+                if (event != null) {
+                    unindexLookups(event);
+                    gone.add(event);
+                }
+            }
+            if (!gone.isEmpty()) {
+                events.removeIf(gone::contains);
+            }
+            for (CalendarEvent event : added) {
+                events.add(event);
+                indexLookups(event);
+            }
+            stored = state;
+            version.incrementAndGet();
+            applyFilters();
+            CalendarMetrics.get().recordSince("model.restore", start);
         }
 
         public void saveEvents() {
-            try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(SAVE_FILE))) {
-                out.writeObject(events);
+            try {
+                writeToDisk(snapshot());
             } catch (IOException e) {
                 System.err.println("Error saving events: " + e.getMessage());
             }
         }
 
-        @SuppressWarnings("unchecked")
-        public void loadEvents() {
-            File file = new File(SAVE_FILE);
-            if (!file.exists()) {
-                events = new ArrayList<>();
+        /**
+         * Writes a snapshot to the store, keeping changes other processes
+         * made there to events the snapshot has not touched. Safe to call off
+         * the EDT. In-memory models have nowhere to write and just count as saved.
+         */
+        public void writeToDisk(Snapshot snapshot) throws IOException {
+            if (store == null) {
+                markSaved(snapshot.version);
                 return;
             }
+            // Unsent changes are noted first, so a crash in between at worst sends one twice
+            syncLog.persist(snapshot);
+            store.save(snapshot);
+            markSaved(snapshot.version);
+        }
 
-            try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(SAVE_FILE))) {
-                events = (List<CalendarEvent>) in.readObject();
-                applyFilters();
-            } catch (IOException | ClassNotFoundException e) {
+        /**
+         * Checks whether another process has changed the store and reads
+         * its changes if so. Returns true if there are changes for
+         * applyExternalChanges(). Safe to call off the EDT.
+         */
+        public boolean pollExternalChanges() throws IOException {
+            return store != null && store.poll();
+        }
+
+        /**
+         * Applies changes other processes made to the store. Events edited
+         * here since are left alone, and written over theirs on the next save.
+         * Only the changed events are re-indexed. Returns the number of changes.
+         */
+        public int applyExternalChanges() {
+            List<EventFileSync.Change> changes = store == null ? List.of() : store.unapplied();
+            if (changes.isEmpty()) {
+                return 0;
+            }
+            boolean wasClean = !isDirty();
+            boolean kept = false;
+            PersistentEventMap state = stored;
+            for (EventFileSync.Change change : changes) {
+                if (state.get(change.id) == change.before) {
+                    state = change.after == null ? state.remove(change.id) : state.put(change.after);
+                } else {
+                    kept = true;
+                }
+            }
+            restore(state);
+            store.applied(changes, version.get());
+            if (wasClean && !kept) {
+                // The model now matches the file again
+                markSaved(version.get());
+            }
+            CalendarMetrics.get().add("store.external.applied", changes.size());
+            return changes.size();
+        }
+
+        /**
+         * Sends the changes a state has since the last sync and fetches the
+         * server's, for applySync(). Returns null for in-memory models. Safe
+         * to call off the EDT; the state is not changed.
+         */
+        public SyncClient.Result exchangeSync(SyncClient client, String calendar, PersistentEventMap state)
+                throws IOException {
+            if (syncLog == null) {
+                return null;
+            }
+            List<CalendarEvent> changed = new ArrayList<>();
+            Map<String, Long> deleted = new HashMap<>();
+            for (String id : syncLog.changedSince(state)) {
+                CalendarEvent event = state.get(id);
+                if (event != null) {
+                    changed.add(event);
+                } else {
+                    CalendarEvent synced = syncLog.baselineOf(id);
+                    deleted.put(id, synced != null ? synced.getSyncRevision() : 0);
+                }
+            }
+            return client.sync(calendar, syncLog.getToken(), changed, deleted);
+        }
+
+        /**
+         * Applies the outcome of exchangeSync() for the given state. Events
+         * edited here since that state was taken keep the local edit, which
+         * goes out with the next sync. Only the changed events are re-indexed.
+         * Returns the number of remote changes applied.
+         */
+        public int applySync(PersistentEventMap sent, SyncClient.Result result) {
+            long start = System.nanoTime();
+            Set<String> editedSince = new HashSet<>();
+            PersistentEventMap.diff(sent, stored, (before, after) ->
+                    editedSince.add(before != null ? before.getId() : after.getId()));
+
+            // The new baseline is what the server now holds, as far as this model knows
+            PersistentEventMap baseline = sent;
+            PersistentEventMap state = stored;
+            for (Map.Entry<String, Long> accepted : result.accepted.entrySet()) {
+                CalendarEvent event = sent.get(accepted.getKey());
+                if (event == null) {
+                    continue;
+                }
+                CalendarEvent revised = new CalendarEvent(event);
+                revised.setSyncRevision(accepted.getValue());
+                baseline = baseline.put(revised);
+                CalendarEvent current = state.get(revised.getId());
+                if (current == event) {
+                    state = state.put(revised);
+                } else if (current != null) {
+                    CalendarEvent edited = new CalendarEvent(current);
+                    edited.setSyncRevision(accepted.getValue());
+                    state = state.put(edited);
+                }
+            }
+            int applied = 0;
+            for (SyncClient.Change change : result.remote.values()) {
+                CalendarEvent current = state.get(change.id);
+                if (current != null && current.getSyncRevision() >= change.revision) {
+                    // Our own change coming back, or older than what we have
+                    continue;
+                }
+                baseline = change.event == null ? baseline.remove(change.id) : baseline.put(change.event);
+                if (!editedSince.contains(change.id) && (current != null || change.event != null)) {
+                    state = change.event == null ? state.remove(change.id) : state.put(change.event);
+                    applied++;
+                }
+            }
+            restore(state);
+            syncLog.synced(result.token, baseline, version.get());
+            CalendarMetrics.get().add("sync.applied", applied);
+            CalendarMetrics.get().recordSince("sync.apply", start);
+            return applied;
+        }
+
+        public void loadEvents() {
+            try {
+                readFromDisk();
+            } catch (IOException e) {
                 System.err.println("Error loading events: " + e.getMessage());
-                events = new ArrayList<>();
+                replaceEvents(new ArrayList<>());
             }
         }
 
+        /**
+         * Replaces the events with the store's. Does not touch the UI, so
+         * it can run off the EDT on a model not shared yet. In-memory models
+         * keep the events they have.
+         */
+        public void readFromDisk() throws IOException {
+            if (store == null) {
+                return;
+            }
+            replaceEvents(store.load());
+            store.loaded(stored);
+            syncLog.loaded(stored, version.get());
+        }
+
+        /**
+         * Swaps in a freshly loaded event list; the result is considered saved.
+         */
+        public void replaceEvents(List<CalendarEvent> loadedEvents) {
+            events = loadedEvents;
+            eventsById.clear();
+            eventsByFingerprint.clear();
+            fingerprintById.clear();
+            intervals.clear();
+            recurringById.clear();
+            aggregates.clear();
+            agenda.clear();
+            reminderLeads.clear();
+            reminderLeadById.clear();
+            maxReminderMinutes = 0;
+            List<CalendarEvent> copies = new ArrayList<>(events.size());
+            for (CalendarEvent event : events) {
+                indexLookups(event);
+                copies.add(new CalendarEvent(event));
+            }
+            stored = PersistentEventMap.of(copies);
+            markSaved(version.incrementAndGet());
+            applyFilters();
+        }
+
         public void exportEventsToCSV(String filePath) {
-            try (PrintWriter writer = new PrintWriter(new FileWriter(filePath))) {
-                writer.println("Title,Description,Date,Time,Location,Category,Priority");
-
-                for (CalendarEvent event : events) {
-                    String csvLine = String.format("\"%s\",\"%s\",\"%s\",\"%s\",\"%s\",%s,%s",
-                            escapeCSV(event.getTitle()),
-                            escapeCSV(event.getDescription()),
-                            event.getDateTime().format(CSV_DATE_FORMAT),
-                            event.getLocation(),
-                            event.getCategory(),
-                            event.getPriority()
-                    );
-                    writer.println(csvLine);
-                }
+            try {
+                writeEventsToCSV(filePath, events);
             } catch (IOException e) {
                 System.err.println("Error exporting to CSV: " + e.getMessage());
             }
         }
 
-        private String escapeCSV(String input) {
+        /**
+         * Writes the given events as CSV. Callers off the EDT should pass a snapshot.
+         */
+        static void writeEventsToCSV(String filePath, List<CalendarEvent> eventsToExport) throws IOException {
+            long start = System.nanoTime();
+            try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(filePath)))) {
+                writer.println(CSV_HEADER);
+
+                for (CalendarEvent event : eventsToExport) {
+                    writer.println(formatCSVRow(event));
+                }
+                if (writer.checkError()) {
+                    throw new IOException("Error writing " + filePath);
+                }
+            } catch (IOException | RuntimeException e) {
+                CalendarMetrics.get().increment("csv.export.errors");
+                throw e;
+            } finally {
+                CalendarMetrics.get().recordSince("csv.export", start);
+            }
+        }
+
+        /**
+         * One event as a CSV row, without the line break
+         */
+        static String formatCSVRow(CalendarEvent event) {
+            return String.format("\"%s\",\"%s\",%s,%s,\"%s\",\"%s\",%s,%s",
+                    escapeCSV(event.getTitle()),
+                    escapeCSV(event.getDescription()),
+                    event.getDateTime().toLocalDate().format(CSV_DAY_FORMAT),
+                    event.getDateTime().toLocalTime().format(CSV_TIME_FORMAT),
+                    escapeCSV(event.getLocation()),
+                    escapeCSV(event.getCategory()),
+                    event.getPriority(),
+                    event.getDuration().toMinutes()
+            );
+        }
+
+        private static String escapeCSV(String input) {
             if (input == null) return "";
             return input.replace("\"", "\"\"");
         }
 
         public void importEventsFromCSV(String filePath) throws IOException {
+            ImportResult result = new ImportResult();
+            addImportedEvents(readEventsFromCSV(filePath, null, result), DuplicateMode.SKIP, result);
+        }
+
+        /**
+         * Adds imported events in one batch. Each row is checked against the
+         * id and fingerprint indexes in O(1), including rows added earlier in
+         * the same batch, and duplicates are handled according to mode.
+         */
+        public void addImportedEvents(List<CalendarEvent> importedEvents, DuplicateMode mode, ImportResult result) {
+            long start = System.nanoTime();
+            boolean changed = false;
+            for (CalendarEvent event : importedEvents) {
+                CalendarEvent existing = findDuplicate(event);
+                if (existing == null) {
+                    events.add(event);
+                    index(event);
+                    result.added++;
+                    changed = true;
+                } else {
+                    if (mergeDuplicate(existing, event, mode)) {
+                        // A merge may turn a one-off event into a series
+                        unindex(existing);
+                        index(existing);
+                        changed = true;
+                    }
+                    result.duplicates++;
+                }
+            }
+            if (changed) {
+                version.incrementAndGet();
+                applyFilters();
+            }
+            CalendarMetrics.get().add("import.duplicates", result.duplicates);
+            CalendarMetrics.get().recordSince("model.import", start);
+        }
+
+        /**
+         * Applies the rows that duplicate events stored here and returns the
+         * rest, for imports that check several calendars before adding.
+         */
+        public List<CalendarEvent> resolveDuplicates(List<CalendarEvent> importedEvents, DuplicateMode mode, ImportResult result) {
+            List<CalendarEvent> remaining = new ArrayList<>();
+            boolean changed = false;
+            for (CalendarEvent event : importedEvents) {
+                CalendarEvent existing = findDuplicate(event);
+                if (existing == null) {
+                    remaining.add(event);
+                } else {
+                    if (mergeDuplicate(existing, event, mode)) {
+                        // A merge may turn a one-off event into a series
+                        unindex(existing);
+                        index(existing);
+                        changed = true;
+                    }
+                    result.duplicates++;
+                }
+            }
+            if (changed) {
+                version.incrementAndGet();
+                applyFilters();
+            }
+            return remaining;
+        }
+
+        /**
+         * Returns the stored event with the candidate's id, as when an exported
+         * file is imported again, or else the one with the same fingerprint;
+         * null if there is neither
+         */
+        public CalendarEvent findDuplicate(CalendarEvent candidate) {
+            CalendarEvent sameId = eventsById.get(candidate.getId());
+            if (sameId != null) {
+                return sameId;
+            }
+            CalendarEvent existing = eventsByFingerprint.get(candidate.fingerprint());
+            return existing != null && existing.hasSameContent(candidate) ? existing : null;
+        }
+
+        static boolean mergeDuplicate(CalendarEvent existing, CalendarEvent incoming, DuplicateMode mode) {
+            switch (mode) {
+                case MERGE:
+                    boolean changed = false;
+                    if (!existing.hasDescription() && incoming.hasDescription()) {
+                        existing.setDescription(incoming.getDescription());
+                        changed = true;
+                    }
+                    if (!existing.isRecurring() && incoming.isRecurring()) {
+                        existing.setRecurrence(incoming.getRecurrence());
+                        changed = true;
+                    }
+                    return changed;
+                case REPLACE:
+                    // A match by id may differ in the fingerprinted fields too; callers re-index
+                    existing.setTitle(incoming.getTitle());
+                    existing.setDateTime(incoming.getDateTime());
+                    existing.setLocation(incoming.getLocation());
+                    existing.setCategory(incoming.getCategory());
+                    existing.setDescription(incoming.getDescription());
+                    existing.setPriority(incoming.getPriority());
+                    existing.setRecurrence(incoming.getRecurrence());
+                    existing.setDuration(incoming.getDuration());
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        private void index(CalendarEvent event) {
+            indexLookups(event);
+            // Every local change passes through here; sync resolves conflicts by this time
+            event.setModifiedAt(clock.millis());
+            stored = stored.put(new CalendarEvent(event));
+        }
+
+        private void unindex(CalendarEvent event) {
+            unindexLookups(event);
+            stored = stored.remove(event.getId());
+        }
+
+        private void indexLookups(CalendarEvent event) {
+            eventsById.put(event.getId(), event);
+            if (event.isRecurring()) {
+                recurringById.put(event.getId(), event);
+            } else {
+                intervals.insert(event);
+                aggregates.add(event);
+                agenda.add(event);
+            }
+            int lead = event.getMaxReminderMinutes();
+            reminderLeadById.put(event.getId(), lead);
+            reminderLeads.merge(lead, 1, Integer::sum);
+            maxReminderMinutes = reminderLeads.lastKey();
+            long fingerprint = event.fingerprint();
+            fingerprintById.put(event.getId(), fingerprint);
+            eventsByFingerprint.putIfAbsent(fingerprint, event);
+        }
+
+        private void unindexLookups(CalendarEvent event) {
+            eventsById.remove(event.getId());
+            recurringById.remove(event.getId());
+            intervals.remove(event);
+            aggregates.remove(event);
+            agenda.remove(event);
+            Integer lead = reminderLeadById.remove(event.getId());
+            if (lead != null) {
+                reminderLeads.computeIfPresent(lead, (key, count) -> count > 1 ? count - 1 : null);
+                maxReminderMinutes = reminderLeads.isEmpty() ? 0 : reminderLeads.lastKey();
+            }
+            Long fingerprint = fingerprintById.remove(event.getId());
+            if (fingerprint != null && eventsByFingerprint.get(fingerprint) == event) {
+                eventsByFingerprint.remove(fingerprint);
+            }
+        }
+
+        /**
+         * Parses a CSV file into new events without touching the model, reporting
+         * progress by bytes read and stopping early if the task is cancelled.
+         * Rows that cannot be parsed are skipped and counted in result.rejected.
+         */
+        static List<CalendarEvent> readEventsFromCSV(String filePath, TaskRuntime.TaskContext context,
+                                                     ImportResult result) throws IOException {
+            long start = System.nanoTime();
+            CalendarJfrEvents.CsvImport jfr = new CalendarJfrEvents.CsvImport();
+            jfr.begin();
+            jfr.file = filePath;
             List<CalendarEvent> importedEvents = new ArrayList<>();
+            long totalBytes = new File(filePath).length();
+            long bytesRead = 0;
 
             try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
                 // Skip header
                 String line = reader.readLine();
 
                 while ((line = reader.readLine()) != null) {
-                    try {
-                        String[] fields = parseCSVLine(line);
-                        if (fields.length >= 7) {
-                            String title = fields[0];
-                            String description = fields[1];
-                            LocalDateTime dateTime = LocalDateTime.parse(fields[2], CSV_DATE_FORMAT);
-                            String location = fields[3];
-                            String category = fields[4];
-                            int priority = Integer.parseInt(fields[5]);
-
-                            CalendarEvent event = new CalendarEvent(title, dateTime);
-                            event.setDescription(description);
-                            event.setLocation(location);
-                            event.setCategory(category);
-                            event.setPriority(priority);
+                    if (context != null) {
+                        if (context.isCancelled()) {
+                            throw new InterruptedIOException("Import cancelled");
+                        }
+                        bytesRead += line.length() + 1;
+                        if (importedEvents.size() % 1000 == 0) {
+                            context.reportProgress(Math.min(bytesRead, totalBytes), totalBytes);
+                        }
+                    }
 
+                    try {
+                        CalendarEvent event = parseCSVRow(line);
+                        if (event != null) {
                             importedEvents.add(event);
                         }
                     } catch (Exception e) {
+                        CalendarMetrics.get().increment("csv.import.errors");
+                        jfr.rejected++;
+                        result.rejected++;
                         System.err.println("Error parsing CSV line: " + e.getMessage());
                     }
                 }
             }
 
-            events.addAll(importedEvents);
-            applyFilters();
+            CalendarMetrics.get().add("csv.import.rows", importedEvents.size());
+            CalendarMetrics.get().recordSince("csv.import", start);
+            jfr.rows = importedEvents.size();
+            jfr.commit();
+            return importedEvents;
+        }
+
+        /**
+         * Parses one CSV row into a new event. Returns null for rows with too
+         * few fields and throws for malformed values.
+         */
+        static CalendarEvent parseCSVRow(String line) {
+            String[] fields = parseCSVLine(line);
+            if (fields.length < 6) {
+                return null;
+            }
+            String title = fields[0];
+            String description = fields[1];
+            // Date and time are separate columns; older files had one combined column
+            boolean combined = fields.length == 6;
+            LocalDateTime dateTime = combined
+                    ? LocalDateTime.parse(fields[2], CSV_DATE_FORMAT)
+                    : LocalDateTime.of(LocalDate.parse(fields[2], CSV_DAY_FORMAT), LocalTime.parse(fields[3], CSV_TIME_FORMAT));
+            int next = combined ? 3 : 4;
+            String location = fields[next];
+            String category = fields[next + 1];
+            int priority = Integer.parseInt(fields[next + 2].trim());
+
+            CalendarEvent event = new CalendarEvent(title, dateTime);
+            event.setDescription(description);
+            event.setLocation(location);
+            event.setCategory(category);
+            event.setPriority(priority);
+            // Duration in minutes; files written before durations existed lack it
+            if (fields.length > next + 3 && !fields[next + 3].trim().isEmpty()) {
+                event.setDuration(Duration.ofMinutes(Long.parseLong(fields[next + 3].trim())));
+            }
+            return event;
         }
 
-        private String[] parseCSVLine(String line) {
+        private static String[] parseCSVLine(String line) {
             List<String> result = new ArrayList<>();
             boolean inQuotes = false;
             StringBuilder field = new StringBuilder();
@@ -194,7 +1198,7 @@ import java.util.stream.Collectors;
                 char c = line.charAt(i);
 
                 if (c == '\"') {
-                    if (i + 1 < line.length() && line.charAt(i + 1) == '\"') {
+                    if (inQuotes && i + 1 < line.length() && line.charAt(i + 1) == '\"') {
                         // Escaped quote
                         field.append('\"');
                         i++; // Skip the next quote
@@ -224,5 +1228,57 @@ import java.util.stream.Collectors;
         public void setCurrentDisplayMonth(LocalDate date) {
             this.currentDisplayMonth = YearMonth.from(date).atDay(1);
         }
+
+        /**
+         * A [start, end) time window
+         */
+        static class TimeSlot {
+            final LocalDateTime start;
+            final LocalDateTime end;
+
+            TimeSlot(LocalDateTime start, LocalDateTime end) {
+                this.start = start;
+                this.end = end;
+            }
+
+            public Duration getLength() {
+                return Duration.between(start, end);
+            }
+        }
+
+        /**
+         * Two events whose times overlap
+         */
+        static class Conflict {
+            final CalendarEvent first;
+            final CalendarEvent second;
+
+            Conflict(CalendarEvent first, CalendarEvent second) {
+                this.first = first;
+                this.second = second;
+            }
+        }
+
+        /**
+         * Counts of what an import did
+         */
+        static class ImportResult {
+            int added;
+            int duplicates;
+            int rejected;   // rows that could not be read, such as ones with an unsupported RRULE
+        }
+
+        /**
+         * The persisted events at a given model version
+         */
+        static class Snapshot {
+            final long version;
+            final PersistentEventMap events;
+
+            Snapshot(long version, PersistentEventMap events) {
+                this.version = version;
+                this.events = events;
+            }
+        }
     }
 
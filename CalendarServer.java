@@ -0,0 +1,428 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Headless calendar server exposing CalendarModel operations over HTTP/JSON.
+ *
+ * Every user gets a separate CalendarModel partition guarded by its own
+ * read/write lock, so users never contend with each other. Requests are
+ * handled on virtual threads.
+ *
+ * Usage: java CalendarServer [port] [dataDir]
+ * Pass "-" as dataDir to keep calendars in memory only.
+ *
+ * Endpoints (all under /api):
+ *   GET    /health
+ *   GET    /users/{user}/events?q=&from=yyyy-MM-dd&to=yyyy-MM-dd&past=true|false
+ *   GET    /users/{user}/events/range?from=ISO-date-time&to=ISO-date-time
+ *   POST   /users/{user}/events
+ *   GET    /users/{user}/events/{id}
+ *   PUT    /users/{user}/events/{id}
+ *   DELETE /users/{user}/events/{id}
+ */
+public class CalendarServer {
+    private static final Pattern USER_NAME = Pattern.compile("[A-Za-z0-9_.-]{1,64}");
+    private static final int FLUSH_INTERVAL_SECONDS = 1;
+
+    private final int requestedPort;
+    private final String dataDir;
+    private final Map<String, UserCalendar> calendars = new ConcurrentHashMap<>();
+    private final TaskRuntime runtime = new TaskRuntime();
+    private HttpServer server;
+    private ExecutorService requestExecutor;
+    private TaskRuntime.TaskHandle<Void> flushTask;
+
+    /**
+     * One user's calendar. Reads share the lock; mutations take it exclusively.
+     */
+    private static class UserCalendar {
+        final CalendarModel model;
+        final ReadWriteLock lock = new ReentrantReadWriteLock();
+        final BackgroundSaver saver;
+
+        UserCalendar(CalendarModel model, BackgroundSaver saver) {
+            this.model = model;
+            this.saver = saver;
+        }
+    }
+
+    /**
+     * Signals a client error that maps to an HTTP status other than 500
+     */
+    private static class HttpError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    public CalendarServer(int port, String dataDir) {
+        this.requestedPort = port;
+        this.dataDir = dataDir;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        String dataDir = args.length > 1 ? args[1] : "calendar_data";
+
+        CalendarServer calendarServer = new CalendarServer(port, "-".equals(dataDir) ? null : dataDir);
+        calendarServer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(calendarServer::stop));
+        System.out.println("Calendar server listening on port " + calendarServer.getPort());
+    }
+
+    public synchronized void start() throws IOException {
+        if (dataDir != null) {
+            new File(dataDir).mkdirs();
+        }
+
+        server = HttpServer.create(new InetSocketAddress(requestedPort), 1024);
+        requestExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(requestExecutor);
+        server.createContext("/api/", this::handle);
+        server.start();
+
+        CalendarMetrics.get().gauge("server.users", calendars::size);
+        flushTask = runtime.scheduleAtFixedRate("server-flush", this::flushDirtyCalendars,
+                FLUSH_INTERVAL_SECONDS, FLUSH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Returns the bound port, useful when started on port 0
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(1);
+        requestExecutor.shutdown();
+        flushTask.cancel();
+        flushDirtyCalendars();
+        for (UserCalendar calendar : calendars.values()) {
+            if (calendar.saver != null) {
+                calendar.saver.flush(10);
+            }
+        }
+        runtime.shutdown(5, TimeUnit.SECONDS);
+        server = null;
+    }
+
+    private void flushDirtyCalendars() {
+        for (UserCalendar calendar : calendars.values()) {
+            if (calendar.saver == null) {
+                continue;
+            }
+            calendar.lock.readLock().lock();
+            try {
+                if (calendar.model.isDirty()) {
+                    calendar.saver.submit(calendar.model.snapshot());
+                }
+            } finally {
+                calendar.lock.readLock().unlock();
+            }
+        }
+    }
+
+    private UserCalendar calendarFor(String user) {
+        if (!USER_NAME.matcher(user).matches()) {
+            throw new HttpError(400, "Invalid user name: " + user);
+        }
+        return calendars.computeIfAbsent(user, this::openCalendar);
+    }
+
+    private UserCalendar openCalendar(String user) {
+        if (dataDir == null) {
+            return new UserCalendar(new CalendarModel(null), null);
+        }
+
+        CalendarModel model = new CalendarModel(new File(dataDir, user + ".dat").getPath());
+        try {
+            model.readFromDisk();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot load calendar for " + user + ": " + e.getMessage(), e);
+        }
+        return new UserCalendar(model, new BackgroundSaver(model, runtime));
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        CalendarMetrics.get().increment("server.requests");
+        try {
+            route(exchange);
+        } catch (HttpError e) {
+            sendJson(exchange, e.status, Map.of("error", e.getMessage()));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            sendJson(exchange, 400, Map.of("error", String.valueOf(e.getMessage())));
+        } catch (RuntimeException e) {
+            CalendarMetrics.get().increment("server.errors");
+            System.err.println("Error handling " + exchange.getRequestURI() + ": " + e);
+            sendJson(exchange, 500, Map.of("error", "Internal server error"));
+        } finally {
+            exchange.close();
+            CalendarMetrics.get().recordSince("server.request", start);
+        }
+    }
+
+    private void route(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/");
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+
+        if (path.length == 2 && path[1].equals("health")) {
+            sendJson(exchange, 200, Map.of("status", "ok", "users", calendars.size()));
+            return;
+        }
+
+        if (path.length < 4 || !path[1].equals("users") || !path[3].equals("events")) {
+            throw new HttpError(404, "Not found");
+        }
+
+        UserCalendar calendar = calendarFor(path[2]);
+
+        if (path.length == 4) {
+            switch (method) {
+                case "GET":
+                    sendJson(exchange, 200, listEvents(calendar, params));
+                    return;
+                case "POST":
+                    sendJson(exchange, 201, createEvent(calendar, readBody(exchange)));
+                    return;
+                default:
+                    throw new HttpError(405, "Method not allowed");
+            }
+        }
+
+        if (path.length == 5 && path[4].equals("range")) {
+            if (!method.equals("GET")) {
+                throw new HttpError(405, "Method not allowed");
+            }
+            sendJson(exchange, 200, rangeEvents(calendar, params));
+            return;
+        }
+
+        if (path.length == 5) {
+            String id = path[4];
+            switch (method) {
+                case "GET":
+                    sendJson(exchange, 200, getEvent(calendar, id));
+                    return;
+                case "PUT":
+                    sendJson(exchange, 200, updateEvent(calendar, id, readBody(exchange)));
+                    return;
+                case "DELETE":
+                    deleteEvent(calendar, id);
+                    exchange.sendResponseHeaders(204, -1);
+                    return;
+                default:
+                    throw new HttpError(405, "Method not allowed");
+            }
+        }
+
+        throw new HttpError(404, "Not found");
+    }
+
+    private List<Map<String, Object>> listEvents(UserCalendar calendar, Map<String, String> params) {
+        String search = params.getOrDefault("q", "");
+        LocalDate from = params.containsKey("from") ? LocalDate.parse(params.get("from")) : null;
+        LocalDate to = params.containsKey("to") ? LocalDate.parse(params.get("to")) : null;
+        boolean past = !"false".equals(params.get("past"));
+
+        calendar.lock.readLock().lock();
+        try {
+            return toJsonList(calendar.model.query(search, from, to, past));
+        } finally {
+            calendar.lock.readLock().unlock();
+        }
+    }
+
+    private List<Map<String, Object>> rangeEvents(UserCalendar calendar, Map<String, String> params) {
+        if (!params.containsKey("from") || !params.containsKey("to")) {
+            throw new HttpError(400, "Both from and to are required");
+        }
+        LocalDateTime from = LocalDateTime.parse(params.get("from"));
+        LocalDateTime to = LocalDateTime.parse(params.get("to"));
+
+        calendar.lock.readLock().lock();
+        try {
+            return toJsonList(calendar.model.getEventsBetween(from, to));
+        } finally {
+            calendar.lock.readLock().unlock();
+        }
+    }
+
+    private Map<String, Object> getEvent(UserCalendar calendar, String id) {
+        calendar.lock.readLock().lock();
+        try {
+            return toJson(requireEvent(calendar, id));
+        } finally {
+            calendar.lock.readLock().unlock();
+        }
+    }
+
+    private Map<String, Object> createEvent(UserCalendar calendar, Map<String, Object> body) {
+        Object title = body.get("title");
+        Object dateTime = body.get("dateTime");
+        if (!(title instanceof String) || ((String) title).trim().isEmpty() || !(dateTime instanceof String)) {
+            throw new HttpError(400, "title and dateTime are required");
+        }
+
+        CalendarEvent event = new CalendarEvent(((String) title).trim(), LocalDateTime.parse((String) dateTime));
+        applyFields(event, body);
+
+        calendar.lock.writeLock().lock();
+        try {
+            calendar.model.addEvent(event);
+            return toJson(event);
+        } finally {
+            calendar.lock.writeLock().unlock();
+        }
+    }
+
+    private Map<String, Object> updateEvent(UserCalendar calendar, String id, Map<String, Object> body) {
+        calendar.lock.writeLock().lock();
+        try {
+            // Edit a copy so a rejected request leaves the stored event untouched
+            CalendarEvent updated = new CalendarEvent(requireEvent(calendar, id));
+            applyFields(updated, body);
+            calendar.model.updateEventById(updated);
+            return toJson(updated);
+        } finally {
+            calendar.lock.writeLock().unlock();
+        }
+    }
+
+    private void deleteEvent(UserCalendar calendar, String id) {
+        calendar.lock.writeLock().lock();
+        try {
+            if (!calendar.model.deleteEventById(id)) {
+                throw new HttpError(404, "No event " + id);
+            }
+        } finally {
+            calendar.lock.writeLock().unlock();
+        }
+    }
+
+    private static CalendarEvent requireEvent(UserCalendar calendar, String id) {
+        CalendarEvent event = calendar.model.getEventById(id);
+        if (event == null) {
+            throw new HttpError(404, "No event " + id);
+        }
+        return event;
+    }
+
+    private static void applyFields(CalendarEvent event, Map<String, Object> body) {
+        if (body.get("title") instanceof String) {
+            event.setTitle(((String) body.get("title")).trim());
+        }
+        if (body.get("dateTime") instanceof String) {
+            event.setDateTime(LocalDateTime.parse((String) body.get("dateTime")));
+        }
+        if (body.get("description") instanceof String) {
+            event.setDescription((String) body.get("description"));
+        }
+        if (body.get("location") instanceof String) {
+            event.setLocation((String) body.get("location"));
+        }
+        if (body.get("category") instanceof String) {
+            event.setCategory((String) body.get("category"));
+        }
+        if (body.get("priority") instanceof Number) {
+            int priority = ((Number) body.get("priority")).intValue();
+            if (priority < 1 || priority > 10) {
+                throw new HttpError(400, "priority must be between 1 and 10");
+            }
+            event.setPriority(priority);
+        }
+        if (body.get("durationMinutes") instanceof Number) {
+            long minutes = ((Number) body.get("durationMinutes")).longValue();
+            if (minutes < 0) {
+                throw new HttpError(400, "durationMinutes cannot be negative");
+            }
+            event.setDuration(Duration.ofMinutes(minutes));
+        }
+        if (body.containsKey("recurrence")) {
+            Object rule = body.get("recurrence");
+            event.setRecurrence(rule instanceof String ? RecurrenceRule.parse((String) rule, null) : null);
+        }
+    }
+
+    private static List<Map<String, Object>> toJsonList(List<CalendarEvent> events) {
+        List<Map<String, Object>> result = new ArrayList<>(events.size());
+        for (CalendarEvent event : events) {
+            result.add(toJson(event));
+        }
+        return result;
+    }
+
+    static Map<String, Object> toJson(CalendarEvent event) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", event.getId());
+        json.put("title", event.getTitle());
+        json.put("description", event.getDescription());
+        json.put("dateTime", event.getDateTime().toString());
+        json.put("durationMinutes", event.getDuration().toMinutes());
+        json.put("location", event.getLocation());
+        json.put("category", event.getCategory());
+        json.put("priority", event.getPriority());
+        json.put("recurrence", event.isRecurring() ? event.getRecurrence().toString() : null);
+        json.put("occurrence", event.isOccurrence());
+        return json;
+    }
+
+    private static Map<String, Object> readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return Json.parseObject(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq >= 0 ? pair.substring(0, eq) : pair, StandardCharsets.UTF_8);
+            String value = eq >= 0 ? URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8) : "";
+            params.put(key, value);
+        }
+        return params;
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = Json.write(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
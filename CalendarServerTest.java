@@ -0,0 +1,168 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Drives CalendarServer over loopback: the in-memory and on-disk modes,
+ * the mapping of bad requests to HTTP statuses, and concurrent writers on
+ * one user and across users.
+ *
+ * Run with: java CalendarServerTest. Exits with 1 if any check fails.
+ */
+public class CalendarServerTest {
+    private final HttpClient http = HttpClient.newHttpClient();
+    private String base;
+    private int failures;
+
+    public static void main(String[] args) throws Exception {
+        CalendarServerTest test = new CalendarServerTest();
+        test.inMemoryCrud();
+        test.errorMapping();
+        test.concurrentWriters();
+        test.persistsAcrossRestart();
+        System.out.println(test.failures == 0 ? "All server checks passed" : test.failures + " server checks failed");
+        System.exit(test.failures == 0 ? 0 : 1);
+    }
+
+    void inMemoryCrud() throws Exception {
+        CalendarServer server = start(null);
+        try {
+            check(send("GET", "/api/health", null).statusCode() == 200, "health answers 200");
+
+            HttpResponse<String> created = send("POST", "/api/users/alice/events",
+                    "{\"title\":\"Standup\",\"dateTime\":\"2027-01-04T09:00\",\"durationMinutes\":15,\"priority\":7}");
+            check(created.statusCode() == 201, "create answers 201");
+            String id = (String) Json.parseObject(created.body()).get("id");
+
+            Map<String, Object> fetched = Json.parseObject(send("GET", "/api/users/alice/events/" + id, null).body());
+            check("Standup".equals(fetched.get("title")), "created event can be read back");
+
+            HttpResponse<String> updated = send("PUT", "/api/users/alice/events/" + id, "{\"title\":\"Daily standup\"}");
+            check(updated.statusCode() == 200, "update answers 200");
+            check(send("GET", "/api/users/alice/events/range?from=2027-01-04T00:00&to=2027-01-05T00:00", null)
+                    .body().contains("Daily standup"), "range query sees the update");
+            check(send("GET", "/api/users/bob/events", null).body().equals("[]"), "other users do not see it");
+
+            check(send("DELETE", "/api/users/alice/events/" + id, null).statusCode() == 204, "delete answers 204");
+            check(send("GET", "/api/users/alice/events/" + id, null).statusCode() == 404, "deleted event is gone");
+        } finally {
+            server.stop();
+        }
+    }
+
+    void errorMapping() throws Exception {
+        CalendarServer server = start(null);
+        try {
+            check(send("GET", "/api/users/bad%20name/events", null).statusCode() == 400, "invalid user name is 400");
+            check(send("GET", "/api/nothing", null).statusCode() == 404, "unknown path is 404");
+            check(send("GET", "/api/users/alice/events/missing", null).statusCode() == 404, "unknown event is 404");
+            check(send("PATCH", "/api/users/alice/events", "{}").statusCode() == 405, "unsupported method is 405");
+            check(send("POST", "/api/users/alice/events/range", "{}").statusCode() == 405, "posting to range is 405");
+            check(send("POST", "/api/users/alice/events", "{\"title\":\"x\"}").statusCode() == 400,
+                    "missing dateTime is 400");
+            check(send("POST", "/api/users/alice/events", "{\"title\":\"x\",\"dateTime\":\"tomorrow\"}").statusCode() == 400,
+                    "unparsable dateTime is 400");
+            check(send("POST", "/api/users/alice/events",
+                    "{\"title\":\"x\",\"dateTime\":\"2027-01-04T09:00\",\"priority\":11}").statusCode() == 400,
+                    "priority out of range is 400");
+            check(send("POST", "/api/users/alice/events", "not json").statusCode() == 400, "malformed body is 400");
+            check(send("GET", "/api/users/alice/events/range?from=2027-01-04T00:00", null).statusCode() == 400,
+                    "range without to is 400");
+            check(send("GET", "/api/users/alice/events", null).body().equals("[]"), "rejected requests add nothing");
+        } finally {
+            server.stop();
+        }
+    }
+
+    void concurrentWriters() throws Exception {
+        CalendarServer server = start(null);
+        int threads = 8;
+        int perThread = 50;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                // Half the threads share one user, the rest each have their own
+                String user = t % 2 == 0 ? "shared" : "user" + t;
+                int thread = t;
+                results.add(pool.submit(() -> {
+                    int created = 0;
+                    for (int i = 0; i < perThread; i++) {
+                        String body = "{\"title\":\"e" + thread + "-" + i + "\",\"dateTime\":\"2027-01-04T09:00\"}";
+                        if (send("POST", "/api/users/" + user + "/events", body).statusCode() == 201) {
+                            created++;
+                        }
+                        // Reads interleave with the other threads' writes
+                        send("GET", "/api/users/" + user + "/events", null);
+                    }
+                    return created;
+                }));
+            }
+            for (Future<Integer> result : results) {
+                check(result.get() == perThread, "every concurrent create succeeds");
+            }
+            check(countEvents("shared") == threads / 2 * perThread, "no write to the shared user is lost");
+            check(countEvents("user1") == perThread, "each private user has exactly its own events");
+        } finally {
+            pool.shutdown();
+            server.stop();
+        }
+    }
+
+    void persistsAcrossRestart() throws Exception {
+        Path dir = Files.createTempDirectory("calendar-server-test");
+        try {
+            CalendarServer server = start(dir.toString());
+            send("POST", "/api/users/carol/events", "{\"title\":\"Dentist\",\"dateTime\":\"2027-02-01T15:30\"}");
+            server.stop();
+
+            server = start(dir.toString());
+            try {
+                check(send("GET", "/api/users/carol/events", null).body().contains("Dentist"),
+                        "events survive a restart");
+            } finally {
+                server.stop();
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private CalendarServer start(String dataDir) throws IOException {
+        CalendarServer server = new CalendarServer(0, dataDir);
+        server.start();
+        base = "http://localhost:" + server.getPort();
+        return server;
+    }
+
+    private int countEvents(String user) throws Exception {
+        return ((List<?>) Json.parse(send("GET", "/api/users/" + user + "/events", null).body())).size();
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(base + path));
+        request.method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body));
+        return http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private synchronized void check(boolean condition, String description) {
+        if (!condition) {
+            failures++;
+            System.err.println("FAILED: " + description);
+        }
+    }
+}
@@ -0,0 +1,1105 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * The set of calendars shown by the app.
+ *
+ * Each calendar is a separate shard with its own CalendarModel, save file
+ * and background writer, so shards load, filter and save independently.
+ * Merged views are built lazily from the shards' time-sorted lists; hiding
+ * or showing a calendar only changes which lists take part in the merge.
+ *
+ * Mutations and filtering happen on the EDT. The shard list itself is
+ * replaced wholesale, so background readers can iterate it safely.
+ */
+class CalendarSet {
+    static final String DEFAULT_CALENDAR = "Default";
+    static final String CALENDAR_DIR = "calendars";
+    static final String CALENDAR_SUFFIX = ".dat";
+    // One-off events that ended this many days ago move to the archive
+    static final int ARCHIVE_AFTER_DAYS = 30;
+    // Months of archive the table shows around the shown month, or from a date filter with one end open
+    static final int ARCHIVE_PAGE_MONTHS = 12;
+
+    /**
+     * One calendar: its model, its archive, its writer and whether it is
+     * currently shown
+     */
+    static class Shard {
+        final String name;
+        final CalendarModel model;
+        final EventArchive archive;
+        BackgroundSaver saver;
+        volatile boolean visible = true;
+        // Archived events passing the current filter; empty unless past events are shown
+        List<CalendarEvent> archivedMatches = List.of();
+
+        Shard(String name, CalendarModel model, EventArchive archive) {
+            this.name = name;
+            this.model = model;
+            this.archive = archive;
+        }
+    }
+
+    /**
+     * The calendars and each one's stored events at one point in time.
+     * Taking one costs O(calendars), as the event states are shared.
+     */
+    private static class Checkpoint {
+        final String label;
+        final List<Shard> shards;
+        final Map<Shard, PersistentEventMap> states = new IdentityHashMap<>();
+
+        Checkpoint(String label, List<Shard> shards) {
+            this.label = label;
+            this.shards = shards;
+            for (Shard shard : shards) {
+                states.put(shard, shard.model.getState());
+            }
+        }
+    }
+
+    /**
+     * A read of the archived events passing the table filter. It is taken
+     * on the EDT, with the models' stored states, so that run() can read
+     * the archives on any thread.
+     */
+    static class ArchiveSearch {
+        private final List<Shard> shards;
+        private final Map<Shard, PersistentEventMap> states = new IdentityHashMap<>();
+        private final String searchText;
+        private final LocalDate startDate;
+        private final LocalDate endDate;
+        private final boolean showPastEvents;
+        final LocalDateTime from;
+        final LocalDateTime to;
+
+        ArchiveSearch(List<Shard> shards, String searchText, LocalDate startDate, LocalDate endDate,
+                      boolean showPastEvents, LocalDate shownMonth) {
+            this.shards = shards;
+            this.searchText = searchText;
+            this.startDate = startDate;
+            this.endDate = endDate;
+            this.showPastEvents = showPastEvents;
+            for (Shard shard : shards) {
+                states.put(shard, shard.model.getState());
+            }
+            // Only the filter's dates are read, or a page of months when it leaves either end open
+            if (startDate != null) {
+                from = startDate.atStartOfDay();
+                to = endDate != null ? endDate.plusDays(1).atStartOfDay() : from.plusMonths(ARCHIVE_PAGE_MONTHS);
+            } else if (endDate != null) {
+                to = endDate.plusDays(1).atStartOfDay();
+                from = to.minusMonths(ARCHIVE_PAGE_MONTHS);
+            } else {
+                from = pageStart(shownMonth);
+                to = from.plusMonths(ARCHIVE_PAGE_MONTHS);
+            }
+        }
+
+        /**
+         * Start of the page of months centred on the shown one
+         */
+        static LocalDateTime pageStart(LocalDate shownMonth) {
+            return YearMonth.from(shownMonth).minusMonths(ARCHIVE_PAGE_MONTHS / 2).atDay(1).atStartOfDay();
+        }
+
+        /**
+         * Each shard's matches, sorted by time. Safe to call off the EDT.
+         */
+        Map<Shard, List<CalendarEvent>> run() {
+            Map<Shard, List<CalendarEvent>> matches = new IdentityHashMap<>();
+            for (Shard shard : shards) {
+                if (!showPastEvents || shard.archive.isEmpty()) {
+                    matches.put(shard, List.of());
+                    continue;
+                }
+                PersistentEventMap state = states.get(shard);
+                List<CalendarEvent> archived = readArchive(shard, from, to, event -> state.get(event.getId()) != null);
+                matches.put(shard, filterArchived(shard.model, archived, searchText, startDate, endDate, true));
+            }
+            return matches;
+        }
+    }
+
+    static final int MAX_UNDO_STEPS = 100;
+
+    private final TaskRuntime runtime;
+    private final Clock clock;
+    // One archive per directory, shared by every shard for that calendar (including ones kept for undo)
+    private final Map<String, EventArchive> archives = new ConcurrentHashMap<>();
+    private volatile List<Shard> shards = List.of();
+    private final Deque<Checkpoint> undoStack = new ArrayDeque<>();
+    private final Deque<Checkpoint> redoStack = new ArrayDeque<>();
+    private List<CalendarEvent> mergedFiltered;
+    private final MonthLayoutCache monthLayouts = new MonthLayoutCache();
+
+    private String searchText = "";
+    private LocalDate filterStartDate = null;
+    private LocalDate filterEndDate = null;
+    private boolean showPastEvents = true;
+    private LocalDate currentDisplayMonth;
+    // The archive search whose result the table is waiting for, and the last one started
+    private ArchiveSearch pendingSearch;
+    private ArchiveSearch archivePage;
+
+    public CalendarSet(TaskRuntime runtime, Clock clock) {
+        this.runtime = runtime;
+        this.clock = clock;
+        this.currentDisplayMonth = YearMonth.now(clock).atDay(1);
+        // Start with an empty default calendar until the real ones are loaded
+        install(List.of(newShard(DEFAULT_CALENDAR, newModel(DEFAULT_CALENDAR))));
+    }
+
+    private CalendarModel newModel(String name) {
+        CalendarModel model = new CalendarModel(fileFor(name));
+        model.setClock(clock);
+        return model;
+    }
+
+    static String fileFor(String calendarName) {
+        if (DEFAULT_CALENDAR.equals(calendarName)) {
+            return CalendarModel.SAVE_FILE;
+        }
+        return CALENDAR_DIR + File.separator + calendarName + CALENDAR_SUFFIX;
+    }
+
+    /**
+     * Names of the calendars on disk, or in the event database if there is
+     * one; the default calendar always comes first.
+     */
+    static List<String> discoverCalendars() {
+        List<String> names = new ArrayList<>();
+        names.add(DEFAULT_CALENDAR);
+        List<String> files = new ArrayList<>();
+        if (EventStore.STORE_URL != null) {
+            try {
+                files.addAll(JdbcEventStore.savedCalendars(EventStore.STORE_URL));
+            } catch (IOException e) {
+                System.err.println("Error listing calendars: " + e.getMessage());
+            }
+        } else {
+            File[] found = new File(CALENDAR_DIR).listFiles();
+            if (found != null) {
+                for (File file : found) {
+                    files.add(CALENDAR_DIR + File.separator + file.getName());
+                }
+            }
+        }
+        List<String> found = new ArrayList<>();
+        String prefix = CALENDAR_DIR + File.separator;
+        for (String file : files) {
+            if (file.startsWith(prefix) && file.endsWith(CALENDAR_SUFFIX)) {
+                found.add(file.substring(prefix.length(), file.length() - CALENDAR_SUFFIX.length()));
+            }
+        }
+        found.remove(DEFAULT_CALENDAR);
+        found.sort(String.CASE_INSENSITIVE_ORDER);
+        names.addAll(found);
+        return names;
+    }
+
+    /**
+     * Reads and indexes every calendar in parallel, off the EDT. The models
+     * returned are not shared with anyone yet; pass them to install().
+     */
+    public List<Shard> loadShards(TaskRuntime.TaskContext context) {
+        String search = searchText;
+        LocalDate from = filterStartDate;
+        LocalDate to = filterEndDate;
+        boolean past = showPastEvents;
+        LocalDate shownMonth = currentDisplayMonth;
+
+        List<String> names = discoverCalendars();
+        List<Shard> loaded = names.parallelStream()
+                .map(name -> {
+                    CalendarModel model = newModel(name);
+                    try {
+                        model.readFromDisk();
+                    } catch (IOException e) {
+                        System.err.println("Error loading calendar " + name + ": " + e.getMessage());
+                        model.replaceEvents(new ArrayList<>());
+                    }
+                    model.setFilters(search, from, to, past);
+                    return newShard(name, model);
+                })
+                .collect(Collectors.toList());
+        new ArchiveSearch(loaded, search, from, to, past, shownMonth).run()
+                .forEach((shard, matches) -> shard.archivedMatches = matches);
+        context.reportProgress(names.size(), names.size());
+        return loaded;
+    }
+
+    /**
+     * Swaps in freshly loaded shards, keeping the visibility of calendars
+     * that were already known. Must be called on the EDT.
+     */
+    public void install(List<Shard> loaded) {
+        // Loading over events already shown can be undone; the first load only replaces the empty start-up calendar
+        if (getEventCount() > 0) {
+            checkpoint("Load");
+        }
+        for (Shard shard : loaded) {
+            Shard previous = find(shard.name);
+            if (previous != null) {
+                shard.visible = previous.visible;
+            }
+            shard.saver = new BackgroundSaver(shard.model, runtime);
+        }
+        shards = List.copyOf(loaded);
+        invalidate();
+    }
+
+    /**
+     * Creates an empty calendar. It is written out with the next save.
+     */
+    public void createCalendar(String name) {
+        if (!name.matches("[A-Za-z0-9 _-]+")) {
+            throw new IllegalArgumentException("Calendar names may only contain letters, digits, spaces, '-' and '_'");
+        }
+        if (find(name) != null) {
+            throw new IllegalArgumentException("A calendar named " + name + " already exists");
+        }
+
+        checkpoint("New Calendar");
+        CalendarModel model = newModel(name);
+        model.setFilters(searchText, filterStartDate, filterEndDate, showPastEvents);
+        model.markModified();
+        Shard shard = newShard(name, model);
+        shard.saver = new BackgroundSaver(model, runtime);
+
+        List<Shard> updated = new ArrayList<>(shards);
+        updated.add(shard);
+        shards = List.copyOf(updated);
+        invalidate();
+    }
+
+    public List<String> getCalendarNames() {
+        return shards.stream().map(s -> s.name).collect(Collectors.toList());
+    }
+
+    public boolean isVisible(String name) {
+        Shard shard = find(name);
+        return shard != null && shard.visible;
+    }
+
+    public void setVisible(String name, boolean visible) {
+        Shard shard = find(name);
+        if (shard != null && shard.visible != visible) {
+            shard.visible = visible;
+            invalidate();
+        }
+    }
+
+    /**
+     * Name of the calendar that stores the event (or the series of an
+     * occurrence), or null if it is not stored anywhere.
+     */
+    public String getCalendarOf(CalendarEvent event) {
+        Shard shard = ownerOf(event);
+        if (shard == null) {
+            shard = archiveOf(event);
+        }
+        return shard == null ? null : shard.name;
+    }
+
+    public void addEvent(CalendarEvent event, String calendarName) {
+        checkpoint("Add Event");
+        Shard shard = find(calendarName);
+        if (shard == null) {
+            shard = shards.get(0);
+        }
+        shard.model.addEvent(event);
+        invalidate();
+    }
+
+    /**
+     * Records an edit to a stored event, moving it to another calendar if
+     * calendarName differs from its current one.
+     */
+    public void updateEvent(CalendarEvent event, String calendarName) {
+        CalendarEvent series = event.getSeries();
+        Shard owner = ownerOf(series);
+        if (owner == null) {
+            // Brings back the version before the dialog's edit, so the checkpoint below can undo it
+            owner = unarchive(series);
+        }
+        Shard target = calendarName == null ? owner : find(calendarName);
+        if (owner == null) {
+            addEvent(series, calendarName);
+            return;
+        }
+        checkpoint("Edit Event");
+        if (target == null || target == owner) {
+            owner.model.updateEventById(series);
+        } else {
+            owner.model.deleteEventById(series.getId());
+            target.model.addEvent(series);
+        }
+        invalidate();
+    }
+
+    public boolean deleteEvent(CalendarEvent row) {
+        Shard owner = ownerOf(row);
+        if (owner == null) {
+            owner = unarchive(row);
+        }
+        if (owner == null) {
+            return false;
+        }
+        checkpoint("Delete Event");
+        boolean deleted = owner.model.deleteEvent(row);
+        invalidate();
+        return deleted;
+    }
+
+    /**
+     * The stored event with the id in any calendar, or null
+     */
+    public CalendarEvent getEventById(String id) {
+        for (Shard shard : shards) {
+            CalendarEvent event = shard.model.getEventById(id);
+            if (event != null) {
+                return event;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Marks the calendar holding the event as changed, for edits made to the
+     * event object directly.
+     */
+    public void markModified(CalendarEvent event) {
+        Shard owner = ownerOf(event);
+        if (owner != null) {
+            // Re-stored so saves and undo see the edit
+            owner.model.updateEventById(event.getSeries());
+        }
+    }
+
+    /**
+     * Imports events into the default calendar. Rows that duplicate an event
+     * in any calendar are handled in place according to mode. The counts are
+     * added to result.
+     */
+    public void addImportedEvents(List<CalendarEvent> imported, CalendarModel.DuplicateMode mode,
+                                  CalendarModel.ImportResult result) {
+        checkpoint("Import");
+        List<Shard> current = shards;
+        // Rows matching archived events are skipped whatever the mode, as archived events are not edited in place
+        List<CalendarEvent> remaining = new ArrayList<>();
+        for (CalendarEvent event : imported) {
+            if (isArchivedDuplicate(event, current)) {
+                result.duplicates++;
+            } else {
+                remaining.add(event);
+            }
+        }
+        for (Shard shard : current.subList(1, current.size())) {
+            remaining = shard.model.resolveDuplicates(remaining, mode, result);
+        }
+        current.get(0).model.addImportedEvents(remaining, mode, result);
+        invalidate();
+    }
+
+    public void setFilters(String searchText, LocalDate startDate, LocalDate endDate, boolean showPastEvents) {
+        this.searchText = searchText;
+        this.filterStartDate = startDate;
+        this.filterEndDate = endDate;
+        this.showPastEvents = showPastEvents;
+        // Shards share nothing, so they can be filtered on all cores at once
+        shards.parallelStream().forEach(s -> {
+            s.model.setFilters(searchText, startDate, endDate, showPastEvents);
+            // Filled in again once searchArchives() has read them
+            s.archivedMatches = List.of();
+        });
+        pendingSearch = null;
+        invalidate();
+    }
+
+    /**
+     * Starts a read of the archived events passing the current filter, for
+     * the shown page only. Call on the EDT, call run() on the search off the
+     * EDT, then pass its result to installArchivedMatches(). Returns null if
+     * past events are hidden.
+     */
+    public ArchiveSearch searchArchives() {
+        pendingSearch = showPastEvents
+                ? new ArchiveSearch(shards, searchText, filterStartDate, filterEndDate, true, currentDisplayMonth)
+                : null;
+        archivePage = pendingSearch;
+        return pendingSearch;
+    }
+
+    /**
+     * True if, with no date filter, the shown month has moved the page of
+     * archived events since it was last searched
+     */
+    public boolean isArchivePageStale() {
+        return showPastEvents && filterStartDate == null && filterEndDate == null
+                && (archivePage == null || !ArchiveSearch.pageStart(currentDisplayMonth).equals(archivePage.from));
+    }
+
+    /**
+     * Shows what an archive search found, unless a newer one has started or
+     * the filter has changed since. Must be called on the EDT.
+     */
+    public boolean installArchivedMatches(ArchiveSearch search, Map<Shard, List<CalendarEvent>> matches) {
+        if (search != pendingSearch) {
+            return false;
+        }
+        pendingSearch = null;
+        for (Shard shard : shards) {
+            List<CalendarEvent> found = matches.get(shard);
+            if (found != null) {
+                List<CalendarEvent> current = new ArrayList<>(found);
+                // Edits made during the search bring events back into the model
+                current.removeIf(shard.model::contains);
+                shard.archivedMatches = current;
+            }
+        }
+        invalidate();
+        return true;
+    }
+
+    /**
+     * Filtered events of all visible calendars, merged by time
+     */
+    public List<CalendarEvent> getFilteredAndSortedEvents() {
+        if (mergedFiltered == null) {
+            List<List<CalendarEvent>> sources = new ArrayList<>();
+            for (Shard shard : shards) {
+                if (shard.visible) {
+                    sources.add(shard.model.getFilteredAndSortedEvents());
+                    if (!shard.archivedMatches.isEmpty()) {
+                        sources.add(shard.archivedMatches);
+                    }
+                }
+            }
+            mergedFiltered = MergedEventList.of(sources);
+        }
+        return mergedFiltered;
+    }
+
+    /**
+     * Events and occurrences in [from, to) across calendars, merged by time.
+     * Hidden calendars are included unless visibleOnly is set.
+     */
+    public List<CalendarEvent> getEventsBetween(LocalDateTime from, LocalDateTime to, boolean visibleOnly) {
+        List<List<CalendarEvent>> sources = new ArrayList<>();
+        for (Shard shard : shards) {
+            if (shard.visible || !visibleOnly) {
+                sources.add(shard.model.getEventsBetween(from, to));
+                List<CalendarEvent> archived = readArchive(shard, from, to, shard.model::contains);
+                if (!archived.isEmpty()) {
+                    sources.add(archived);
+                }
+            }
+        }
+        return MergedEventList.of(sources);
+    }
+
+    /**
+     * Events and occurrences in [from, to) across all calendars, read from
+     * their stored versions so it is safe off the EDT. Archives are not read:
+     * they only hold events that ended days ago.
+     */
+    public List<CalendarEvent> getStoredEventsBetween(LocalDateTime from, LocalDateTime to) {
+        List<List<CalendarEvent>> sources = new ArrayList<>();
+        for (Shard shard : shards) {
+            sources.add(shard.model.getStoredEventsBetween(from, to));
+        }
+        return MergedEventList.of(sources);
+    }
+
+    /**
+     * Events in any calendar, hidden ones included, that overlap [start, end),
+     * other than the given event itself
+     */
+    public List<CalendarEvent> findConflicts(CalendarEvent event, LocalDateTime start, LocalDateTime end) {
+        List<List<CalendarEvent>> sources = new ArrayList<>();
+        for (Shard shard : shards) {
+            sources.add(shard.model.findConflicts(event, start, end));
+        }
+        return MergedEventList.of(sources);
+    }
+
+    /**
+     * Free windows common to the visible calendars: each shard seeks to the
+     * range in its own interval tree, and one sweep runs over the k-way
+     * merge of their results.
+     */
+    public List<CalendarModel.TimeSlot> findFreeSlots(LocalDateTime from, LocalDateTime to, LocalTime workStart,
+                                                      LocalTime workEnd, Set<DayOfWeek> workDays, Duration minLength) {
+        List<List<CalendarEvent>> sources = new ArrayList<>();
+        for (Shard shard : shards) {
+            if (shard.visible) {
+                sources.add(shard.model.getOverlapping(from, to));
+            }
+        }
+        return CalendarModel.freeSlots(MergedEventList.of(sources), from, to, workStart, workEnd, workDays, minLength);
+    }
+
+    /**
+     * Per-day counts over the visible calendars
+     */
+    public int[] countPerDay(LocalDate from, LocalDate to) {
+        int[] total = new int[(int) Math.max(0, to.toEpochDay() - from.toEpochDay())];
+        for (Shard shard : shards) {
+            if (shard.visible) {
+                int[] counts = shard.model.countPerDay(from, to);
+                for (int i = 0; i < total.length; i++) {
+                    total[i] += counts[i];
+                }
+            }
+        }
+        for (CalendarEvent event : readVisibleArchives(from, to)) {
+            total[(int) (event.getDateTime().toLocalDate().toEpochDay() - from.toEpochDay())]++;
+        }
+        return total;
+    }
+
+    public int countEvents(LocalDate from, LocalDate to, String category, int minPriority, int maxPriority) {
+        int total = 0;
+        for (Shard shard : shards) {
+            if (shard.visible) {
+                total += shard.model.countEvents(from, to, category, minPriority, maxPriority);
+            }
+        }
+        for (CalendarEvent event : readVisibleArchives(from, to)) {
+            if ((category == null || category.equals(event.getCategory()))
+                    && event.getPriority() >= minPriority && event.getPriority() <= maxPriority) {
+                total++;
+            }
+        }
+        return total;
+    }
+
+    public Map<String, Integer> countByCategory(LocalDate from, LocalDate to) {
+        Map<String, Integer> total = new TreeMap<>();
+        for (Shard shard : shards) {
+            if (shard.visible) {
+                shard.model.countByCategory(from, to).forEach((category, count) -> total.merge(category, count, Integer::sum));
+            }
+        }
+        for (CalendarEvent event : readVisibleArchives(from, to)) {
+            total.merge(event.getCategory(), 1, Integer::sum);
+        }
+        return total;
+    }
+
+    public int[] countByPriority(LocalDate from, LocalDate to) {
+        int[] total = new int[EventAggregates.MAX_PRIORITY + 1];
+        for (Shard shard : shards) {
+            if (shard.visible) {
+                int[] counts = shard.model.countByPriority(from, to);
+                for (int p = 0; p < total.length; p++) {
+                    total[p] += counts[p];
+                }
+            }
+        }
+        for (CalendarEvent event : readVisibleArchives(from, to)) {
+            total[Math.max(EventAggregates.MIN_PRIORITY, Math.min(EventAggregates.MAX_PRIORITY, event.getPriority()))]++;
+        }
+        return total;
+    }
+
+    /**
+     * The limit most important events starting in [from, to) across the
+     * visible calendars, merged from each calendar's own top entries
+     */
+    public List<CalendarEvent> getAgenda(LocalDateTime from, LocalDateTime to, int limit) {
+        List<CalendarEvent> candidates = new ArrayList<>();
+        for (Shard shard : shards) {
+            if (shard.visible) {
+                candidates.addAll(shard.model.getAgenda(from, to, limit));
+            }
+        }
+        candidates.sort(AgendaIndex.BY_RANK);
+        return candidates.size() > limit ? new ArrayList<>(candidates.subList(0, limit)) : candidates;
+    }
+
+    /**
+     * The month grid of the visible calendars, from the cache unless an
+     * edit has touched the month since it was laid out
+     */
+    public MonthLayout getMonthLayout(YearMonth month) {
+        monthLayouts.catchUp(shards);
+        MonthLayout layout = monthLayouts.get(month);
+        if (layout == null) {
+            long start = System.nanoTime();
+            layout = MonthLayout.build(month,
+                    getEventsBetween(month.atDay(1).atStartOfDay(), month.plusMonths(1).atDay(1).atStartOfDay(), true));
+            monthLayouts.put(layout);
+            CalendarMetrics.get().recordSince("view.month.layout", start);
+        }
+        return layout;
+    }
+
+    public boolean isMonthLayoutCached(YearMonth month) {
+        monthLayouts.catchUp(shards);
+        return monthLayouts.contains(month);
+    }
+
+    /**
+     * Reads the archive segments for the days in [from, to) into the
+     * archives' caches, so that laying out or counting them later reads
+     * nothing from disk. Safe to call off the EDT.
+     */
+    public void preloadArchives(LocalDate from, LocalDate to) {
+        for (Shard shard : shards) {
+            if (shard.visible) {
+                try {
+                    shard.archive.eventsBetween(from.atStartOfDay(), to.atStartOfDay());
+                } catch (IOException e) {
+                    System.err.println("Error reading archive of " + shard.name + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * True if the visible calendars can read their archives for [from, to)
+     * without going to disk
+     */
+    public boolean areArchivesLoaded(LocalDate from, LocalDate to) {
+        for (Shard shard : shards) {
+            if (shard.visible && !shard.archive.isCached(from.atStartOfDay(), to.atStartOfDay())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public LocalDate getCurrentDisplayMonth() {
+        return currentDisplayMonth;
+    }
+
+    public void setCurrentDisplayMonth(LocalDate date) {
+        this.currentDisplayMonth = YearMonth.from(date).atDay(1);
+    }
+
+    public int getEventCount() {
+        int count = 0;
+        for (Shard shard : shards) {
+            count += shard.model.getEvents().size();
+        }
+        return count;
+    }
+
+    /**
+     * Longest reminder lead in any calendar, in minutes
+     */
+    public int getMaxReminderMinutes() {
+        int max = 0;
+        for (Shard shard : shards) {
+            max = Math.max(max, shard.model.getMaxReminderMinutes());
+        }
+        return max;
+    }
+
+    /**
+     * Directories holding the calendar save files
+     */
+    static List<Path> watchedDirectories() {
+        Path defaultDir = Paths.get(CalendarModel.SAVE_FILE).toAbsolutePath().getParent();
+        return List.of(defaultDir, Paths.get(CALENDAR_DIR).toAbsolutePath());
+    }
+
+    /**
+     * Reads the calendars other processes have written since they were last
+     * read or written here. Returns true if there are changes for
+     * applyExternalChanges(). Safe to call off the EDT.
+     */
+    public boolean pollExternalChanges() {
+        boolean found = false;
+        for (Shard shard : shards) {
+            try {
+                found |= shard.model.pollExternalChanges();
+            } catch (IOException e) {
+                CalendarMetrics.get().increment("store.external.errors");
+                System.err.println("Error reading changes to " + shard.name + ": " + e.getMessage());
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Merges the changes found by pollExternalChanges() into the models.
+     * Returns the number of events changed. Must be called on the EDT.
+     */
+    public int applyExternalChanges() {
+        int changed = 0;
+        for (Shard shard : shards) {
+            changed += shard.model.applyExternalChanges();
+        }
+        if (changed > 0) {
+            invalidate();
+        }
+        return changed;
+    }
+
+    /**
+     * The current state of every calendar, to pass to exchangeSync() off
+     * the EDT and then, with its results, to applySync() on it
+     */
+    public Map<Shard, PersistentEventMap> syncStates() {
+        Map<Shard, PersistentEventMap> states = new IdentityHashMap<>();
+        for (Shard shard : shards) {
+            states.put(shard, shard.model.getState());
+        }
+        return states;
+    }
+
+    /**
+     * Syncs each calendar with the server under its own name. A calendar
+     * that fails is left out and tried again next time.
+     */
+    public static Map<Shard, SyncClient.Result> exchangeSync(SyncClient client, Map<Shard, PersistentEventMap> states) {
+        Map<Shard, SyncClient.Result> results = new IdentityHashMap<>();
+        for (Map.Entry<Shard, PersistentEventMap> entry : states.entrySet()) {
+            Shard shard = entry.getKey();
+            try {
+                SyncClient.Result result = shard.model.exchangeSync(client, shard.name, entry.getValue());
+                if (result != null) {
+                    results.put(shard, result);
+                }
+            } catch (IOException | RuntimeException e) {
+                CalendarMetrics.get().increment("sync.errors");
+                System.err.println("Error syncing " + shard.name + ": " + e.getMessage());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Applies what exchangeSync() brought back. Returns the number of
+     * events changed by the server. Must be called on the EDT.
+     */
+    public int applySync(Map<Shard, PersistentEventMap> states, Map<Shard, SyncClient.Result> results) {
+        int changed = 0;
+        for (Map.Entry<Shard, SyncClient.Result> entry : results.entrySet()) {
+            Shard shard = entry.getKey();
+            if (shards.contains(shard)) {
+                changed += shard.model.applySync(states.get(shard), entry.getValue());
+            }
+        }
+        // Even when nothing arrived, accepted changes now carry new revisions
+        invalidate();
+        return changed;
+    }
+
+    public boolean isDirty() {
+        for (Shard shard : shards) {
+            if (shard.model.isDirty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Hands a snapshot of every changed calendar to its writer. The future
+     * completes when all of them are on disk. Must be called on the EDT.
+     */
+    public CompletableFuture<Void> saveIfDirty() {
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (Shard shard : shards) {
+            if (shard.model.isDirty()) {
+                if (!DEFAULT_CALENDAR.equals(shard.name)) {
+                    new File(CALENDAR_DIR).mkdirs();
+                }
+                writes.add(shard.saver.submit(shard.model.snapshot()));
+            }
+        }
+        return CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0]));
+    }
+
+    public void flush(long timeoutSeconds) {
+        for (Shard shard : shards) {
+            shard.saver.flush(timeoutSeconds);
+        }
+    }
+
+    /**
+     * Copies the events of all calendars, for exporting
+     */
+    public List<CalendarEvent> snapshotEvents() {
+        List<CalendarEvent> all = new ArrayList<>();
+        for (Shard shard : shards) {
+            all.addAll(shard.model.snapshot().events.values());
+        }
+        return all;
+    }
+
+    /**
+     * Archived events of every calendar, for exporting. Safe to call off the EDT.
+     */
+    public List<CalendarEvent> readArchivedEvents() throws IOException {
+        List<CalendarEvent> all = new ArrayList<>();
+        for (Shard shard : shards) {
+            all.addAll(shard.archive.allEvents());
+        }
+        return all;
+    }
+
+    /**
+     * Events due for the archive in each calendar: one-off events that
+     * ended more than ARCHIVE_AFTER_DAYS ago. Pass the result to
+     * writeArchives() off the EDT, then to dropArchived() on it.
+     */
+    public Map<Shard, List<CalendarEvent>> collectArchivable() {
+        LocalDateTime cutoff = LocalDate.now(clock).minusDays(ARCHIVE_AFTER_DAYS).atStartOfDay();
+        Map<Shard, List<CalendarEvent>> moves = new IdentityHashMap<>();
+        for (Shard shard : shards) {
+            List<CalendarEvent> archivable = shard.model.getArchivable(cutoff);
+            if (!archivable.isEmpty()) {
+                moves.put(shard, archivable);
+            }
+        }
+        return moves;
+    }
+
+    public static void writeArchives(Map<Shard, List<CalendarEvent>> moves) throws IOException {
+        for (Map.Entry<Shard, List<CalendarEvent>> move : moves.entrySet()) {
+            move.getKey().archive.append(move.getValue());
+        }
+    }
+
+    /**
+     * Removes events from the hot models once they are safely archived.
+     * Returns the number moved.
+     */
+    public int dropArchived(Map<Shard, List<CalendarEvent>> moves) {
+        int moved = 0;
+        for (Map.Entry<Shard, List<CalendarEvent>> move : moves.entrySet()) {
+            Shard shard = move.getKey();
+            moved += shard.model.removeArchived(move.getValue());
+            // They now show up from the archive instead of the model; any edited meanwhile stay in the model
+            List<CalendarEvent> dropped = new ArrayList<>(move.getValue());
+            dropped.removeIf(shard.model::contains);
+            if (archivePage != null) {
+                // Only those on the page of archive the table shows
+                dropped.removeIf(e -> e.getDateTime().isBefore(archivePage.from) || !e.getDateTime().isBefore(archivePage.to));
+            }
+            List<CalendarEvent> matches = new ArrayList<>(shard.archivedMatches);
+            matches.addAll(filterArchived(shard.model, dropped, searchText, filterStartDate, filterEndDate, showPastEvents));
+            matches.sort(Comparator.comparing(CalendarEvent::getDateTime));
+            shard.archivedMatches = matches;
+        }
+        invalidate();
+        return moved;
+    }
+
+    /**
+     * Name of the change undo() would revert, or null if there is none
+     */
+    public String getUndoLabel() {
+        return undoStack.isEmpty() ? null : undoStack.peek().label;
+    }
+
+    public String getRedoLabel() {
+        return redoStack.isEmpty() ? null : redoStack.peek().label;
+    }
+
+    /**
+     * Reverts the latest change. Only the events it touched are re-indexed.
+     */
+    public boolean undo() {
+        if (undoStack.isEmpty()) {
+            return false;
+        }
+        Checkpoint target = undoStack.pop();
+        redoStack.push(new Checkpoint(target.label, shards));
+        restore(target);
+        return true;
+    }
+
+    public boolean redo() {
+        if (redoStack.isEmpty()) {
+            return false;
+        }
+        Checkpoint target = redoStack.pop();
+        undoStack.push(new Checkpoint(target.label, shards));
+        restore(target);
+        return true;
+    }
+
+    /**
+     * Records the state before a change. A new change drops anything that
+     * could have been redone, and the oldest step goes once the history is full.
+     */
+    private void checkpoint(String label) {
+        undoStack.push(new Checkpoint(label, shards));
+        if (undoStack.size() > MAX_UNDO_STEPS) {
+            undoStack.removeLast();
+        }
+        redoStack.clear();
+    }
+
+    private void restore(Checkpoint checkpoint) {
+        if (checkpoint.shards != shards) {
+            // Undoing a load or a new calendar: the earlier shards come back with their writers
+            for (Shard shard : checkpoint.shards) {
+                shard.model.setFilters(searchText, filterStartDate, filterEndDate, showPastEvents);
+            }
+            shards = checkpoint.shards;
+        }
+        for (Shard shard : shards) {
+            shard.model.restore(checkpoint.states.get(shard));
+        }
+        invalidate();
+    }
+
+    private Shard newShard(String name, CalendarModel model) {
+        String dir = EventArchive.dirFor(model.getSaveFile());
+        return new Shard(name, model, archives.computeIfAbsent(dir, d -> new EventArchive(d, BlobStore.forSaveFile(model.getSaveFile()))));
+    }
+
+    private static List<CalendarEvent> filterArchived(CalendarModel model, List<CalendarEvent> archived, String searchText,
+                                                      LocalDate startDate, LocalDate endDate, boolean showPastEvents) {
+        if (!showPastEvents || archived.isEmpty()) {
+            return List.of();
+        }
+        Predicate<CalendarEvent> textMatch = model.textFilter(searchText == null ? "" : searchText.toLowerCase());
+        LocalDateTime now = LocalDateTime.now(model.getClock());
+        List<CalendarEvent> matches = new ArrayList<>();
+        for (CalendarEvent event : archived) {
+            if (CalendarModel.matchesFilter(event, textMatch, startDate, endDate, true, now)) {
+                matches.add(event);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Archived events of one calendar starting in [from, to), leaving out
+     * any that are back in the model
+     */
+    private static List<CalendarEvent> readArchive(Shard shard, LocalDateTime from, LocalDateTime to,
+                                                   Predicate<CalendarEvent> inModel) {
+        try {
+            List<CalendarEvent> archived = shard.archive.eventsBetween(from, to);
+            archived.removeIf(inModel);
+            return archived;
+        } catch (IOException e) {
+            CalendarMetrics.get().increment("archive.read.errors");
+            System.err.println("Error reading archive of " + shard.name + ": " + e.getMessage());
+            return List.of();
+        }
+    }
+
+    private List<CalendarEvent> readVisibleArchives(LocalDate from, LocalDate to) {
+        List<CalendarEvent> archived = new ArrayList<>();
+        for (Shard shard : shards) {
+            if (shard.visible) {
+                archived.addAll(readArchive(shard, from.atStartOfDay(), to.atStartOfDay(), shard.model::contains));
+            }
+        }
+        return archived;
+    }
+
+    private boolean isArchivedDuplicate(CalendarEvent event, List<Shard> current) {
+        for (Shard shard : current) {
+            try {
+                if (shard.archive.findDuplicate(event) != null) {
+                    return true;
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading archive of " + shard.name + ": " + e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The calendar whose archive holds the event, or null
+     */
+    private Shard archiveOf(CalendarEvent event) {
+        for (Shard shard : shards) {
+            try {
+                if (shard.archive.contains(event)) {
+                    return shard;
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading archive of " + shard.name + ": " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Moves an archived event back into its calendar's model so it can be
+     * edited or deleted like any other. The model gets the event as it was
+     * archived, so an edit already made to the object can be recorded, and
+     * undone, as a change to it. Returns that calendar, or null if the event
+     * is not archived.
+     */
+    private Shard unarchive(CalendarEvent event) {
+        Shard shard = archiveOf(event);
+        if (shard == null) {
+            return null;
+        }
+        CalendarEvent archived;
+        try {
+            archived = shard.archive.remove(event);
+        } catch (IOException e) {
+            System.err.println("Error updating archive of " + shard.name + ": " + e.getMessage());
+            return null;
+        }
+        if (archived == null) {
+            return null;
+        }
+        shard.model.addEvent(archived);
+        List<CalendarEvent> matches = new ArrayList<>(shard.archivedMatches);
+        matches.removeIf(match -> match == event);
+        shard.archivedMatches = matches;
+        invalidate();
+        return shard;
+    }
+
+    private Shard find(String name) {
+        for (Shard shard : shards) {
+            if (shard.name.equals(name)) {
+                return shard;
+            }
+        }
+        return null;
+    }
+
+    private Shard ownerOf(CalendarEvent event) {
+        for (Shard shard : shards) {
+            if (shard.model.contains(event)) {
+                return shard;
+            }
+        }
+        return null;
+    }
+
+    private void invalidate() {
+        mergedFiltered = null;
+    }
+}
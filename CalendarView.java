@@ -1,20 +1,24 @@
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
+import java.awt.event.ActionEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.time.DayOfWeek;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
-import java.util.stream.Collectors;
 
 /**
  * View class that manages UI components and interactions
@@ -32,6 +36,17 @@ class CalendarView {
     private JCheckBox showPastEventsCheckbox;
     private JLabel monthYearLabel;
     private JPanel monthViewPanel;
+    private JLabel statusLabel;
+    private DefaultTableModel agendaTableModel;
+    private JComboBox<String> agendaHorizonBox;
+    private JSpinner agendaLimitSpinner;
+    private List<CalendarEvent> agendaEvents = List.of();
+    private JDialog reminderDialog;
+    private DefaultListModel<CalendarEvent> reminderListModel;
+    private Timer reminderHideTimer;
+    private static final int MAX_REMINDERS_SHOWN = 1000;
+    private static final String[] AGENDA_HORIZONS = {"Next 24 hours", "Next 7 days", "Next 30 days"};
+    private static final int[] AGENDA_HORIZON_HOURS = {24, 7 * 24, 30 * 24};
     private Color[] categoryColors = {
             new Color(255, 200, 200), // Light red
             new Color(200, 255, 200), // Light green
@@ -66,8 +81,10 @@ class CalendarView {
         // Calendar view on the left
         JPanel leftPanel = createCalendarPanel();
 
-        // Event list on the right
-        JPanel rightPanel = createEventListPanel();
+        // Event list and agenda on the right
+        JTabbedPane rightPanel = new JTabbedPane();
+        rightPanel.addTab("Events", createEventListPanel());
+        rightPanel.addTab("Agenda", createAgendaPanel());
 
         mainSplitPane.setLeftComponent(leftPanel);
         mainSplitPane.setRightComponent(rightPanel);
@@ -117,18 +134,15 @@ class CalendarView {
         prevButton.addActionListener(e -> {
             LocalDate currentMonth = controller.getCurrentDisplayMonth();
             controller.setCurrentDisplayMonth(currentMonth.minusMonths(1));
-            updateCalendarPanel(controller.getEvents());
         });
 
         nextButton.addActionListener(e -> {
             LocalDate currentMonth = controller.getCurrentDisplayMonth();
             controller.setCurrentDisplayMonth(currentMonth.plusMonths(1));
-            updateCalendarPanel(controller.getEvents());
         });
 
         todayButton.addActionListener(e -> {
-            controller.setCurrentDisplayMonth(LocalDate.now());
-            updateCalendarPanel(controller.getEvents());
+            controller.setCurrentDisplayMonth(LocalDate.now(controller.getClock()));
         });
 
         return panel;
@@ -148,11 +162,12 @@ class CalendarView {
         return header;
     }
 
-    public void updateCalendarPanel(java.util.List<CalendarEvent> events) {
+    public void updateCalendarPanel(MonthLayout layout) {
+        CalendarJfrEvents.MonthGridRebuild jfr = new CalendarJfrEvents.MonthGridRebuild();
+        jfr.begin();
         monthViewPanel.removeAll();
 
-        LocalDate currentMonth = controller.getCurrentDisplayMonth();
-        YearMonth yearMonth = YearMonth.from(currentMonth);
+        YearMonth yearMonth = layout.month;
         LocalDate firstDay = yearMonth.atDay(1);
         int daysInMonth = yearMonth.lengthOfMonth();
 
@@ -171,7 +186,7 @@ class CalendarView {
         // Add cells for each day of the month
         for (int day = 1; day <= daysInMonth; day++) {
             LocalDate date = yearMonth.atDay(day);
-            monthViewPanel.add(createDayPanel(date, events));
+            monthViewPanel.add(createDayPanel(date, layout));
         }
 
         // Add empty cells to fill the last row if needed
@@ -185,6 +200,10 @@ class CalendarView {
 
         monthViewPanel.revalidate();
         monthViewPanel.repaint();
+
+        jfr.month = yearMonth.toString();
+        jfr.events = layout.eventCount;
+        jfr.commit();
     }
 
     private JPanel createEmptyDayPanel() {
@@ -194,12 +213,12 @@ class CalendarView {
         return panel;
     }
 
-    private JPanel createDayPanel(LocalDate date, java.util.List<CalendarEvent> events) {
+    private JPanel createDayPanel(LocalDate date, MonthLayout layout) {
         JPanel dayPanel = new JPanel(new BorderLayout());
         dayPanel.setBorder(BorderFactory.createLineBorder(Color.LIGHT_GRAY));
 
         // Check if this is today
-        boolean isToday = date.equals(LocalDate.now());
+        boolean isToday = date.equals(LocalDate.now(controller.getClock()));
 
         // Day number label
         JLabel dayLabel = new JLabel(String.valueOf(date.getDayOfMonth()), SwingConstants.RIGHT);
@@ -213,32 +232,26 @@ class CalendarView {
         JPanel eventsPanel = new JPanel();
         eventsPanel.setLayout(new BoxLayout(eventsPanel, BoxLayout.Y_AXIS));
 
-        // Filter events for this day
-        java.util.List<CalendarEvent> dayEvents = events.stream()
-                .filter(e -> e.getDateTime().toLocalDate().equals(date))
-                .sorted(Comparator.comparing(CalendarEvent::getDateTime))
-                .collect(Collectors.toList());
+        java.util.List<CalendarEvent> dayEvents = layout.eventsOn(date.getDayOfMonth());
 
-        // Add event indicators (limited to first 3 for space)
-        int displayLimit = 3;
-        for (int i = 0; i < Math.min(displayLimit, dayEvents.size()); i++) {
-            CalendarEvent event = dayEvents.get(i);
+        // Add event indicators (limited to the first few for space)
+        int displayLimit = MonthLayout.INDICATORS_PER_DAY;
+        for (MonthLayout.Indicator indicator : layout.indicatorsOn(date.getDayOfMonth())) {
             JPanel eventIndicator = new JPanel();
             eventIndicator.setPreferredSize(new Dimension(10, 12));
 
             // Use color based on category
-            int colorIndex = Math.abs(event.getCategory().hashCode()) % categoryColors.length;
+            int colorIndex = Math.abs(indicator.category.hashCode()) % categoryColors.length;
             eventIndicator.setBackground(categoryColors[colorIndex]);
 
             // Tooltip with event details
-            String timeStr = event.getDateTime().format(DateTimeFormatter.ofPattern("HH:mm"));
-            eventIndicator.setToolTipText(timeStr + " - " + event.getTitle());
+            eventIndicator.setToolTipText(indicator.toolTip);
 
             JPanel wrapperPanel = new JPanel(new BorderLayout());
             wrapperPanel.setPreferredSize(new Dimension(dayPanel.getWidth() - 6, 14));
             wrapperPanel.setBorder(BorderFactory.createEmptyBorder(1, 3, 1, 3));
 
-            JLabel eventLabel = new JLabel(timeStr + " " + truncateText(event.getTitle(), 15));
+            JLabel eventLabel = new JLabel(indicator.label);
             eventLabel.setFont(new Font("SansSerif", Font.PLAIN, 9));
 
             wrapperPanel.add(eventIndicator, BorderLayout.WEST);
@@ -269,7 +282,7 @@ class CalendarView {
                     }
                 } else if (e.getClickCount() == 2) {
                     // Add new event on this day
-                    LocalDateTime dateTime = date.atTime(LocalTime.now().truncatedTo(ChronoUnit.HOURS));
+                    LocalDateTime dateTime = date.atTime(LocalTime.now(controller.getClock()).truncatedTo(ChronoUnit.HOURS));
                     CalendarEvent newEvent = new CalendarEvent("", dateTime);
                     controller.showEventDialog(newEvent);
                 }
@@ -283,14 +296,14 @@ class CalendarView {
         JDialog dialog = new JDialog(frame, date.format(DateTimeFormatter.ofPattern("EEEE, MMMM d, yyyy")), true);
         dialog.setLayout(new BorderLayout());
 
-        DefaultListModel<String> listModel = new DefaultListModel<>();
-        for (CalendarEvent event : dayEvents) {
-            String timeStr = event.getDateTime().format(DateTimeFormatter.ofPattern("HH:mm"));
-            listModel.addElement(timeStr + " - " + event.getTitle());
-        }
-
-        JList<String> eventsList = new JList<>(listModel);
+        // Rows are read from the day's bucket as they scroll into view; with a
+        // prototype row, the list never measures the others either
+        JList<CalendarEvent> eventsList = new JList<>(new DayEventsListModel(dayEvents));
+        eventsList.setCellRenderer(new DayEventRenderer());
         eventsList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        if (!dayEvents.isEmpty()) {
+            eventsList.setPrototypeCellValue(dayEvents.get(0));
+        }
 
         JScrollPane scrollPane = new JScrollPane(eventsList);
         scrollPane.setPreferredSize(new Dimension(400, 200));
@@ -307,31 +320,29 @@ class CalendarView {
         buttonPanel.add(closeButton);
 
         addButton.addActionListener(e -> {
-            LocalDateTime dateTime = date.atTime(LocalTime.now().truncatedTo(ChronoUnit.HOURS));
+            LocalDateTime dateTime = date.atTime(LocalTime.now(controller.getClock()).truncatedTo(ChronoUnit.HOURS));
             CalendarEvent newEvent = new CalendarEvent("", dateTime);
             dialog.dispose();
             controller.showEventDialog(newEvent);
         });
 
         editButton.addActionListener(e -> {
-            int selectedIndex = eventsList.getSelectedIndex();
-            if (selectedIndex >= 0) {
-                CalendarEvent event = dayEvents.get(selectedIndex);
+            CalendarEvent event = eventsList.getSelectedValue();
+            if (event != null) {
                 dialog.dispose();
                 controller.showEventDialog(event);
             }
         });
 
         deleteButton.addActionListener(e -> {
-            int selectedIndex = eventsList.getSelectedIndex();
-            if (selectedIndex >= 0) {
-                CalendarEvent event = dayEvents.get(selectedIndex);
+            CalendarEvent event = eventsList.getSelectedValue();
+            if (event != null) {
                 int result = JOptionPane.showConfirmDialog(dialog,
                         "Are you sure you want to delete this event?",
                         "Confirm Delete", JOptionPane.YES_NO_OPTION);
 
                 if (result == JOptionPane.YES_OPTION) {
-                    controller.deleteEvent(controller.getEvents().indexOf(event));
+                    controller.deleteEvent(event);
                     dialog.dispose();
                 }
             }
@@ -346,6 +357,46 @@ class CalendarView {
         dialog.setVisible(true);
     }
 
+    /**
+     * The events of one day, straight from the month layout's bucket for
+     * that day, without copying them into a model of its own
+     */
+    private static class DayEventsListModel extends AbstractListModel<CalendarEvent> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<CalendarEvent> events;
+
+        DayEventsListModel(List<CalendarEvent> events) {
+            this.events = events;
+        }
+
+        @Override
+        public int getSize() {
+            return events.size();
+        }
+
+        @Override
+        public CalendarEvent getElementAt(int index) {
+            return events.get(index);
+        }
+    }
+
+    /**
+     * Renders "HH:mm - title" rows
+     */
+    private static class DayEventRenderer extends DefaultListCellRenderer {
+        private static final long serialVersionUID = 1L;
+        private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm");
+
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                      boolean isSelected, boolean cellHasFocus) {
+            CalendarEvent event = (CalendarEvent) value;
+            String text = event.getDateTime().format(TIME_FORMAT) + " - " + event.getTitle();
+            return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+        }
+    }
+
     private JPanel createEventListPanel() {
         JPanel panel = new JPanel(new BorderLayout());
         panel.setBorder(BorderFactory.createEmptyBorder(10, 5, 10, 10));
@@ -568,7 +619,7 @@ class CalendarView {
 
 // Button action listeners
         addButton.addActionListener(e -> {
-            LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS);
+            LocalDateTime now = LocalDateTime.now(controller.getClock()).truncatedTo(ChronoUnit.HOURS);
             CalendarEvent newEvent = new CalendarEvent("", now);
             controller.showEventDialog(newEvent);
         });
@@ -619,24 +670,104 @@ class CalendarView {
 
         JButton saveButton = new JButton("Save");
         JButton loadButton = new JButton("Load");
-        JButton importButton = new JButton("Import CSV");
-        JButton exportButton = new JButton("Export CSV");
+        JButton undoButton = new JButton("Undo");
+        JButton redoButton = new JButton("Redo");
+        JButton syncButton = new JButton("Sync");
+        JButton importButton = new JButton("Import");
+        JButton exportButton = new JButton("Export");
+        JButton calendarsButton = new JButton("Calendars");
+        JButton conflictsButton = new JButton("Conflicts");
+        JButton freeTimeButton = new JButton("Free Time");
+        JButton statisticsButton = new JButton("Statistics");
         JButton helpButton = new JButton("Help");
 
         toolbar.add(saveButton);
         toolbar.add(loadButton);
         toolbar.addSeparator();
+        toolbar.add(undoButton);
+        toolbar.add(redoButton);
+        if (controller.isSyncEnabled()) {
+            toolbar.add(syncButton);
+        }
+        toolbar.addSeparator();
         toolbar.add(importButton);
         toolbar.add(exportButton);
         toolbar.addSeparator();
+        toolbar.add(calendarsButton);
+        toolbar.add(conflictsButton);
+        toolbar.add(freeTimeButton);
+        toolbar.add(statisticsButton);
+        toolbar.addSeparator();
         toolbar.add(helpButton);
 
+        undoButton.addActionListener(e -> controller.undo());
+        redoButton.addActionListener(e -> controller.redo());
+        syncButton.addActionListener(e -> controller.syncNow());
+        syncButton.setToolTipText("Exchange changes with the sync server");
+        // Tooltips name the step each button would take
+        undoButton.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseEntered(MouseEvent e) {
+                String label = controller.getUndoLabel();
+                undoButton.setToolTipText(label == null ? "Nothing to undo" : "Undo " + label + " (Ctrl+Z)");
+            }
+        });
+        redoButton.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseEntered(MouseEvent e) {
+                String label = controller.getRedoLabel();
+                redoButton.setToolTipText(label == null ? "Nothing to redo" : "Redo " + label + " (Ctrl+Y)");
+            }
+        });
+
+        InputMap keys = frame.getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW);
+        ActionMap actions = frame.getRootPane().getActionMap();
+        keys.put(KeyStroke.getKeyStroke("control Z"), "undo");
+        keys.put(KeyStroke.getKeyStroke("control Y"), "redo");
+        keys.put(KeyStroke.getKeyStroke("control shift Z"), "redo");
+        actions.put("undo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                controller.undo();
+            }
+        });
+        actions.put("redo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                controller.redo();
+            }
+        });
+
+        conflictsButton.addActionListener(e -> controller.showConflictReport(90));
+        freeTimeButton.addActionListener(e -> showFreeTimeDialog());
+        statisticsButton.addActionListener(e -> showStatisticsDialog());
+
+        calendarsButton.addActionListener(e -> {
+            // Built on demand so it always lists the calendars currently loaded
+            JPopupMenu menu = new JPopupMenu();
+            for (String name : controller.getCalendarNames()) {
+                JCheckBoxMenuItem item = new JCheckBoxMenuItem(name, controller.isCalendarVisible(name));
+                item.addActionListener(ev -> controller.setCalendarVisible(name, item.isSelected()));
+                menu.add(item);
+            }
+            menu.addSeparator();
+            JMenuItem newCalendarItem = new JMenuItem("New Calendar...");
+            newCalendarItem.addActionListener(ev -> {
+                String name = JOptionPane.showInputDialog(frame, "Calendar name:", "New Calendar", JOptionPane.PLAIN_MESSAGE);
+                if (name != null && !name.trim().isEmpty()) {
+                    controller.createCalendar(name);
+                }
+            });
+            menu.add(newCalendarItem);
+            menu.show(calendarsButton, 0, calendarsButton.getHeight());
+        });
+
         saveButton.addActionListener(e -> controller.saveEvents());
 
         loadButton.addActionListener(e -> {
             int result = JOptionPane.showConfirmDialog(
                     frame,
-                    "Loading events will discard any unsaved changes. Continue?",
+                    "Loading events will replace the events shown (Undo brings them back). Continue?",
                     "Confirm Load",
                     JOptionPane.YES_NO_OPTION
             );
@@ -647,19 +778,31 @@ class CalendarView {
 
         importButton.addActionListener(e -> {
             JFileChooser fileChooser = new JFileChooser();
+            fileChooser.addChoosableFileFilter(new FileNameExtensionFilter("iCalendar Files (*.ics)", "ics"));
             fileChooser.setFileFilter(new FileNameExtensionFilter("CSV Files (*.csv)", "csv"));
             if (fileChooser.showOpenDialog(frame) == JFileChooser.APPROVE_OPTION) {
-                controller.importEvents(fileChooser.getSelectedFile().getAbsolutePath());
+                String[] options = {"Skip duplicates", "Merge duplicates", "Replace duplicates"};
+                int choice = JOptionPane.showOptionDialog(frame,
+                        "How should events that already exist be handled?",
+                        "Import", JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE,
+                        null, options, options[0]);
+                if (choice >= 0) {
+                    controller.importEvents(fileChooser.getSelectedFile().getAbsolutePath(),
+                            CalendarModel.DuplicateMode.values()[choice]);
+                }
             }
         });
 
         exportButton.addActionListener(e -> {
             JFileChooser fileChooser = new JFileChooser();
+            FileNameExtensionFilter icsFilter = new FileNameExtensionFilter("iCalendar Files (*.ics)", "ics");
+            fileChooser.addChoosableFileFilter(icsFilter);
             fileChooser.setFileFilter(new FileNameExtensionFilter("CSV Files (*.csv)", "csv"));
             if (fileChooser.showSaveDialog(frame) == JFileChooser.APPROVE_OPTION) {
                 String path = fileChooser.getSelectedFile().getAbsolutePath();
-                if (!path.toLowerCase().endsWith(".csv")) {
-                    path += ".csv";
+                String lower = path.toLowerCase();
+                if (!lower.endsWith(".csv") && !lower.endsWith(".ics")) {
+                    path += fileChooser.getFileFilter() == icsFilter ? ".ics" : ".csv";
                 }
                 controller.exportEvents(path);
             }
@@ -672,8 +815,8 @@ class CalendarView {
                             "• Double-click on a day to add a new event\n" +
                             "• Single-click on a day to view events for that day\n" +
                             "• Use filters to narrow down events\n" +
-                            "• Import/Export allows you to share your calendar with others\n" +
-                            "• Calendar auto-saves every 5 minutes\n\n" +
+                            "• Import/Export (CSV or iCalendar) allows you to share your calendar with others\n" +
+                            "• Changes are saved automatically in the background\n\n" +
                             "For more help, please refer to the user manual.",
                     "Help",
                     JOptionPane.INFORMATION_MESSAGE
@@ -683,11 +826,84 @@ class CalendarView {
         return toolbar;
     }
 
+    /**
+     * The most important upcoming events, highest priority first
+     */
+    private JPanel createAgendaPanel() {
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.setBorder(BorderFactory.createEmptyBorder(10, 5, 10, 10));
+
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        agendaHorizonBox = new JComboBox<>(AGENDA_HORIZONS);
+        agendaHorizonBox.setSelectedIndex(1);
+        agendaLimitSpinner = new JSpinner(new SpinnerNumberModel(10, 1, 100, 1));
+        controls.add(new JLabel("Show top"));
+        controls.add(agendaLimitSpinner);
+        controls.add(new JLabel("events in the"));
+        controls.add(agendaHorizonBox);
+
+        String[] columnNames = {"Priority", "Time", "Title", "Category"};
+        agendaTableModel = new DefaultTableModel(columnNames, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JTable agendaTable = new JTable(agendaTableModel);
+        agendaTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        agendaTable.setRowHeight(25);
+        TableColumnModel columnModel = agendaTable.getColumnModel();
+        columnModel.getColumn(0).setPreferredWidth(60);
+        columnModel.getColumn(1).setPreferredWidth(120);
+        columnModel.getColumn(2).setPreferredWidth(250);
+        columnModel.getColumn(3).setPreferredWidth(100);
+
+        agendaTable.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int row = agendaTable.getSelectedRow();
+                if (e.getClickCount() == 2 && row >= 0 && row < agendaEvents.size()) {
+                    showEventDetailsDialog(agendaEvents.get(row));
+                }
+            }
+        });
+
+        agendaHorizonBox.addActionListener(e -> refreshAgenda());
+        agendaLimitSpinner.addChangeListener(e -> refreshAgenda());
+
+        panel.add(controls, BorderLayout.NORTH);
+        panel.add(new JScrollPane(agendaTable), BorderLayout.CENTER);
+        return panel;
+    }
+
+    /**
+     * Re-runs the agenda query with the panel's current horizon and limit
+     */
+    public void refreshAgenda() {
+        if (agendaTableModel == null) {
+            return;
+        }
+        int hours = AGENDA_HORIZON_HOURS[agendaHorizonBox.getSelectedIndex()];
+        int limit = (Integer) agendaLimitSpinner.getValue();
+        agendaEvents = controller.getAgenda(hours, limit);
+
+        DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("EEE yyyy-MM-dd HH:mm");
+        agendaTableModel.setRowCount(0);
+        for (CalendarEvent event : agendaEvents) {
+            agendaTableModel.addRow(new Object[]{
+                    event.getPriority(),
+                    event.getDateTime().format(timeFormatter),
+                    event.getTitle(),
+                    event.getCategory()
+            });
+        }
+    }
+
     private JPanel createStatusBar() {
         JPanel statusBar = new JPanel(new BorderLayout());
         statusBar.setBorder(BorderFactory.createEmptyBorder(2, 5, 2, 5));
 
-        JLabel statusLabel = new JLabel("Ready");
+        statusLabel = new JLabel("Ready");
         JLabel eventCountLabel = new JLabel("No events");
 
         statusBar.add(statusLabel, BorderLayout.WEST);
@@ -697,6 +913,8 @@ class CalendarView {
     }
 
     public void updateEventTable(List<CalendarEvent> events) {
+        CalendarJfrEvents.TableRebuild jfr = new CalendarJfrEvents.TableRebuild();
+        jfr.begin();
         tableModel.setRowCount(0);
 
         DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
@@ -710,6 +928,8 @@ class CalendarView {
             };
             tableModel.addRow(row);
         }
+        jfr.rows = events.size();
+        jfr.commit();
 
         // Update event count in status bar
         Component statusBar = frame.getContentPane().getComponent(2);
@@ -722,45 +942,111 @@ class CalendarView {
         }
     }
 
+    public void setStatusText(String text) {
+        statusLabel.setText(text);
+    }
+
     public void showMessage(String message, String title, int messageType) {
         JOptionPane.showMessageDialog(frame, message, title, messageType);
     }
 
-    public void showNotification(CalendarEvent event) {
-        JDialog dialog = new JDialog(frame, "Event Reminder", false);
-        dialog.setLayout(new BorderLayout());
-
-        String title = event.getTitle();
-        String time = event.getDateTime().format(DateTimeFormatter.ofPattern("HH:mm"));
-        String date = event.getDateTime().format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-
-        JLabel titleLabel = new JLabel(title, SwingConstants.CENTER);
-        titleLabel.setFont(new Font("SansSerif", Font.BOLD, 14));
+    /**
+     * Adds reminders to the reminder window, opening it if needed. The same
+     * window is reused for every batch and closes itself after a minute
+     * without new reminders.
+     */
+    public void showReminders(List<CalendarEvent> events) {
+        if (reminderDialog == null) {
+            createReminderDialog();
+        }
+        for (CalendarEvent event : events) {
+            reminderListModel.addElement(event);
+        }
+        // Keep the window bounded when reminders pile up unattended
+        int excess = reminderListModel.getSize() - MAX_REMINDERS_SHOWN;
+        if (excess > 0) {
+            reminderListModel.removeRange(0, excess - 1);
+        }
+        int count = reminderListModel.getSize();
+        reminderDialog.setTitle(count == 1 ? "Event Reminder" : count + " Event Reminders");
+        reminderHideTimer.restart();
+        if (!reminderDialog.isVisible()) {
+            reminderDialog.setLocationRelativeTo(null);
+            reminderDialog.setVisible(true);
+        }
+    }
 
-        JLabel timeLabel = new JLabel("Time: " + time, SwingConstants.CENTER);
-        JLabel dateLabel = new JLabel("Date: " + date, SwingConstants.CENTER);
+    private void createReminderDialog() {
+        reminderDialog = new JDialog(frame, "Event Reminder", false);
+        reminderDialog.setLayout(new BorderLayout());
+        reminderDialog.setDefaultCloseOperation(WindowConstants.HIDE_ON_CLOSE);
 
-        JPanel detailsPanel = new JPanel(new GridLayout(3, 1));
-        detailsPanel.setBorder(BorderFactory.createEmptyBorder(10, 20, 10, 20));
-        detailsPanel.add(titleLabel);
-        detailsPanel.add(timeLabel);
-        detailsPanel.add(dateLabel);
+        reminderListModel = new DefaultListModel<>();
+        JList<CalendarEvent> reminderList = new JList<>(reminderListModel);
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+        reminderList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                CalendarEvent event = (CalendarEvent) value;
+                String text = event.getDateTime().format(formatter) + "  " + event.getTitle();
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+        reminderList.setFont(new Font("SansSerif", Font.BOLD, 13));
 
+        JComboBox<Integer> snoozeMinutes = new JComboBox<>(new Integer[]{5, 10, 15, 30});
+        JButton snoozeButton = new JButton("Snooze");
         JButton dismissButton = new JButton("Dismiss");
-        dismissButton.addActionListener(e -> dialog.dispose());
 
-        dialog.add(detailsPanel, BorderLayout.CENTER);
-        dialog.add(dismissButton, BorderLayout.SOUTH);
-
-        dialog.setSize(300, 150);
-        dialog.setLocationRelativeTo(null);
-        dialog.setAlwaysOnTop(true);
-        dialog.setVisible(true);
+        // Both act on the selected reminders, or on all of them when none is selected
+        snoozeButton.addActionListener(e -> {
+            List<CalendarEvent> chosen = takeReminders(reminderList);
+            controller.snoozeReminders(chosen, (Integer) snoozeMinutes.getSelectedItem());
+        });
+        dismissButton.addActionListener(e -> takeReminders(reminderList));
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttonPanel.add(snoozeMinutes);
+        buttonPanel.add(new JLabel("min"));
+        buttonPanel.add(snoozeButton);
+        buttonPanel.add(dismissButton);
+
+        reminderDialog.add(new JScrollPane(reminderList), BorderLayout.CENTER);
+        reminderDialog.add(buttonPanel, BorderLayout.SOUTH);
+        reminderDialog.setSize(400, 250);
+        reminderDialog.setAlwaysOnTop(true);
+
+        reminderHideTimer = new Timer(60000, e -> {
+            reminderDialog.setVisible(false);
+            reminderListModel.clear();
+        });
+        reminderHideTimer.setRepeats(false);
+    }
 
-        // Auto-close after 1 minute
-        Timer timer = new Timer(60000, e -> dialog.dispose());
-        timer.setRepeats(false);
-        timer.start();
+    /**
+     * Removes the selected reminders (or all) from the window and returns
+     * them, hiding the window once it is empty
+     */
+    private List<CalendarEvent> takeReminders(JList<CalendarEvent> reminderList) {
+        List<CalendarEvent> chosen = reminderList.getSelectedValuesList();
+        if (chosen.isEmpty()) {
+            chosen = new ArrayList<>();
+            for (int i = 0; i < reminderListModel.getSize(); i++) {
+                chosen.add(reminderListModel.getElementAt(i));
+            }
+            reminderListModel.clear();
+        } else {
+            int[] selected = reminderList.getSelectedIndices();
+            for (int i = selected.length - 1; i >= 0; i--) {
+                reminderListModel.remove(selected[i]);
+            }
+        }
+        if (reminderListModel.isEmpty()) {
+            reminderHideTimer.stop();
+            reminderDialog.setVisible(false);
+        }
+        return chosen;
     }
 
     public void showEventDialog(CalendarEvent eventToEdit) {
@@ -896,6 +1182,83 @@ class CalendarView {
         gbc.gridx = 1;
         formPanel.add(prioritySpinner, gbc);
 
+        // Recurrence
+        gbc.gridx = 0;
+        gbc.gridy = 8;
+        formPanel.add(new JLabel("Repeats:"), gbc);
+
+        RecurrenceRule existingRule = eventToEdit.getRecurrence();
+        JComboBox<String> repeatBox = new JComboBox<>(REPEAT_OPTIONS);
+        if (existingRule != null) {
+            int preset = findRepeatPreset(existingRule);
+            if (preset >= 0) {
+                repeatBox.setSelectedIndex(preset);
+            } else {
+                repeatBox.addItem("Custom: " + existingRule);
+                repeatBox.setSelectedIndex(REPEAT_OPTIONS.length);
+            }
+        }
+
+        gbc.gridx = 1;
+        formPanel.add(repeatBox, gbc);
+
+        // Calendar
+        gbc.gridx = 0;
+        gbc.gridy = 9;
+        formPanel.add(new JLabel("Calendar:"), gbc);
+
+        JComboBox<String> calendarBox = new JComboBox<>(controller.getCalendarNames().toArray(new String[0]));
+        calendarBox.setSelectedItem(controller.getCalendarOf(eventToEdit));
+
+        gbc.gridx = 1;
+        formPanel.add(calendarBox, gbc);
+
+        // Duration
+        gbc.gridx = 0;
+        gbc.gridy = 10;
+        formPanel.add(new JLabel("Duration (min):"), gbc);
+
+        SpinnerNumberModel durationModel = new SpinnerNumberModel(
+                (int) eventToEdit.getDuration().toMinutes(), 0, 7 * 24 * 60, 15);
+        JSpinner durationSpinner = new JSpinner(durationModel);
+
+        gbc.gridx = 1;
+        formPanel.add(durationSpinner, gbc);
+
+        // Reminders
+        gbc.gridx = 0;
+        gbc.gridy = 11;
+        formPanel.add(new JLabel("Remind (min before):"), gbc);
+
+        JTextField remindersField = new JTextField(CalendarEvent.formatReminderMinutes(eventToEdit.getReminderMinutes()));
+        remindersField.setToolTipText("Comma-separated, e.g. 5, 60; leave empty for no reminders");
+
+        gbc.gridx = 1;
+        formPanel.add(remindersField, gbc);
+
+        // Conflicts, refreshed as the date, time or duration change
+        JLabel conflictLabel = new JLabel(" ");
+        conflictLabel.setForeground(new Color(180, 0, 0));
+        gbc.gridx = 0;
+        gbc.gridy = 12;
+        gbc.gridwidth = 3;
+        formPanel.add(conflictLabel, gbc);
+        gbc.gridwidth = 1;
+
+        Runnable refreshConflicts = () -> {
+            LocalDateTime start = selectedDateTime(datePicker, timeSpinner);
+            if (start == null) {
+                conflictLabel.setText(" ");
+                return;
+            }
+            Duration duration = Duration.ofMinutes((Integer) durationSpinner.getValue());
+            conflictLabel.setText(describeConflicts(controller.findConflicts(eventToEdit, start, duration)));
+        };
+        datePicker.getModel().addChangeListener(e -> refreshConflicts.run());
+        timeSpinner.addChangeListener(e -> refreshConflicts.run());
+        durationSpinner.addChangeListener(e -> refreshConflicts.run());
+        refreshConflicts.run();
+
         // Buttons
         JPanel buttonPanel = new JPanel();
         JButton saveButton = new JButton("Save");
@@ -914,24 +1277,24 @@ class CalendarView {
                 return;
             }
 
+            List<Integer> reminderMinutes;
             try {
-                // Get date from picker
-                Date selectedDate = (Date) datePicker.getModel().getValue();
-                LocalDate localDate = selectedDate.toInstant()
-                        .atZone(ZoneId.systemDefault())
-                        .toLocalDate();
-
-                // Get time from spinner
-                Date selectedTime = (Date) timeSpinner.getValue();
-                Calendar cal = Calendar.getInstance();
-                cal.setTime(selectedTime);
-                LocalTime localTime = LocalTime.of(
-                        cal.get(Calendar.HOUR_OF_DAY),
-                        cal.get(Calendar.MINUTE)
-                );
+                reminderMinutes = CalendarEvent.parseReminderMinutes(remindersField.getText());
+            } catch (IllegalArgumentException ex) {
+                JOptionPane.showMessageDialog(dialog,
+                        "Reminders must be minute counts between 0 and " + CalendarEvent.MAX_REMINDER_MINUTES
+                                + ", separated by commas",
+                        "Validation Error",
+                        JOptionPane.ERROR_MESSAGE);
+                return;
+            }
 
-                // Combine into LocalDateTime
-                LocalDateTime dateTime = LocalDateTime.of(localDate, localTime);
+            try {
+                LocalDateTime dateTime = selectedDateTime(datePicker, timeSpinner);
+                if (dateTime == null) {
+                    throw new IllegalArgumentException("No date selected");
+                }
+                Duration duration = Duration.ofMinutes((Integer) durationSpinner.getValue());
 
                 // Create or update event
                 if (isNewEvent) {
@@ -943,8 +1306,11 @@ class CalendarView {
                     newEvent.setLocation(locationField.getText().trim());
                     newEvent.setCategory(categoryBox.getSelectedItem().toString());
                     newEvent.setPriority((Integer) prioritySpinner.getValue());
+                    newEvent.setRecurrence(selectedRecurrence(repeatBox.getSelectedIndex(), null));
+                    newEvent.setDuration(duration);
+                    newEvent.setReminderMinutes(reminderMinutes);
 
-                    controller.addEvent(newEvent);
+                    controller.addEvent(newEvent, (String) calendarBox.getSelectedItem());
                 } else {
                     eventToEdit.setTitle(titleField.getText().trim());
                     eventToEdit.setDateTime(dateTime);
@@ -952,14 +1318,11 @@ class CalendarView {
                     eventToEdit.setLocation(locationField.getText().trim());
                     eventToEdit.setCategory(categoryBox.getSelectedItem().toString());
                     eventToEdit.setPriority((Integer) prioritySpinner.getValue());
+                    eventToEdit.setRecurrence(selectedRecurrence(repeatBox.getSelectedIndex(), existingRule));
+                    eventToEdit.setDuration(duration);
+                    eventToEdit.setReminderMinutes(reminderMinutes);
 
-                    // Find the index of this event in the controller's list
-                    int index = controller.getEvents().indexOf(eventToEdit);
-                    if (index >= 0) {
-                        controller.updateEvent(index, eventToEdit);
-                    } else {
-                        controller.addEvent(eventToEdit);
-                    }
+                    controller.updateEvent(eventToEdit, (String) calendarBox.getSelectedItem());
                 }
 
                 dialog.dispose();
@@ -982,6 +1345,399 @@ class CalendarView {
         dialog.setVisible(true);
     }
 
+    /**
+     * Combines the picked date and time, or returns null if no date is picked
+     */
+    private static LocalDateTime selectedDateTime(JDatePickerImpl datePicker, JSpinner timeSpinner) {
+        Date selectedDate = (Date) datePicker.getModel().getValue();
+        if (selectedDate == null) {
+            return null;
+        }
+        LocalDate localDate = selectedDate.toInstant()
+                .atZone(ZoneId.systemDefault())
+                .toLocalDate();
+
+        Calendar cal = Calendar.getInstance();
+        cal.setTime((Date) timeSpinner.getValue());
+        LocalTime localTime = LocalTime.of(
+                cal.get(Calendar.HOUR_OF_DAY),
+                cal.get(Calendar.MINUTE)
+        );
+        return LocalDateTime.of(localDate, localTime);
+    }
+
+    private static String describeConflicts(List<CalendarEvent> conflicts) {
+        if (conflicts.isEmpty()) {
+            return " ";
+        }
+        DateTimeFormatter timeFormat = DateTimeFormatter.ofPattern("HH:mm");
+        StringBuilder sb = new StringBuilder("Conflicts with: ");
+        int shown = Math.min(3, conflicts.size());
+        for (int i = 0; i < shown; i++) {
+            CalendarEvent other = conflicts.get(i);
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(other.getTitle()).append(" (")
+                    .append(other.getDateTime().format(timeFormat)).append('-')
+                    .append(other.getEndDateTime().format(timeFormat)).append(')');
+        }
+        if (conflicts.size() > shown) {
+            sb.append(" and ").append(conflicts.size() - shown).append(" more");
+        }
+        return sb.toString();
+    }
+
+    private void showFreeTimeDialog() {
+        JDialog dialog = new JDialog(frame, "Find Free Time", true);
+        dialog.setLayout(new BorderLayout());
+
+        JPanel formPanel = new JPanel(new GridBagLayout());
+        formPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        gbc.insets = new Insets(5, 5, 5, 5);
+
+        JSpinner lengthSpinner = new JSpinner(new SpinnerNumberModel(30, 5, 24 * 60, 5));
+        JSpinner daysSpinner = new JSpinner(new SpinnerNumberModel(7, 1, 366, 1));
+        JSpinner fromHourSpinner = new JSpinner(new SpinnerNumberModel(9, 0, 23, 1));
+        JSpinner toHourSpinner = new JSpinner(new SpinnerNumberModel(17, 1, 24, 1));
+        JCheckBox weekdaysBox = new JCheckBox("Weekdays only", true);
+
+        gbc.gridx = 0;
+        gbc.gridy = 0;
+        formPanel.add(new JLabel("Length (min):"), gbc);
+        gbc.gridx = 1;
+        formPanel.add(lengthSpinner, gbc);
+
+        gbc.gridx = 0;
+        gbc.gridy = 1;
+        formPanel.add(new JLabel("Next days:"), gbc);
+        gbc.gridx = 1;
+        formPanel.add(daysSpinner, gbc);
+
+        gbc.gridx = 0;
+        gbc.gridy = 2;
+        formPanel.add(new JLabel("Between hours:"), gbc);
+        JPanel hoursPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        hoursPanel.add(fromHourSpinner);
+        hoursPanel.add(new JLabel(" and "));
+        hoursPanel.add(toHourSpinner);
+        gbc.gridx = 1;
+        formPanel.add(hoursPanel, gbc);
+
+        gbc.gridx = 1;
+        gbc.gridy = 3;
+        formPanel.add(weekdaysBox, gbc);
+
+        DefaultListModel<String> slotListModel = new DefaultListModel<>();
+        List<CalendarModel.TimeSlot> slots = new ArrayList<>();
+        JList<String> slotList = new JList<>(slotListModel);
+        JScrollPane scrollPane = new JScrollPane(slotList);
+        scrollPane.setPreferredSize(new Dimension(350, 200));
+
+        JButton findButton = new JButton("Find");
+        JButton addButton = new JButton("Add Event");
+        JButton closeButton = new JButton("Close");
+        addButton.setEnabled(false);
+
+        DateTimeFormatter dayFormat = DateTimeFormatter.ofPattern("EEE, MMM d");
+        DateTimeFormatter timeFormat = DateTimeFormatter.ofPattern("HH:mm");
+        findButton.addActionListener(e -> {
+            int fromHour = (Integer) fromHourSpinner.getValue();
+            int toHour = (Integer) toHourSpinner.getValue();
+            if (toHour <= fromHour) {
+                showMessage("The end hour must be after the start hour", "Find Free Time", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            slots.clear();
+            slots.addAll(controller.findFreeSlots((Integer) daysSpinner.getValue(),
+                    LocalTime.of(fromHour, 0), toHour == 24 ? LocalTime.MIDNIGHT : LocalTime.of(toHour, 0),
+                    weekdaysBox.isSelected(), Duration.ofMinutes((Integer) lengthSpinner.getValue())));
+            slotListModel.clear();
+            for (CalendarModel.TimeSlot slot : slots) {
+                slotListModel.addElement(slot.start.format(dayFormat) + "  " + slot.start.format(timeFormat)
+                        + " - " + slot.end.format(timeFormat) + "  (" + slot.getLength().toMinutes() + " min)");
+            }
+            if (slots.isEmpty()) {
+                slotListModel.addElement("No free time found");
+            }
+        });
+
+        slotList.addListSelectionListener(e -> addButton.setEnabled(slotList.getSelectedIndex() >= 0 && !slots.isEmpty()));
+
+        addButton.addActionListener(e -> {
+            int selectedIndex = slotList.getSelectedIndex();
+            if (selectedIndex >= 0 && selectedIndex < slots.size()) {
+                CalendarEvent newEvent = new CalendarEvent("", slots.get(selectedIndex).start);
+                newEvent.setDuration(Duration.ofMinutes((Integer) lengthSpinner.getValue()));
+                dialog.dispose();
+                controller.showEventDialog(newEvent);
+            }
+        });
+        closeButton.addActionListener(e -> dialog.dispose());
+
+        JPanel buttonPanel = new JPanel();
+        buttonPanel.add(findButton);
+        buttonPanel.add(addButton);
+        buttonPanel.add(closeButton);
+
+        dialog.add(formPanel, BorderLayout.NORTH);
+        dialog.add(scrollPane, BorderLayout.CENTER);
+        dialog.add(buttonPanel, BorderLayout.SOUTH);
+        dialog.pack();
+        dialog.setLocationRelativeTo(frame);
+        dialog.setVisible(true);
+    }
+
+    private void showStatisticsDialog() {
+        JDialog dialog = new JDialog(frame, "Statistics", false);
+        dialog.setLayout(new BorderLayout());
+
+        // Year heatmap
+        HeatmapPanel heatmap = new HeatmapPanel(LocalDate.now(controller.getClock()).withDayOfYear(1));
+        JLabel yearLabel = new JLabel("", SwingConstants.CENTER);
+        yearLabel.setFont(new Font("SansSerif", Font.BOLD, 14));
+        JButton prevYearButton = new JButton("◀");
+        JButton nextYearButton = new JButton("▶");
+        int[] shownYear = {LocalDate.now(controller.getClock()).getYear()};
+
+        Runnable refreshHeatmap = () -> {
+            int year = shownYear[0];
+            LocalDate first = LocalDate.of(year, 1, 1);
+            yearLabel.setText(String.valueOf(year));
+            controller.loadDailyCounts(first, first.plusYears(1), counts -> {
+                // Skip it if the user has stepped to another year in the meantime
+                if (shownYear[0] == year) {
+                    heatmap.setData(first, counts);
+                }
+            });
+        };
+        prevYearButton.addActionListener(e -> {
+            shownYear[0]--;
+            refreshHeatmap.run();
+        });
+        nextYearButton.addActionListener(e -> {
+            shownYear[0]++;
+            refreshHeatmap.run();
+        });
+        refreshHeatmap.run();
+
+        JPanel yearPanel = new JPanel(new BorderLayout());
+        yearPanel.add(prevYearButton, BorderLayout.WEST);
+        yearPanel.add(yearLabel, BorderLayout.CENTER);
+        yearPanel.add(nextYearButton, BorderLayout.EAST);
+
+        JPanel heatmapPanel = new JPanel(new BorderLayout(0, 5));
+        heatmapPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        heatmapPanel.add(yearPanel, BorderLayout.NORTH);
+        heatmapPanel.add(heatmap, BorderLayout.CENTER);
+
+        // Range statistics
+        String[] ranges = {"This month", "Next month", "This quarter", "Next quarter", "This year"};
+        JComboBox<String> rangeBox = new JComboBox<>(ranges);
+        JTextArea statsArea = new JTextArea(14, 40);
+        statsArea.setEditable(false);
+        statsArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+
+        Runnable refreshStats = () -> {
+            LocalDate today = LocalDate.now(controller.getClock());
+            LocalDate quarterStart = today.withMonth((today.getMonthValue() - 1) / 3 * 3 + 1).withDayOfMonth(1);
+            LocalDate from;
+            LocalDate to;
+            switch (rangeBox.getSelectedIndex()) {
+                case 1:
+                    from = today.withDayOfMonth(1).plusMonths(1);
+                    to = from.plusMonths(1);
+                    break;
+                case 2:
+                    from = quarterStart;
+                    to = from.plusMonths(3);
+                    break;
+                case 3:
+                    from = quarterStart.plusMonths(3);
+                    to = from.plusMonths(3);
+                    break;
+                case 4:
+                    from = today.withDayOfYear(1);
+                    to = from.plusYears(1);
+                    break;
+                default:
+                    from = today.withDayOfMonth(1);
+                    to = from.plusMonths(1);
+            }
+            statsArea.setText(formatStatistics(from, to));
+            statsArea.setCaretPosition(0);
+        };
+        rangeBox.addActionListener(e -> refreshStats.run());
+        refreshStats.run();
+
+        JPanel statsPanel = new JPanel(new BorderLayout(0, 5));
+        statsPanel.setBorder(BorderFactory.createEmptyBorder(0, 10, 10, 10));
+        statsPanel.add(rangeBox, BorderLayout.NORTH);
+        statsPanel.add(new JScrollPane(statsArea), BorderLayout.CENTER);
+
+        JButton closeButton = new JButton("Close");
+        closeButton.addActionListener(e -> dialog.dispose());
+        JPanel buttonPanel = new JPanel();
+        buttonPanel.add(closeButton);
+
+        dialog.add(heatmapPanel, BorderLayout.NORTH);
+        dialog.add(statsPanel, BorderLayout.CENTER);
+        dialog.add(buttonPanel, BorderLayout.SOUTH);
+        dialog.pack();
+        dialog.setLocationRelativeTo(frame);
+        dialog.setVisible(true);
+    }
+
+    private String formatStatistics(LocalDate from, LocalDate to) {
+        DateTimeFormatter format = DateTimeFormatter.ofPattern("MMM d, yyyy");
+        StringBuilder sb = new StringBuilder();
+        sb.append(from.format(format)).append(" - ").append(to.minusDays(1).format(format)).append("\n\n");
+
+        int total = controller.countEvents(from, to, null, 1, 10);
+        long days = to.toEpochDay() - from.toEpochDay();
+        sb.append(String.format("Events:          %d (%.1f per day)%n%n", total, days > 0 ? (double) total / days : 0));
+
+        sb.append("By category:\n");
+        Map<String, Integer> byCategory = controller.countByCategory(from, to);
+        for (Map.Entry<String, Integer> entry : byCategory.entrySet()) {
+            int high = controller.countEvents(from, to, entry.getKey(), 8, 10);
+            sb.append(String.format("  %-14s %5d  (%d high priority)%n", entry.getKey(), entry.getValue(), high));
+        }
+
+        int[] byPriority = controller.countByPriority(from, to);
+        int low = 0;
+        int medium = 0;
+        int high = 0;
+        for (int p = 1; p < byPriority.length; p++) {
+            if (p >= 8) {
+                high += byPriority[p];
+            } else if (p >= 4) {
+                medium += byPriority[p];
+            } else {
+                low += byPriority[p];
+            }
+        }
+        sb.append("\nBy priority:\n");
+        sb.append(String.format("  High (8-10)    %5d%n", high));
+        sb.append(String.format("  Medium (4-7)   %5d%n", medium));
+        sb.append(String.format("  Low (1-3)      %5d%n", low));
+        return sb.toString();
+    }
+
+    /**
+     * One square per day of a year, one column per week, shaded by the
+     * number of events that day
+     */
+    private static class HeatmapPanel extends JPanel {
+        private static final long serialVersionUID = 1L;
+        private static final int CELL = 12;
+        private static final int GAP = 2;
+        private static final Color[] SHADES = {
+                new Color(235, 237, 240),
+                new Color(198, 228, 139),
+                new Color(123, 201, 111),
+                new Color(35, 154, 59),
+                new Color(25, 97, 39)
+        };
+
+        private LocalDate firstDay;
+        private int[] counts = new int[0];
+        private int max;
+
+        HeatmapPanel(LocalDate firstDay) {
+            this.firstDay = firstDay;
+            setPreferredSize(new Dimension(54 * (CELL + GAP) + GAP, 7 * (CELL + GAP) + GAP));
+            setToolTipText("");
+        }
+
+        void setData(LocalDate firstDay, int[] counts) {
+            this.firstDay = firstDay;
+            this.counts = counts;
+            max = 0;
+            for (int count : counts) {
+                max = Math.max(max, count);
+            }
+            repaint();
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            int offset = firstDay.getDayOfWeek().getValue() - 1;
+            for (int i = 0; i < counts.length; i++) {
+                int cell = i + offset;
+                g.setColor(shade(counts[i]));
+                g.fillRect(GAP + (cell / 7) * (CELL + GAP), GAP + (cell % 7) * (CELL + GAP), CELL, CELL);
+            }
+        }
+
+        @Override
+        public String getToolTipText(MouseEvent e) {
+            int column = (e.getX() - GAP) / (CELL + GAP);
+            int row = (e.getY() - GAP) / (CELL + GAP);
+            int index = column * 7 + row - (firstDay.getDayOfWeek().getValue() - 1);
+            if (row < 0 || row > 6 || index < 0 || index >= counts.length) {
+                return null;
+            }
+            LocalDate day = firstDay.plusDays(index);
+            return day.format(DateTimeFormatter.ofPattern("EEE, MMM d")) + ": " + counts[index]
+                    + (counts[index] == 1 ? " event" : " events");
+        }
+
+        private Color shade(int count) {
+            if (count == 0 || max == 0) {
+                return SHADES[0];
+            }
+            int level = 1 + (count - 1) * (SHADES.length - 1) / max;
+            return SHADES[Math.min(level, SHADES.length - 1)];
+        }
+    }
+
+    public void showConflictReport(List<CalendarModel.Conflict> conflicts, int days) {
+        if (conflicts.isEmpty()) {
+            showMessage("No conflicting events in the next " + days + " days", "Conflicts", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+
+        JDialog dialog = new JDialog(frame, "Conflicts in the next " + days + " days", false);
+        dialog.setLayout(new BorderLayout());
+
+        DateTimeFormatter format = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+        DateTimeFormatter timeFormat = DateTimeFormatter.ofPattern("HH:mm");
+        String[] columnNames = {"Start", "Event", "Overlaps with"};
+        DefaultTableModel reportModel = new DefaultTableModel(columnNames, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        for (CalendarModel.Conflict conflict : conflicts) {
+            reportModel.addRow(new Object[]{
+                    conflict.first.getDateTime().format(format),
+                    conflict.first.getTitle() + " (until " + conflict.first.getEndDateTime().format(timeFormat) + ")",
+                    conflict.second.getTitle() + " (" + conflict.second.getDateTime().format(timeFormat) + ")"
+            });
+        }
+
+        JTable reportTable = new JTable(reportModel);
+        JScrollPane scrollPane = new JScrollPane(reportTable);
+        scrollPane.setPreferredSize(new Dimension(600, 300));
+
+        JButton closeButton = new JButton("Close");
+        closeButton.addActionListener(e -> dialog.dispose());
+        JPanel buttonPanel = new JPanel();
+        buttonPanel.add(closeButton);
+
+        dialog.add(new JLabel(" " + conflicts.size() + " overlapping pairs"), BorderLayout.NORTH);
+        dialog.add(scrollPane, BorderLayout.CENTER);
+        dialog.add(buttonPanel, BorderLayout.SOUTH);
+        dialog.pack();
+        dialog.setLocationRelativeTo(frame);
+        dialog.setVisible(true);
+    }
+
     public void showEventDetailsDialog(CalendarEvent event) {
         JDialog dialog = new JDialog(frame, "Event Details", true);
         dialog.setLayout(new BorderLayout());
@@ -1016,7 +1772,7 @@ class CalendarView {
         String formattedDateTime = event.getDateTime().format(
                 DateTimeFormatter.ofPattern("EEEE, MMMM d, yyyy 'at' hh:mm a")
         );
-        detailsPanel.add(new JLabel(formattedDateTime), gbc);
+        detailsPanel.add(new JLabel(formattedDateTime + " (" + event.getDuration().toMinutes() + " min)"), gbc);
 
         // Location
         gbc.gridx = 0;
@@ -1079,7 +1835,7 @@ class CalendarView {
         gbc.gridwidth = 2;
 
         String statusText;
-        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime now = LocalDateTime.now(controller.getClock());
         if (event.getDateTime().isBefore(now)) {
             statusText = "Event has passed";
         } else {
@@ -1126,11 +1882,50 @@ class CalendarView {
         dialog.setVisible(true);
     }
 
-    private String truncateText(String text, int maxLength) {
-        if (text == null || text.length() <= maxLength) {
-            return text;
+    private static final String[] REPEAT_OPTIONS = {
+            "Does not repeat", "Daily", "Every weekday", "Weekly", "Monthly", "Yearly"
+    };
+
+    private static RecurrenceRule repeatPreset(int index) {
+        switch (index) {
+            case 1:
+                return new RecurrenceRule(RecurrenceRule.Frequency.DAILY);
+            case 2:
+                return new RecurrenceRule(RecurrenceRule.Frequency.DAILY, 1,
+                        EnumSet.range(DayOfWeek.MONDAY, DayOfWeek.FRIDAY), null, 0, null);
+            case 3:
+                return new RecurrenceRule(RecurrenceRule.Frequency.WEEKLY);
+            case 4:
+                return new RecurrenceRule(RecurrenceRule.Frequency.MONTHLY);
+            case 5:
+                return new RecurrenceRule(RecurrenceRule.Frequency.YEARLY);
+            default:
+                return null;
+        }
+    }
+
+    private static int findRepeatPreset(RecurrenceRule rule) {
+        for (int i = 1; i < REPEAT_OPTIONS.length; i++) {
+            if (rule.toString().equals(repeatPreset(i).toString())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Maps the "Repeats" selection back to a rule, keeping the existing rule (and its
+     * exception dates) when the selection still describes it.
+     */
+    private static RecurrenceRule selectedRecurrence(int index, RecurrenceRule existingRule) {
+        if (index >= REPEAT_OPTIONS.length) {
+            return existingRule;
+        }
+        RecurrenceRule selected = repeatPreset(index);
+        if (selected != null && existingRule != null && selected.toString().equals(existingRule.toString())) {
+            return existingRule;
         }
-        return text.substring(0, maxLength - 3) + "...";
+        return selected;
     }
 
     // Date formatter for JDatePicker
@@ -0,0 +1,107 @@
+import java.awt.EventQueue;
+
+/**
+ * Detects stalls of the Swing event dispatch thread.
+ *
+ * A heartbeat is posted to the event queue; if it is not serviced within the
+ * threshold the EDT stack is sampled. Once the heartbeat finally runs, the
+ * stall is recorded as a JFR event and in the "edt.stall" histogram.
+ */
+class EdtWatchdog {
+    static final long DEFAULT_THRESHOLD_MILLIS = Long.getLong("calendar.edt.stallMillis", 250);
+
+    private final long thresholdMillis;
+    private volatile Thread edtThread;
+    private volatile boolean running;
+    private TaskRuntime.TaskHandle<Void> watchTask;
+
+    public EdtWatchdog() {
+        this(DEFAULT_THRESHOLD_MILLIS);
+    }
+
+    public EdtWatchdog(long thresholdMillis) {
+        this.thresholdMillis = thresholdMillis;
+    }
+
+    public synchronized void start(TaskRuntime runtime) {
+        if (running || thresholdMillis <= 0) {
+            return;
+        }
+        running = true;
+        watchTask = runtime.execute("edt-watchdog", this::watch);
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (watchTask != null) {
+            watchTask.cancel();
+            watchTask = null;
+        }
+    }
+
+    private void watch() {
+        long pollMillis = Math.max(10, thresholdMillis / 2);
+
+        while (running) {
+            Heartbeat heartbeat = new Heartbeat();
+            EventQueue.invokeLater(heartbeat);
+
+            try {
+                // Wait for the EDT to pick the heartbeat up, sampling its stack once if it is late
+                synchronized (heartbeat) {
+                    heartbeat.wait(thresholdMillis);
+                    if (!heartbeat.serviced) {
+                        Thread edt = edtThread;
+                        heartbeat.stackTrace = edt != null ? formatStack(edt.getStackTrace()) : "<unknown>";
+                        heartbeat.stalled = true;
+                        while (!heartbeat.serviced && running) {
+                            heartbeat.wait(pollMillis);
+                        }
+                    }
+                }
+                Thread.sleep(pollMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static String formatStack(StackTraceElement[] stack) {
+        StringBuilder sb = new StringBuilder();
+        for (StackTraceElement element : stack) {
+            sb.append("at ").append(element).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private class Heartbeat implements Runnable {
+        private final long postedAt = System.nanoTime();
+        private final CalendarJfrEvents.EdtStall jfrEvent = new CalendarJfrEvents.EdtStall();
+        private boolean serviced;
+        private boolean stalled;
+        private String stackTrace;
+
+        Heartbeat() {
+            jfrEvent.begin();
+        }
+
+        @Override
+        public void run() {
+            edtThread = Thread.currentThread();
+
+            synchronized (this) {
+                serviced = true;
+                notifyAll();
+
+                if (stalled) {
+                    CalendarMetrics.get().recordSince("edt.stall", postedAt);
+                    jfrEvent.end();
+                    jfrEvent.thresholdMillis = thresholdMillis;
+                    jfrEvent.edtStack = stackTrace;
+                    jfrEvent.commit();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Event counts per day, by category and priority, kept up to date on every
+ * change to the model.
+ *
+ * There is one Fenwick tree over epoch days per (category, priority) pair
+ * that has events, so any range count costs O(log n) per pair and never
+ * touches the events themselves. Events are removed by identity, with the
+ * day, category and priority they were added under.
+ */
+class EventAggregates {
+    static final int MIN_PRIORITY = 1;
+    static final int MAX_PRIORITY = 10;
+
+    private static class Key {
+        final long day;
+        final String category;
+        final int priority;
+
+        Key(long day, String category, int priority) {
+            this.day = day;
+            this.category = category;
+            this.priority = priority;
+        }
+    }
+
+    private final Map<String, FenwickTree[]> byCategory = new HashMap<>();
+    private final Map<CalendarEvent, Key> keys = new IdentityHashMap<>();
+
+    public void add(CalendarEvent event) {
+        remove(event);
+        Key key = new Key(event.getDateTime().toLocalDate().toEpochDay(), categoryOf(event), priorityOf(event));
+        keys.put(event, key);
+        FenwickTree[] trees = byCategory.computeIfAbsent(key.category, c -> new FenwickTree[MAX_PRIORITY + 1]);
+        if (trees[key.priority] == null) {
+            trees[key.priority] = new FenwickTree(key.day);
+        }
+        trees[key.priority].add(key.day, 1);
+    }
+
+    public void remove(CalendarEvent event) {
+        Key key = keys.remove(event);
+        if (key != null) {
+            byCategory.get(key.category)[key.priority].add(key.day, -1);
+        }
+    }
+
+    public void clear() {
+        byCategory.clear();
+        keys.clear();
+    }
+
+    /**
+     * Number of events on days in [from, to) with the given category (null
+     * for any) and a priority in [minPriority, maxPriority]
+     */
+    public int count(LocalDate from, LocalDate to, String category, int minPriority, int maxPriority) {
+        long fromDay = from.toEpochDay();
+        long toDay = to.toEpochDay();
+        int total = 0;
+        for (Map.Entry<String, FenwickTree[]> entry : byCategory.entrySet()) {
+            if (category != null && !category.equals(entry.getKey())) {
+                continue;
+            }
+            FenwickTree[] trees = entry.getValue();
+            for (int p = Math.max(MIN_PRIORITY, minPriority); p <= Math.min(MAX_PRIORITY, maxPriority); p++) {
+                if (trees[p] != null) {
+                    total += trees[p].sum(fromDay, toDay);
+                }
+            }
+        }
+        return total;
+    }
+
+    public Map<String, Integer> countByCategory(LocalDate from, LocalDate to) {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (String category : byCategory.keySet()) {
+            int count = count(from, to, category, MIN_PRIORITY, MAX_PRIORITY);
+            if (count > 0) {
+                counts.put(category, count);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Counts indexed by priority; entry 0 is unused
+     */
+    public int[] countByPriority(LocalDate from, LocalDate to) {
+        int[] counts = new int[MAX_PRIORITY + 1];
+        for (int p = MIN_PRIORITY; p <= MAX_PRIORITY; p++) {
+            counts[p] = count(from, to, null, p, p);
+        }
+        return counts;
+    }
+
+    /**
+     * Number of events on each day in [from, to)
+     */
+    public int[] countPerDay(LocalDate from, LocalDate to) {
+        long fromDay = from.toEpochDay();
+        int days = (int) (to.toEpochDay() - fromDay);
+        int[] counts = new int[Math.max(0, days)];
+        for (FenwickTree[] trees : byCategory.values()) {
+            for (FenwickTree tree : trees) {
+                if (tree == null) {
+                    continue;
+                }
+                // Consecutive prefix sums give the per-day values
+                int previous = tree.prefix(fromDay - 1);
+                for (int i = 0; i < counts.length; i++) {
+                    int current = tree.prefix(fromDay + i);
+                    counts[i] += current - previous;
+                    previous = current;
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static String categoryOf(CalendarEvent event) {
+        return event.getCategory() == null ? "" : event.getCategory();
+    }
+
+    private static int priorityOf(CalendarEvent event) {
+        return Math.max(MIN_PRIORITY, Math.min(MAX_PRIORITY, event.getPriority()));
+    }
+
+    /**
+     * Fenwick tree over a range of epoch days that grows when a day outside
+     * the range is added
+     */
+    static class FenwickTree {
+        private static final int INITIAL_SIZE = 1024;
+
+        private long origin;
+        private int[] tree;   // 1-based
+
+        FenwickTree(long firstDay) {
+            origin = firstDay - INITIAL_SIZE / 2;
+            tree = new int[INITIAL_SIZE + 1];
+        }
+
+        void add(long day, int delta) {
+            if (day < origin || day >= origin + size()) {
+                grow(day);
+            }
+            for (int i = (int) (day - origin) + 1; i < tree.length; i += i & -i) {
+                tree[i] += delta;
+            }
+        }
+
+        /**
+         * Sum over all days up to and including day
+         */
+        int prefix(long day) {
+            if (day < origin) {
+                return 0;
+            }
+            int i = (int) Math.min(day - origin + 1, size());
+            int sum = 0;
+            for (; i > 0; i -= i & -i) {
+                sum += tree[i];
+            }
+            return sum;
+        }
+
+        /**
+         * Sum over days in [from, to)
+         */
+        int sum(long from, long to) {
+            return to <= from ? 0 : prefix(to - 1) - prefix(from - 1);
+        }
+
+        private int size() {
+            return tree.length - 1;
+        }
+
+        private void grow(long day) {
+            long newOrigin = Math.min(origin, day);
+            long newEnd = Math.max(origin + size(), day + 1);
+            int newSize = size();
+            while (newSize < newEnd - newOrigin) {
+                newSize *= 2;
+            }
+            // Leave room on the side that grew
+            if (day < origin) {
+                newOrigin = newEnd - newSize;
+            }
+
+            int[] values = new int[size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = prefix(origin + i) - prefix(origin + i - 1);
+            }
+            int[] grown = new int[newSize + 1];
+            int offset = (int) (origin - newOrigin);
+            for (int i = 0; i < values.length; i++) {
+                grown[offset + i + 1] = values[i];
+            }
+            // Linear-time build from point values
+            for (int i = 1; i <= newSize; i++) {
+                int parent = i + (i & -i);
+                if (parent <= newSize) {
+                    grown[parent] += grown[i];
+                }
+            }
+            origin = newOrigin;
+            tree = grown;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cold storage for a calendar's past one-off events.
+ *
+ * Events are kept in one gzip-compressed segment per month, so a query only
+ * opens the months it covers and the hot model never holds them. Recently
+ * read segments are cached. Segments are rewritten whole, through a temp
+ * file, and are keyed by event id, so writing the same event twice is
+ * harmless.
+ *
+ * Events handed out must not be changed unless they are then removed from
+ * the archive with remove(). All methods are safe to call from any thread.
+ */
+class EventArchive {
+    private static final String SEGMENT_SUFFIX = ".seg.gz";
+    private static final int CACHE_SEGMENTS = 12;
+
+    private final File dir;
+    // Holds the descriptions of archived events, shared with the calendar
+    private final BlobStore blobs;
+    private NavigableSet<YearMonth> months;
+    private final Map<YearMonth, List<CalendarEvent>> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<YearMonth, List<CalendarEvent>> eldest) {
+            return size() > CACHE_SEGMENTS;
+        }
+    };
+    // Segment each handed-out event was read from, in case it is edited before being removed
+    private final Map<CalendarEvent, YearMonth> origins = new WeakHashMap<>();
+
+    EventArchive(String dirPath, BlobStore blobs) {
+        this.dir = new File(dirPath);
+        this.blobs = blobs;
+    }
+
+    /**
+     * Archive directory for a calendar save file, e.g. calendars/Work.archive
+     */
+    static String dirFor(String saveFile) {
+        int dot = saveFile.lastIndexOf('.');
+        int slash = saveFile.lastIndexOf(File.separatorChar);
+        String base = dot > slash ? saveFile.substring(0, dot) : saveFile;
+        return base + ".archive";
+    }
+
+    public synchronized boolean isEmpty() {
+        return months().isEmpty();
+    }
+
+    /**
+     * Archived events starting in [from, to), sorted by time. Only the
+     * segments for the months in range are read.
+     */
+    public synchronized List<CalendarEvent> eventsBetween(LocalDateTime from, LocalDateTime to) throws IOException {
+        List<CalendarEvent> result = new ArrayList<>();
+        NavigableSet<YearMonth> known = months();
+        if (known.isEmpty() || !from.isBefore(to)) {
+            return result;
+        }
+        for (YearMonth month : known.subSet(YearMonth.from(from), true, YearMonth.from(to), true)) {
+            for (CalendarEvent event : segment(month)) {
+                if (!event.getDateTime().isBefore(from) && event.getDateTime().isBefore(to)) {
+                    result.add(event);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * True if eventsBetween() would read no segment from disk for [from, to)
+     */
+    public synchronized boolean isCached(LocalDateTime from, LocalDateTime to) {
+        NavigableSet<YearMonth> known = months();
+        if (known.isEmpty() || !from.isBefore(to)) {
+            return true;
+        }
+        return cache.keySet().containsAll(known.subSet(YearMonth.from(from), true, YearMonth.from(to), true));
+    }
+
+    /**
+     * Every archived event, oldest first
+     */
+    public synchronized List<CalendarEvent> allEvents() throws IOException {
+        List<CalendarEvent> result = new ArrayList<>();
+        for (YearMonth month : months()) {
+            result.addAll(segment(month));
+        }
+        return result;
+    }
+
+    /**
+     * True if the event was handed out by this archive and is still stored in it
+     */
+    public synchronized boolean contains(CalendarEvent event) throws IOException {
+        YearMonth month = origins.get(event);
+        return month != null && months().contains(month) && indexOf(segment(month), event.getId()) >= 0;
+    }
+
+    /**
+     * An archived event in the candidate's month with its id or the same
+     * content, or null
+     */
+    public synchronized CalendarEvent findDuplicate(CalendarEvent candidate) throws IOException {
+        YearMonth month = YearMonth.from(candidate.getDateTime());
+        if (!months().contains(month)) {
+            return null;
+        }
+        for (CalendarEvent event : segment(month)) {
+            if (event.getId().equals(candidate.getId()) || event.hasSameContent(candidate)) {
+                return event;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds events, replacing any archived event with the same id in the same month
+     */
+    public synchronized void append(Collection<CalendarEvent> events) throws IOException {
+        long start = System.nanoTime();
+        Map<YearMonth, List<CalendarEvent>> byMonth = new TreeMap<>();
+        for (CalendarEvent event : events) {
+            // Descriptions stay in the blob store rather than being copied into segments
+            byMonth.computeIfAbsent(YearMonth.from(event.getDateTime()), m -> new ArrayList<>()).add(event.toStored(blobs));
+        }
+        blobs.sync();
+        for (Map.Entry<YearMonth, List<CalendarEvent>> entry : byMonth.entrySet()) {
+            YearMonth month = entry.getKey();
+            Map<String, CalendarEvent> merged = new LinkedHashMap<>();
+            if (months().contains(month)) {
+                for (CalendarEvent event : segment(month)) {
+                    merged.put(event.getId(), event);
+                }
+            }
+            for (CalendarEvent event : entry.getValue()) {
+                merged.put(event.getId(), event);
+            }
+            writeSegment(month, new ArrayList<>(merged.values()));
+        }
+        for (CalendarEvent event : events) {
+            // The caller's objects count as handed out too
+            origins.put(event, YearMonth.from(event.getDateTime()));
+        }
+        CalendarMetrics.get().add("archive.events.written", events.size());
+        CalendarMetrics.get().recordSince("archive.append", start);
+    }
+
+    /**
+     * Removes an event handed out by this archive and returns it as it was
+     * archived, without any edits since made to the object handed out.
+     * Returns null if it is not archived.
+     */
+    public synchronized CalendarEvent remove(CalendarEvent event) throws IOException {
+        YearMonth month = origins.getOrDefault(event, YearMonth.from(event.getDateTime()));
+        if (!months().contains(month)) {
+            return null;
+        }
+        List<CalendarEvent> events = new ArrayList<>(segment(month));
+        int index = indexOf(events, event.getId());
+        if (index < 0) {
+            return null;
+        }
+        // The cached copy may be the edited object itself; the file still has the archived one
+        List<CalendarEvent> onDisk = readSegment(month);
+        CalendarEvent archived = onDisk.get(indexOf(onDisk, event.getId()));
+        events.remove(index);
+        writeSegment(month, events);
+        origins.remove(event);
+        return archived;
+    }
+
+    private NavigableSet<YearMonth> months() {
+        if (months == null) {
+            months = new TreeSet<>();
+            File[] files = dir.listFiles((d, name) -> name.endsWith(SEGMENT_SUFFIX));
+            if (files != null) {
+                for (File file : files) {
+                    String name = file.getName();
+                    try {
+                        months.add(YearMonth.parse(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                    } catch (DateTimeParseException e) {
+                        System.err.println("Ignoring unexpected archive file " + file);
+                    }
+                }
+            }
+        }
+        return months;
+    }
+
+    private List<CalendarEvent> segment(YearMonth month) throws IOException {
+        List<CalendarEvent> events = cache.get(month);
+        if (events != null) {
+            return events;
+        }
+        events = readSegment(month);
+        for (CalendarEvent event : events) {
+            origins.put(event, month);
+        }
+        cache.put(month, events);
+        return events;
+    }
+
+    /**
+     * Reads a segment file, bypassing the cache
+     */
+    @SuppressWarnings("unchecked")
+    private List<CalendarEvent> readSegment(YearMonth month) throws IOException {
+        long start = System.nanoTime();
+        File file = segmentFile(month);
+        List<CalendarEvent> events;
+        try (ObjectInputStream in = new ObjectInputStream(
+                new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))))) {
+            events = List.copyOf((List<CalendarEvent>) in.readObject());
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unreadable archive segment " + file, e);
+        }
+        for (CalendarEvent event : events) {
+            event.attachBlobs(blobs);
+        }
+        CalendarMetrics.get().increment("archive.segments.read");
+        CalendarMetrics.get().recordSince("archive.read", start);
+        return events;
+    }
+
+    private void writeSegment(YearMonth month, List<CalendarEvent> events) throws IOException {
+        Path target = segmentFile(month).toPath().toAbsolutePath();
+        if (events.isEmpty()) {
+            Files.deleteIfExists(target);
+            months().remove(month);
+            cache.remove(month);
+            return;
+        }
+
+        events.sort(Comparator.comparing(CalendarEvent::getDateTime));
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(temp.toFile());
+             BufferedOutputStream buffered = new BufferedOutputStream(fileOut);
+             GZIPOutputStream gzip = new GZIPOutputStream(buffered);
+             ObjectOutputStream out = new ObjectOutputStream(gzip)) {
+            out.writeObject(new ArrayList<>(events));
+            out.flush();
+            gzip.finish();
+            buffered.flush();
+            fileOut.getFD().sync();
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        List<CalendarEvent> stored = List.copyOf(events);
+        for (CalendarEvent event : stored) {
+            origins.put(event, month);
+        }
+        months().add(month);
+        cache.put(month, stored);
+    }
+
+    private File segmentFile(YearMonth month) {
+        return new File(dir, month + SEGMENT_SUFFIX);
+    }
+
+    private static int indexOf(List<CalendarEvent> events, String id) {
+        for (int i = 0; i < events.size(); i++) {
+            if (events.get(i).getId().equals(id)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,213 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps one calendar's save file and its model in step when other
+ * processes write the same file.
+ *
+ * Remembers what the file held when the model last read or wrote it. When
+ * the file has changed since, the new contents are compared with that, by
+ * event id, and each difference is kept as a pending change. The model
+ * applies pending changes to the events the user has not edited since, and
+ * a save folds them into the snapshot it writes, so neither side's edits
+ * are overwritten wholesale. Where both sides changed the same event, the
+ * local edit wins.
+ *
+ * Writes hold an OS lock on a sidecar .lock file, so two processes never
+ * both decide the file is unchanged and then overwrite each other.
+ */
+class EventFileSync {
+    private static final Map<String, Object> LOCAL_LOCKS = new ConcurrentHashMap<>();
+
+    /**
+     * An event another writer changed. before is the event as this model
+     * last saw it on disk (null if new) and after as it is now (null if
+     * deleted); both are frozen and never changed.
+     */
+    static class Change {
+        final String id;
+        final CalendarEvent before;
+        final CalendarEvent after;
+        // Model version that includes this change, or MAX_VALUE until it is applied
+        long appliedVersion = Long.MAX_VALUE;
+
+        Change(String id, CalendarEvent before, CalendarEvent after) {
+            this.id = id;
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    private final String saveFile;
+    private Object stamp;
+    private PersistentEventMap onDisk = PersistentEventMap.EMPTY;
+    private final Map<String, Change> pending = new LinkedHashMap<>();
+
+    EventFileSync(String saveFile) {
+        this.saveFile = saveFile;
+    }
+
+    /**
+     * Records what was read from the file; stamp must be taken before reading
+     */
+    public synchronized void loaded(Object stamp, PersistentEventMap events) {
+        this.stamp = stamp;
+        this.onDisk = events;
+        pending.clear();
+    }
+
+    /**
+     * Reads the file if another writer has replaced it. Returns true if
+     * there are changes the model has not applied yet.
+     */
+    public synchronized boolean poll() throws IOException {
+        detect();
+        return !unapplied().isEmpty();
+    }
+
+    public synchronized List<Change> unapplied() {
+        List<Change> changes = new ArrayList<>();
+        for (Change change : pending.values()) {
+            if (change.appliedVersion == Long.MAX_VALUE) {
+                changes.add(change);
+            }
+        }
+        return changes;
+    }
+
+    public synchronized void applied(List<Change> changes, long version) {
+        for (Change change : changes) {
+            change.appliedVersion = version;
+        }
+    }
+
+    /**
+     * Writes a snapshot, with the pending changes it does not include yet
+     * folded in for every event the snapshot has left as it was on disk
+     */
+    public synchronized void write(CalendarModel.Snapshot snapshot) throws IOException {
+        withFileLock(saveFile, () -> {
+            detect();
+            PersistentEventMap merged = snapshot.events;
+            for (Iterator<Change> it = pending.values().iterator(); it.hasNext(); ) {
+                Change change = it.next();
+                if (change.appliedVersion <= snapshot.version) {
+                    // Already in the model when the snapshot was taken
+                    it.remove();
+                } else if (merged.get(change.id) == change.before) {
+                    merged = change.after == null ? merged.remove(change.id) : merged.put(change.after);
+                }
+            }
+            FileEventStore.writeSnapshot(saveFile, new CalendarModel.Snapshot(snapshot.version, merged));
+            stamp = stampOf(saveFile);
+            onDisk = merged;
+            return null;
+        });
+    }
+
+    private void detect() throws IOException {
+        Object current = stampOf(saveFile);
+        if (current == null || current.equals(stamp)) {
+            // Unchanged, or gone: a missing file is simply written again on the next save
+            return;
+        }
+        long start = System.nanoTime();
+        List<CalendarEvent> theirs;
+        try {
+            theirs = FileEventStore.readEventsFile(saveFile);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unreadable save file " + saveFile, e);
+        }
+
+        Map<String, CalendarEvent> byId = new HashMap<>();
+        for (CalendarEvent event : theirs) {
+            byId.put(event.getId(), event);
+        }
+        PersistentEventMap updated = onDisk;
+        int found = 0;
+        for (CalendarEvent before : onDisk.values()) {
+            CalendarEvent after = byId.remove(before.getId());
+            if (after == null) {
+                record(before.getId(), before, null);
+                updated = updated.remove(before.getId());
+                found++;
+            } else if (!before.hasSameState(after)) {
+                record(after.getId(), before, after);
+                updated = updated.put(after);
+                found++;
+            }
+        }
+        for (CalendarEvent after : byId.values()) {
+            record(after.getId(), null, after);
+            updated = updated.put(after);
+            found++;
+        }
+        onDisk = updated;
+        stamp = current;
+        CalendarMetrics.get().add("store.external.changes", found);
+        CalendarMetrics.get().recordSince("store.external.read", start);
+    }
+
+    private void record(String id, CalendarEvent before, CalendarEvent after) {
+        Change previous = pending.get(id);
+        if (previous != null && previous.appliedVersion == Long.MAX_VALUE) {
+            // Still unapplied, so the model holds the earlier before
+            before = previous.before;
+        }
+        pending.put(id, new Change(id, before, after));
+    }
+
+    /**
+     * Identifies one version of a file: replacing it through a rename
+     * changes the file key even when time and size match. Null if missing.
+     */
+    static Object stampOf(String file) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(Paths.get(file), BasicFileAttributes.class);
+            return List.of(attributes.lastModifiedTime(), attributes.size(), Objects.toString(attributes.fileKey()));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    interface LockedAction<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * Runs the action holding an exclusive OS lock on the file's .lock
+     * sidecar. Threads of this process queue on a plain monitor first, as
+     * the OS lock is held per process.
+     */
+    static <T> T withFileLock(String file, LockedAction<T> action) throws IOException {
+        Path lockPath = Paths.get(file + ".lock").toAbsolutePath();
+        synchronized (LOCAL_LOCKS.computeIfAbsent(lockPath.toString(), p -> new Object())) {
+            File parent = lockPath.getParent().toFile();
+            parent.mkdirs();
+            try (FileChannel channel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock = channel.lock();
+                try {
+                    return action.run();
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Where one calendar's events are kept between runs.
+ *
+ * A model loads everything once and keeps it in memory for the views,
+ * then saves snapshots, which the store compares with what it last loaded
+ * or saved, so only the changes have to be written where the backend
+ * allows it. Filtered queries, bulk upserts and deletes are for tools that
+ * work without a model, such as CalendarCli; with a database behind the
+ * store they do not read the whole calendar. Models already loaded do not
+ * see those writes until they load again, or until the store reports them
+ * as external changes.
+ *
+ * The store is picked per save file: the events file next to it by
+ * default, or a SQL database when calendar.store.url names a JDBC URL.
+ * All methods are safe to call off the EDT.
+ */
+interface EventStore {
+    // JDBC URL of the shared event database, e.g. jdbc:h2:./calendars/events; null for plain files
+    String STORE_URL = System.getProperty("calendar.store.url");
+
+    /**
+     * Which events a query returns. Null bounds are open; a recurring series
+     * matches if any occurrence may fall in the range and is returned as the
+     * series, for the caller to expand.
+     */
+    class Filter {
+        final LocalDateTime from;
+        final LocalDateTime to;
+        final String category;
+        final int minPriority;
+        final int maxPriority;
+
+        Filter(LocalDateTime from, LocalDateTime to, String category, int minPriority, int maxPriority) {
+            this.from = from;
+            this.to = to;
+            this.category = category;
+            this.minPriority = minPriority;
+            this.maxPriority = maxPriority;
+        }
+
+        static Filter between(LocalDateTime from, LocalDateTime to) {
+            return new Filter(from, to, null, 1, 10);
+        }
+
+        boolean matches(CalendarEvent event) {
+            if (category != null && !category.equals(event.getCategory())) {
+                return false;
+            }
+            if (event.getPriority() < minPriority || event.getPriority() > maxPriority) {
+                return false;
+            }
+            if (to != null && !event.getDateTime().isBefore(to)) {
+                return false;
+            }
+            if (from == null) {
+                return true;
+            }
+            if (event.isRecurring()) {
+                return event.getRecurrence().getUntil() == null
+                        || event.getRecurrence().getUntil().plusDays(1).atStartOfDay().plus(event.getDuration()).isAfter(from);
+            }
+            return event.getEndDateTime().isAfter(from);
+        }
+    }
+
+    /**
+     * The store for a calendar save file
+     */
+    static EventStore forSaveFile(String saveFile) {
+        return STORE_URL != null ? new JdbcEventStore(STORE_URL, saveFile) : new FileEventStore(saveFile);
+    }
+
+    /**
+     * Reads every event. A calendar never saved yields an empty list.
+     */
+    List<CalendarEvent> load() throws IOException;
+
+    /**
+     * Records the model's state right after load(), as the base later
+     * saves and external changes are compared with
+     */
+    void loaded(PersistentEventMap state);
+
+    /**
+     * Makes the store hold exactly the snapshot's events, apart from
+     * changes other writers made to events the snapshot has not touched
+     */
+    void save(CalendarModel.Snapshot snapshot) throws IOException;
+
+    /**
+     * Events matching the filter, in no particular order
+     */
+    List<CalendarEvent> query(Filter filter) throws IOException;
+
+    default List<CalendarEvent> eventsBetween(LocalDateTime from, LocalDateTime to) throws IOException {
+        return query(Filter.between(from, to));
+    }
+
+    /**
+     * Adds the events, replacing stored events with the same ids
+     */
+    void upsert(Collection<CalendarEvent> events) throws IOException;
+
+    void delete(Collection<String> ids) throws IOException;
+
+    /**
+     * Checks for changes other writers made since the last load or save.
+     * Returns true if there are changes the model has not applied yet.
+     */
+    default boolean poll() throws IOException {
+        return false;
+    }
+
+    default List<EventFileSync.Change> unapplied() {
+        return List.of();
+    }
+
+    default void applied(List<EventFileSync.Change> changes, long version) {
+    }
+}
@@ -0,0 +1,197 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The events file format: the whole calendar as one serialized list, with
+ * descriptions in the blob store next to it. Every save rewrites the file,
+ * and queries read it all and filter, so this suits calendars that fit in
+ * memory comfortably. Other writers' changes are merged by EventFileSync.
+ */
+class FileEventStore implements EventStore {
+    private final String saveFile;
+    private final EventFileSync fileSync;
+    // Stamp of the file as the last load() found it
+    private Object loadedStamp;
+
+    FileEventStore(String saveFile) {
+        this.saveFile = saveFile;
+        this.fileSync = new EventFileSync(saveFile);
+    }
+
+    @Override
+    public List<CalendarEvent> load() throws IOException {
+        loadedStamp = EventFileSync.stampOf(saveFile);
+        return read();
+    }
+
+    @Override
+    public void loaded(PersistentEventMap state) {
+        fileSync.loaded(loadedStamp, state);
+    }
+
+    @Override
+    public void save(CalendarModel.Snapshot snapshot) throws IOException {
+        fileSync.write(snapshot);
+    }
+
+    @Override
+    public List<CalendarEvent> query(Filter filter) throws IOException {
+        List<CalendarEvent> matches = new ArrayList<>();
+        for (CalendarEvent event : read()) {
+            if (filter.matches(event)) {
+                matches.add(event);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Rewrites the file with the events added, under the same lock as saves.
+     * Loaded models pick the change up as an external one.
+     */
+    @Override
+    public void upsert(Collection<CalendarEvent> events) throws IOException {
+        EventFileSync.withFileLock(saveFile, () -> {
+            PersistentEventMap state = PersistentEventMap.of(read());
+            for (CalendarEvent event : events) {
+                state = state.put(new CalendarEvent(event));
+            }
+            writeSnapshot(saveFile, new CalendarModel.Snapshot(0, state));
+            return null;
+        });
+    }
+
+    @Override
+    public void delete(Collection<String> ids) throws IOException {
+        EventFileSync.withFileLock(saveFile, () -> {
+            PersistentEventMap state = PersistentEventMap.of(read());
+            for (String id : ids) {
+                state = state.remove(id);
+            }
+            writeSnapshot(saveFile, new CalendarModel.Snapshot(0, state));
+            return null;
+        });
+    }
+
+    @Override
+    public boolean poll() throws IOException {
+        return fileSync.poll();
+    }
+
+    @Override
+    public List<EventFileSync.Change> unapplied() {
+        return fileSync.unapplied();
+    }
+
+    @Override
+    public void applied(List<EventFileSync.Change> changes, long version) {
+        fileSync.applied(changes, version);
+    }
+
+    private List<CalendarEvent> read() throws IOException {
+        try {
+            return readEventsFile(saveFile);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unreadable save file " + saveFile, e);
+        }
+    }
+
+    /**
+     * Writes a snapshot to a temp file, forces it to disk and atomically
+     * renames it over the save file, so a crash never leaves a torn file.
+     */
+    static void writeSnapshot(String saveFile, CalendarModel.Snapshot snapshot) throws IOException {
+        long start = System.nanoTime();
+        CalendarJfrEvents.Save jfr = new CalendarJfrEvents.Save();
+        jfr.begin();
+        jfr.file = saveFile;
+        jfr.eventCount = snapshot.events.size();
+
+        Path target = Paths.get(saveFile).toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            // Descriptions go to the blob store, which must be on disk before anything refers to it.
+            // Text already stored is not touched again.
+            BlobStore blobs = BlobStore.forSaveFile(saveFile);
+            List<CalendarEvent> events = new ArrayList<>(snapshot.events.size());
+            for (CalendarEvent event : snapshot.events.values()) {
+                events.add(event.toStored(blobs));
+            }
+            blobs.sync();
+
+            try (FileOutputStream fileOut = new FileOutputStream(temp.toFile());
+                 ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(fileOut))) {
+                out.writeObject(events);
+                out.flush();
+                fileOut.getFD().sync();
+            }
+
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            jfr.succeeded = true;
+            jfr.bytes = Files.size(target);
+        } catch (IOException e) {
+            CalendarMetrics.get().increment("store.save.errors");
+            Files.deleteIfExists(temp);
+            throw e;
+        } finally {
+            CalendarMetrics.get().recordSince("store.save", start);
+            jfr.commit();
+        }
+    }
+
+    /**
+     * Reads the save file without touching any model state, so it can run
+     * off the EDT. A missing file yields an empty list.
+     */
+    @SuppressWarnings("unchecked")
+    static List<CalendarEvent> readEventsFile(String saveFile) throws IOException, ClassNotFoundException {
+        long start = System.nanoTime();
+        CalendarJfrEvents.Load jfr = new CalendarJfrEvents.Load();
+        jfr.begin();
+        jfr.file = saveFile;
+
+        File file = new File(saveFile);
+        try {
+            if (!file.exists()) {
+                jfr.succeeded = true;
+                return new ArrayList<>();
+            }
+
+            try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                List<CalendarEvent> loaded = (List<CalendarEvent>) in.readObject();
+                BlobStore blobs = BlobStore.forSaveFile(saveFile);
+                for (CalendarEvent event : loaded) {
+                    event.attachBlobs(blobs);
+                }
+                jfr.succeeded = true;
+                jfr.eventCount = loaded.size();
+                return loaded;
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            CalendarMetrics.get().increment("store.load.errors");
+            throw e;
+        } finally {
+            CalendarMetrics.get().recordSince("store.load", start);
+            jfr.bytes = file.length();
+            jfr.commit();
+        }
+    }
+}
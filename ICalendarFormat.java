@@ -0,0 +1,585 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Streaming reader and writer for iCalendar (RFC 5545) files.
+ *
+ * Both sides work one VEVENT at a time: the reader unfolds and parses lines
+ * as they arrive and only keeps the properties of the event being built, and
+ * the writer formats each event straight to the output. Memory use does not
+ * depend on the size of the feed.
+ *
+ * Times are stored as local date-times, so events are written as floating
+ * times. On import UTC and TZID times are converted to the system zone.
+ *
+ * Events are exported with their id as the UID, and imported with an id
+ * derived from the UID, so importing a feed again finds the events it
+ * added the first time.
+ */
+final class ICalendarFormat {
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss");
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final int MAX_LINE_OCTETS = 75;
+    private static final String PRODUCT_ID = "-//Enhanced Calendar App//EN";
+    // Our 1-10 priority does not survive the trip through the 1-9 RFC scale
+    private static final String PRIORITY_EXTENSION = "X-REMINDER-PRIORITY";
+    // The form of the ids this app gives events, and so of the UIDs it exports
+    private static final Pattern EVENT_ID = Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+
+    private ICalendarFormat() {
+    }
+
+    /**
+     * Parses an .ics file into new events without touching any model,
+     * reporting progress by characters read and stopping if cancelled.
+     * VEVENTs that cannot be read, such as ones with an unsupported RRULE,
+     * are skipped and counted in result.rejected.
+     */
+    static List<CalendarEvent> readEvents(String filePath, TaskRuntime.TaskContext context,
+                                          CalendarModel.ImportResult result) throws IOException {
+        long start = System.nanoTime();
+        long totalBytes = new File(filePath).length();
+        List<CalendarEvent> imported = new ArrayList<>();
+
+        try (Reader reader = new Reader(new BufferedReader(new InputStreamReader(
+                new FileInputStream(filePath), StandardCharsets.UTF_8), 1 << 16))) {
+            CalendarEvent event;
+            while ((event = reader.next()) != null) {
+                imported.add(event);
+                if (context != null && imported.size() % 1000 == 0) {
+                    if (context.isCancelled()) {
+                        throw new InterruptedIOException("Import cancelled");
+                    }
+                    context.reportProgress(Math.min(reader.getCharsRead(), totalBytes), totalBytes);
+                }
+            }
+            result.rejected += reader.getRejected();
+            CalendarMetrics.get().add("ics.import.errors", reader.getRejected());
+        } finally {
+            CalendarMetrics.get().recordSince("ics.import", start);
+        }
+
+        CalendarMetrics.get().add("ics.import.rows", imported.size());
+        return imported;
+    }
+
+    /**
+     * Writes the given events as an .ics file. Callers off the EDT should pass a snapshot.
+     */
+    static void writeEvents(String filePath, List<CalendarEvent> events) throws IOException {
+        long start = System.nanoTime();
+        try (Writer writer = new Writer(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(filePath), StandardCharsets.UTF_8), 1 << 16))) {
+            for (CalendarEvent event : events) {
+                writer.write(event);
+            }
+        } catch (IOException | RuntimeException e) {
+            CalendarMetrics.get().increment("ics.export.errors");
+            throw e;
+        } finally {
+            CalendarMetrics.get().recordSince("ics.export", start);
+        }
+    }
+
+    /**
+     * Formats events as VEVENT components, for a Writer to add with
+     * writeFormatted(). Lets callers format batches on several threads.
+     */
+    static String formatEvents(List<CalendarEvent> events) throws IOException {
+        StringWriter text = new StringWriter();
+        Writer writer = new Writer(text, false);
+        for (CalendarEvent event : events) {
+            writer.write(event);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Pull parser returning one event per VEVENT. Components other than
+     * VEVENT, and components nested in one (such as VALARM), are skipped.
+     */
+    static class Reader implements Closeable {
+        private final BufferedReader in;
+        private String lookahead;
+        private long charsRead;
+        private int rejected;
+
+        Reader(BufferedReader in) {
+            this.in = in;
+        }
+
+        /**
+         * Returns the next event, or null at the end of the input. Events
+         * that cannot be parsed are reported and skipped.
+         */
+        public CalendarEvent next() throws IOException {
+            String line;
+            while ((line = readUnfolded()) != null) {
+                if (line.equalsIgnoreCase("BEGIN:VEVENT")) {
+                    try {
+                        CalendarEvent event = readEvent();
+                        if (event != null) {
+                            return event;
+                        }
+                    } catch (RuntimeException e) {
+                        rejected++;
+                        System.err.println("Error parsing VEVENT: " + e.getMessage());
+                    }
+                }
+            }
+            return null;
+        }
+
+        private CalendarEvent readEvent() throws IOException {
+            String title = null;
+            String description = "";
+            String location = "";
+            String category = null;
+            Integer priority = null;
+            Integer extendedPriority = null;
+            LocalDateTime dateTime = null;
+            LocalDateTime endTime = null;
+            Duration duration = null;
+            String rrule = null;
+            String uid = null;
+            String recurrenceId = null;
+            Set<LocalDate> exceptions = new TreeSet<>();
+            int nested = 0;
+
+            String line;
+            while ((line = readUnfolded()) != null) {
+                ContentLine content = ContentLine.parse(line);
+                if (content == null) {
+                    continue;
+                }
+                if (content.name.equals("BEGIN")) {
+                    nested++;
+                    continue;
+                }
+                if (content.name.equals("END")) {
+                    if (nested > 0) {
+                        nested--;
+                        continue;
+                    }
+                    break;
+                }
+                if (nested > 0) {
+                    continue;
+                }
+
+                switch (content.name) {
+                    case "UID":
+                        uid = content.value.trim();
+                        break;
+                    case "RECURRENCE-ID":
+                        recurrenceId = content.value.trim();
+                        break;
+                    case "SUMMARY":
+                        title = unescape(content.value);
+                        break;
+                    case "DESCRIPTION":
+                        description = unescape(content.value);
+                        break;
+                    case "LOCATION":
+                        location = unescape(content.value);
+                        break;
+                    case "CATEGORIES":
+                        if (category == null) {
+                            category = unescape(splitList(content.value).get(0));
+                        }
+                        break;
+                    case "PRIORITY":
+                        int rfcPriority = Integer.parseInt(content.value.trim());
+                        priority = rfcPriority == 0 ? null : Math.max(1, 10 - rfcPriority);
+                        break;
+                    case PRIORITY_EXTENSION:
+                        extendedPriority = Integer.parseInt(content.value.trim());
+                        break;
+                    case "DTSTART":
+                        dateTime = parseDateTime(content);
+                        break;
+                    case "DTEND":
+                        endTime = parseDateTime(content);
+                        break;
+                    case "DURATION":
+                        duration = parseDuration(content.value.trim());
+                        break;
+                    case "RRULE":
+                        rrule = content.value;
+                        break;
+                    case "EXDATE":
+                        for (String value : splitList(content.value)) {
+                            exceptions.add(parseDateTime(content.withValue(value)).toLocalDate());
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            if (dateTime == null) {
+                rejected++;
+                System.err.println("Skipping VEVENT without DTSTART");
+                return null;
+            }
+
+            String name = title == null || title.isEmpty() ? "Untitled" : title;
+            CalendarEvent event = uid == null || uid.isEmpty()
+                    ? new CalendarEvent(name, dateTime) : new CalendarEvent(idFor(uid, recurrenceId), name, dateTime);
+            event.setDescription(description);
+            event.setLocation(location);
+            if (category != null && !category.isEmpty()) {
+                event.setCategory(category);
+            }
+            if (extendedPriority != null) {
+                event.setPriority(Math.max(1, Math.min(10, extendedPriority)));
+            } else if (priority != null) {
+                event.setPriority(priority);
+            }
+            if (duration != null) {
+                event.setDuration(duration);
+            } else if (endTime != null && !endTime.isBefore(dateTime)) {
+                event.setDuration(Duration.between(dateTime, endTime));
+            }
+            if (rrule != null) {
+                try {
+                    event.setRecurrence(RecurrenceRule.parse(rrule, exceptions));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("\"" + name + "\": " + e.getMessage(), e);
+                }
+            }
+            return event;
+        }
+
+        /**
+         * The id for an event with this UID. Our own UIDs are event ids already;
+         * others, which can be any text, map to a name-based UUID. A changed
+         * occurrence shares its series' UID, so its RECURRENCE-ID is added in.
+         */
+        private static String idFor(String uid, String recurrenceId) {
+            if (recurrenceId == null && EVENT_ID.matcher(uid).matches()) {
+                return uid;
+            }
+            String name = recurrenceId == null ? uid : uid + "/" + recurrenceId;
+            return UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)).toString();
+        }
+
+        /**
+         * Reads one logical line, joining continuation lines that start with
+         * a space or tab.
+         */
+        private String readUnfolded() throws IOException {
+            String line = lookahead != null ? lookahead : readPhysical();
+            lookahead = null;
+            if (line == null) {
+                return null;
+            }
+
+            String next = readPhysical();
+            if (next == null || next.isEmpty() || (next.charAt(0) != ' ' && next.charAt(0) != '\t')) {
+                lookahead = next;
+                return line;
+            }
+
+            StringBuilder unfolded = new StringBuilder(line);
+            while (next != null && !next.isEmpty() && (next.charAt(0) == ' ' || next.charAt(0) == '\t')) {
+                unfolded.append(next, 1, next.length());
+                next = readPhysical();
+            }
+            lookahead = next;
+            return unfolded.toString();
+        }
+
+        private String readPhysical() throws IOException {
+            String line = in.readLine();
+            if (line != null) {
+                charsRead += line.length() + 2;
+            }
+            return line;
+        }
+
+        public long getCharsRead() {
+            return charsRead;
+        }
+
+        public int getRejected() {
+            return rejected;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Formats events as a VCALENDAR. The header is written on creation and
+     * the footer on close.
+     */
+    static class Writer implements Closeable {
+        private final java.io.Writer out;
+        private final String stamp;
+
+        Writer(java.io.Writer out) throws IOException {
+            this(out, true);
+        }
+
+        private Writer(java.io.Writer out, boolean header) throws IOException {
+            this.out = out;
+            this.stamp = LocalDateTime.now(ZoneOffset.UTC).format(DATE_TIME_FORMAT) + "Z";
+            if (header) {
+                writeLine("BEGIN:VCALENDAR");
+                writeLine("VERSION:2.0");
+                writeLine("PRODID:" + PRODUCT_ID);
+                writeLine("CALSCALE:GREGORIAN");
+            }
+        }
+
+        /**
+         * Adds events already formatted by formatEvents()
+         */
+        public void writeFormatted(String events) throws IOException {
+            out.write(events);
+        }
+
+        public void write(CalendarEvent event) throws IOException {
+            writeLine("BEGIN:VEVENT");
+            writeLine("UID:" + event.getId());
+            writeLine("DTSTAMP:" + stamp);
+            writeLine("DTSTART:" + event.getDateTime().format(DATE_TIME_FORMAT));
+            writeLine("DTEND:" + event.getEndDateTime().format(DATE_TIME_FORMAT));
+            writeLine("SUMMARY:" + escape(event.getTitle()));
+            if (event.getDescription() != null && !event.getDescription().isEmpty()) {
+                writeLine("DESCRIPTION:" + escape(event.getDescription()));
+            }
+            if (event.getLocation() != null && !event.getLocation().isEmpty()) {
+                writeLine("LOCATION:" + escape(event.getLocation()));
+            }
+            if (event.getCategory() != null && !event.getCategory().isEmpty()) {
+                writeLine("CATEGORIES:" + escape(event.getCategory()));
+            }
+            writeLine("PRIORITY:" + Math.max(1, Math.min(9, 10 - event.getPriority())));
+            writeLine(PRIORITY_EXTENSION + ":" + event.getPriority());
+
+            RecurrenceRule rule = event.getRecurrence();
+            if (rule != null) {
+                writeLine("RRULE:" + rule);
+                if (!rule.getExceptions().isEmpty()) {
+                    StringBuilder exdate = new StringBuilder("EXDATE;VALUE=DATE:");
+                    boolean first = true;
+                    for (LocalDate date : rule.getExceptions()) {
+                        if (!first) {
+                            exdate.append(',');
+                        }
+                        first = false;
+                        exdate.append(date.format(DATE_FORMAT));
+                    }
+                    writeLine(exdate.toString());
+                }
+            }
+            writeLine("END:VEVENT");
+        }
+
+        /**
+         * Writes a content line, folding it so no physical line exceeds 75
+         * octets. Folds never split a UTF-8 sequence.
+         */
+        private void writeLine(String line) throws IOException {
+            int octets = 0;
+            int i = 0;
+            while (i < line.length()) {
+                int codePoint = line.codePointAt(i);
+                int size = utf8Length(codePoint);
+                if (octets + size > MAX_LINE_OCTETS) {
+                    out.write("\r\n ");
+                    octets = 1;
+                }
+                out.write(line, i, Character.charCount(codePoint));
+                octets += size;
+                i += Character.charCount(codePoint);
+            }
+            out.write("\r\n");
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                writeLine("END:VCALENDAR");
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * A property line split into name, parameters and value
+     */
+    private static class ContentLine {
+        final String name;
+        final String params;   // raw ";KEY=VALUE" list, possibly empty
+        final String value;
+
+        ContentLine(String name, String params, String value) {
+            this.name = name;
+            this.params = params;
+            this.value = value;
+        }
+
+        static ContentLine parse(String line) {
+            boolean quoted = false;
+            int paramStart = -1;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (c == '"') {
+                    quoted = !quoted;
+                } else if (!quoted && c == ';' && paramStart < 0) {
+                    paramStart = i;
+                } else if (!quoted && c == ':') {
+                    int nameEnd = paramStart < 0 ? i : paramStart;
+                    String params = paramStart < 0 ? "" : line.substring(paramStart, i);
+                    return new ContentLine(line.substring(0, nameEnd).trim().toUpperCase(), params, line.substring(i + 1));
+                }
+            }
+            return null;
+        }
+
+        String param(String key) {
+            for (String param : params.split(";")) {
+                int eq = param.indexOf('=');
+                if (eq > 0 && param.substring(0, eq).trim().equalsIgnoreCase(key)) {
+                    String value = param.substring(eq + 1).trim();
+                    return value.startsWith("\"") && value.endsWith("\"") && value.length() >= 2
+                            ? value.substring(1, value.length() - 1)
+                            : value;
+                }
+            }
+            return null;
+        }
+
+        ContentLine withValue(String newValue) {
+            return new ContentLine(name, params, newValue);
+        }
+    }
+
+    /**
+     * Parses a DATE or DATE-TIME value into the system zone. Dates map to
+     * the start of the day; floating times are taken as they are.
+     */
+    private static LocalDateTime parseDateTime(ContentLine content) {
+        String value = content.value.trim();
+        try {
+            if ("DATE".equalsIgnoreCase(content.param("VALUE")) || value.length() == 8) {
+                return LocalDate.parse(value, DATE_FORMAT).atStartOfDay();
+            }
+            if (value.endsWith("Z")) {
+                LocalDateTime utc = LocalDateTime.parse(value.substring(0, value.length() - 1), DATE_TIME_FORMAT);
+                return utc.atOffset(ZoneOffset.UTC).atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+            }
+            LocalDateTime local = LocalDateTime.parse(value, DATE_TIME_FORMAT);
+            String tzid = content.param("TZID");
+            if (tzid != null) {
+                try {
+                    return local.atZone(ZoneId.of(tzid)).withZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+                } catch (DateTimeException e) {
+                    // Custom VTIMEZONE names are not resolved; keep the wall-clock time
+                }
+            }
+            return local;
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date-time " + value);
+        }
+    }
+
+    /**
+     * Parses a DURATION value such as PT1H30M, P1D or P2W
+     */
+    private static Duration parseDuration(String value) {
+        boolean negative = value.startsWith("-");
+        String unsigned = value.startsWith("-") || value.startsWith("+") ? value.substring(1) : value;
+        Duration duration;
+        if (unsigned.endsWith("W")) {
+            duration = Duration.ofDays(7L * Long.parseLong(unsigned.substring(1, unsigned.length() - 1)));
+        } else {
+            duration = Duration.parse(unsigned);
+        }
+        // Negative durations make no sense for an event's length
+        return negative ? null : duration;
+    }
+
+    /**
+     * Splits a comma-separated value, leaving escaped commas in place
+     */
+    private static List<String> splitList(String value) {
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == ',') {
+                parts.add(value.substring(start, i));
+                start = i + 1;
+            }
+        }
+        parts.add(value.substring(start));
+        return parts;
+    }
+
+    private static String escape(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 8);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\':
+                case ';':
+                case ',':
+                    sb.append('\\').append(c);
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String unescape(String text) {
+        if (text.indexOf('\\') < 0) {
+            return text;
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                char next = text.charAt(++i);
+                sb.append(next == 'n' || next == 'N' ? '\n' : next);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int utf8Length(int codePoint) {
+        if (codePoint < 0x80) {
+            return 1;
+        }
+        if (codePoint < 0x800) {
+            return 2;
+        }
+        return codePoint < 0x10000 ? 3 : 4;
+    }
+}
@@ -0,0 +1,186 @@
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Events indexed by their [start, end) interval.
+ *
+ * A treap ordered by start time, where each node also records the latest end
+ * in its subtree. Overlap queries skip every subtree that ends before the
+ * window and stop at the first start past it, so a query costs O(log n + k)
+ * for k results. Events are removed by identity, using the interval they were
+ * inserted with, so an event may be edited in place before it is re-indexed.
+ *
+ * Not thread-safe for updates. Once filled, a tree can be queried from
+ * several threads at once.
+ */
+class IntervalTree {
+
+    private static class Node {
+        final CalendarEvent event;
+        final long start;
+        final long end;
+        final long seq;        // tie-breaker for equal starts
+        final int priority;
+        long maxEnd;
+        Node left;
+        Node right;
+
+        Node(CalendarEvent event, long start, long end, long seq) {
+            this.event = event;
+            this.start = start;
+            this.end = end;
+            this.seq = seq;
+            this.priority = ThreadLocalRandom.current().nextInt();
+            this.maxEnd = end;
+        }
+
+        int compareTo(Node other) {
+            int byStart = Long.compare(start, other.start);
+            return byStart != 0 ? byStart : Long.compare(seq, other.seq);
+        }
+    }
+
+    private final Map<CalendarEvent, Node> nodes = new IdentityHashMap<>();
+    private Node root;
+    private long nextSeq;
+
+    static long toKey(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    public void insert(CalendarEvent event) {
+        remove(event);
+        long start = toKey(event.getDateTime());
+        // Zero-length events still occupy their start instant
+        long end = Math.max(toKey(event.getEndDateTime()), start + 1);
+        Node node = new Node(event, start, end, nextSeq++);
+        nodes.put(event, node);
+        root = insert(root, node);
+    }
+
+    public boolean remove(CalendarEvent event) {
+        Node node = nodes.remove(event);
+        if (node == null) {
+            return false;
+        }
+        root = remove(root, node);
+        return true;
+    }
+
+    public void clear() {
+        nodes.clear();
+        root = null;
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Events overlapping [from, to), in start order
+     */
+    public List<CalendarEvent> overlapping(LocalDateTime from, LocalDateTime to) {
+        List<CalendarEvent> result = new ArrayList<>();
+        collect(root, toKey(from), toKey(to), result);
+        return result;
+    }
+
+    private static void collect(Node node, long from, long to, List<CalendarEvent> result) {
+        while (node != null && node.maxEnd > from) {
+            collect(node.left, from, to, result);
+            if (node.start >= to) {
+                return;
+            }
+            if (node.end > from) {
+                result.add(node.event);
+            }
+            node = node.right;
+        }
+    }
+
+    private static Node insert(Node root, Node node) {
+        if (root == null) {
+            return node;
+        }
+        if (node.compareTo(root) < 0) {
+            root.left = insert(root.left, node);
+            if (root.left.priority > root.priority) {
+                root = rotateRight(root);
+            }
+        } else {
+            root.right = insert(root.right, node);
+            if (root.right.priority > root.priority) {
+                root = rotateLeft(root);
+            }
+        }
+        update(root);
+        return root;
+    }
+
+    private static Node remove(Node root, Node node) {
+        if (root == null) {
+            return null;
+        }
+        int cmp = node.compareTo(root);
+        if (cmp < 0) {
+            root.left = remove(root.left, node);
+        } else if (cmp > 0) {
+            root.right = remove(root.right, node);
+        } else {
+            return merge(root.left, root.right);
+        }
+        update(root);
+        return root;
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        }
+        right.left = merge(left, right.left);
+        update(right);
+        return right;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private static void update(Node node) {
+        long max = node.end;
+        if (node.left != null && node.left.maxEnd > max) {
+            max = node.left.maxEnd;
+        }
+        if (node.right != null && node.right.maxEnd > max) {
+            max = node.right.maxEnd;
+        }
+        node.maxEnd = max;
+    }
+}
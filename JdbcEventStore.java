@@ -0,0 +1,378 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps calendars in an embedded SQL database, such as H2 or SQLite in
+ * file mode, one row per stored event. The driver is not bundled: put its
+ * jar on the classpath and point calendar.store.url at the database.
+ *
+ * Every calendar shares one events table, keyed by calendar and id, with
+ * indexes on start time, category and priority. Each row keeps its
+ * [start, end) span in seconds, a recurring series from its first start
+ * to the end of its last day (unbounded without an until date). Events
+ * up to a day long can only overlap a range if they start at most a day
+ * before it, so a range query reads them off the start index between two
+ * bounds; the few longer spans and series are checked separately. A save writes only
+ * the rows the snapshot changed since the last load or save, in one
+ * transaction. Descriptions are kept inline rather than in a blob store.
+ *
+ * Each store holds one connection, which all methods share under the
+ * store's monitor.
+ */
+class JdbcEventStore implements EventStore {
+    private static final int BATCH_SIZE = 1000;
+    // Events longer than this, and every recurring series, are long spans
+    private static final long SHORT_SPAN_SECONDS = 24 * 60 * 60;
+    private static final String COLUMNS = "id, title, description, date_time, duration_seconds, location, category,"
+            + " priority, notified, recurrence, exceptions, reminders, modified_at, sync_revision";
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS calendars (name VARCHAR(1024) NOT NULL PRIMARY KEY)",
+            "CREATE TABLE IF NOT EXISTS events ("
+                    + "calendar VARCHAR(1024) NOT NULL, id VARCHAR(64) NOT NULL, title VARCHAR(4000),"
+                    + " description VARCHAR(1000000), date_time VARCHAR(32) NOT NULL, start_second BIGINT NOT NULL,"
+                    + " end_second BIGINT NOT NULL, long_span BOOLEAN NOT NULL, duration_seconds BIGINT NOT NULL, location VARCHAR(4000),"
+                    + " category VARCHAR(255), priority INT NOT NULL, notified BOOLEAN NOT NULL,"
+                    + " recurrence VARCHAR(255), exceptions VARCHAR(32000), reminders VARCHAR(1000),"
+                    + " modified_at BIGINT NOT NULL, sync_revision BIGINT NOT NULL,"
+                    + " PRIMARY KEY (calendar, id))",
+            "CREATE INDEX IF NOT EXISTS events_start ON events (calendar, long_span, start_second)",
+            "CREATE INDEX IF NOT EXISTS events_category ON events (calendar, category)",
+            "CREATE INDEX IF NOT EXISTS events_priority ON events (calendar, priority)"
+    };
+
+    private final String url;
+    private final String calendar;
+    private Connection connection;
+    // What the table holds for this calendar as of the last load or save; null until then
+    private PersistentEventMap saved;
+    private boolean registered;
+
+    JdbcEventStore(String url, String saveFile) {
+        this.url = url;
+        this.calendar = saveFile;
+    }
+
+    /**
+     * Save files of the calendars the database holds
+     */
+    static List<String> savedCalendars(String url) throws IOException {
+        try (Connection connection = open(url);
+             Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT name FROM calendars ORDER BY name")) {
+            List<String> names = new ArrayList<>();
+            while (rows.next()) {
+                names.add(rows.getString(1));
+            }
+            return names;
+        } catch (SQLException e) {
+            throw new IOException("Cannot list calendars in " + url + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized List<CalendarEvent> load() throws IOException {
+        long start = System.nanoTime();
+        try (PreparedStatement select = connection().prepareStatement(
+                "SELECT " + COLUMNS + " FROM events WHERE calendar = ?")) {
+            select.setString(1, calendar);
+            return read(select, null);
+        } catch (SQLException e) {
+            CalendarMetrics.get().increment("store.load.errors");
+            throw new IOException("Cannot load " + calendar + ": " + e.getMessage(), e);
+        } finally {
+            CalendarMetrics.get().recordSince("store.load", start);
+        }
+    }
+
+    @Override
+    public synchronized void loaded(PersistentEventMap state) {
+        saved = state;
+    }
+
+    @Override
+    public synchronized void save(CalendarModel.Snapshot snapshot) throws IOException {
+        if (snapshot.events == saved) {
+            return;
+        }
+        long start = System.nanoTime();
+        List<CalendarEvent> changed = new ArrayList<>();
+        // Rows to delete, including the old rows of changed events
+        List<String> removed = new ArrayList<>();
+        if (saved != null) {
+            PersistentEventMap.diff(saved, snapshot.events, (before, after) -> {
+                if (before != null) {
+                    removed.add(before.getId());
+                }
+                if (after != null) {
+                    changed.add(after);
+                }
+            });
+        } else {
+            // Never loaded here, so whatever the table holds is replaced wholesale
+            changed.addAll(snapshot.events.values());
+        }
+        try {
+            inTransaction(c -> {
+                if (!registered) {
+                    register(c);
+                }
+                if (saved == null) {
+                    try (PreparedStatement clear = c.prepareStatement("DELETE FROM events WHERE calendar = ?")) {
+                        clear.setString(1, calendar);
+                        clear.executeUpdate();
+                    }
+                }
+                deleteRows(c, removed);
+                writeRows(c, changed);
+            });
+            saved = snapshot.events;
+            CalendarMetrics.get().add("store.rows.written", changed.size());
+        } catch (IOException e) {
+            CalendarMetrics.get().increment("store.save.errors");
+            throw e;
+        } finally {
+            CalendarMetrics.get().recordSince("store.save", start);
+        }
+    }
+
+    /**
+     * Pushes the time range, category and priority bounds down to the
+     * indexes; the rows are checked against the filter again, as spans are
+     * kept to the second
+     */
+    @Override
+    public synchronized List<CalendarEvent> query(Filter filter) throws IOException {
+        long start = System.nanoTime();
+        StringBuilder where = new StringBuilder("calendar = ?");
+        List<Object> args = new ArrayList<>();
+        args.add(calendar);
+        if (filter.category != null) {
+            where.append(" AND category = ?");
+            args.add(filter.category);
+        }
+        if (filter.minPriority > 1 || filter.maxPriority < 10) {
+            where.append(" AND priority BETWEEN ? AND ?");
+            args.add(filter.minPriority);
+            args.add(filter.maxPriority);
+        }
+        long to = filter.to != null ? secondOf(filter.to) : Long.MAX_VALUE;
+        String sql = "SELECT " + COLUMNS + " FROM events WHERE " + where;
+        List<Object> params = new ArrayList<>(args);
+        if (filter.from != null) {
+            long from = secondOf(filter.from);
+            sql += " AND long_span = ? AND start_second BETWEEN ? AND ?"
+                    + " UNION ALL SELECT " + COLUMNS + " FROM events WHERE " + where
+                    + " AND long_span = ? AND start_second <= ? AND end_second >= ?";
+            params.addAll(List.of(false, from - SHORT_SPAN_SECONDS, to));
+            params.addAll(args);
+            params.addAll(List.of(true, to, from));
+        } else if (filter.to != null) {
+            sql += " AND start_second <= ?";
+            params.add(to);
+        }
+        try (PreparedStatement select = connection().prepareStatement(sql)) {
+            for (int i = 0; i < params.size(); i++) {
+                select.setObject(i + 1, params.get(i));
+            }
+            return read(select, filter);
+        } catch (SQLException e) {
+            throw new IOException("Cannot query " + calendar + ": " + e.getMessage(), e);
+        } finally {
+            CalendarMetrics.get().recordSince("store.query", start);
+        }
+    }
+
+    @Override
+    public synchronized void upsert(Collection<CalendarEvent> events) throws IOException {
+        List<CalendarEvent> rows = new ArrayList<>(events);
+        inTransaction(c -> {
+            if (!registered) {
+                register(c);
+            }
+            deleteRows(c, rows.stream().map(CalendarEvent::getId).collect(Collectors.toList()));
+            writeRows(c, rows);
+        });
+    }
+
+    @Override
+    public synchronized void delete(Collection<String> ids) throws IOException {
+        List<String> rows = new ArrayList<>(ids);
+        inTransaction(c -> deleteRows(c, rows));
+    }
+
+    private interface SqlAction {
+        void run(Connection connection) throws SQLException;
+    }
+
+    private void inTransaction(SqlAction action) throws IOException {
+        try {
+            Connection c = connection();
+            try {
+                action.run(c);
+                c.commit();
+            } catch (SQLException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IOException("Cannot write " + calendar + ": " + e.getMessage(), e);
+        }
+    }
+
+    private Connection connection() throws SQLException {
+        if (connection == null || connection.isClosed()) {
+            connection = open(url);
+        }
+        return connection;
+    }
+
+    private static Connection open(String url) throws SQLException {
+        Connection connection = DriverManager.getConnection(url);
+        try (Statement statement = connection.createStatement()) {
+            for (String ddl : SCHEMA) {
+                statement.execute(ddl);
+            }
+        }
+        connection.setAutoCommit(false);
+        return connection;
+    }
+
+    private void register(Connection c) throws SQLException {
+        try (PreparedStatement select = c.prepareStatement("SELECT 1 FROM calendars WHERE name = ?")) {
+            select.setString(1, calendar);
+            try (ResultSet rows = select.executeQuery()) {
+                if (!rows.next()) {
+                    try (PreparedStatement insert = c.prepareStatement("INSERT INTO calendars (name) VALUES (?)")) {
+                        insert.setString(1, calendar);
+                        insert.executeUpdate();
+                    }
+                }
+            }
+        }
+        registered = true;
+    }
+
+    private void deleteRows(Connection c, List<String> ids) throws SQLException {
+        if (ids.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement delete = c.prepareStatement("DELETE FROM events WHERE calendar = ? AND id = ?")) {
+            for (int i = 0; i < ids.size(); i++) {
+                delete.setString(1, calendar);
+                delete.setString(2, ids.get(i));
+                delete.addBatch();
+                if ((i + 1) % BATCH_SIZE == 0) {
+                    delete.executeBatch();
+                }
+            }
+            delete.executeBatch();
+        }
+    }
+
+    private void writeRows(Connection c, List<CalendarEvent> events) throws SQLException {
+        if (events.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement insert = c.prepareStatement("INSERT INTO events (calendar, start_second, end_second, long_span, "
+                + COLUMNS + ") VALUES (?" + ", ?".repeat(17) + ")")) {
+            for (int i = 0; i < events.size(); i++) {
+                CalendarEvent event = events.get(i);
+                RecurrenceRule rule = event.getRecurrence();
+                insert.setString(1, calendar);
+                insert.setLong(2, secondOf(event.getDateTime()));
+                insert.setLong(3, endSecondOf(event));
+                insert.setBoolean(4, isLongSpan(event));
+                insert.setString(5, event.getId());
+                insert.setString(6, event.getTitle());
+                insert.setString(7, event.getDescription());
+                insert.setString(8, event.getDateTime().toString());
+                insert.setLong(9, event.getDuration().getSeconds());
+                insert.setString(10, event.getLocation());
+                insert.setString(11, event.getCategory());
+                insert.setInt(12, event.getPriority());
+                insert.setBoolean(13, event.isNotified());
+                insert.setString(14, rule != null ? rule.toString() : null);
+                insert.setString(15, rule != null ? rule.getExceptions().stream().sorted()
+                        .map(LocalDate::toString).collect(Collectors.joining(",")) : null);
+                insert.setString(16, CalendarEvent.formatReminderMinutes(event.getReminderMinutes()));
+                insert.setLong(17, event.getModifiedAt());
+                insert.setLong(18, event.getSyncRevision());
+                insert.addBatch();
+                if ((i + 1) % BATCH_SIZE == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+    }
+
+    /**
+     * Reads the rows a select on COLUMNS returns, keeping those matching the
+     * filter if there is one
+     */
+    private static List<CalendarEvent> read(PreparedStatement select, Filter filter) throws SQLException {
+        List<CalendarEvent> events = new ArrayList<>();
+        select.setFetchSize(BATCH_SIZE);
+        try (ResultSet rows = select.executeQuery()) {
+            while (rows.next()) {
+                CalendarEvent event = new CalendarEvent(rows.getString(1), rows.getString(2),
+                        LocalDateTime.parse(rows.getString(4)));
+                event.setDescription(rows.getString(3) != null ? rows.getString(3) : "");
+                event.setDuration(Duration.ofSeconds(rows.getLong(5)));
+                event.setLocation(rows.getString(6));
+                event.setCategory(rows.getString(7));
+                event.setPriority(rows.getInt(8));
+                event.setNotified(rows.getBoolean(9));
+                String rrule = rows.getString(10);
+                if (rrule != null) {
+                    Set<LocalDate> exceptions = new LinkedHashSet<>();
+                    String dates = rows.getString(11);
+                    if (dates != null && !dates.isEmpty()) {
+                        for (String date : dates.split(",")) {
+                            exceptions.add(LocalDate.parse(date));
+                        }
+                    }
+                    event.setRecurrence(RecurrenceRule.parse(rrule, exceptions));
+                }
+                event.setReminderMinutes(CalendarEvent.parseReminderMinutes(rows.getString(12)));
+                event.setModifiedAt(rows.getLong(13));
+                event.setSyncRevision(rows.getLong(14));
+                if (filter == null || filter.matches(event)) {
+                    events.add(event);
+                }
+            }
+        }
+        return events;
+    }
+
+    private static long secondOf(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static boolean isLongSpan(CalendarEvent event) {
+        return event.isRecurring() || event.getDuration().getSeconds() > SHORT_SPAN_SECONDS;
+    }
+
+    private static long endSecondOf(CalendarEvent event) {
+        if (!event.isRecurring()) {
+            return secondOf(event.getEndDateTime());
+        }
+        LocalDate until = event.getRecurrence().getUntil();
+        return until != null ? secondOf(until.plusDays(1).atStartOfDay().plus(event.getDuration())) : Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,149 @@
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Runs JdbcEventStore against a real database: saves, loads, incremental
+ * saves, and the range, category and priority queries it pushes down to
+ * the indexes, which must return what the same filter picks from a full
+ * load.
+ *
+ * Uses calendar.store.url if set, or an in-memory H2 database. No driver
+ * is bundled; without one on the classpath the test reports that it was
+ * skipped. Run with, for example:
+ *   java -cp out:h2.jar JdbcEventStoreTest
+ * Exits with 1 if any check fails.
+ */
+public class JdbcEventStoreTest {
+    private static final LocalDateTime BASE = LocalDateTime.of(2027, 5, 10, 0, 0);
+
+    private final String url;
+    private int failures;
+
+    JdbcEventStoreTest(String url) {
+        this.url = url;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = EventStore.STORE_URL != null ? EventStore.STORE_URL : "jdbc:h2:mem:store-test;DB_CLOSE_DELAY=-1";
+        try {
+            DriverManager.getDriver(url);
+        } catch (SQLException e) {
+            System.out.println("Skipped: no JDBC driver for " + url + " on the classpath");
+            return;
+        }
+
+        JdbcEventStoreTest test = new JdbcEventStoreTest(url);
+        String calendar = "store-test-" + System.nanoTime() + ".dat";
+        test.saveAndLoad(calendar);
+        test.queriesMatchFullLoad(calendar);
+        test.upsertAndDelete(calendar);
+        System.out.println(test.failures == 0 ? "All store checks passed" : test.failures + " store checks failed");
+        System.exit(test.failures == 0 ? 0 : 1);
+    }
+
+    void saveAndLoad(String calendar) throws Exception {
+        JdbcEventStore store = new JdbcEventStore(url, calendar);
+        PersistentEventMap first = PersistentEventMap.of(sampleEvents());
+        store.save(new CalendarModel.Snapshot(1, first));
+        check(ids(new JdbcEventStore(url, calendar).load()).equals(ids(first.values())),
+                "a fresh store loads what was saved");
+
+        // Only the difference is written, and another store sees it
+        CalendarEvent renamed = new CalendarEvent(first.values().get(0));
+        renamed.setTitle("Renamed");
+        PersistentEventMap second = first.put(renamed).remove(first.values().get(1).getId());
+        store.save(new CalendarModel.Snapshot(2, second));
+        List<CalendarEvent> loaded = new JdbcEventStore(url, calendar).load();
+        check(ids(loaded).equals(ids(second.values())), "an incremental save removes and keeps the right rows");
+        check(loaded.stream().anyMatch(e -> e.getId().equals(renamed.getId()) && e.getTitle().equals("Renamed")),
+                "an incremental save writes the changed row");
+        check(loaded.stream().filter(CalendarEvent::isRecurring).count()
+                        == second.values().stream().filter(CalendarEvent::isRecurring).count(),
+                "recurring series survive a round trip");
+        check(JdbcEventStore.savedCalendars(url).contains(calendar), "the calendar is registered");
+        check(new JdbcEventStore(url, calendar + ".other").load().isEmpty(), "calendars do not share events");
+    }
+
+    void queriesMatchFullLoad(String calendar) throws Exception {
+        JdbcEventStore store = new JdbcEventStore(url, calendar);
+        List<CalendarEvent> all = store.load();
+        Random random = new Random(7);
+        List<EventStore.Filter> filters = new ArrayList<>();
+        filters.add(EventStore.Filter.between(BASE.plusDays(3), BASE.plusDays(4)));
+        filters.add(EventStore.Filter.between(null, BASE.plusDays(2)));
+        filters.add(new EventStore.Filter(null, null, "Work", 1, 10));
+        filters.add(new EventStore.Filter(null, null, null, 8, 10));
+        for (int i = 0; i < 50; i++) {
+            LocalDateTime from = BASE.plusMinutes(15L * random.nextInt(60 * 4 * 4));
+            filters.add(new EventStore.Filter(from, from.plusHours(1 + random.nextInt(72)),
+                    random.nextBoolean() ? null : "Work", 1 + random.nextInt(5), 10));
+        }
+        for (EventStore.Filter filter : filters) {
+            Set<String> expected = ids(all.stream().filter(filter::matches).collect(Collectors.toList()));
+            if (!ids(store.query(filter)).equals(expected)) {
+                check(false, "query from " + filter.from + " to " + filter.to + " in " + filter.category
+                        + " returns what the filter picks from a full load");
+            }
+        }
+    }
+
+    void upsertAndDelete(String calendar) throws Exception {
+        JdbcEventStore store = new JdbcEventStore(url, calendar);
+        CalendarEvent added = new CalendarEvent("Upserted", BASE.plusDays(20));
+        store.upsert(List.of(added));
+        check(ids(store.eventsBetween(BASE.plusDays(20), BASE.plusDays(21))).contains(added.getId()),
+                "an upserted event can be queried");
+        store.delete(List.of(added.getId()));
+        check(!ids(store.load()).contains(added.getId()), "a deleted event is gone");
+    }
+
+    /**
+     * Short events across two weeks, a few multi-day ones, and daily series
+     * with and without an end
+     */
+    private static List<CalendarEvent> sampleEvents() {
+        Random random = new Random(42);
+        List<CalendarEvent> events = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            CalendarEvent event = new CalendarEvent("Event " + i, BASE.plusMinutes(15L * random.nextInt(14 * 24 * 4)));
+            event.setDuration(Duration.ofMinutes(15 * (1 + random.nextInt(16))));
+            event.setCategory(random.nextBoolean() ? "Work" : "Home");
+            event.setPriority(1 + random.nextInt(10));
+            events.add(event);
+        }
+        for (int i = 0; i < 10; i++) {
+            CalendarEvent trip = new CalendarEvent("Trip " + i, BASE.plusDays(random.nextInt(14)));
+            trip.setDuration(Duration.ofDays(2 + random.nextInt(4)));
+            trip.setCategory("Work");
+            events.add(trip);
+        }
+        for (int i = 0; i < 10; i++) {
+            CalendarEvent series = new CalendarEvent("Series " + i, BASE.minusDays(random.nextInt(5)).plusHours(9));
+            LocalDate until = i % 2 == 0 ? null : BASE.toLocalDate().plusDays(random.nextInt(10));
+            series.setRecurrence(new RecurrenceRule(RecurrenceRule.Frequency.DAILY, 1, null, until, 0, null));
+            series.setCategory(i % 3 == 0 ? "Home" : "Work");
+            events.add(series);
+        }
+        return events;
+    }
+
+    private static Set<String> ids(List<CalendarEvent> events) {
+        return events.stream().map(CalendarEvent::getId).collect(Collectors.toCollection(TreeSet::new));
+    }
+
+    private void check(boolean condition, String description) {
+        if (!condition) {
+            failures++;
+            System.err.println("FAILED: " + description);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Read-only, lazily merged view over several time-sorted event lists.
+ *
+ * Elements are produced by a k-way merge on demand: reading the first rows
+ * of the view costs O(rows * log k), and the source lists are never copied
+ * or re-sorted. The merged prefix is remembered so repeated access is O(1).
+ */
+class MergedEventList extends AbstractList<CalendarEvent> {
+    private static final Comparator<CalendarEvent> BY_TIME = Comparator.comparing(CalendarEvent::getDateTime);
+
+    private final int size;
+    private final List<CalendarEvent> merged;
+    private final PriorityQueue<Cursor> heap;
+
+    private static class Cursor {
+        final List<CalendarEvent> source;
+        int position;
+
+        Cursor(List<CalendarEvent> source) {
+            this.source = source;
+        }
+
+        CalendarEvent current() {
+            return source.get(position);
+        }
+    }
+
+    private MergedEventList(List<List<CalendarEvent>> sources) {
+        int total = 0;
+        heap = new PriorityQueue<>(Math.max(1, sources.size()), (a, b) -> BY_TIME.compare(a.current(), b.current()));
+        for (List<CalendarEvent> source : sources) {
+            total += source.size();
+            if (!source.isEmpty()) {
+                heap.add(new Cursor(source));
+            }
+        }
+        size = total;
+        merged = new ArrayList<>();
+    }
+
+    /**
+     * Merges the given sorted lists. A single source is returned as is.
+     */
+    public static List<CalendarEvent> of(List<List<CalendarEvent>> sources) {
+        if (sources.isEmpty()) {
+            return List.of();
+        }
+        if (sources.size() == 1) {
+            return sources.get(0);
+        }
+        return new MergedEventList(sources);
+    }
+
+    @Override
+    public synchronized CalendarEvent get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of " + size);
+        }
+        while (merged.size() <= index) {
+            Cursor cursor = heap.poll();
+            merged.add(cursor.current());
+            cursor.position++;
+            if (cursor.position < cursor.source.size()) {
+                heap.add(cursor);
+            }
+        }
+        return merged.get(index);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,90 @@
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What the month grid shows for one month: each day's events in time order
+ * and the summary lines for the first few of them.
+ *
+ * Built in one pass over the month's events, which arrive sorted by time,
+ * so a dense month costs O(events) instead of a scan of the whole month per
+ * day. Layouts never change once built; MonthLayoutCache drops them when an
+ * edit touches their month.
+ */
+class MonthLayout {
+    static final int INDICATORS_PER_DAY = 3;
+    private static final int TITLE_LENGTH = 15;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm");
+
+    /**
+     * One summary line in a day cell
+     */
+    static class Indicator {
+        final String label;
+        final String toolTip;
+        final String category;
+
+        Indicator(String label, String toolTip, String category) {
+            this.label = label;
+            this.toolTip = toolTip;
+            this.category = category;
+        }
+    }
+
+    final YearMonth month;
+    final int eventCount;
+    private final List<List<CalendarEvent>> days;
+    private final List<List<Indicator>> indicators;
+
+    private MonthLayout(YearMonth month, int eventCount, List<List<CalendarEvent>> days, List<List<Indicator>> indicators) {
+        this.month = month;
+        this.eventCount = eventCount;
+        this.days = days;
+        this.indicators = indicators;
+    }
+
+    /**
+     * Lays out the events, sorted by time, that start in the month; events
+     * overlapping it from before are skipped
+     */
+    static MonthLayout build(YearMonth month, List<CalendarEvent> events) {
+        int length = month.lengthOfMonth();
+        List<List<CalendarEvent>> days = new ArrayList<>(length);
+        List<List<Indicator>> indicators = new ArrayList<>(length);
+        for (int day = 0; day < length; day++) {
+            days.add(new ArrayList<>());
+            indicators.add(new ArrayList<>(INDICATORS_PER_DAY));
+        }
+        int count = 0;
+        for (CalendarEvent event : events) {
+            if (!YearMonth.from(event.getDateTime()).equals(month)) {
+                continue;
+            }
+            int day = event.getDateTime().getDayOfMonth() - 1;
+            days.get(day).add(event);
+            count++;
+            if (indicators.get(day).size() < INDICATORS_PER_DAY) {
+                String time = event.getDateTime().format(TIME_FORMAT);
+                indicators.get(day).add(new Indicator(time + " " + truncate(event.getTitle()),
+                        time + " - " + event.getTitle(), event.getCategory()));
+            }
+        }
+        return new MonthLayout(month, count, days, indicators);
+    }
+
+    /**
+     * Events starting on the day of the month (1-based), in time order
+     */
+    public List<CalendarEvent> eventsOn(int day) {
+        return days.get(day - 1);
+    }
+
+    public List<Indicator> indicatorsOn(int day) {
+        return indicators.get(day - 1);
+    }
+
+    private static String truncate(String text) {
+        return text == null || text.length() <= TITLE_LENGTH ? text : text.substring(0, TITLE_LENGTH - 3) + "...";
+    }
+}
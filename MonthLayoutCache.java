@@ -0,0 +1,97 @@
+import java.time.YearMonth;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recently shown or prefetched month layouts, least recently used first out.
+ *
+ * Rather than every edit path reporting what it touched, the cache keeps
+ * the stored state of each calendar its layouts were built from. Catching
+ * up diffs those against the current states, which costs O(k log n) for k
+ * changed events, and drops only the months the changed events start in.
+ * A changed recurring series drops every month from its start on. A
+ * different set of calendars, or one shown or hidden, drops everything.
+ *
+ * Used on the EDT only.
+ */
+class MonthLayoutCache {
+    private static final int CACHE_MONTHS = 12;
+
+    private final Map<YearMonth, MonthLayout> layouts = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<YearMonth, MonthLayout> eldest) {
+            return size() > CACHE_MONTHS;
+        }
+    };
+    // What the cached layouts reflect
+    private List<CalendarSet.Shard> shards = List.of();
+    private final Map<CalendarSet.Shard, PersistentEventMap> states = new IdentityHashMap<>();
+    private final Map<CalendarSet.Shard, Boolean> visible = new IdentityHashMap<>();
+
+    /**
+     * The layout of the month, or null if it is not cached. Call catchUp() first.
+     */
+    public MonthLayout get(YearMonth month) {
+        MonthLayout layout = layouts.get(month);
+        CalendarMetrics.get().increment(layout != null ? "view.month.cache.hits" : "view.month.cache.misses");
+        return layout;
+    }
+
+    public boolean contains(YearMonth month) {
+        return layouts.containsKey(month);
+    }
+
+    public void put(MonthLayout layout) {
+        layouts.put(layout.month, layout);
+    }
+
+    /**
+     * Drops the layouts of the months changed since the last call
+     */
+    public void catchUp(List<CalendarSet.Shard> current) {
+        if (current != shards || visibilityChanged()) {
+            layouts.clear();
+            shards = current;
+            states.clear();
+            visible.clear();
+            for (CalendarSet.Shard shard : current) {
+                states.put(shard, shard.model.getState());
+                visible.put(shard, shard.visible);
+            }
+            return;
+        }
+        for (CalendarSet.Shard shard : current) {
+            PersistentEventMap state = shard.model.getState();
+            PersistentEventMap built = states.put(shard, state);
+            if (built != state && !layouts.isEmpty()) {
+                PersistentEventMap.diff(built, state, (before, after) -> {
+                    drop(before);
+                    drop(after);
+                });
+            }
+        }
+    }
+
+    private boolean visibilityChanged() {
+        for (CalendarSet.Shard shard : shards) {
+            if (visible.get(shard) != shard.visible) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void drop(CalendarEvent event) {
+        if (event == null) {
+            return;
+        }
+        YearMonth first = YearMonth.from(event.getDateTime());
+        if (event.isRecurring()) {
+            layouts.keySet().removeIf(month -> !month.isBefore(first));
+        } else {
+            layouts.remove(first);
+        }
+    }
+}
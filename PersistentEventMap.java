@@ -0,0 +1,280 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Immutable map from event id to event, where every change returns a new
+ * map that shares all but O(log n) nodes with the old one.
+ *
+ * The map is a treap whose node priorities are derived from the keys, so
+ * a given set of ids always has the same shape. Two versions descended from
+ * each other therefore share most of their subtrees, and diff() can skip
+ * every shared subtree by reference, costing O(k log n) for k differences.
+ *
+ * The events stored here must not be changed after they are added; callers
+ * store copies. A map can then be read from any thread.
+ */
+final class PersistentEventMap {
+    static final PersistentEventMap EMPTY = new PersistentEventMap(null);
+
+    /**
+     * Receives the differences between two versions. before is null for an
+     * added event and after is null for a removed one.
+     */
+    interface DiffListener {
+        void changed(CalendarEvent before, CalendarEvent after);
+    }
+
+    private static final class Node {
+        final String key;
+        final int priority;
+        final CalendarEvent value;
+        final Node left;
+        final Node right;
+        final int size;
+
+        Node(String key, int priority, CalendarEvent value, Node left, Node right) {
+            this.key = key;
+            this.priority = priority;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.size = 1 + sizeOf(left) + sizeOf(right);
+        }
+
+        Node withLeft(Node newLeft) {
+            return newLeft == left ? this : new Node(key, priority, value, newLeft, right);
+        }
+
+        Node withRight(Node newRight) {
+            return newRight == right ? this : new Node(key, priority, value, left, newRight);
+        }
+    }
+
+    private final Node root;
+
+    private PersistentEventMap(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Builds a map from events that are not changed afterwards, in
+     * O(n log n) without intermediate versions
+     */
+    static PersistentEventMap of(Collection<CalendarEvent> events) {
+        List<CalendarEvent> sorted = new ArrayList<>(events);
+        sorted.sort(Comparator.comparing(CalendarEvent::getId));
+
+        // Cartesian tree construction over the sorted keys: the right spine lives on the stack
+        Deque<Node> spine = new ArrayDeque<>();
+        String previousKey = null;
+        for (CalendarEvent event : sorted) {
+            String key = event.getId();
+            if (key.equals(previousKey)) {
+                // Later duplicates win, as with put()
+                Node last = spine.pop();
+                spine.push(new Node(key, last.priority, event, last.left, last.right));
+                continue;
+            }
+            previousKey = key;
+            int priority = priorityOf(key);
+            Node left = null;
+            while (!spine.isEmpty() && higher(priority, key, spine.peek())) {
+                Node popped = spine.pop();
+                popped = popped.withRight(left);
+                left = popped;
+            }
+            spine.push(new Node(key, priority, event, left, null));
+        }
+        Node child = null;
+        while (!spine.isEmpty()) {
+            child = spine.pop().withRight(child);
+        }
+        return new PersistentEventMap(child);
+    }
+
+    public int size() {
+        return sizeOf(root);
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    public CalendarEvent get(String id) {
+        Node node = root;
+        while (node != null) {
+            int cmp = id.compareTo(node.key);
+            if (cmp == 0) {
+                return node.value;
+            }
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * Returns a version with the event stored under its id
+     */
+    public PersistentEventMap put(CalendarEvent event) {
+        String key = event.getId();
+        return new PersistentEventMap(put(root, key, priorityOf(key), event));
+    }
+
+    /**
+     * Returns a version without the given id, or this map if it has none
+     */
+    public PersistentEventMap remove(String id) {
+        Node newRoot = remove(root, id);
+        return newRoot == root ? this : new PersistentEventMap(newRoot);
+    }
+
+    /**
+     * The events in id order
+     */
+    public List<CalendarEvent> values() {
+        List<CalendarEvent> result = new ArrayList<>(size());
+        collect(root, result);
+        return result;
+    }
+
+    /**
+     * Reports every id whose event differs between the two versions, by
+     * reference
+     */
+    static void diff(PersistentEventMap from, PersistentEventMap to, DiffListener listener) {
+        diff(from.root, to.root, listener);
+    }
+
+    private static void diff(Node a, Node b, DiffListener listener) {
+        if (a == b) {
+            return;
+        }
+        if (a == null) {
+            forEach(b, event -> listener.changed(null, event));
+            return;
+        }
+        if (b == null) {
+            forEach(a, event -> listener.changed(event, null));
+            return;
+        }
+        if (a.key.equals(b.key)) {
+            if (a.value != b.value) {
+                listener.changed(a.value, b.value);
+            }
+            diff(a.left, b.left, listener);
+            diff(a.right, b.right, listener);
+        } else if (higher(a.priority, a.key, b)) {
+            // a's root outranks everything in b, so b cannot contain its key
+            listener.changed(a.value, null);
+            Node[] parts = split(b, a.key);
+            diff(a.left, parts[0], listener);
+            diff(a.right, parts[1], listener);
+        } else {
+            listener.changed(null, b.value);
+            Node[] parts = split(a, b.key);
+            diff(parts[0], b.left, listener);
+            diff(parts[1], b.right, listener);
+        }
+    }
+
+    private static Node put(Node node, String key, int priority, CalendarEvent event) {
+        if (node == null) {
+            return new Node(key, priority, event, null, null);
+        }
+        int cmp = key.compareTo(node.key);
+        if (cmp == 0) {
+            return new Node(key, priority, event, node.left, node.right);
+        }
+        if (higher(priority, key, node)) {
+            Node[] parts = split(node, key);
+            return new Node(key, priority, event, parts[0], parts[1]);
+        }
+        return cmp < 0
+                ? node.withLeft(put(node.left, key, priority, event))
+                : node.withRight(put(node.right, key, priority, event));
+    }
+
+    private static Node remove(Node node, String key) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = key.compareTo(node.key);
+        if (cmp == 0) {
+            return join(node.left, node.right);
+        }
+        return cmp < 0 ? node.withLeft(remove(node.left, key)) : node.withRight(remove(node.right, key));
+    }
+
+    /**
+     * Splits into the keys below and above key, which must not be present
+     */
+    private static Node[] split(Node node, String key) {
+        if (node == null) {
+            return new Node[2];
+        }
+        if (key.compareTo(node.key) < 0) {
+            Node[] parts = split(node.left, key);
+            parts[1] = node.withLeft(parts[1]);
+            return parts;
+        }
+        Node[] parts = split(node.right, key);
+        parts[0] = node.withRight(parts[0]);
+        return parts;
+    }
+
+    /**
+     * Joins two trees where every key in left is below every key in right
+     */
+    private static Node join(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (higher(left.priority, left.key, right)) {
+            return left.withRight(join(left.right, right));
+        }
+        return right.withLeft(join(left, right.left));
+    }
+
+    private static boolean higher(int priority, String key, Node other) {
+        return priority != other.priority ? priority > other.priority : key.compareTo(other.key) < 0;
+    }
+
+    private static int priorityOf(String key) {
+        // Murmur3 finalizer, so similar ids still get unrelated priorities
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int sizeOf(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static void collect(Node node, List<CalendarEvent> result) {
+        while (node != null) {
+            collect(node.left, result);
+            result.add(node.value);
+            node = node.right;
+        }
+    }
+
+    private static void forEach(Node node, Consumer<CalendarEvent> action) {
+        while (node != null) {
+            forEach(node.left, action);
+            action.accept(node.value);
+            node = node.right;
+        }
+    }
+}
@@ -0,0 +1,360 @@
+import java.io.Serializable;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Immutable RRULE-like recurrence rule (frequency, interval, by-day,
+ * until/count and exception dates).
+ *
+ * A rule never stores its occurrences; they are generated on demand for a
+ * requested window, starting from the first period that can intersect it,
+ * so the cost of a query is proportional to the occurrences it returns.
+ */
+class RecurrenceRule implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    enum Frequency { DAILY, WEEKLY, MONTHLY, YEARLY }
+
+    private static final DateTimeFormatter RRULE_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final Map<String, DayOfWeek> DAY_CODES = new LinkedHashMap<>();
+
+    static {
+        DAY_CODES.put("MO", DayOfWeek.MONDAY);
+        DAY_CODES.put("TU", DayOfWeek.TUESDAY);
+        DAY_CODES.put("WE", DayOfWeek.WEDNESDAY);
+        DAY_CODES.put("TH", DayOfWeek.THURSDAY);
+        DAY_CODES.put("FR", DayOfWeek.FRIDAY);
+        DAY_CODES.put("SA", DayOfWeek.SATURDAY);
+        DAY_CODES.put("SU", DayOfWeek.SUNDAY);
+    }
+
+    private final Frequency frequency;
+    private final int interval;
+    // Both sets are always serializable unmodifiable or empty sets. They stay declared
+    // as Set, as the field types are part of the serialized form files were saved in.
+    @SuppressWarnings("serial")
+    private final Set<DayOfWeek> byDay;
+    private final LocalDate until;          // inclusive; null for open-ended
+    private final int count;                // 0 for unlimited
+    @SuppressWarnings("serial")
+    private final Set<LocalDate> exceptions;
+
+    // How far ahead the last occurrence of a count-bounded rule is looked for. Some rules
+    // never match a date (DAILY;INTERVAL=7 on a weekday BYDAY leaves out), so the scan needs an end.
+    private static final int COUNT_SCAN_YEARS = 10_000;
+
+    // Last occurrence of a count-bounded rule, resolved once per series start
+    private transient LocalDateTime countEndFor;
+    private transient LocalDateTime countEnd;
+
+    public RecurrenceRule(Frequency frequency) {
+        this(frequency, 1, null, null, 0, null);
+    }
+
+    public RecurrenceRule(Frequency frequency, int interval, Set<DayOfWeek> byDay,
+                          LocalDate until, int count, Set<LocalDate> exceptions) {
+        if (frequency == null) {
+            throw new IllegalArgumentException("Recurrence frequency is required");
+        }
+        if (interval < 1) {
+            throw new IllegalArgumentException("Recurrence interval must be at least 1");
+        }
+        if (count < 0) {
+            throw new IllegalArgumentException("Recurrence count cannot be negative");
+        }
+        this.frequency = frequency;
+        this.interval = interval;
+        this.byDay = byDay == null || byDay.isEmpty()
+                ? Collections.emptySet()
+                : Collections.unmodifiableSet(EnumSet.copyOf(byDay));
+        this.until = until;
+        this.count = count;
+        this.exceptions = exceptions == null || exceptions.isEmpty()
+                ? Collections.emptySet()
+                : Collections.unmodifiableSet(new TreeSet<>(exceptions));
+    }
+
+    public Frequency getFrequency() {
+        return frequency;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public Set<DayOfWeek> getByDay() {
+        return byDay;
+    }
+
+    public LocalDate getUntil() {
+        return until;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public Set<LocalDate> getExceptions() {
+        return exceptions;
+    }
+
+    /**
+     * Returns a copy of this rule that skips the occurrence on the given date
+     */
+    public RecurrenceRule withException(LocalDate date) {
+        Set<LocalDate> updated = new TreeSet<>(exceptions);
+        updated.add(date);
+        return new RecurrenceRule(frequency, interval, byDay, until, count, updated);
+    }
+
+    /**
+     * Returns the start times of all occurrences in [from, to), in order, for a
+     * series whose first occurrence is {@code seriesStart}.
+     */
+    public List<LocalDateTime> occurrencesBetween(LocalDateTime seriesStart, LocalDateTime from, LocalDateTime to) {
+        List<LocalDateTime> result = new ArrayList<>();
+        LocalDateTime windowStart = from.isBefore(seriesStart) ? seriesStart : from;
+        LocalDateTime lastAllowed = count > 0 ? resolveCountEnd(seriesStart) : null;
+
+        generate(seriesStart, windowStart, to, occurrence -> {
+            if (lastAllowed != null && occurrence.isAfter(lastAllowed)) {
+                return false;
+            }
+            if (!exceptions.contains(occurrence.toLocalDate())) {
+                result.add(occurrence);
+            }
+            return true;
+        });
+        return result;
+    }
+
+    private synchronized LocalDateTime resolveCountEnd(LocalDateTime seriesStart) {
+        if (!seriesStart.equals(countEndFor)) {
+            // Excluded dates still consume the count, as in RFC 5545
+            LocalDateTime[] last = {null};
+            int[] seen = {0};
+            generate(seriesStart, seriesStart, seriesStart.plusYears(COUNT_SCAN_YEARS), occurrence -> {
+                last[0] = occurrence;
+                return ++seen[0] < count;
+            });
+            countEndFor = seriesStart;
+            // With no occurrence in reach the series is empty: nothing is after the instant before it starts
+            countEnd = last[0] != null ? last[0] : seriesStart.minusNanos(1);
+        }
+        return countEnd;
+    }
+
+    /**
+     * Emits candidate occurrences in [from, to) in ascending order, honouring
+     * interval, by-day and until. Stops when the consumer returns false.
+     */
+    private void generate(LocalDateTime start, LocalDateTime from, LocalDateTime to,
+                          Predicate<LocalDateTime> consumer) {
+        LocalDateTime end = to;
+        if (until != null && until.plusDays(1).atStartOfDay().isBefore(end)) {
+            end = until.plusDays(1).atStartOfDay();
+        }
+
+        LocalDate startDate = start.toLocalDate();
+        switch (frequency) {
+            case DAILY: {
+                // Every candidate falls on the start's weekday, so a BYDAY without it matches nothing
+                if (interval % 7 == 0 && !matchesByDay(start)) {
+                    return;
+                }
+                long days = ChronoUnit.DAYS.between(startDate, from.toLocalDate());
+                for (long k = Math.max(0, Math.floorDiv(days, interval)); ; k++) {
+                    LocalDateTime candidate = start.plusDays(k * interval);
+                    if (!candidate.isBefore(end)) {
+                        return;
+                    }
+                    if (!candidate.isBefore(from) && matchesByDay(candidate)
+                            && !consumer.test(candidate)) {
+                        return;
+                    }
+                }
+            }
+            case WEEKLY: {
+                // Weeks start on Monday (RFC 5545 default WKST)
+                LocalDate firstWeek = startDate.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                Set<DayOfWeek> days = byDay.isEmpty() ? EnumSet.of(start.getDayOfWeek()) : byDay;
+                long weeks = ChronoUnit.WEEKS.between(firstWeek, from.toLocalDate());
+                for (long k = Math.max(0, Math.floorDiv(weeks, interval)); ; k++) {
+                    LocalDate week = firstWeek.plusWeeks(k * interval);
+                    if (!week.atStartOfDay().isBefore(end)) {
+                        return;
+                    }
+                    for (DayOfWeek day : days) {
+                        LocalDateTime candidate = week.plusDays(day.ordinal()).atTime(start.toLocalTime());
+                        if (candidate.isBefore(start) || candidate.isBefore(from)) {
+                            continue;
+                        }
+                        if (!candidate.isBefore(end) || !consumer.test(candidate)) {
+                            return;
+                        }
+                    }
+                }
+            }
+            case MONTHLY:
+            case YEARLY: {
+                int stepMonths = frequency == Frequency.MONTHLY ? interval : interval * 12;
+                YearMonth firstMonth = YearMonth.from(startDate);
+                long months = ChronoUnit.MONTHS.between(firstMonth, YearMonth.from(from));
+                for (long k = Math.max(0, Math.floorDiv(months, stepMonths)); ; k++) {
+                    YearMonth month = firstMonth.plusMonths(k * stepMonths);
+                    if (!month.atDay(1).atStartOfDay().isBefore(end)) {
+                        return;
+                    }
+                    // Months without this day (e.g. the 31st) are skipped, as in RFC 5545
+                    if (!month.isValidDay(startDate.getDayOfMonth())) {
+                        continue;
+                    }
+                    LocalDateTime candidate = month.atDay(startDate.getDayOfMonth()).atTime(start.toLocalTime());
+                    if (candidate.isBefore(from)) {
+                        continue;
+                    }
+                    if (!candidate.isBefore(end) || !consumer.test(candidate)) {
+                        return;
+                    }
+                }
+            }
+            default:
+                throw new IllegalStateException("Unsupported frequency: " + frequency);
+        }
+    }
+
+    private boolean matchesByDay(LocalDateTime candidate) {
+        return byDay.isEmpty() || byDay.contains(candidate.getDayOfWeek());
+    }
+
+    /**
+     * Parses the value of an RRULE property, e.g. "FREQ=WEEKLY;INTERVAL=2;BYDAY=MO,WE".
+     * Exception dates are not part of RRULE and are passed separately.
+     * Rules using parts this class cannot express, such as BYMONTHDAY,
+     * BYSETPOS or BYDAY ordinals ("1MO"), are rejected rather than read as a
+     * different rule.
+     *
+     * @throws IllegalArgumentException if the rule is malformed or unsupported
+     */
+    public static RecurrenceRule parse(String rrule, Set<LocalDate> exceptions) {
+        Frequency frequency = null;
+        int interval = 1;
+        Set<DayOfWeek> byDay = EnumSet.noneOf(DayOfWeek.class);
+        LocalDate until = null;
+        int count = 0;
+        String weekStart = "MO";
+
+        String value = rrule.startsWith("RRULE:") ? rrule.substring(6) : rrule;
+        for (String part : value.split(";")) {
+            int eq = part.indexOf('=');
+            if (eq <= 0) {
+                continue;
+            }
+            String key = part.substring(0, eq).trim().toUpperCase();
+            String arg = part.substring(eq + 1).trim().toUpperCase();
+            switch (key) {
+                case "FREQ":
+                    try {
+                        frequency = Frequency.valueOf(arg);
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Unsupported RRULE frequency: " + arg);
+                    }
+                    break;
+                case "INTERVAL":
+                    interval = Integer.parseInt(arg);
+                    break;
+                case "COUNT":
+                    count = Integer.parseInt(arg);
+                    break;
+                case "UNTIL":
+                    try {
+                        until = LocalDate.parse(arg.substring(0, 8), RRULE_DATE_FORMAT);
+                    } catch (IndexOutOfBoundsException | DateTimeParseException e) {
+                        throw new IllegalArgumentException("Invalid RRULE UNTIL: " + arg);
+                    }
+                    break;
+                case "BYDAY":
+                    for (String code : arg.split(",")) {
+                        DayOfWeek dow = DAY_CODES.get(code);
+                        if (dow == null) {
+                            // Includes ordinals such as "1MO" (first Monday), which have no equivalent here
+                            throw new IllegalArgumentException("Unsupported BYDAY value: " + code);
+                        }
+                        byDay.add(dow);
+                    }
+                    break;
+                case "WKST":
+                    weekStart = arg;
+                    break;
+                default:
+                    // BYMONTH, BYMONTHDAY, BYSETPOS, ... would narrow or expand the set of occurrences
+                    throw new IllegalArgumentException("Unsupported RRULE part: " + key);
+            }
+        }
+
+        if (frequency == null) {
+            throw new IllegalArgumentException("RRULE without FREQ: " + rrule);
+        }
+        if (!byDay.isEmpty() && (frequency == Frequency.MONTHLY || frequency == Frequency.YEARLY)) {
+            throw new IllegalArgumentException("Unsupported RRULE: BYDAY with FREQ=" + frequency);
+        }
+        // Weeks are counted from Monday; another start only changes which weeks a multi-week interval picks
+        if (!weekStart.equals("MO") && frequency == Frequency.WEEKLY && interval > 1) {
+            throw new IllegalArgumentException("Unsupported RRULE: WKST=" + weekStart + " with INTERVAL=" + interval);
+        }
+        return new RecurrenceRule(frequency, interval, byDay, until, count, exceptions);
+    }
+
+    /**
+     * Formats the rule as an RRULE value (without exception dates)
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("FREQ=").append(frequency);
+        if (interval != 1) {
+            sb.append(";INTERVAL=").append(interval);
+        }
+        if (!byDay.isEmpty()) {
+            StringJoiner days = new StringJoiner(",");
+            for (Map.Entry<String, DayOfWeek> entry : DAY_CODES.entrySet()) {
+                if (byDay.contains(entry.getValue())) {
+                    days.add(entry.getKey());
+                }
+            }
+            sb.append(";BYDAY=").append(days);
+        }
+        if (until != null) {
+            sb.append(";UNTIL=").append(until.format(RRULE_DATE_FORMAT));
+        }
+        if (count > 0) {
+            sb.append(";COUNT=").append(count);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RecurrenceRule)) return false;
+        RecurrenceRule other = (RecurrenceRule) o;
+        return frequency == other.frequency
+                && interval == other.interval
+                && count == other.count
+                && byDay.equals(other.byDay)
+                && Objects.equals(until, other.until)
+                && exceptions.equals(other.exceptions);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(frequency, interval, byDay, until, count, exceptions);
+    }
+}
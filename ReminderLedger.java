@@ -0,0 +1,184 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Append-only record of the reminders already delivered, so a restart
+ * neither repeats them nor misses the ones that came due while the app was
+ * closed.
+ *
+ * Each delivered reminder is one record keyed by event id, occurrence start
+ * and lead time; a watermark record notes how far the scheduler has got.
+ * On open the whole log is read into memory and, when most of it refers to
+ * occurrences long past, rewritten with only the recent records.
+ *
+ * Only used from the notification tick, one thread at a time.
+ */
+class ReminderLedger {
+    static final String LEDGER_FILE = "reminders.log";
+
+    private static final byte FIRED = 'F';
+    private static final byte WATERMARK = 'W';
+    // Fired records for occurrences older than this are dropped on compaction
+    private static final long RETENTION_SECONDS = 30L * 24 * 60 * 60;
+
+    private static class Key {
+        final String eventId;
+        final long start;
+        final int minutes;
+
+        Key(String eventId, long start, int minutes) {
+            this.eventId = eventId;
+            this.start = start;
+            this.minutes = minutes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return start == other.start && minutes == other.minutes && eventId.equals(other.eventId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(eventId, start, minutes);
+        }
+    }
+
+    private final File file;
+    private final Set<Key> fired = new HashSet<>();
+    private long watermark = Long.MIN_VALUE;
+    private DataOutputStream out;
+
+    ReminderLedger(String path) {
+        this.file = new File(path);
+    }
+
+    /**
+     * Reads the log, compacting it if it has grown mostly stale as of now
+     */
+    public void open(LocalDateTime now) throws IOException {
+        fired.clear();
+        watermark = Long.MIN_VALUE;
+        int records = 0;
+        boolean truncated = false;
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                while (true) {
+                    truncated = false;
+                    byte type = in.readByte();
+                    truncated = true;
+                    if (type == FIRED) {
+                        fired.add(new Key(in.readUTF(), in.readLong(), in.readInt()));
+                    } else if (type == WATERMARK) {
+                        watermark = Math.max(watermark, in.readLong());
+                    } else {
+                        throw new IOException("Corrupt reminder ledger record type " + type);
+                    }
+                    records++;
+                }
+            } catch (EOFException e) {
+                // End of log; a record cut short by a crash is dropped by the rewrite below
+            }
+        }
+
+        long cutoff = toKey(now) - RETENTION_SECONDS;
+        fired.removeIf(key -> key.start < cutoff);
+        if (truncated || records > 2 * (fired.size() + 1)) {
+            compact();
+        }
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+    }
+
+    public boolean hasFired(CalendarEvent event, int minutes) {
+        return fired.contains(keyOf(event, minutes));
+    }
+
+    /**
+     * Records a delivered reminder; written out on the next flush
+     */
+    public void recordFired(CalendarEvent event, int minutes) throws IOException {
+        Key key = keyOf(event, minutes);
+        if (fired.add(key)) {
+            out.writeByte(FIRED);
+            out.writeUTF(key.eventId);
+            out.writeLong(key.start);
+            out.writeInt(key.minutes);
+        }
+    }
+
+    /**
+     * Latest due time the scheduler has fully processed, or null if none
+     */
+    public LocalDateTime getWatermark() {
+        return watermark == Long.MIN_VALUE ? null : LocalDateTime.ofEpochSecond(watermark, 0, ZoneOffset.UTC);
+    }
+
+    public void advanceWatermark(LocalDateTime time) throws IOException {
+        long key = toKey(time);
+        if (key > watermark) {
+            watermark = key;
+            out.writeByte(WATERMARK);
+            out.writeLong(key);
+        }
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    public void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    private void compact() throws IOException {
+        Path target = file.toPath().toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream compacted = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp.toFile())))) {
+            for (Key key : fired) {
+                compacted.writeByte(FIRED);
+                compacted.writeUTF(key.eventId);
+                compacted.writeLong(key.start);
+                compacted.writeInt(key.minutes);
+            }
+            if (watermark != Long.MIN_VALUE) {
+                compacted.writeByte(WATERMARK);
+                compacted.writeLong(watermark);
+            }
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static Key keyOf(CalendarEvent event, int minutes) {
+        return new Key(event.getId(), toKey(event.getDateTime()), minutes);
+    }
+
+    private static long toKey(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+}
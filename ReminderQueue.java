@@ -0,0 +1,103 @@
+import javax.swing.SwingUtilities;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Collects due reminders from any thread and hands them to the EDT in
+ * batches.
+ *
+ * However many reminders arrive, at most one delivery is queued on the EDT
+ * at a time, and deliveries are spaced at least MIN_INTERVAL_MILLIS apart,
+ * so a burst of events starting at the same minute shows up as one list
+ * rather than one window per event. Snoozed reminders are held by the
+ * runtime's timer and re-offered when they come due, without going back to
+ * the model.
+ */
+class ReminderQueue {
+    static final long MIN_INTERVAL_MILLIS = 2000;
+    // Largest batch handed over at once; the rest follows on the next delivery
+    static final int MAX_BATCH = 500;
+
+    private final TaskRuntime runtime;
+    private final Clock clock;
+    private final Consumer<List<CalendarEvent>> sink;
+    private final Queue<CalendarEvent> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean deliveryScheduled = new AtomicBoolean();
+    private volatile long lastDelivery;
+
+    /**
+     * @param sink receives each batch on the EDT
+     */
+    ReminderQueue(TaskRuntime runtime, Clock clock, Consumer<List<CalendarEvent>> sink) {
+        this.runtime = runtime;
+        this.clock = clock;
+        this.sink = sink;
+    }
+
+    public void offer(CalendarEvent event) {
+        pending.add(event);
+        scheduleDelivery();
+    }
+
+    public void offerAll(Collection<CalendarEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        pending.addAll(events);
+        scheduleDelivery();
+    }
+
+    /**
+     * Re-offers the given reminders once the delay has passed
+     */
+    public void snooze(List<CalendarEvent> events, Duration delay) {
+        if (events.isEmpty()) {
+            return;
+        }
+        List<CalendarEvent> snoozed = List.copyOf(events);
+        CalendarMetrics.get().add("notifications.snoozed", snoozed.size());
+        runtime.schedule("reminder-snooze", () -> offerAll(snoozed), delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    private void scheduleDelivery() {
+        if (pending.isEmpty() || !deliveryScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        long wait = lastDelivery + MIN_INTERVAL_MILLIS - clock.millis();
+        if (wait <= 0) {
+            SwingUtilities.invokeLater(this::deliver);
+        } else {
+            runtime.schedule("reminder-delivery", () -> SwingUtilities.invokeLater(this::deliver),
+                    wait, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void deliver() {
+        lastDelivery = clock.millis();
+        // Cleared before draining so a reminder offered meanwhile schedules the next delivery
+        deliveryScheduled.set(false);
+
+        List<CalendarEvent> batch = new ArrayList<>();
+        CalendarEvent event;
+        while (batch.size() < MAX_BATCH && (event = pending.poll()) != null) {
+            batch.add(event);
+        }
+        if (!batch.isEmpty()) {
+            CalendarMetrics.get().increment("notifications.batches");
+            sink.accept(batch);
+        }
+        scheduleDelivery();
+    }
+}
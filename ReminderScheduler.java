@@ -0,0 +1,122 @@
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides which reminders are due, once per notification tick.
+ *
+ * Each tick looks at the reminders due between the ledger's watermark and
+ * the clock's current time, plus overdue ones of events that have not
+ * started yet, and returns those not delivered yet. They are recorded in
+ * the ledger before they are returned, so a restart resumes from the
+ * watermark without repeating any of them. All timing comes from the
+ * clock, so a simulation can drive the ticks on virtual time.
+ */
+class ReminderScheduler {
+    static final int TICK_SECONDS = 30;
+    private static final Duration MAX_REMINDER_CATCH_UP = Duration.ofDays(1);
+
+    /**
+     * The events a scheduler watches
+     */
+    interface Source {
+        /**
+         * Events and occurrences starting in [from, to)
+         */
+        List<CalendarEvent> getEventsBetween(LocalDateTime from, LocalDateTime to);
+
+        int getMaxReminderMinutes();
+    }
+
+    /**
+     * One reminder of one occurrence
+     */
+    static class Reminder {
+        final CalendarEvent event;
+        final int minutes;
+        final LocalDateTime dueTime;
+
+        Reminder(CalendarEvent event, int minutes, LocalDateTime dueTime) {
+            this.event = event;
+            this.minutes = minutes;
+            this.dueTime = dueTime;
+        }
+    }
+
+    private final Source source;
+    private final ReminderLedger ledger;
+    private final Clock clock;
+    private boolean ledgerOpen;
+    private Instant lastTick;
+
+    ReminderScheduler(Source source, ReminderLedger ledger, Clock clock) {
+        this.source = source;
+        this.ledger = ledger;
+        this.clock = clock;
+    }
+
+    /**
+     * Reminders that came due since the last tick and have not been
+     * delivered, in the order of their events
+     */
+    public synchronized List<Reminder> tick() throws IOException {
+        Instant instant = clock.instant();
+        LocalDateTime now = LocalDateTime.ofInstant(instant, clock.getZone());
+        if (!ledgerOpen) {
+            ledger.open(now);
+            ledgerOpen = true;
+        }
+
+        // Resume where the last tick stopped, catching up at most a day of downtime
+        LocalDateTime from = ledger.getWatermark();
+        if (lastTick != null) {
+            // The watermark is local time, which repeats an hour when DST ends; read the last tick in today's offset
+            LocalDateTime last = LocalDateTime.ofInstant(lastTick, clock.getZone());
+            if (from == null || last.isBefore(from)) {
+                from = last;
+            }
+        }
+        LocalDateTime earliest = now.minus(MAX_REMINDER_CATCH_UP);
+        if (from == null) {
+            from = now.truncatedTo(ChronoUnit.MINUTES);
+        } else if (from.isBefore(earliest)) {
+            from = earliest;
+        }
+
+        // A reminder due in [from, now] belongs to an event starting up to the longest lead later
+        LocalDateTime to = now.plusMinutes(source.getMaxReminderMinutes()).plusSeconds(1);
+        List<Reminder> due = new ArrayList<>();
+        for (CalendarEvent event : source.getEventsBetween(from, to)) {
+            // Compared as instants, so an event in the hour skipped by a DST change is not taken as over
+            if (event.getEndDateTime().atZone(clock.getZone()).toInstant().isBefore(instant)) {
+                continue;
+            }
+            // An event added or moved after its reminder came due still gets it, as long as it has not started
+            boolean upcoming = event.getDateTime().atZone(clock.getZone()).toInstant().isAfter(instant);
+            for (int minutes : event.getReminderMinutes()) {
+                LocalDateTime dueTime = event.getDateTime().minusMinutes(minutes);
+                if ((upcoming || !dueTime.isBefore(from)) && !dueTime.isAfter(now) && !ledger.hasFired(event, minutes)) {
+                    ledger.recordFired(event, minutes);
+                    due.add(new Reminder(event, minutes, dueTime));
+                }
+            }
+        }
+        ledger.advanceWatermark(now);
+        ledger.flush();
+        lastTick = instant;
+        return due;
+    }
+
+    /**
+     * Closes the ledger; the next tick opens it again
+     */
+    public synchronized void close() throws IOException {
+        ledger.close();
+        ledgerOpen = false;
+    }
+}
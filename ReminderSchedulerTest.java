@@ -0,0 +1,145 @@
+import java.io.File;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Ticks the reminder scheduler on a SimulatedClock over an in-memory model:
+ * events added after their reminder came due, edits that move an event,
+ * restarts on the same ledger, and ticks run off the thread making edits.
+ *
+ * Run with: java ReminderSchedulerTest. Exits with 1 if any check fails.
+ */
+public class ReminderSchedulerTest {
+    private static final ZoneId ZONE = ZoneId.of("Europe/Berlin");
+
+    private final SimulatedClock clock = new SimulatedClock(
+            LocalDateTime.of(2027, 3, 1, 9, 0).atZone(ZONE).toInstant(), ZONE);
+    private final CalendarModel model = new CalendarModel(null);
+    private File ledgerFile;
+    private int failures;
+
+    public static void main(String[] args) throws Exception {
+        ReminderSchedulerTest test = new ReminderSchedulerTest();
+        test.ledgerFile = File.createTempFile("reminders", ".log");
+        test.ledgerFile.deleteOnExit();
+        new File(test.ledgerFile.getPath() + ".tmp").deleteOnExit();
+        test.model.setClock(test.clock);
+
+        test.lateAddedEventStillReminds();
+        test.startedEventIsNotReminded();
+        test.movedEventRemindsAgain();
+        test.ticksOffTheEditingThread();
+        System.out.println(test.failures == 0 ? "All scheduler checks passed" : test.failures + " scheduler checks failed");
+        System.exit(test.failures == 0 ? 0 : 1);
+    }
+
+    void lateAddedEventStillReminds() throws Exception {
+        ReminderScheduler scheduler = newScheduler();
+        scheduler.tick();
+
+        // Added 3 minutes before it starts, with a 5 minute reminder
+        CalendarEvent event = eventIn(Duration.ofMinutes(3), "Call", 5);
+        model.addEvent(event);
+        List<ReminderScheduler.Reminder> due = tickAfter(scheduler, Duration.ofSeconds(ReminderScheduler.TICK_SECONDS));
+        check(due.size() == 1 && due.get(0).event.getId().equals(event.getId()) && due.get(0).minutes == 5,
+                "an event added after its reminder came due is reminded on the next tick");
+        check(tickAfter(scheduler, Duration.ofSeconds(ReminderScheduler.TICK_SECONDS)).isEmpty(),
+                "the late reminder is delivered once");
+        scheduler.close();
+
+        check(newScheduler().tick().isEmpty(), "a restart does not repeat the late reminder");
+        model.deleteEventById(event.getId());
+    }
+
+    void startedEventIsNotReminded() throws Exception {
+        ReminderScheduler scheduler = newScheduler();
+        scheduler.tick();
+
+        CalendarEvent event = eventIn(Duration.ofMinutes(-10), "Already running", 15);
+        event.setDuration(Duration.ofHours(1));
+        model.addEvent(event);
+        check(tickAfter(scheduler, Duration.ofSeconds(ReminderScheduler.TICK_SECONDS)).isEmpty(),
+                "an event that has started gets no overdue reminder");
+        scheduler.close();
+        model.deleteEventById(event.getId());
+    }
+
+    void movedEventRemindsAgain() throws Exception {
+        ReminderScheduler scheduler = newScheduler();
+        CalendarEvent event = eventIn(Duration.ofMinutes(20), "Review", 10);
+        model.addEvent(event);
+        scheduler.tick();
+        check(tickAfter(scheduler, Duration.ofMinutes(10)).size() == 1, "the reminder fires when due");
+
+        // Moved to start sooner than its lead: the new occurrence is reminded at once
+        CalendarEvent moved = new CalendarEvent(event);
+        moved.setDateTime(LocalDateTime.now(clock).plusMinutes(4));
+        model.updateEventById(moved);
+        List<ReminderScheduler.Reminder> due = tickAfter(scheduler, Duration.ofSeconds(ReminderScheduler.TICK_SECONDS));
+        check(due.size() == 1 && due.get(0).event.getDateTime().equals(moved.getDateTime()),
+                "a moved event is reminded for its new time");
+        check(tickAfter(scheduler, Duration.ofSeconds(ReminderScheduler.TICK_SECONDS)).isEmpty(),
+                "the moved event is reminded once");
+        scheduler.close();
+        model.deleteEventById(event.getId());
+    }
+
+    void ticksOffTheEditingThread() throws Exception {
+        ReminderScheduler scheduler = newScheduler();
+        scheduler.tick();
+        ExecutorService ticker = Executors.newSingleThreadExecutor();
+        try {
+            int added = 500;
+            int delivered = 0;
+            for (int i = 0; i < added; i++) {
+                model.addEvent(eventIn(Duration.ofMinutes(2), "Burst " + i, 5));
+                if (i % 50 == 49) {
+                    delivered += ticker.submit(scheduler::tick).get().size();
+                }
+            }
+            clock.advance(Duration.ofSeconds(ReminderScheduler.TICK_SECONDS));
+            delivered += ticker.submit(scheduler::tick).get().size();
+            check(delivered == added, "every event added between ticks on another thread is reminded once");
+        } finally {
+            ticker.shutdown();
+            scheduler.close();
+        }
+    }
+
+    private ReminderScheduler newScheduler() {
+        return new ReminderScheduler(new ReminderScheduler.Source() {
+            @Override
+            public List<CalendarEvent> getEventsBetween(LocalDateTime from, LocalDateTime to) {
+                return model.getStoredEventsBetween(from, to);
+            }
+
+            @Override
+            public int getMaxReminderMinutes() {
+                return model.getMaxReminderMinutes();
+            }
+        }, new ReminderLedger(ledgerFile.getPath()), clock);
+    }
+
+    private CalendarEvent eventIn(Duration fromNow, String title, int reminderMinutes) {
+        CalendarEvent event = new CalendarEvent(title, LocalDateTime.now(clock).plus(fromNow));
+        event.setDuration(Duration.ofMinutes(30));
+        event.setReminderMinutes(List.of(reminderMinutes));
+        return event;
+    }
+
+    private List<ReminderScheduler.Reminder> tickAfter(ReminderScheduler scheduler, Duration step) throws Exception {
+        clock.advance(step);
+        return scheduler.tick();
+    }
+
+    private void check(boolean condition, String description) {
+        if (!condition) {
+            failures++;
+            System.err.println("FAILED: " + description);
+        }
+    }
+}
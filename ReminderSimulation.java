@@ -0,0 +1,463 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Replays a stretch of virtual time over generated calendars and reports
+ * how well the reminder scheduler kept up.
+ *
+ * The calendars are in-memory models on a SimulatedClock. The scheduler is
+ * ticked every TICK_SECONDS of virtual time, as the app's timer would (or
+ * every --tick seconds, to get through a year sooner), with
+ * a real ledger in a temporary file, so a day or a year runs in as long as
+ * the ticks take to compute. Each hour some events are added and deleted,
+ * and the app can be restarted a few times with some downtime in between.
+ * Every reminder the generated events should raise is worked out up front;
+ * at the end each one must have been delivered exactly once.
+ *
+ * Reports reminder lateness (virtual time from due to delivery, for the
+ * reminders due during the run), missed, duplicate and unexpected
+ * reminders, and the scheduler's CPU time per tick and per simulated hour. Reminders the scheduler skips by design after a
+ * restart are counted apart. Exits with 1 if any other reminder was missed
+ * or one was delivered twice. The same seed replays the same run.
+ */
+public class ReminderSimulation {
+    private static final int[] LEADS = {0, 5, 10, 15, 30, 60, 120, 1440};
+
+    private static class Options {
+        int days = 1;
+        int events = 20000;
+        int calendars = 4;
+        int recurringPercent = 5;
+        int editsPerHour = 20;
+        int restarts = 0;
+        int downtimeMinutes = 10;
+        int tickSeconds = ReminderScheduler.TICK_SECONDS;
+        LocalDate start = LocalDate.of(2027, 1, 4);
+        ZoneId zone = ZoneOffset.UTC;
+        long seed = 1;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--days":
+                        options.days = Math.max(1, Integer.parseInt(value));
+                        break;
+                    case "--events":
+                        options.events = Integer.parseInt(value);
+                        break;
+                    case "--calendars":
+                        options.calendars = Math.max(1, Integer.parseInt(value));
+                        break;
+                    case "--recurring":
+                        options.recurringPercent = Integer.parseInt(value);
+                        break;
+                    case "--edits":
+                        options.editsPerHour = Integer.parseInt(value);
+                        break;
+                    case "--restarts":
+                        options.restarts = Integer.parseInt(value);
+                        break;
+                    case "--downtime":
+                        options.downtimeMinutes = Integer.parseInt(value);
+                        break;
+                    case "--tick":
+                        options.tickSeconds = Math.max(1, Integer.parseInt(value));
+                        break;
+                    case "--start":
+                        options.start = LocalDate.parse(value);
+                        break;
+                    case "--zone":
+                        options.zone = ZoneId.of(value);
+                        break;
+                    case "--seed":
+                        options.seed = Long.parseLong(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+            return options;
+        }
+    }
+
+    /**
+     * One reminder of one occurrence, as the ledger identifies it
+     */
+    private static class Key {
+        final String eventId;
+        final LocalDateTime start;
+        final int minutes;
+        // Not part of the identity; tells a reminder skipped for a finished event from a lost one
+        final LocalDateTime end;
+
+        Key(CalendarEvent event, int minutes) {
+            this.eventId = event.getId();
+            this.start = event.getDateTime();
+            this.minutes = minutes;
+            this.end = event.getEndDateTime();
+        }
+
+        LocalDateTime dueTime() {
+            return start.minusMinutes(minutes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return minutes == other.minutes && start.equals(other.start) && eventId.equals(other.eventId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(eventId, start, minutes);
+        }
+
+        @Override
+        public String toString() {
+            return eventId + " at " + start + " -" + minutes + "m";
+        }
+    }
+
+    private final Options options;
+    private final Random random;
+    private final SimulatedClock clock;
+    private final List<CalendarModel> models = new ArrayList<>();
+    // One-off events per calendar, for picking ones to delete
+    private final List<List<CalendarEvent>> oneOffs = new ArrayList<>();
+    private LocalDateTime end;
+    private final Set<Key> expected = new HashSet<>();
+    private final Set<Key> delivered = new HashSet<>();
+    // When the app was closed and when it came back, for each restart
+    private final List<Instant[]> downtimes = new ArrayList<>();
+    private final LatencyHistogram lateness = new LatencyHistogram();
+    private final LatencyHistogram tickCpu = new LatencyHistogram();
+    private final LatencyHistogram hourCpu = new LatencyHistogram();
+    private long duplicates;
+    private long unexpected;
+    private long ticks;
+
+    ReminderSimulation(Options options) {
+        this.options = options;
+        this.random = new Random(options.seed);
+        this.clock = new SimulatedClock(options.start.atStartOfDay(options.zone).toInstant(), options.zone);
+    }
+
+    public static void main(String[] args) {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: java ReminderSimulation [--days n] [--events n] [--calendars n] [--recurring percent]");
+            System.err.println("           [--edits per-hour] [--restarts n] [--downtime minutes] [--tick seconds]");
+            System.err.println("           [--start yyyy-MM-dd] [--zone id] [--seed n]");
+            System.exit(2);
+            return;
+        }
+
+        ReminderSimulation simulation = new ReminderSimulation(options);
+        try {
+            simulation.generate();
+            simulation.run();
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+        System.exit(simulation.report() ? 0 : 1);
+    }
+
+    private void generate() {
+        long start = System.nanoTime();
+        LocalDateTime from = LocalDateTime.now(clock);
+        LocalDateTime to = LocalDateTime.ofInstant(clock.instant().plus(Duration.ofDays(options.days)), options.zone);
+        end = to;
+        for (int c = 0; c < options.calendars; c++) {
+            int count = options.events / options.calendars + (c < options.events % options.calendars ? 1 : 0);
+            List<CalendarEvent> events = new ArrayList<>(count);
+            List<CalendarEvent> single = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                CalendarEvent event = random.nextInt(100) < options.recurringPercent
+                        ? randomSeries(c, i, from, to) : randomEvent(c, i, from, to);
+                events.add(event);
+                if (!event.isRecurring()) {
+                    single.add(event);
+                }
+                expect(event, from, to);
+            }
+            CalendarModel model = new CalendarModel(null);
+            model.setClock(clock);
+            // Hiding past events keeps the table filter each edit reruns from growing with the run
+            model.setFilters("", null, null, false);
+            model.replaceEvents(events);
+            models.add(model);
+            oneOffs.add(single);
+        }
+        System.out.println("Generated " + options.events + " events in " + options.calendars + " calendars, "
+                + expected.size() + " reminders due, in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * A one-off event anywhere from a day before the run to a day after it
+     */
+    private CalendarEvent randomEvent(int calendar, int index, LocalDateTime from, LocalDateTime to) {
+        long span = Duration.between(from, to).toMinutes() + 2 * 24 * 60;
+        LocalDateTime start = from.minusDays(1).plusMinutes(5 * (long) random.nextInt((int) (span / 5)));
+        CalendarEvent event = new CalendarEvent("Event " + calendar + "-" + index, start);
+        event.setDuration(Duration.ofMinutes(15 * (1 + random.nextInt(8))));
+        event.setReminderMinutes(randomLeads());
+        return event;
+    }
+
+    /**
+     * A daily or weekly series that started in the month before the run,
+     * ending during the run or not at all
+     */
+    private CalendarEvent randomSeries(int calendar, int index, LocalDateTime from, LocalDateTime to) {
+        LocalDateTime start = from.minusDays(random.nextInt(30)).plusMinutes(5 * random.nextInt(24 * 12));
+        CalendarEvent event = new CalendarEvent("Series " + calendar + "-" + index, start);
+        event.setDuration(Duration.ofMinutes(15 * (1 + random.nextInt(4))));
+        event.setReminderMinutes(randomLeads());
+        LocalDate until = random.nextBoolean()
+                ? null : from.toLocalDate().plusDays(random.nextInt((int) Duration.between(from, to).toDays() + 1));
+        RecurrenceRule.Frequency frequency = random.nextBoolean() ? RecurrenceRule.Frequency.DAILY : RecurrenceRule.Frequency.WEEKLY;
+        event.setRecurrence(new RecurrenceRule(frequency, 1, null, until, 0, null));
+        return event;
+    }
+
+    private List<Integer> randomLeads() {
+        Set<Integer> leads = new HashSet<>();
+        int count = random.nextInt(4);
+        while (leads.size() < count) {
+            leads.add(LEADS[random.nextInt(LEADS.length)]);
+        }
+        return new ArrayList<>(leads);
+    }
+
+    /**
+     * Notes every reminder of the event due in [from, to], and the earlier
+     * ones of occurrences starting after from, which the scheduler delivers
+     * on the first tick
+     */
+    private void expect(CalendarEvent event, LocalDateTime from, LocalDateTime to) {
+        LocalDateTime until = to.plusMinutes(event.getMaxReminderMinutes()).plusSeconds(1);
+        for (CalendarEvent occurrence : event.expandOccurrences(from, until)) {
+            for (int minutes : occurrence.getReminderMinutes()) {
+                LocalDateTime due = occurrence.getDateTime().minusMinutes(minutes);
+                if ((!due.isBefore(from) || occurrence.getDateTime().isAfter(from)) && !due.isAfter(to)) {
+                    expected.add(new Key(occurrence, minutes));
+                }
+            }
+        }
+    }
+
+    private void run() throws IOException {
+        File ledgerFile = File.createTempFile("reminders", ".log");
+        ledgerFile.deleteOnExit();
+        new File(ledgerFile.getPath() + ".tmp").deleteOnExit();
+
+        ReminderScheduler.Source source = new ReminderScheduler.Source() {
+            @Override
+            public List<CalendarEvent> getEventsBetween(LocalDateTime from, LocalDateTime to) {
+                List<List<CalendarEvent>> sources = new ArrayList<>();
+                for (CalendarModel model : models) {
+                    sources.add(model.getStoredEventsBetween(from, to));
+                }
+                return MergedEventList.of(sources);
+            }
+
+            @Override
+            public int getMaxReminderMinutes() {
+                int max = 0;
+                for (CalendarModel model : models) {
+                    max = Math.max(max, model.getMaxReminderMinutes());
+                }
+                return max;
+            }
+        };
+        ReminderScheduler scheduler = new ReminderScheduler(source, new ReminderLedger(ledgerFile.getPath()), clock);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Instant start = clock.instant();
+        Instant end = start.plus(Duration.ofDays(options.days));
+        Duration tick = Duration.ofSeconds(options.tickSeconds);
+        Duration span = Duration.between(start, end);
+        int restarts = 0;
+        long hour = 0;
+        long cpuThisHour = 0;
+        long wallStart = System.nanoTime();
+
+        while (!clock.instant().isAfter(end)) {
+            Instant now = clock.instant();
+            Duration downtime = Duration.ofMinutes(options.downtimeMinutes);
+            if (restarts < options.restarts && now.plus(downtime).isBefore(end)
+                    && !now.isBefore(start.plus(span.multipliedBy(restarts + 1).dividedBy(options.restarts + 1)))) {
+                // Closed for a while, then a fresh scheduler reads the ledger back
+                scheduler.close();
+                restarts++;
+                clock.advance(downtime);
+                downtimes.add(new Instant[] {now, clock.instant()});
+                scheduler = new ReminderScheduler(source, new ReminderLedger(ledgerFile.getPath()), clock);
+                continue;
+            }
+            long elapsedHours = Duration.between(start, now).toHours();
+            while (hour < elapsedHours) {
+                hourCpu.record(cpuThisHour);
+                cpuThisHour = 0;
+                hour++;
+                edit();
+            }
+
+            long cpu = threads.getCurrentThreadCpuTime();
+            List<ReminderScheduler.Reminder> due = scheduler.tick();
+            cpu = threads.getCurrentThreadCpuTime() - cpu;
+            tickCpu.record(cpu);
+            cpuThisHour += cpu;
+            ticks++;
+
+            for (ReminderScheduler.Reminder reminder : due) {
+                Key key = new Key(reminder.event, reminder.minutes);
+                if (!delivered.add(key)) {
+                    duplicates++;
+                } else if (!expected.contains(key)) {
+                    unexpected++;
+                } else {
+                    // A due time in the hour DST repeats is read in the offset of the tick that delivered it
+                    ZoneOffset offset = options.zone.getRules().getOffset(now);
+                    Instant dueAt = ZonedDateTime.ofLocal(reminder.dueTime, options.zone, offset).toInstant();
+                    // Reminders already overdue when the run starts say nothing about how the ticks keep up
+                    if (!dueAt.isBefore(start)) {
+                        lateness.record(Duration.between(dueAt, now).toMillis());
+                    }
+                }
+            }
+            clock.advance(tick);
+        }
+        hourCpu.record(cpuThisHour);
+        scheduler.close();
+        System.out.println("Simulated " + options.days + " days in " + ticks + " ticks, " + restarts
+                + " restarts, in " + (System.nanoTime() - wallStart) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Adds events starting within the next few hours and deletes some
+     * upcoming ones, as a user would during the day
+     */
+    private void edit() {
+        LocalDateTime now = LocalDateTime.now(clock);
+        for (int i = 0; i < options.editsPerHour / 2; i++) {
+            int calendar = random.nextInt(models.size());
+            // Only leads that fall after now, so every reminder of the new event is still to come
+            int minutesAhead = 30 + random.nextInt(210);
+            CalendarEvent event = new CalendarEvent("Added " + now + " " + i, now.plusMinutes(minutesAhead));
+            event.setDuration(Duration.ofMinutes(30));
+            List<Integer> leads = new ArrayList<>();
+            for (int lead : randomLeads()) {
+                if (lead < minutesAhead) {
+                    leads.add(lead);
+                }
+            }
+            event.setReminderMinutes(leads);
+            models.get(calendar).addEvent(event);
+            oneOffs.get(calendar).add(event);
+            expect(event, now.plusSeconds(1), end);
+        }
+
+        for (int i = 0; i < options.editsPerHour - options.editsPerHour / 2; i++) {
+            int calendar = random.nextInt(models.size());
+            List<CalendarEvent> candidates = oneOffs.get(calendar);
+            if (candidates.isEmpty()) {
+                continue;
+            }
+            int index = random.nextInt(candidates.size());
+            CalendarEvent event = candidates.get(index);
+            candidates.set(index, candidates.get(candidates.size() - 1));
+            candidates.remove(candidates.size() - 1);
+            models.get(calendar).deleteEventById(event.getId());
+            // Reminders already delivered stay counted; the rest are no longer due
+            for (int minutes : event.getReminderMinutes()) {
+                Key key = new Key(event, minutes);
+                if (!delivered.contains(key)) {
+                    expected.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Prints the results; false if any reminder was missed or repeated
+     */
+    private boolean report() {
+        List<Key> missed = new ArrayList<>();
+        int skipped = 0;
+        for (Key key : expected) {
+            if (delivered.contains(key)) {
+                continue;
+            }
+            if (skippedWhileClosed(key)) {
+                skipped++;
+            } else {
+                missed.add(key);
+            }
+        }
+        missed.sort((a, b) -> a.start.compareTo(b.start));
+
+        System.out.println("Reminders: " + expected.size() + " expected, " + (delivered.size() - unexpected)
+                + " delivered, " + missed.size() + " missed, " + duplicates + " duplicates, " + unexpected + " unexpected");
+        System.out.println("Skipped while closed: " + skipped
+                + " (event over, or due more than a day before the app came back)");
+        System.out.printf("Lateness (s): mean %.1f, p50 %.1f, p99 %.1f, max %.1f%n",
+                lateness.getMean() / 1000, lateness.getValueAtPercentile(50) / 1000.0,
+                lateness.getValueAtPercentile(99) / 1000.0, lateness.getMax() / 1000.0);
+        System.out.printf("Scheduler CPU per tick (ms): mean %.2f, p99 %.2f, max %.2f%n",
+                tickCpu.getMean() / 1e6, tickCpu.getValueAtPercentile(99) / 1e6, tickCpu.getMax() / 1e6);
+        System.out.printf("Scheduler CPU per simulated hour (ms): mean %.1f, p50 %.1f, p99 %.1f, max %.1f%n",
+                hourCpu.getMean() / 1e6, hourCpu.getValueAtPercentile(50) / 1e6,
+                hourCpu.getValueAtPercentile(99) / 1e6, hourCpu.getMax() / 1e6);
+        for (Key key : missed.subList(0, Math.min(10, missed.size()))) {
+            System.out.println("  missed " + key);
+        }
+        return missed.isEmpty() && duplicates == 0;
+    }
+
+    /**
+     * True for a reminder that came due while the app was closed and that
+     * the scheduler drops on purpose when it comes back
+     */
+    private boolean skippedWhileClosed(Key key) {
+        Instant due = key.dueTime().atZone(options.zone).toInstant();
+        Instant end = key.end.atZone(options.zone).toInstant();
+        for (Instant[] downtime : downtimes) {
+            Instant reopened = downtime[1];
+            if (!due.isBefore(downtime[0]) && !due.isAfter(reopened)
+                    && (end.isBefore(reopened) || due.isBefore(reopened.minus(Duration.ofDays(1))))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
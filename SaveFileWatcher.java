@@ -0,0 +1,95 @@
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Watches the calendar directories and reports when a save file is
+ * created, replaced or deleted, by this process or any other.
+ *
+ * A burst of file events, such as the temp file write and rename of one
+ * save, is reported once, DEBOUNCE_MILLIS after the first of them. The
+ * callback runs on a background thread.
+ */
+class SaveFileWatcher {
+    static final long DEBOUNCE_MILLIS = 300;
+
+    private final TaskRuntime runtime;
+    private final String suffix;
+    private final Runnable onChange;
+    private final AtomicBoolean reportScheduled = new AtomicBoolean();
+    private WatchService watchService;
+    private TaskRuntime.TaskHandle<Void> loop;
+
+    /**
+     * @param suffix only files whose names end with this are reported
+     */
+    SaveFileWatcher(TaskRuntime runtime, String suffix, Runnable onChange) {
+        this.runtime = runtime;
+        this.suffix = suffix;
+        this.onChange = onChange;
+    }
+
+    /**
+     * Starts watching the given directories; ones that do not exist are skipped
+     */
+    public void start(List<Path> directories) throws IOException {
+        stop();
+        watchService = FileSystems.getDefault().newWatchService();
+        for (Path directory : directories) {
+            if (Files.isDirectory(directory)) {
+                directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        }
+        WatchService service = watchService;
+        loop = runtime.execute("save-file-watch", () -> watch(service));
+    }
+
+    public void stop() {
+        if (loop != null) {
+            loop.cancel();
+            loop = null;
+        }
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                System.err.println("Error closing file watcher: " + e.getMessage());
+            }
+            watchService = null;
+        }
+    }
+
+    private void watch(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean relevant = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    // An overflow means events were lost, so assume the worst
+                    relevant |= event.kind() == StandardWatchEventKinds.OVERFLOW
+                            || event.context().toString().endsWith(suffix);
+                }
+                key.reset();
+                if (relevant && reportScheduled.compareAndSet(false, true)) {
+                    CalendarMetrics.get().increment("store.watch.events");
+                    runtime.schedule("save-file-changed", () -> {
+                        reportScheduled.set(false);
+                        onChange.run();
+                    }, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped
+        }
+    }
+}
@@ -0,0 +1,47 @@
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A clock that only moves when told to, for running the model and the
+ * reminder scheduler on virtual time. Safe to read from any thread.
+ */
+class SimulatedClock extends Clock {
+    // Shared with the copies withZone() makes, so they move together
+    private final AtomicReference<Instant> now;
+    private final ZoneId zone;
+
+    SimulatedClock(Instant start, ZoneId zone) {
+        this(new AtomicReference<>(start), zone);
+    }
+
+    private SimulatedClock(AtomicReference<Instant> now, ZoneId zone) {
+        this.now = now;
+        this.zone = zone;
+    }
+
+    public void advance(Duration step) {
+        now.updateAndGet(time -> time.plus(step));
+    }
+
+    public void set(Instant time) {
+        now.set(time);
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return zone.equals(this.zone) ? this : new SimulatedClock(now, zone);
+    }
+
+    @Override
+    public Instant instant() {
+        return now.get();
+    }
+}
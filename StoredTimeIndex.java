@@ -0,0 +1,82 @@
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Start-time index over a model's stored versions, for readers off the EDT.
+ *
+ * The model's own lists and indexes are only touched on the EDT, but the
+ * versions it stores are immutable, so this index follows those instead.
+ * Each query first applies the diff between the version it indexed last
+ * and the one it is given, O(k log n) for k changes, then reads the window
+ * in O(log n + m). Recurring series are expanded per query.
+ */
+class StoredTimeIndex {
+    private final NavigableMap<LocalDateTime, List<CalendarEvent>> oneOffs = new TreeMap<>();
+    private final Map<String, CalendarEvent> recurring = new HashMap<>();
+    private PersistentEventMap indexed = PersistentEventMap.EMPTY;
+
+    /**
+     * Events and occurrences in the given version starting in [from, to),
+     * sorted by time
+     */
+    public synchronized List<CalendarEvent> getEventsBetween(PersistentEventMap state, LocalDateTime from,
+                                                             LocalDateTime to) {
+        catchUp(state);
+        List<CalendarEvent> result = new ArrayList<>();
+        if (from.isBefore(to)) {
+            for (List<CalendarEvent> atTime : oneOffs.subMap(from, true, to, false).values()) {
+                result.addAll(atTime);
+            }
+        }
+        if (!recurring.isEmpty()) {
+            for (CalendarEvent series : recurring.values()) {
+                result.addAll(series.expandOccurrences(from, to));
+            }
+            result.sort(Comparator.comparing(CalendarEvent::getDateTime));
+        }
+        return result;
+    }
+
+    private void catchUp(PersistentEventMap state) {
+        if (state == indexed) {
+            return;
+        }
+        PersistentEventMap.diff(indexed, state, (before, after) -> {
+            if (before != null) {
+                remove(before);
+            }
+            if (after != null) {
+                add(after);
+            }
+        });
+        indexed = state;
+    }
+
+    private void add(CalendarEvent event) {
+        if (event.isRecurring()) {
+            recurring.put(event.getId(), event);
+        } else {
+            oneOffs.computeIfAbsent(event.getDateTime(), time -> new ArrayList<>(1)).add(event);
+        }
+    }
+
+    private void remove(CalendarEvent event) {
+        if (event.isRecurring()) {
+            recurring.remove(event.getId());
+            return;
+        }
+        List<CalendarEvent> atTime = oneOffs.get(event.getDateTime());
+        if (atTime != null) {
+            atTime.remove(event);
+            if (atTime.isEmpty()) {
+                oneOffs.remove(event.getDateTime());
+            }
+        }
+    }
+}
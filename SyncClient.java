@@ -0,0 +1,247 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Talks to a sync server (see SyncServer) for one or more calendars.
+ *
+ * A sync pushes the events changed locally since the last sync, then pulls
+ * everything other clients changed after the last sync token, so the cost
+ * follows the number of changes rather than the size of the calendar.
+ * Both directions go in batches of BATCH_SIZE with gzipped JSON bodies.
+ *
+ * Every event the server holds has a revision, which a client sends back as
+ * the base of its next change. A change made on an older base is a
+ * conflict, which the server settles by the later modification time.
+ */
+class SyncClient {
+    static final int BATCH_SIZE = 500;
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * An event as the server holds it; event is null for a deletion
+     */
+    static class Change {
+        final String id;
+        final long revision;
+        final CalendarEvent event;
+
+        Change(String id, long revision, CalendarEvent event) {
+            this.id = id;
+            this.revision = revision;
+            this.event = event;
+        }
+    }
+
+    static class Result {
+        // Token to pass as since next time
+        final long token;
+        // Revisions the server gave the changes it accepted, by id
+        final Map<String, Long> accepted = new HashMap<>();
+        // Changes from elsewhere, including the server's side of rejected changes, by id
+        final Map<String, Change> remote = new LinkedHashMap<>();
+
+        Result(long token) {
+            this.token = token;
+        }
+    }
+
+    private final String baseUrl;
+    private final HttpClient http;
+
+    /**
+     * @param baseUrl e.g. http://localhost:8090
+     */
+    SyncClient(String baseUrl) {
+        this.baseUrl = baseUrl.replaceAll("/+$", "");
+        this.http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(TIMEOUT).build();
+    }
+
+    /**
+     * Sends the changed events and deletions, the latter as id to base
+     * revision, and fetches what changed on the server after since
+     */
+    public Result sync(String calendar, long since, List<CalendarEvent> changed, Map<String, Long> deleted)
+            throws IOException {
+        long start = System.nanoTime();
+        String path = "/sync/" + URLEncoder.encode(calendar, StandardCharsets.UTF_8).replace("+", "%20");
+        List<Map<String, Object>> outgoing = new ArrayList<>(changed.size() + deleted.size());
+        for (CalendarEvent event : changed) {
+            outgoing.add(changeJson(event.getId(), event.getSyncRevision(), event.getModifiedAt(), toJson(event)));
+        }
+        // Deletion times are not kept, so a deletion counts as made now
+        long now = System.currentTimeMillis();
+        deleted.forEach((id, base) -> outgoing.add(changeJson(id, base, now, null)));
+
+        Map<String, Long> accepted = new HashMap<>();
+        List<Change> rejected = new ArrayList<>();
+        for (int from = 0; from < outgoing.size(); from += BATCH_SIZE) {
+            List<Map<String, Object>> batch = outgoing.subList(from, Math.min(outgoing.size(), from + BATCH_SIZE));
+            Map<String, Object> response = send(path + "/push", Map.of("changes", batch));
+            for (Object item : list(response.get("accepted"))) {
+                Map<?, ?> entry = (Map<?, ?>) item;
+                accepted.put((String) entry.get("id"), ((Number) entry.get("revision")).longValue());
+            }
+            for (Object item : list(response.get("rejected"))) {
+                rejected.add(fromJson((Map<?, ?>) item));
+            }
+        }
+
+        long token = since;
+        List<Change> pulled = new ArrayList<>();
+        boolean more = true;
+        while (more) {
+            Map<String, Object> response = send(path + "/changes?since=" + token + "&limit=" + BATCH_SIZE, null);
+            for (Object item : list(response.get("changes"))) {
+                pulled.add(fromJson((Map<?, ?>) item));
+            }
+            token = ((Number) response.get("token")).longValue();
+            more = Boolean.TRUE.equals(response.get("more"));
+        }
+
+        Result result = new Result(token);
+        result.accepted.putAll(accepted);
+        for (Change change : rejected) {
+            result.remote.put(change.id, change);
+        }
+        for (Change change : pulled) {
+            Change known = result.remote.get(change.id);
+            if (known == null || known.revision < change.revision) {
+                result.remote.put(change.id, change);
+            }
+        }
+        CalendarMetrics.get().add("sync.pushed", outgoing.size());
+        CalendarMetrics.get().add("sync.pulled", pulled.size());
+        CalendarMetrics.get().recordSince("sync.exchange", start);
+        return result;
+    }
+
+    /**
+     * Posts the body, or GETs when it is null, and returns the JSON reply
+     */
+    private Map<String, Object> send(String path, Object body) throws IOException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(TIMEOUT)
+                .header("Accept-Encoding", "gzip");
+        if (body != null) {
+            byte[] bytes = gzip(Json.write(body).getBytes(StandardCharsets.UTF_8));
+            CalendarMetrics.get().add("sync.bytes.sent", bytes.length);
+            request.header("Content-Type", "application/json; charset=utf-8")
+                    .header("Content-Encoding", "gzip")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(bytes));
+        }
+        HttpResponse<byte[]> response;
+        try {
+            response = http.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Sync interrupted", e);
+        }
+        byte[] bytes = response.body();
+        CalendarMetrics.get().add("sync.bytes.received", bytes.length);
+        if (response.headers().firstValue("Content-Encoding").map("gzip"::equalsIgnoreCase).orElse(false)) {
+            bytes = gunzip(new ByteArrayInputStream(bytes));
+        }
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        if (response.statusCode() != 200) {
+            throw new IOException("Sync server answered " + response.statusCode() + ": " + text);
+        }
+        return Json.parseObject(text);
+    }
+
+    private static Map<String, Object> changeJson(String id, long baseRevision, long modifiedAt, Map<String, Object> event) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", id);
+        json.put("baseRevision", baseRevision);
+        json.put("modifiedAt", modifiedAt);
+        json.put("event", event);
+        return json;
+    }
+
+    private static Change fromJson(Map<?, ?> json) {
+        String id = (String) json.get("id");
+        long revision = ((Number) json.get("revision")).longValue();
+        Map<?, ?> fields = (Map<?, ?>) json.get("event");
+        if (fields == null) {
+            return new Change(id, revision, null);
+        }
+        CalendarEvent event = new CalendarEvent(id, (String) fields.get("title"),
+                LocalDateTime.parse((String) fields.get("dateTime")));
+        event.setDescription((String) fields.get("description"));
+        event.setDuration(Duration.ofMinutes(((Number) fields.get("durationMinutes")).longValue()));
+        event.setLocation((String) fields.get("location"));
+        event.setCategory((String) fields.get("category"));
+        event.setPriority(((Number) fields.get("priority")).intValue());
+        if (fields.get("recurrence") instanceof String) {
+            Set<LocalDate> exceptions = list(fields.get("exceptions")).stream()
+                    .map(date -> LocalDate.parse((String) date))
+                    .collect(Collectors.toCollection(TreeSet::new));
+            event.setRecurrence(RecurrenceRule.parse((String) fields.get("recurrence"), exceptions));
+        }
+        event.setReminderMinutes(list(fields.get("reminders")).stream()
+                .map(minutes -> ((Number) minutes).intValue())
+                .collect(Collectors.toList()));
+        event.setModifiedAt(((Number) json.get("modifiedAt")).longValue());
+        event.setSyncRevision(revision);
+        return new Change(id, revision, event);
+    }
+
+    /**
+     * The fields a sync carries; the notified flag is local to each client
+     */
+    static Map<String, Object> toJson(CalendarEvent event) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("title", event.getTitle());
+        json.put("description", event.getDescription());
+        json.put("dateTime", event.getDateTime().toString());
+        json.put("durationMinutes", event.getDuration().toMinutes());
+        json.put("location", event.getLocation());
+        json.put("category", event.getCategory());
+        json.put("priority", event.getPriority());
+        RecurrenceRule rule = event.getRecurrence();
+        json.put("recurrence", rule != null ? rule.toString() : null);
+        json.put("exceptions", rule != null
+                ? rule.getExceptions().stream().map(LocalDate::toString).collect(Collectors.toList())
+                : List.of());
+        json.put("reminders", event.getReminderMinutes());
+        return json;
+    }
+
+    private static List<?> list(Object value) {
+        return value instanceof List ? (List<?>) value : List.of();
+    }
+
+    static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(bytes);
+        }
+        return buffer.toByteArray();
+    }
+
+    static byte[] gunzip(InputStream in) throws IOException {
+        try (GZIPInputStream gzipIn = new GZIPInputStream(in)) {
+            return gzipIn.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tracks what a calendar has changed since it last synced.
+ *
+ * The events as of the last sync are kept as a baseline state. Since states
+ * share structure, diffing the baseline against the current state costs
+ * O(k log n) for k changes, so nothing has to be recorded as edits happen.
+ * What survives a restart is small: the server's sync token and the ids
+ * changed but not yet sent, in a .sync file next to the calendar. It is
+ * written along with the events, so the token never runs ahead of the
+ * saved events and a sync that was not saved is simply repeated. Deleted
+ * events need no tombstone of their own: a changed id that is no longer
+ * stored is sent as a deletion.
+ *
+ * All methods are safe to call from any thread.
+ */
+class SyncLog {
+    private final File file;
+    private long token;
+    private PersistentEventMap baseline = PersistentEventMap.EMPTY;
+    // Model version the baseline was taken at; older snapshots add nothing
+    private long baselineVersion;
+    // Changed ids carried over from before the baseline was taken
+    private final Set<String> pending = new HashSet<>();
+    // Ids forgotten since the last sync, which the next baseline must not bring back
+    private final Set<String> forgotten = new HashSet<>();
+    // What the file holds
+    private long writtenToken;
+    private Set<String> written = Set.of();
+
+    SyncLog(String path) {
+        this.file = new File(path);
+    }
+
+    /**
+     * The log for a calendar save file, e.g. calendars/Work.sync
+     */
+    static SyncLog forSaveFile(String saveFile) {
+        int dot = saveFile.lastIndexOf('.');
+        int slash = saveFile.lastIndexOf(File.separatorChar);
+        String base = dot > slash ? saveFile.substring(0, dot) : saveFile;
+        return new SyncLog(base + ".sync");
+    }
+
+    /**
+     * Starts tracking from freshly loaded events, reading back the token
+     * and unsent ids
+     */
+    public synchronized void loaded(PersistentEventMap state, long version) {
+        baseline = state;
+        baselineVersion = version;
+        token = 0;
+        pending.clear();
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                token = in.readLong();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    pending.add(in.readUTF());
+                }
+            } catch (IOException e) {
+                // Without the log every event counts as changed, which is safe if slow
+                System.err.println("Error reading sync log " + file + ": " + e.getMessage());
+                token = 0;
+                state.values().forEach(event -> pending.add(event.getId()));
+            }
+        }
+        writtenToken = token;
+        written = Set.copyOf(pending);
+    }
+
+    public synchronized long getToken() {
+        return token;
+    }
+
+    /**
+     * Ids added, changed or deleted in the state since the last sync
+     */
+    public synchronized Set<String> changedSince(PersistentEventMap state) {
+        Set<String> changed = new HashSet<>(pending);
+        PersistentEventMap.diff(baseline, state, (before, after) ->
+                changed.add(before != null ? before.getId() : after.getId()));
+        return changed;
+    }
+
+    /**
+     * The event as of the last sync, or null
+     */
+    public synchronized CalendarEvent baselineOf(String id) {
+        return baseline.get(id);
+    }
+
+    /**
+     * Records the token and the ids a snapshot about to be saved has
+     * changed, so they are still sent after a restart. Writes only when
+     * either has changed.
+     */
+    public synchronized void persist(CalendarModel.Snapshot saved) throws IOException {
+        if (saved.version < baselineVersion) {
+            return;
+        }
+        Set<String> changed = changedSince(saved.events);
+        if (token != writtenToken || !changed.equals(written)) {
+            write(token, changed);
+        }
+    }
+
+    /**
+     * Called after a sync: everything up to the token is in step, and the
+     * given state, that of the given model version, is the new baseline.
+     * The token is written with the next save.
+     */
+    public synchronized void synced(long newToken, PersistentEventMap newBaseline, long version) {
+        token = newToken;
+        for (String id : forgotten) {
+            newBaseline = newBaseline.remove(id);
+        }
+        baseline = newBaseline;
+        baselineVersion = version;
+        pending.clear();
+        forgotten.clear();
+    }
+
+    /**
+     * Stops tracking events that left the model without being deleted,
+     * such as archived ones, so they are not sent as deletions
+     */
+    public synchronized void forget(Collection<String> ids) {
+        for (String id : ids) {
+            baseline = baseline.remove(id);
+            pending.remove(id);
+            forgotten.add(id);
+        }
+    }
+
+    private void write(long token, Set<String> ids) throws IOException {
+        Path target = file.toPath().toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(temp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+            out.writeLong(token);
+            out.writeInt(ids.size());
+            for (String id : ids) {
+                out.writeUTF(id);
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        writtenToken = token;
+        written = Set.copyOf(ids);
+    }
+}
@@ -0,0 +1,247 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory reference sync server, for development and as a stand-in for
+ * a real one. See SyncClient for the protocol.
+ *
+ * Each calendar numbers its changes with a revision counter. The latest
+ * version of every event is kept by id, deletions as tombstones, and
+ * indexed by revision, so a pull after a token reads only the changes made
+ * since. Nothing is written to disk.
+ *
+ * Usage: java SyncServer [port]
+ *
+ * Endpoints (all bodies gzipped JSON if the request asks for it):
+ *   POST /sync/{calendar}/push           {changes: [{id, baseRevision, modifiedAt, event}]}
+ *   GET  /sync/{calendar}/changes?since=&limit=
+ */
+public class SyncServer {
+    private static final Pattern CALENDAR_NAME = Pattern.compile("[A-Za-z0-9 _.-]{1,64}");
+    private static final int MAX_LIMIT = 5000;
+
+    private final int requestedPort;
+    private final Map<String, Calendar> calendars = new ConcurrentHashMap<>();
+    private HttpServer server;
+    private ExecutorService requestExecutor;
+
+    /**
+     * The server's version of one event; event is null for a tombstone
+     */
+    private static class Entry {
+        final String id;
+        final long revision;
+        final long modifiedAt;
+        final Object event;
+
+        Entry(String id, long revision, long modifiedAt, Object event) {
+            this.id = id;
+            this.revision = revision;
+            this.modifiedAt = modifiedAt;
+            this.event = event;
+        }
+
+        Map<String, Object> toJson() {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("id", id);
+            json.put("revision", revision);
+            json.put("modifiedAt", modifiedAt);
+            json.put("event", event);
+            return json;
+        }
+    }
+
+    /**
+     * One calendar's events; all access holds its monitor
+     */
+    private static class Calendar {
+        long revision;
+        final Map<String, Entry> byId = new HashMap<>();
+        final TreeMap<Long, Entry> byRevision = new TreeMap<>();
+    }
+
+    public SyncServer(int port) {
+        this.requestedPort = port;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8090;
+        SyncServer syncServer = new SyncServer(port);
+        syncServer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(syncServer::stop));
+        System.out.println("Sync server listening on port " + syncServer.getPort());
+    }
+
+    public synchronized void start() throws IOException {
+        // Headers and body go out as separate writes; with Nagle on, every
+        // batch would wait out the client's delayed ACK. Read once per JVM.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        server = HttpServer.create(new InetSocketAddress(requestedPort), 256);
+        requestExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(requestExecutor);
+        server.createContext("/sync/", this::handle);
+        server.start();
+    }
+
+    /**
+     * Returns the bound port, useful when started on port 0
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(1);
+        requestExecutor.shutdown();
+        server = null;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/");
+            if (path.length != 3 || !CALENDAR_NAME.matcher(path[1]).matches()) {
+                send(exchange, 404, Map.of("error", "Not found"));
+                return;
+            }
+            Calendar calendar = calendars.computeIfAbsent(path[1], name -> new Calendar());
+            if (path[2].equals("push") && exchange.getRequestMethod().equals("POST")) {
+                send(exchange, 200, push(calendar, readBody(exchange)));
+            } else if (path[2].equals("changes") && exchange.getRequestMethod().equals("GET")) {
+                Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+                long since = Long.parseLong(params.getOrDefault("since", "0"));
+                int limit = Math.min(MAX_LIMIT, Integer.parseInt(params.getOrDefault("limit", "500")));
+                send(exchange, 200, changes(calendar, since, Math.max(1, limit)));
+            } else {
+                send(exchange, 404, Map.of("error", "Not found"));
+            }
+        } catch (IllegalArgumentException | ClassCastException | NullPointerException e) {
+            send(exchange, 400, Map.of("error", String.valueOf(e.getMessage())));
+        } catch (RuntimeException e) {
+            System.err.println("Error handling " + exchange.getRequestURI() + ": " + e);
+            send(exchange, 500, Map.of("error", "Internal server error"));
+        } finally {
+            exchange.close();
+            CalendarMetrics.get().recordSince("sync.server.request", start);
+        }
+    }
+
+    /**
+     * Applies each change made on the current revision. A change made on an
+     * older one is a conflict: the later modification time wins, and the
+     * server's version on a tie. Rejected changes get the server's version back.
+     */
+    private static Map<String, Object> push(Calendar calendar, Map<String, Object> body) {
+        List<Map<String, Object>> accepted = new ArrayList<>();
+        List<Map<String, Object>> rejected = new ArrayList<>();
+        synchronized (calendar) {
+            for (Object item : (List<?>) body.get("changes")) {
+                Map<?, ?> change = (Map<?, ?>) item;
+                String id = (String) change.get("id");
+                long base = ((Number) change.get("baseRevision")).longValue();
+                long modifiedAt = ((Number) change.get("modifiedAt")).longValue();
+                Entry current = calendar.byId.get(id);
+                if (current != null && current.revision != base && current.modifiedAt >= modifiedAt) {
+                    rejected.add(current.toJson());
+                    continue;
+                }
+                if (current != null) {
+                    calendar.byRevision.remove(current.revision);
+                }
+                Entry entry = new Entry(id, ++calendar.revision, modifiedAt, change.get("event"));
+                calendar.byId.put(id, entry);
+                calendar.byRevision.put(entry.revision, entry);
+                accepted.add(Map.of("id", id, "revision", entry.revision));
+            }
+        }
+        CalendarMetrics.get().add("sync.server.conflicts", rejected.size());
+        return Map.of("accepted", accepted, "rejected", rejected);
+    }
+
+    /**
+     * Up to limit of the latest changes after since, oldest first
+     */
+    private static Map<String, Object> changes(Calendar calendar, long since, int limit) {
+        List<Map<String, Object>> changes = new ArrayList<>();
+        synchronized (calendar) {
+            long token = since;
+            for (Entry entry : calendar.byRevision.tailMap(since, false).values()) {
+                if (changes.size() == limit) {
+                    break;
+                }
+                changes.add(entry.toJson());
+                token = entry.revision;
+            }
+            boolean more = calendar.byRevision.higherKey(token) != null;
+            if (!more) {
+                token = Math.max(token, calendar.revision);
+            }
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("token", token);
+            json.put("more", more);
+            json.put("changes", changes);
+            return json;
+        }
+    }
+
+    private static Map<String, Object> readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] bytes = in.readAllBytes();
+            if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                bytes = SyncClient.gunzip(new ByteArrayInputStream(bytes));
+            }
+            return Json.parseObject(new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq >= 0 ? pair.substring(0, eq) : pair, StandardCharsets.UTF_8);
+            String value = eq >= 0 ? URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8) : "";
+            params.put(key, value);
+        }
+        return params;
+    }
+
+    private static void send(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = Json.write(body).getBytes(StandardCharsets.UTF_8);
+        String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (accept != null && accept.contains("gzip")) {
+            bytes = SyncClient.gzip(bytes);
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shared runtime for background work.
+ *
+ * Job bodies run on virtual threads, so blocking I/O is cheap and no feature
+ * needs its own pool. A single platform timer thread only decides when
+ * periodic and deadline jobs are due and hands them to a virtual thread.
+ */
+class TaskRuntime {
+
+    /**
+     * Passed to running jobs so they can report progress and stop early when cancelled
+     */
+    interface TaskContext {
+        boolean isCancelled();
+
+        void reportProgress(long done, long total);
+    }
+
+    interface Job<T> {
+        T run(TaskContext context) throws Exception;
+    }
+
+    interface ProgressListener {
+        void onProgress(long done, long total);
+    }
+
+    /**
+     * Handle to a submitted or scheduled job
+     */
+    static class TaskHandle<T> implements TaskContext {
+        private final String name;
+        private final ProgressListener listener;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private volatile boolean cancelled;
+        private volatile Thread runner;
+        private volatile Future<?> timerFuture;
+
+        TaskHandle(String name, ProgressListener listener) {
+            this.name = name;
+            this.listener = listener;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public CompletableFuture<T> result() {
+            return result;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled || Thread.currentThread().isInterrupted();
+        }
+
+        @Override
+        public void reportProgress(long done, long total) {
+            if (listener != null) {
+                listener.onProgress(done, total);
+            }
+        }
+
+        /**
+         * Cancels future runs and interrupts the current one, if any
+         */
+        public void cancel() {
+            cancelled = true;
+            Future<?> scheduled = timerFuture;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+            Thread thread = runner;
+            if (thread != null) {
+                thread.interrupt();
+            }
+            result.cancel(false);
+        }
+    }
+
+    private final ScheduledExecutorService timer;
+    private final ExecutorService workers;
+    private final Set<TaskHandle<?>> activeTasks = ConcurrentHashMap.newKeySet();
+
+    public TaskRuntime() {
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "task-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        workers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("task-", 0).factory());
+    }
+
+    /**
+     * Runs a one-off job on a virtual thread
+     */
+    public <T> TaskHandle<T> submit(String name, Job<T> job, ProgressListener listener) {
+        TaskHandle<T> handle = new TaskHandle<>(name, listener);
+        dispatch(handle, job);
+        return handle;
+    }
+
+    public TaskHandle<Void> execute(String name, Runnable task) {
+        return submit(name, context -> {
+            task.run();
+            return null;
+        }, null);
+    }
+
+    /**
+     * Runs a job once after the given delay
+     */
+    public TaskHandle<Void> schedule(String name, Runnable task, long delay, TimeUnit unit) {
+        TaskHandle<Void> handle = new TaskHandle<>(name, null);
+        handle.timerFuture = timer.schedule(() -> dispatch(handle, context -> {
+            task.run();
+            return null;
+        }), delay, unit);
+        return handle;
+    }
+
+    /**
+     * Runs a job periodically. A tick that comes due while the previous run is
+     * still going is skipped rather than queued.
+     */
+    public TaskHandle<Void> scheduleAtFixedRate(String name, Runnable task, long initialDelay,
+                                                long period, TimeUnit unit) {
+        TaskHandle<Void> handle = new TaskHandle<>(name, null);
+        AtomicBoolean running = new AtomicBoolean();
+
+        handle.timerFuture = timer.scheduleAtFixedRate(() -> {
+            if (handle.cancelled) {
+                return;
+            }
+            if (!running.compareAndSet(false, true)) {
+                CalendarMetrics.get().increment("runtime.ticks.skipped");
+                return;
+            }
+            try {
+                workers.execute(() -> {
+                    try {
+                        runTracked(handle, task);
+                    } finally {
+                        running.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                running.set(false);
+            }
+        }, initialDelay, period, unit);
+        return handle;
+    }
+
+    private <T> void dispatch(TaskHandle<T> handle, Job<T> job) {
+        try {
+            workers.execute(() -> {
+                if (handle.cancelled) {
+                    return;
+                }
+                activeTasks.add(handle);
+                handle.runner = Thread.currentThread();
+                long start = System.nanoTime();
+                try {
+                    handle.result.complete(job.run(handle));
+                } catch (Throwable e) {
+                    if (!handle.cancelled) {
+                        CalendarMetrics.get().increment("runtime.tasks.failed");
+                        System.err.println("Error in background task " + handle.name + ": " + e);
+                    }
+                    handle.result.completeExceptionally(e);
+                } finally {
+                    handle.runner = null;
+                    activeTasks.remove(handle);
+                    CalendarMetrics.get().recordSince("task." + handle.name, start);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            handle.result.completeExceptionally(e);
+        }
+    }
+
+    private void runTracked(TaskHandle<?> handle, Runnable task) {
+        activeTasks.add(handle);
+        handle.runner = Thread.currentThread();
+        long start = System.nanoTime();
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            CalendarMetrics.get().increment("runtime.tasks.failed");
+            System.err.println("Error in background task " + handle.name + ": " + e);
+        } finally {
+            handle.runner = null;
+            activeTasks.remove(handle);
+            CalendarMetrics.get().recordSince("task." + handle.name, start);
+        }
+    }
+
+    public int getActiveTaskCount() {
+        return activeTasks.size();
+    }
+
+    /**
+     * Stops the timer, lets running jobs finish within the timeout and then
+     * interrupts whatever is left.
+     */
+    public void shutdown(long timeout, TimeUnit unit) {
+        timer.shutdownNow();
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(timeout, unit)) {
+                System.err.println("Background tasks still running at shutdown: " + activeTasks.size());
+                activeTasks.forEach(TaskHandle::cancel);
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}